@@ -0,0 +1,53 @@
+package com.jesus.webflux.benchmark;
+
+import com.jesus.webflux.model.Product;
+import com.jesus.webflux.store.ColumnarProductStore;
+import com.jesus.webflux.store.ProductStore;
+
+import java.util.SplittableRandom;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Synthetic catalogues for the benchmarks. Ids go from 1 to size, so a random id in that range
+ * always hits; prices are spread over 0..1000 and stock over 0..500 across 50 categories.
+ */
+final class Catalogue {
+
+    static final int CATEGORIES = 50;
+
+    private Catalogue() {
+    }
+
+    static ProductStore load(int size) {
+        ProductStore productStore = new ProductStore();
+        SplittableRandom random = new SplittableRandom(42);
+        for (int id = 1; id <= size; id++) {
+            productStore.put(randomProduct(random, id));
+        }
+        return productStore;
+    }
+
+    // Same products as load(size), in the columnar store
+    static ColumnarProductStore loadColumnar(int size) {
+        ColumnarProductStore productStore = new ColumnarProductStore();
+        SplittableRandom random = new SplittableRandom(42);
+        for (int id = 1; id <= size; id++) {
+            productStore.put(randomProduct(random, id));
+        }
+        return productStore;
+    }
+
+    static Product randomProduct(SplittableRandom random, Integer id) {
+        return new Product(id, "Product " + random.nextInt(1_000_000), category(random.nextInt(CATEGORIES)),
+                Math.round(random.nextDouble(0, 1000) * 100) / 100.0, random.nextInt(500));
+    }
+
+    static String category(int index) {
+        return "Category " + index;
+    }
+}
@@ -0,0 +1,120 @@
+package com.jesus.webflux.benchmark;
+
+import com.jesus.webflux.metrics.ReactiveMetrics;
+import com.jesus.webflux.model.ProductQuery;
+import com.jesus.webflux.service.ProductBulkProperties;
+import com.jesus.webflux.service.ProductChangeFeed;
+import com.jesus.webflux.service.ProductChangeProperties;
+import com.jesus.webflux.service.ProductQueryPlanner;
+import com.jesus.webflux.service.ProductService;
+import com.jesus.webflux.service.ProductServiceImpl;
+import com.jesus.webflux.store.ProductStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Read paths of ProductServiceImpl: lookups by id and every kind of filter, at several catalogue sizes.
+ * Each benchmark subscribes to the whole result, so the numbers include the Reactor overhead.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class ProductServiceBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    int catalogueSize;
+
+    ProductService productService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ProductStore productStore = Catalogue.load(catalogueSize);
+        // Instrumented as in the application, so the benchmarks include the metrics overhead
+        ReactiveMetrics reactiveMetrics = new ReactiveMetrics(new SimpleMeterRegistry());
+        productService = new ProductServiceImpl(productStore, new ProductQueryPlanner(productStore), new ProductBulkProperties(), reactiveMetrics,
+                new ProductChangeFeed(new ProductChangeProperties()));
+    }
+
+    private int randomId() {
+        return ThreadLocalRandom.current().nextInt(1, catalogueSize + 1);
+    }
+
+    private String randomCategory() {
+        return Catalogue.category(ThreadLocalRandom.current().nextInt(Catalogue.CATEGORIES));
+    }
+
+    @Benchmark
+    public Object getProductById() {
+        return productService.getProductById(randomId()).block();
+    }
+
+    @Benchmark
+    public void getProductsByCategory(Blackhole blackhole) {
+        productService.getProductsByCategory(randomCategory()).subscribe(blackhole::consume);
+    }
+
+    @Benchmark
+    public void getProductsByPriceRange(Blackhole blackhole) {
+        double from = ThreadLocalRandom.current().nextDouble(0, 990);
+        productService.getProductsByPriceRange(from, from + 10).subscribe(blackhole::consume);
+    }
+
+    @Benchmark
+    public void getProductsByStock(Blackhole blackhole) {
+        int from = ThreadLocalRandom.current().nextInt(0, 495);
+        productService.getProductsByStock(from, from + 5).subscribe(blackhole::consume);
+    }
+
+    @Benchmark
+    public void getProductsByName(Blackhole blackhole) {
+        productService.getProductsByName("Product " + ThreadLocalRandom.current().nextInt(1_000_000)).subscribe(blackhole::consume);
+    }
+
+    // Typeahead while typing the second word: "Product 4", "Product 42"... (every name shares the first word)
+    @Benchmark
+    public void suggestProducts(Blackhole blackhole) {
+        String number = Integer.toString(ThreadLocalRandom.current().nextInt(1_000_000));
+        productService.suggestProducts("product " + number.substring(0, Math.min(2, number.length())), 10).subscribe(blackhole::consume);
+    }
+
+    @Benchmark
+    public void suggestProductsByPrefix(Blackhole blackhole) {
+        productService.suggestProducts("prod", 10).subscribe(blackhole::consume);
+    }
+
+    @Benchmark
+    public void getProductsByCategoryAndPriceRange(Blackhole blackhole) {
+        double from = ThreadLocalRandom.current().nextDouble(0, 900);
+        productService.getProductsByCategoryAndPriceRange(randomCategory(), from, from + 100).subscribe(blackhole::consume);
+    }
+
+    @Benchmark
+    public void getProductsByPriceRangeAndStock(Blackhole blackhole) {
+        double from = ThreadLocalRandom.current().nextDouble(0, 990);
+        productService.getProductsByPriceRangeAndStock(from, from + 10, 0, 100).subscribe(blackhole::consume);
+    }
+
+    @Benchmark
+    public void searchSortedTopTen(Blackhole blackhole) {
+        ProductQuery query = ProductQuery.builder().category(randomCategory()).sort("-unitPrice").limit(10).build();
+        productService.searchProducts(query).subscribe(blackhole::consume);
+    }
+
+    @Benchmark
+    public void subscribeToAllProducts(Blackhole blackhole) {
+        productService.getAllProducts().subscribe(blackhole::consume);
+    }
+}
@@ -0,0 +1,119 @@
+package com.jesus.webflux.benchmark;
+
+import com.jesus.webflux.model.CategoryStats;
+import com.jesus.webflux.model.Product;
+import com.jesus.webflux.model.ProductQuery;
+import com.jesus.webflux.service.ProductQueryPlanner;
+import com.jesus.webflux.store.ColumnarProductStore;
+import com.jesus.webflux.store.ProductStore;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.DoubleSummaryStatistics;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Object store with indexes (product.backend=memory) against primitive columns (product.backend=columnar)
+ * on the same catalogue. The heap each one retains is printed when the trial starts.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class ProductStorageBenchmark {
+
+    private static final int BASKET_SIZE = 20;
+
+    @Param({"1000", "100000", "1000000"})
+    int catalogueSize;
+
+    @Param({"memory", "columnar"})
+    String storage;
+
+    ProductStore productStore;
+    ProductQueryPlanner queryPlanner;
+    ColumnarProductStore columnarStore;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        long before = usedHeap();
+        if ("columnar".equals(storage)) {
+            columnarStore = Catalogue.loadColumnar(catalogueSize);
+        } else {
+            productStore = Catalogue.load(catalogueSize);
+            queryPlanner = new ProductQueryPlanner(productStore);
+        }
+        System.out.printf("%n%s store of %d products retains ~%d MB%n", storage, catalogueSize, (usedHeap() - before) >> 20);
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private void run(ProductQuery query, Blackhole blackhole) {
+        if (columnarStore != null) columnarStore.query(query).forEach(blackhole::consume);
+        else queryPlanner.execute(query).forEach(blackhole::consume);
+    }
+
+    @Benchmark
+    public void priceRange(Blackhole blackhole) {
+        double from = ThreadLocalRandom.current().nextDouble(0, 990);
+        run(ProductQuery.builder().minPrice(from).maxPrice(from + 10).build(), blackhole);
+    }
+
+    @Benchmark
+    public void priceAndStockRange(Blackhole blackhole) {
+        double from = ThreadLocalRandom.current().nextDouble(0, 900);
+        run(ProductQuery.builder().minPrice(from).maxPrice(from + 100).minStock(0).maxStock(50).build(), blackhole);
+    }
+
+    @Benchmark
+    public void categoryPage(Blackhole blackhole) {
+        String category = Catalogue.category(ThreadLocalRandom.current().nextInt(Catalogue.CATEGORIES));
+        run(ProductQuery.builder().category(category).sort("codProduct").limit(100).build(), blackhole);
+    }
+
+    // A basket of BASKET_SIZE products: one pass over the store (one read lock for the columns) against one lookup per id
+    @Benchmark
+    public List<Product> basketLookup() {
+        List<Integer> ids = basket();
+        return columnarStore != null ? columnarStore.findAllById(ids) : productStore.findAllById(ids);
+    }
+
+    @Benchmark
+    public void basketLookupOneByOne(Blackhole blackhole) {
+        for (int id : basket()) blackhole.consume(columnarStore != null ? columnarStore.findById(id) : productStore.findById(id));
+    }
+
+    private List<Integer> basket() {
+        return ThreadLocalRandom.current().ints(BASKET_SIZE, 1, catalogueSize + 1).boxed().toList();
+    }
+
+    @Benchmark
+    public List<CategoryStats> categoryStats() {
+        return columnarStore != null ? columnarStore.categoryStats() : productStore.categoryStats();
+    }
+
+    // What clients did before the running totals: walk the whole catalogue and add it up per category
+    @Benchmark
+    public Map<String, DoubleSummaryStatistics> categoryStatsByScan() {
+        ProductQuery all = new ProductQuery();
+        Stream<Product> products = columnarStore != null ? columnarStore.query(all) : queryPlanner.execute(all);
+        return products.collect(Collectors.groupingBy(Product::getCategory, Collectors.summarizingDouble(Product::getUnitPrice)));
+    }
+}
@@ -0,0 +1,101 @@
+package com.jesus.webflux.benchmark;
+
+import com.jesus.webflux.metrics.ReactiveMetrics;
+import com.jesus.webflux.model.Product;
+import com.jesus.webflux.model.StockLine;
+import com.jesus.webflux.service.ProductBulkProperties;
+import com.jesus.webflux.service.ProductChangeFeed;
+import com.jesus.webflux.service.ProductChangeProperties;
+import com.jesus.webflux.service.ProductQueryPlanner;
+import com.jesus.webflux.service.ProductService;
+import com.jesus.webflux.service.ProductServiceImpl;
+import com.jesus.webflux.store.ProductStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Writes under contention: 8 threads updating random products, 8 threads reserving and releasing
+ * the stock of the same few products, and a mixed group where readers and writers share the same catalogue.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class ProductWriteBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    int catalogueSize;
+
+    // Products every stock reservation competes for
+    private static final int HOT_PRODUCTS = 4;
+
+    ProductService productService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ProductStore productStore = Catalogue.load(catalogueSize);
+        // Instrumented as in the application, so the benchmarks include the metrics overhead
+        ReactiveMetrics reactiveMetrics = new ReactiveMetrics(new SimpleMeterRegistry());
+        productService = new ProductServiceImpl(productStore, new ProductQueryPlanner(productStore), new ProductBulkProperties(), reactiveMetrics,
+                new ProductChangeFeed(new ProductChangeProperties()));
+    }
+
+    @State(Scope.Thread)
+    public static class Changes {
+
+        final SplittableRandom random = new SplittableRandom();
+
+        Product next(int catalogueSize) {
+            return Catalogue.randomProduct(random, random.nextInt(1, catalogueSize + 1));
+        }
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object updateProductContended(Changes changes) {
+        return productService.updateProduct(changes.next(catalogueSize)).block();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object addProductContended(Changes changes) {
+        Product product = changes.next(catalogueSize);
+        product.setCodProduct(null);
+        return productService.addProduct(product).block();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Object reserveStockContended(Changes changes) {
+        List<StockLine> items = List.of(new StockLine(changes.random.nextInt(1, HOT_PRODUCTS + 1), 1));
+        productService.reserveStock(items).block();
+        return productService.releaseStock(items).block();
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(6)
+    public Object readWhileWriting() {
+        return productService.getProductById(ThreadLocalRandom.current().nextInt(1, catalogueSize + 1)).block();
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(2)
+    public Object writeWhileReading(Changes changes) {
+        return productService.addProduct(changes.next(catalogueSize)).block();
+    }
+}
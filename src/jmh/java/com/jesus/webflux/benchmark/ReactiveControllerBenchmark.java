@@ -0,0 +1,81 @@
+package com.jesus.webflux.benchmark;
+
+import com.jesus.webflux.metrics.ReactiveMetrics;
+import com.jesus.webflux.controller.PaginationProperties;
+import com.jesus.webflux.controller.ReactiveController;
+import com.jesus.webflux.service.ProductBulkProperties;
+import com.jesus.webflux.service.ProductChangeFeed;
+import com.jesus.webflux.service.ProductChangeProperties;
+import com.jesus.webflux.service.ProductQueryPlanner;
+import com.jesus.webflux.service.ProductServiceImpl;
+import com.jesus.webflux.simulation.LatencySimulationProperties;
+import com.jesus.webflux.simulation.LatencySimulator;
+import com.jesus.webflux.store.ProductStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Controller hot paths with the latency simulation off: the cost of building and fully
+ * subscribing to the publishers each endpoint returns, without the HTTP layer.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class ReactiveControllerBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    int catalogueSize;
+
+    ReactiveController reactiveController;
+    LatencySimulator latencySimulator;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ProductStore productStore = Catalogue.load(catalogueSize);
+        latencySimulator = new LatencySimulator(new LatencySimulationProperties());
+        // Instrumented as in the application, so the benchmarks include the metrics overhead
+        ReactiveMetrics reactiveMetrics = new ReactiveMetrics(new SimpleMeterRegistry());
+        reactiveController = new ReactiveController(
+                new ProductServiceImpl(productStore, new ProductQueryPlanner(productStore), new ProductBulkProperties(), reactiveMetrics,
+                new ProductChangeFeed(new ProductChangeProperties())), latencySimulator, new PaginationProperties(), reactiveMetrics);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        latencySimulator.destroy();
+    }
+
+    @Benchmark
+    public Object getProduct() {
+        return reactiveController.getProduct(ThreadLocalRandom.current().nextInt(1, catalogueSize + 1)).getBody().block();
+    }
+
+    @Benchmark
+    public void getProductsByCategory(Blackhole blackhole) {
+        String category = Catalogue.category(ThreadLocalRandom.current().nextInt(Catalogue.CATEGORIES));
+        reactiveController.getProductsByCategory(category, null, null).getBody().subscribe(blackhole::consume);
+    }
+
+    @Benchmark
+    public void getProductsFirstPage(Blackhole blackhole) {
+        reactiveController.getProducts(null, null).getBody().subscribe(blackhole::consume);
+    }
+
+    @Benchmark
+    public void streamAllProducts(Blackhole blackhole) {
+        reactiveController.streamProducts(null).subscribe(blackhole::consume);
+    }
+}
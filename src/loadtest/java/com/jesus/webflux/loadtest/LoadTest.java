@@ -0,0 +1,260 @@
+package com.jesus.webflux.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.jesus.webflux.Spb3Java17WebfluxService3Application;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * End-to-end load test: sends a mix of requests to the ReactiveController endpoints at a fixed rate through
+ * WebClient and records the latency of each operation in an HdrHistogram.
+ * <p>
+ * The rate is open-loop: requests are sent on schedule whether or not the previous ones have answered, and
+ * latency is measured from the scheduled time (no coordinated omission). Requests due while max-in-flight are
+ * already waiting are not sent and count as "dropped" errors. Without --target the application is started in
+ * this JVM on a random port, with the rate limiter off (--app.rate-limit.enabled=true turns it back on).
+ * <pre>
+ * --rps=500 --duration=60s --warmup=15s --mix=mixed|read|write|stream|product-by-id=80,product-add=20
+ * --catalogue=10000 --max-in-flight=2000 --connections=200 --target=http://host:8084 --seed=42
+ * --report=target/loadtest/report.json --baseline=previous-report.json --max-regression=0.1 --app.product.backend=columnar
+ * </pre>
+ * The leading dashes can be left out. Exits with 1 when the run regressed against the baseline.
+ */
+public final class LoadTest {
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new LinkedHashMap<>();
+        List<String> appArgs = new ArrayList<>(List.of("--server.port=0", "--rate-limit.enabled=false", "--logging.level.root=WARN"));
+        for (String arg : args) {
+            // The leading dashes are optional (Maven comments cannot hold them)
+            String option = arg.startsWith("--") ? arg.substring(2) : arg;
+            if (!option.contains("=")) throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            if (option.startsWith("app.")) appArgs.add("--" + option.substring("app.".length()));
+            else options.put(option.substring(0, option.indexOf('=')), option.substring(option.indexOf('=') + 1));
+        }
+        double rps = Double.parseDouble(options.getOrDefault("rps", "200"));
+        Duration duration = DurationStyle.detectAndParse(options.getOrDefault("duration", "30s"));
+        Duration warmup = DurationStyle.detectAndParse(options.getOrDefault("warmup", "10s"));
+        String mix = options.getOrDefault("mix", "mixed");
+        int catalogue = Integer.parseInt(options.getOrDefault("catalogue", "10000"));
+        int maxInFlight = Integer.parseInt(options.getOrDefault("max-in-flight", "2000"));
+        int maxConnections = Integer.parseInt(options.getOrDefault("connections", "200"));
+
+        ConfigurableApplicationContext application = null;
+        String target = options.get("target");
+        if (target == null) {
+            // Otherwise devtools (on the test classpath) would restart this main method with the application arguments
+            System.setProperty("spring.devtools.restart.enabled", "false");
+            application = new SpringApplicationBuilder(Spb3Java17WebfluxService3Application.class).run(appArgs.toArray(String[]::new));
+            target = "http://localhost:" + ((WebServerApplicationContext) application).getWebServer().getPort();
+        }
+        ConnectionProvider connectionProvider = ConnectionProvider.builder("load-test")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(-1)
+                .build();
+        ConnectionCounts connections = new ConnectionCounts();
+        // Once per channel (doOnConnected runs on every acquisition from the pool)
+        HttpClient httpClient = HttpClient.create(connectionProvider).doOnChannelInit((observer, channel, address) -> {
+            connections.opened.incrementAndGet();
+            connections.max.accumulateAndGet(connections.open.incrementAndGet(), Math::max);
+            channel.closeFuture().addListener(closed -> connections.open.decrementAndGet());
+        });
+        WebClient client = WebClient.builder()
+                .baseUrl(target)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(16 * 1024 * 1024))
+                .build();
+        int exitCode = 0;
+        try {
+            System.out.printf("Loading %d products into %s%n", catalogue, target);
+            Workload workload = Workload.load(client, catalogue).block(Duration.ofMinutes(10));
+            Run run = new Run(workload, Workload.mix(mix), Long.parseLong(options.getOrDefault("seed", "42")));
+            System.out.printf("Sending %.0f requests per second, %s of warm-up then %s measured%n", rps, warmup, duration);
+            run.execute(client, rps, warmup, duration, maxInFlight);
+
+            LoadTestReport report = new LoadTestReport(System.getProperty("loadtest.version", "unknown"), Instant.now().toString(),
+                    new LoadTestReport.Settings(target, rps, duration.toString(), warmup.toString(), mix, catalogue, maxInFlight, maxConnections,
+                            Runtime.version().toString(), Runtime.getRuntime().availableProcessors()),
+                    new LoadTestReport.Connections(connections.opened.get(), connections.max.get(), run.maxInFlight.get()),
+                    run.total(duration), run.operations(duration));
+            report.print(System.out);
+            ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+            Path reportPath = Path.of(options.getOrDefault("report", "target/loadtest/report.json"));
+            Files.createDirectories(reportPath.toAbsolutePath().getParent());
+            objectMapper.writeValue(reportPath.toFile(), report);
+            System.out.printf("Report written to %s%n", reportPath);
+
+            String baseline = options.get("baseline");
+            if (baseline != null) {
+                List<String> regressions = report.compare(objectMapper.readValue(Path.of(baseline).toFile(), LoadTestReport.class),
+                        Double.parseDouble(options.getOrDefault("max-regression", "0.1")), System.out);
+                regressions.forEach(regression -> System.out.println("REGRESSION " + regression));
+                if (!regressions.isEmpty()) exitCode = 1;
+            }
+        } finally {
+            connectionProvider.dispose();
+            if (application != null) application.close();
+        }
+        System.exit(exitCode);
+    }
+
+    private static final class ConnectionCounts {
+        final AtomicLong opened = new AtomicLong();
+        final AtomicInteger open = new AtomicInteger();
+        final AtomicInteger max = new AtomicInteger();
+    }
+
+    private static final class OperationStats {
+        final Recorder latency = new Recorder(3);
+        final LongAdder requests = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder items = new LongAdder();
+        final Map<String, LongAdder> errorTypes = new ConcurrentHashMap<>();
+        Histogram histogram;
+
+        void failed(String type) {
+            errors.increment();
+            errorTypes.computeIfAbsent(type, key -> new LongAdder()).increment();
+        }
+
+        LoadTestReport.Stats stats(Histogram latencies, Duration duration) {
+            long total = requests.sum();
+            Map<String, Long> types = new TreeMap<>();
+            errorTypes.forEach((type, count) -> types.put(type, count.sum()));
+            return new LoadTestReport.Stats(total, errors.sum(), total == 0 ? 0 : (double) errors.sum() / total, types,
+                    (total - errors.sum()) / (duration.toNanos() / 1e9), items.sum(), LoadTestReport.Latency.of(latencies));
+        }
+    }
+
+    // One run of the open-loop schedule
+    private static final class Run {
+
+        private final Workload.Operation[] operations;
+        private final int[] cumulativeWeights;
+        private final Map<String, OperationStats> stats = new LinkedHashMap<>();
+        private final SplittableRandom random;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+
+        Run(Workload workload, Map<String, Integer> mix, long seed) {
+            operations = new Workload.Operation[mix.size()];
+            cumulativeWeights = new int[mix.size()];
+            int i = 0;
+            int total = 0;
+            for (var weight : mix.entrySet()) {
+                operations[i] = workload.operation(weight.getKey());
+                total += weight.getValue();
+                cumulativeWeights[i++] = total;
+                stats.put(weight.getKey(), new OperationStats());
+            }
+            random = new SplittableRandom(seed);
+        }
+
+        void execute(WebClient client, double rps, Duration warmup, Duration duration, int maxInFlightLimit) {
+            long interval = (long) (1e9 / rps);
+            long start = System.nanoTime();
+            long measureFrom = start + warmup.toNanos();
+            long end = measureFrom + duration.toNanos();
+            for (long i = 0; ; i++) {
+                long scheduled = start + i * interval;
+                if (scheduled >= end) break;
+                long wait = scheduled - System.nanoTime();
+                if (wait > 0) LockSupport.parkNanos(wait);
+                // Warm-up requests are sent the same way but recorded nowhere
+                boolean measured = scheduled >= measureFrom;
+                Workload.Operation operation = pick();
+                OperationStats operationStats = stats.get(operation.name());
+                if (measured) operationStats.requests.increment();
+                if (inFlight.get() >= maxInFlightLimit) {
+                    if (measured) operationStats.failed("dropped");
+                    continue;
+                }
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                operation.request().send(client, random).subscribe(
+                        items -> {
+                            inFlight.decrementAndGet();
+                            if (!measured) return;
+                            operationStats.latency.recordValue(Math.max(1, (System.nanoTime() - scheduled) / 1000));
+                            operationStats.items.add(items);
+                        },
+                        error -> {
+                            inFlight.decrementAndGet();
+                            if (measured) operationStats.failed(errorType(error));
+                        });
+            }
+            long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+            while (inFlight.get() > 0 && System.nanoTime() < deadline) LockSupport.parkNanos(1_000_000);
+            stats.values().forEach(operation -> operation.histogram = operation.latency.getIntervalHistogram());
+        }
+
+        private Workload.Operation pick() {
+            int value = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            for (int i = 0; i < cumulativeWeights.length; i++) {
+                if (value < cumulativeWeights[i]) return operations[i];
+            }
+            throw new IllegalStateException();
+        }
+
+        private static String errorType(Throwable error) {
+            if (error instanceof WebClientResponseException response) return "http-" + response.getStatusCode().value();
+            return error.getClass().getSimpleName();
+        }
+
+        Map<String, LoadTestReport.Stats> operations(Duration duration) {
+            Map<String, LoadTestReport.Stats> operations = new LinkedHashMap<>();
+            stats.forEach((name, operation) -> operations.put(name, operation.stats(operation.histogram, duration)));
+            return operations;
+        }
+
+        LoadTestReport.Stats total(Duration duration) {
+            Histogram all = new Histogram(3);
+            OperationStats total = new OperationStats();
+            stats.values().forEach(operation -> {
+                all.add(operation.histogram);
+                total.requests.add(operation.requests.sum());
+                total.items.add(operation.items.sum());
+                operation.errorTypes.forEach((type, count) -> {
+                    total.errors.add(count.sum());
+                    total.errorTypes.computeIfAbsent(type, key -> new LongAdder()).add(count.sum());
+                });
+            });
+            return total.stats(all, duration);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.jesus.webflux.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Result of a load test run, written as JSON so the run of one release can be compared with the previous one.
+ * Latencies are in milliseconds and measured from when each request was due to be sent, not from when it was
+ * actually sent, so a server that falls behind shows up in the tail instead of slowing the test down.
+ */
+record LoadTestReport(String version, String timestamp, Settings settings, Connections connections,
+                      Stats total, Map<String, Stats> operations) {
+
+    static final int MIN_REQUESTS = 100;
+
+    record Settings(String target, double rps, String duration, String warmup, String mix, int catalogue,
+                    int maxInFlight, int maxConnections, String java, int cpus) {
+    }
+
+    // opened: connections established during the whole run; maxOpen and maxInFlight: highest at any time
+    record Connections(long opened, int maxOpen, int maxInFlight) {
+    }
+
+    record Stats(long requests, long errors, double errorRate, Map<String, Long> errorTypes, double throughput,
+                 long items, Latency latency) {
+    }
+
+    record Latency(double mean, double p50, double p90, double p99, double p999, double max) {
+
+        // From a histogram in microseconds
+        static Latency of(Histogram histogram) {
+            return new Latency(histogram.getMean() / 1000.0, ms(histogram, 50), ms(histogram, 90), ms(histogram, 99),
+                    ms(histogram, 99.9), histogram.getMaxValue() / 1000.0);
+        }
+
+        private static double ms(Histogram histogram, double percentile) {
+            return histogram.getValueAtPercentile(percentile) / 1000.0;
+        }
+    }
+
+    void print(PrintStream out) {
+        out.printf("%nLoad test %s: %.0f rps for %s (%s mix, %d products) against %s%n", version, settings.rps(), settings.duration(),
+                settings.mix(), settings.catalogue(), settings.target());
+        out.printf("%-24s %9s %8s %9s %9s %9s %9s %9s %9s%n", "operation", "requests", "errors", "req/s", "mean ms", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        operations.forEach((name, stats) -> print(out, name, stats));
+        print(out, "total", total);
+        out.printf("connections opened %d, at most %d open, at most %d requests in flight%n", connections.opened(),
+                connections.maxOpen(), connections.maxInFlight());
+    }
+
+    private static void print(PrintStream out, String name, Stats stats) {
+        Latency latency = stats.latency();
+        out.printf("%-24s %9d %8d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n", name, stats.requests(), stats.errors(), stats.throughput(),
+                latency.mean(), latency.p50(), latency.p99(), latency.p999(), latency.max());
+        if (!stats.errorTypes().isEmpty()) out.printf("%-24s %s%n", "", stats.errorTypes());
+    }
+
+    /**
+     * Prints how this run compares with the baseline and returns the regressions: p99 latency grown by more than
+     * maxRegression (0.1 = 10%), error rate grown by more than a percentage point, or total throughput fallen by
+     * more than maxRegression. Operations with fewer than MIN_REQUESTS requests are shown but not judged, their
+     * p99 is just noise; neither is their throughput, which in an open loop follows the mix rather than the server.
+     */
+    List<String> compare(LoadTestReport baseline, double maxRegression, PrintStream out) {
+        out.printf("%nCompared with %s (%s):%n", baseline.version(), baseline.timestamp());
+        out.printf("%-24s %11s %11s %11s %11s %11s %11s%n", "operation", "req/s", "was", "p99 ms", "was", "errors %", "was");
+        List<String> regressions = new ArrayList<>();
+        operations.forEach((name, stats) -> {
+            Stats previous = baseline.operations().get(name);
+            if (previous != null) compare(name, stats, previous, maxRegression, out, regressions);
+        });
+        compare("total", total, baseline.total(), maxRegression, out, regressions);
+        if (total.throughput() < baseline.total().throughput() * (1 - maxRegression)) {
+            regressions.add(String.format("throughput %.1f req/s, was %.1f req/s", total.throughput(), baseline.total().throughput()));
+        }
+        if (settings.rps() != baseline.settings().rps() || !settings.mix().equals(baseline.settings().mix())) {
+            out.println("Warning: the baseline ran with a different rate or mix, the numbers are not comparable");
+        }
+        return regressions;
+    }
+
+    private static void compare(String name, Stats current, Stats previous, double maxRegression, PrintStream out, List<String> regressions) {
+        out.printf("%-24s %11.1f %11.1f %11.2f %11.2f %11.2f %11.2f%n", name, current.throughput(), previous.throughput(),
+                current.latency().p99(), previous.latency().p99(), current.errorRate() * 100, previous.errorRate() * 100);
+        if (current.requests() < MIN_REQUESTS || previous.requests() < MIN_REQUESTS) return;
+        if (current.latency().p99() > previous.latency().p99() * (1 + maxRegression)) {
+            regressions.add(String.format("%s p99 %.2f ms, was %.2f ms", name, current.latency().p99(), previous.latency().p99()));
+        }
+        if (current.errorRate() > previous.errorRate() + 0.01) {
+            regressions.add(String.format("%s error rate %.2f%%, was %.2f%%", name, current.errorRate() * 100, previous.errorRate() * 100));
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.jesus.webflux.loadtest;
+
+import com.jesus.webflux.model.BulkItemResult;
+import com.jesus.webflux.model.Product;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.IntSummaryStatistics;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * The requests the load test sends, one per ReactiveController endpoint, and the mixes they are sent in.
+ * Requests target the synthetic catalogue loaded before the run (the ids it was given, names "Product n"
+ * and 50 categories "Category n", as in the JMH benchmarks).
+ */
+final class Workload {
+
+    static final int CATEGORIES = 50;
+    private static final int BULK_SIZE = 100;
+    // Ids per lookup of several products (a basket)
+    private static final int LOOKUP_SIZE = 10;
+
+    enum Kind {READ, WRITE, STREAM}
+
+    // Sends one request and completes with the number of items received
+    @FunctionalInterface
+    interface Request {
+        Mono<Long> send(WebClient client, SplittableRandom random);
+    }
+
+    record Operation(String name, Kind kind, Request request) {
+    }
+
+    // Weights of each preset, by operation name
+    private static final Map<String, String> PRESETS = Map.of(
+            "read", "product-by-id=32,product-lookup=4,product-all=10,product-search=10,product-autocomplete=10,product-category=10,product-name=5,product-name-category=5,product-stats=2,product-stats-category=2,mono=4,names=2,flux=2,stream=2",
+            "write", "product-add=30,product-update=40,product-bulk-add=10,product-bulk-update=10,product-by-id=10",
+            "stream", "product-stream=20,product-all=30,stream=20,flux=15,names=15",
+            "mixed", "product-by-id=26,product-lookup=2,product-all=8,product-stream=2,product-search=8,product-autocomplete=8,product-category=8,product-name=4,"
+                    + "product-name-category=4,product-stats=1,product-stats-category=1,mono=3,names=2,flux=2,stream=2,product-add=8,product-update=8,product-bulk-add=2,product-bulk-update=1");
+
+    private final Map<String, Operation> operations = new LinkedHashMap<>();
+    private final int firstId;
+    private final int lastId;
+
+    Workload(int firstId, int lastId) {
+        this.firstId = firstId;
+        this.lastId = lastId;
+        add("product-by-id", Kind.READ, (client, random) -> get(client, "/reactive/product/{id}", id(random)));
+        add("product-lookup", Kind.READ, (client, random) -> client.post().uri("/reactive/product/lookup").accept(MediaType.APPLICATION_JSON)
+                .bodyValue(IntStream.range(0, LOOKUP_SIZE).mapToObj(i -> id(random)).toList())
+                .retrieve().bodyToFlux(Product.class).count());
+        add("product-all", Kind.READ, (client, random) -> getAll(client, "/reactive/product/all?after={after}&size=100", id(random)));
+        add("product-stream", Kind.STREAM, (client, random) -> client.get().uri("/reactive/product/all?after={after}", Math.max(0, id(random) - 1000))
+                .accept(MediaType.APPLICATION_NDJSON).retrieve().bodyToFlux(Product.class).count());
+        add("product-search", Kind.READ, (client, random) -> getAll(client, "/reactive/product/search?category={category}&maxPrice={maxPrice}&sort=-unitPrice&limit=20",
+                category(random), random.nextInt(10, 1000)));
+        add("product-autocomplete", Kind.READ, (client, random) -> getAll(client, "/reactive/product/autocomplete?q={q}&limit=10",
+                "product " + random.nextInt(1, 100)));
+        add("product-category", Kind.READ, (client, random) -> getAll(client, "/reactive/product/category/{category}?size=100", category(random)));
+        add("product-name", Kind.READ, (client, random) -> getAll(client, "/reactive/product/name/{name}", name(random)));
+        add("product-name-category", Kind.READ, (client, random) -> getAll(client, "/reactive/product/name/{name}/category/{category}",
+                name(random), category(random)));
+        add("product-stats", Kind.READ, (client, random) -> get(client, "/reactive/product/stats"));
+        add("product-stats-category", Kind.READ, (client, random) -> getAll(client, "/reactive/product/stats/category"));
+        add("mono", Kind.READ, (client, random) -> get(client, "/reactive/mono/{id}", id(random)));
+        // Written as plain text whatever the Accept header (String elements)
+        add("names", Kind.READ, (client, random) -> client.get().uri("/reactive/names").retrieve().bodyToMono(String.class).thenReturn(1L));
+        add("flux", Kind.READ, (client, random) -> getAll(client, "/reactive/flux"));
+        add("stream", Kind.READ, (client, random) -> getAll(client, "/reactive/stream"));
+        add("product-add", Kind.WRITE, (client, random) -> client.post().uri("/reactive/product/add").bodyValue(product(random, null))
+                .retrieve().toBodilessEntity().thenReturn(1L));
+        add("product-update", Kind.WRITE, (client, random) -> client.put().uri("/reactive/product/update").bodyValue(product(random, id(random)))
+                .retrieve().toBodilessEntity().thenReturn(1L));
+        add("product-bulk-add", Kind.WRITE, (client, random) -> bulk(client.post(), products(random, false)));
+        add("product-bulk-update", Kind.WRITE, (client, random) -> bulk(client.put(), products(random, true)));
+    }
+
+    private void add(String name, Kind kind, Request request) {
+        operations.put(name, new Operation(name, kind, request));
+    }
+
+    Operation operation(String name) {
+        Operation operation = operations.get(name);
+        if (operation == null) throw new IllegalArgumentException("Unknown operation " + name + ", expected one of " + operations.keySet());
+        return operation;
+    }
+
+    /**
+     * Weights by operation of a preset (read, write, stream, mixed) or of a list like product-by-id=80,product-add=20.
+     */
+    static Map<String, Integer> mix(String spec) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String entry : PRESETS.getOrDefault(spec, spec).split(",")) {
+            String[] nameAndWeight = entry.trim().split("=");
+            if (nameAndWeight.length != 2) throw new IllegalArgumentException("Expected name=weight in the mix, got " + entry);
+            weights.put(nameAndWeight[0].trim(), Integer.parseInt(nameAndWeight[1].trim()));
+        }
+        return weights;
+    }
+
+    /**
+     * Loads the catalogue through the bulk endpoint, in batches of 1000, and completes with the workload on its ids.
+     */
+    static Mono<Workload> load(WebClient client, int size) {
+        SplittableRandom random = new SplittableRandom(42);
+        return Flux.range(0, (size + 999) / 1000)
+                .concatMap(batch -> client.post().uri("/reactive/product/bulk")
+                        .contentType(MediaType.APPLICATION_NDJSON).accept(MediaType.APPLICATION_NDJSON)
+                        .body(Flux.range(0, Math.min(1000, size - batch * 1000)).map(i -> product(random, null)), Product.class)
+                        .retrieve().bodyToFlux(BulkItemResult.class))
+                .filter(result -> result.getStatus() == BulkItemResult.Status.CREATED)
+                .map(BulkItemResult::getCodProduct)
+                .collect(IntSummaryStatistics::new, IntSummaryStatistics::accept)
+                .filter(ids -> ids.getCount() > 0)
+                .map(ids -> new Workload(ids.getMin(), ids.getMax()))
+                .switchIfEmpty(Mono.error(() -> new IllegalStateException("The catalogue could not be loaded")));
+    }
+
+    private int id(SplittableRandom random) {
+        return random.nextInt(firstId, lastId + 1);
+    }
+
+    private static String category(SplittableRandom random) {
+        return "Category " + random.nextInt(CATEGORIES);
+    }
+
+    private static String name(SplittableRandom random) {
+        return "Product " + random.nextInt(1_000);
+    }
+
+    private static Product product(SplittableRandom random, Integer id) {
+        return new Product(id, name(random), category(random), Math.round(random.nextDouble(0, 1000) * 100) / 100.0, random.nextInt(500));
+    }
+
+    private List<Product> products(SplittableRandom random, boolean existing) {
+        return IntStream.range(0, BULK_SIZE).mapToObj(i -> product(random, existing ? id(random) : null)).toList();
+    }
+
+    private static Mono<Long> get(WebClient client, String uri, Object... variables) {
+        return client.get().uri(uri, variables).retrieve().toBodilessEntity().thenReturn(1L);
+    }
+
+    private static Mono<Long> getAll(WebClient client, String uri, Object... variables) {
+        return client.get().uri(uri, variables).accept(MediaType.APPLICATION_JSON).retrieve().bodyToFlux(Object.class).count();
+    }
+
+    private static Mono<Long> bulk(WebClient.RequestBodyUriSpec method, List<Product> products) {
+        return method.uri("/reactive/product/bulk").contentType(MediaType.APPLICATION_NDJSON).accept(MediaType.APPLICATION_NDJSON)
+                .body(Flux.fromIterable(products), Product.class)
+                .retrieve().bodyToFlux(BulkItemResult.class).count();
+    }
+}
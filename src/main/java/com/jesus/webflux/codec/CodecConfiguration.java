@@ -0,0 +1,76 @@
+package com.jesus.webflux.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+
+import java.util.List;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Response encodings negotiated through the Accept header: JSON (default), CBOR (application/cbor) and
+ * Smile (application/x-jackson-smile), all built from the application's Jackson settings, and readable in
+ * request bodies too. Single products are written from the serialised bytes cache of {@link ProductPayloadEncoder}.
+ * <p>
+ * Compression (gzip, deflate and Brotli with Accept-Encoding) is done by Netty, see server.compression.*.
+ */
+@Configuration(proxyBeanMethods = false)
+@EnableConfigurationProperties(PayloadCacheProperties.class)
+public class CodecConfiguration implements WebFluxConfigurer {
+
+    public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+    public static final MediaType APPLICATION_SMILE = MediaType.parseMediaType(APPLICATION_SMILE_VALUE);
+
+    private final ObjectMapper objectMapper;
+    private final ObjectProvider<Jackson2ObjectMapperBuilder> mapperBuilders;
+    private final PayloadCacheProperties payloadCacheProperties;
+    private final MeterRegistry meterRegistry;
+
+    public CodecConfiguration(ObjectMapper objectMapper, ObjectProvider<Jackson2ObjectMapperBuilder> mapperBuilders,
+                              PayloadCacheProperties payloadCacheProperties, MeterRegistry meterRegistry) {
+        this.objectMapper = objectMapper;
+        this.mapperBuilders = mapperBuilders;
+        this.payloadCacheProperties = payloadCacheProperties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+        // The builder bean is a prototype: a fresh one per format, with the spring.jackson.* settings applied
+        ObjectMapper cborMapper = mapperBuilders.getObject().factory(new CBORFactory()).build();
+        ObjectMapper smileMapper = mapperBuilders.getObject().factory(new SmileFactory()).build();
+        // Without explicit mime types the Jackson binary codecs would claim the JSON ones
+        Jackson2JsonEncoder jsonEncoder = new Jackson2JsonEncoder(objectMapper);
+        CollectingCborEncoder cborEncoder = new CollectingCborEncoder(cborMapper);
+        Jackson2SmileEncoder smileEncoder = new Jackson2SmileEncoder(smileMapper, APPLICATION_SMILE);
+
+        // Custom codecs are asked before the default ones, in registration order: the product payload cache
+        // first, then JSON ahead of CBOR so JSON stays the answer to "Accept: */*" (errors included)
+        if (payloadCacheProperties.isEnabled()) {
+            configurer.customCodecs().register(new ProductPayloadEncoder(List.of(jsonEncoder, cborEncoder, smileEncoder),
+                    payloadCacheProperties, meterRegistry));
+        }
+        configurer.customCodecs().register(jsonEncoder);
+        configurer.customCodecs().register(cborEncoder);
+        configurer.customCodecs().registerWithDefaultConfig(new Jackson2CborDecoder(cborMapper, MediaType.APPLICATION_CBOR));
+        configurer.defaultCodecs().jackson2SmileEncoder(smileEncoder);
+        configurer.defaultCodecs().jackson2SmileDecoder(new Jackson2SmileDecoder(smileMapper, APPLICATION_SMILE));
+    }
+}
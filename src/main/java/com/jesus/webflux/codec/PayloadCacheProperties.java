@@ -0,0 +1,24 @@
+package com.jesus.webflux.codec;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Serialised product cache settings, bound from product.payload-cache.*.
+ */
+@Data
+@ConfigurationProperties(prefix = "product.payload-cache")
+public class PayloadCacheProperties {
+
+    private boolean enabled = true;
+
+    // Total size of the cached payloads (all media types)
+    private DataSize maximumSize = DataSize.ofMegabytes(32);
+}
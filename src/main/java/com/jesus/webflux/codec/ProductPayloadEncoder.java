@@ -0,0 +1,165 @@
+package com.jesus.webflux.codec;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.jesus.webflux.model.Product;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.Encoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.HttpMessageEncoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Writes products (JSON, CBOR or Smile) from a cache of their serialised bytes, so hot reads skip
+ * Jackson altogether: the cached array goes out wrapped in a buffer, without copying. Streams of products
+ * are written from the same payloads in JSON (a JSON array, "[", "," and "]" between them) and in the
+ * streaming JSON types such as NDJSON (one per line), the framing the JSON encoder would have written.
+ * <p>
+ * The cache key is the content of the product plus the media type, not just its codProduct: an updated
+ * product is a different key, so stale bytes can never be served whichever backend or cache the product
+ * came from, and superseded versions just age out of the size-bounded cache. Streams in CBOR or Smile,
+ * written as one array value, are handed to the regular encoders.
+ */
+final class ProductPayloadEncoder implements HttpMessageEncoder<Product> {
+
+    // Per-entry overhead on top of the payload (key, entry, array header), for the cache weigher
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private static final byte[] ARRAY_START = {'['};
+    private static final byte[] ARRAY_SEPARATOR = {','};
+    private static final byte[] ARRAY_END = {']'};
+    private static final byte[] LINE_SEPARATOR = {'\n'};
+
+    private final List<HttpMessageEncoder<Object>> delegates;
+    private final Cache<Key, byte[]> payloads;
+
+    ProductPayloadEncoder(List<HttpMessageEncoder<Object>> delegates, PayloadCacheProperties properties, MeterRegistry meterRegistry) {
+        this.delegates = delegates;
+        this.payloads = Caffeine.newBuilder()
+                .maximumWeight(properties.getMaximumSize().toBytes())
+                .weigher((Key key, byte[] payload) -> payload.length + ENTRY_OVERHEAD)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, payloads, "product-payloads");
+    }
+
+    @Override
+    public boolean canEncode(ResolvableType elementType, MimeType mimeType) {
+        return Product.class.equals(elementType.toClass()) && delegate(elementType, mimeType) != null;
+    }
+
+    @Override
+    public List<MimeType> getEncodableMimeTypes() {
+        List<MimeType> mimeTypes = new ArrayList<>();
+        delegates.forEach(delegate -> mimeTypes.addAll(delegate.getEncodableMimeTypes()));
+        return mimeTypes;
+    }
+
+    @Override
+    public List<MediaType> getStreamingMediaTypes() {
+        List<MediaType> mediaTypes = new ArrayList<>();
+        delegates.forEach(delegate -> mediaTypes.addAll(delegate.getStreamingMediaTypes()));
+        return mediaTypes;
+    }
+
+    @Override
+    public Map<String, Object> getEncodeHints(ResolvableType actualType, ResolvableType elementType, MediaType mediaType,
+                                              ServerHttpRequest request, ServerHttpResponse response) {
+        return delegate(elementType, mediaType).getEncodeHints(actualType, elementType, mediaType, request, response);
+    }
+
+    @Override
+    public Flux<DataBuffer> encode(Publisher<? extends Product> inputStream, DataBufferFactory bufferFactory, ResolvableType elementType,
+                                   MimeType mimeType, Map<String, Object> hints) {
+        if (inputStream instanceof Mono<? extends Product> mono) {
+            return mono.map(product -> encodeValue(product, bufferFactory, elementType, mimeType, hints)).flux();
+        }
+        HttpMessageEncoder<Object> delegate = delegate(elementType, mimeType);
+        if (!(delegate instanceof Jackson2JsonEncoder)) {
+            return delegate.encode(inputStream, bufferFactory, elementType, mimeType, hints);
+        }
+        if (isStreaming(delegate, mimeType)) {
+            return Flux.from(inputStream).concatMapIterable(product -> List.of(
+                    encodeValue(product, bufferFactory, elementType, mimeType, hints), bufferFactory.wrap(LINE_SEPARATOR)));
+        }
+        // "[" goes out with the first product, so the response is not committed before the stream had a chance to fail
+        return Flux.from(inputStream).index()
+                .concatMapIterable(indexed -> List.of(
+                        bufferFactory.wrap(indexed.getT1() == 0 ? ARRAY_START : ARRAY_SEPARATOR),
+                        encodeValue(indexed.getT2(), bufferFactory, elementType, mimeType, hints)))
+                .switchIfEmpty(Mono.fromCallable(() -> bufferFactory.wrap(ARRAY_START)))
+                .concatWith(Mono.fromCallable(() -> bufferFactory.wrap(ARRAY_END)));
+    }
+
+    @Override
+    public DataBuffer encodeValue(Product product, DataBufferFactory bufferFactory, ResolvableType valueType,
+                                  MimeType mimeType, Map<String, Object> hints) {
+        Encoder<Object> delegate = delegate(valueType, mimeType);
+        Key key = Key.of(product, delegate, mimeType);
+        if (key == null) return delegate.encodeValue(product, bufferFactory, valueType, mimeType, hints);
+        byte[] payload = payloads.get(key, k -> serialise(delegate, product, valueType, mimeType, hints));
+        return bufferFactory.wrap(payload);
+    }
+
+    private HttpMessageEncoder<Object> delegate(ResolvableType elementType, MimeType mimeType) {
+        for (HttpMessageEncoder<Object> delegate : delegates) {
+            if (delegate.canEncode(elementType, mimeType)) return delegate;
+        }
+        return null;
+    }
+
+    private static boolean isStreaming(HttpMessageEncoder<Object> delegate, MimeType mimeType) {
+        if (mimeType == null) return false;
+        for (MediaType streamingType : delegate.getStreamingMediaTypes()) {
+            if (streamingType.isCompatibleWith(mimeType)) return true;
+        }
+        return false;
+    }
+
+    private static byte[] serialise(Encoder<Object> delegate, Product product, ResolvableType valueType, MimeType mimeType,
+                                    Map<String, Object> hints) {
+        DataBuffer buffer = delegate.encodeValue(product, DefaultDataBufferFactory.sharedInstance, valueType, mimeType, hints);
+        try {
+            byte[] payload = new byte[buffer.readableByteCount()];
+            buffer.read(payload);
+            return payload;
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+    }
+
+    /**
+     * Product fields plus the encoder that produced the bytes, one per format: the same bytes serve every
+     * media type of that encoder, "application/json" with or without charset=UTF-8. Null (no caching) for other charsets.
+     */
+    private record Key(Integer codProduct, String name, String category, double unitPrice, int stock, Encoder<Object> encoder) {
+
+        static Key of(Product product, Encoder<Object> encoder, MimeType mimeType) {
+            if (mimeType != null && mimeType.getCharset() != null && !StandardCharsets.UTF_8.equals(mimeType.getCharset())) return null;
+            return new Key(product.getCodProduct(), product.getName(), product.getCategory(), product.getUnitPrice(), product.getStock(), encoder);
+        }
+    }
+}
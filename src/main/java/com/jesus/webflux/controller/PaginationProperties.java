@@ -0,0 +1,34 @@
+package com.jesus.webflux.controller;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Page size limits of the product listing and lookup endpoints, bound from product.pagination.*.
+ */
+@Data
+@ConfigurationProperties(prefix = "product.pagination")
+public class PaginationProperties {
+
+    // Page size used when the client does not send one
+    private int defaultPageSize = 100;
+
+    // Larger page sizes are capped to this value
+    private int maxPageSize = 1000;
+
+    // Max number of products requested at once from the store while streaming (NDJSON / SSE)
+    private int streamPrefetch = 256;
+
+    // Suggestions returned by the autocomplete when the client does not ask for a number, and the cap
+    private int defaultSuggestions = 10;
+    private int maxSuggestions = 50;
+
+    // Ids accepted by one lookup of several products, larger lookups are rejected
+    private int maxLookupIds = 1000;
+}
@@ -0,0 +1,34 @@
+package com.jesus.webflux.controller;
+
+import com.jesus.webflux.service.CachingProductService;
+import lombok.AllArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Exposes the hit / miss / eviction counters of the product cache so its size and TTL can be tuned.
+ */
+@AllArgsConstructor
+@RestController
+@RequestMapping("/reactive/cache")
+@ConditionalOnProperty(prefix = "product.cache", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class ProductCacheController {
+
+    private final CachingProductService cachingProductService;
+
+    @GetMapping("/stats")
+    public Mono<Map<String, Map<String, Object>>> getCacheStats() {
+        return Mono.fromSupplier(cachingProductService::cacheStats);
+    }
+}
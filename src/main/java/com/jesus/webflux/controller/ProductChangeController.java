@@ -0,0 +1,61 @@
+package com.jesus.webflux.controller;
+
+import com.jesus.webflux.metrics.ReactiveMetrics;
+import com.jesus.webflux.model.ProductEvent;
+import com.jesus.webflux.service.ProductChangeFeed;
+import com.jesus.webflux.service.ProductChangeProperties;
+import lombok.AllArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Server-Sent Events stream of the catalogue changes (ADDED / UPDATED / DELETED), optionally filtered by
+ * category and codProducts. Every event carries its sequence number as SSE id, so a client reconnecting
+ * with Last-Event-ID (or ?since=) resumes right after it. RESYNC means the missed events are gone and
+ * the client has to reload what it needs.
+ */
+@AllArgsConstructor
+@RestController
+@RequestMapping("/reactive/product")
+public class ProductChangeController {
+
+    private static final String METRICS_NAME = "product.changes";
+
+    private final ProductChangeFeed changeFeed;
+    private final ProductChangeProperties changeProperties;
+    private final ReactiveMetrics reactiveMetrics;
+
+    // curl -N "localhost:8084/reactive/product/changes?category=Alimentación&id=100&id=101"
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<ProductEvent>> changes(@RequestParam(required = false) String category,
+                                                       @RequestParam(name = "id", required = false) List<Integer> ids,
+                                                       @RequestParam(required = false) Long since,
+                                                       @RequestHeader(name = "Last-Event-ID", required = false) Long lastEventId) {
+        // La cabecera del navegador al reconectar tiene prioridad sobre el parámetro
+        Long resumeFrom = lastEventId != null ? lastEventId : since;
+        Flux<ServerSentEvent<ProductEvent>> events = changeFeed.events(resumeFrom, category, ids == null ? null : Set.copyOf(ids))
+                .map(event -> ServerSentEvent.builder(event)
+                        .id(String.valueOf(event.getSequence()))
+                        .event(event.getType().name())
+                        .build());
+        // Comentarios periódicos para que proxies y clientes no cierren la conexión inactiva
+        Flux<ServerSentEvent<ProductEvent>> heartbeats = Flux.interval(changeProperties.getHeartbeat())
+                .map(tick -> ServerSentEvent.<ProductEvent>builder().comment("keep-alive").build());
+        return reactiveMetrics.flux(METRICS_NAME, "changes", Flux.merge(events, heartbeats));
+    }
+}
@@ -0,0 +1,111 @@
+package com.jesus.webflux.controller;
+
+import com.jesus.webflux.metrics.ReactiveMetrics;
+import com.jesus.webflux.model.IdempotencyKeyReusedException;
+import com.jesus.webflux.model.StockLine;
+import com.jesus.webflux.model.StockResult;
+import com.jesus.webflux.service.IdempotencyKeys;
+import com.jesus.webflux.service.ProductService;
+import lombok.AllArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Stock operations that only touch the stock, atomically, instead of overwriting the whole product:
+ * reserve (take out), release (put back) and adjust. Reservations of several products are all or nothing.
+ * <p>
+ * Responds 200 with the new stock of the products, 404 or 409 (not enough stock) with the product that failed.
+ * With an Idempotency-Key header a retried request returns the outcome of the first one.
+ */
+@AllArgsConstructor
+@RestController
+@RequestMapping("/reactive/product")
+public class ProductStockController {
+
+    private static final String METRICS_NAME = "reactive.controller";
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    private final ProductService productService;
+    private final IdempotencyKeys idempotencyKeys;
+    private final ReactiveMetrics reactiveMetrics;
+
+    // curl -X POST "localhost:8084/reactive/product/100/stock/reserve?quantity=2" -H "Idempotency-Key: pedido-42"
+    @PostMapping("/{id}/stock/reserve")
+    public Mono<ResponseEntity<StockResult>> reserveStock(@PathVariable int id,
+                                                          @RequestParam(defaultValue = "1") int quantity,
+                                                          @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        List<StockLine> items = List.of(new StockLine(id, quantity));
+        return respond("stock-reserve", idempotencyKey, items, productService.reserveStock(items));
+    }
+
+    // Reserva de un pedido completo: [{"codProduct":100,"quantity":2},{"codProduct":101,"quantity":1}]
+    @PostMapping("/stock/reserve")
+    public Mono<ResponseEntity<StockResult>> reserveStock(@RequestBody List<StockLine> items,
+                                                          @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        return respond("stock-reserve", idempotencyKey, items, productService.reserveStock(items));
+    }
+
+    @PostMapping("/{id}/stock/release")
+    public Mono<ResponseEntity<StockResult>> releaseStock(@PathVariable int id,
+                                                          @RequestParam(defaultValue = "1") int quantity,
+                                                          @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        List<StockLine> items = List.of(new StockLine(id, quantity));
+        return respond("stock-release", idempotencyKey, items, productService.releaseStock(items));
+    }
+
+    @PostMapping("/stock/release")
+    public Mono<ResponseEntity<StockResult>> releaseStock(@RequestBody List<StockLine> items,
+                                                          @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        return respond("stock-release", idempotencyKey, items, productService.releaseStock(items));
+    }
+
+    // Corrección de inventario: delta positivo o negativo, nunca por debajo de cero
+    @PostMapping("/{id}/stock/adjust")
+    public Mono<ResponseEntity<StockResult>> adjustStock(@PathVariable int id,
+                                                         @RequestParam int delta,
+                                                         @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        return respond("stock-adjust", idempotencyKey, List.of(id, delta), productService.adjustStock(id, delta));
+    }
+
+    private Mono<ResponseEntity<StockResult>> respond(String endpoint, String idempotencyKey, Object request, Mono<StockResult> change) {
+        // La clave solo vale para la misma operación con los mismos datos
+        return reactiveMetrics.mono(METRICS_NAME, endpoint, idempotencyKeys.execute(idempotencyKey, List.of(endpoint, request), change))
+                .map(result -> ResponseEntity.status(status(result)).body(result));
+    }
+
+    private static HttpStatus status(StockResult result) {
+        return switch (result.getStatus()) {
+            case NOT_FOUND -> HttpStatus.NOT_FOUND;
+            case INSUFFICIENT_STOCK -> HttpStatus.CONFLICT;
+            default -> HttpStatus.OK;
+        };
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleIllegalArgument(IllegalArgumentException e) {
+        return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+    }
+
+    // Idempotency-Key reutilizada con otra petición
+    @ExceptionHandler(IdempotencyKeyReusedException.class)
+    public ResponseEntity<String> handleIdempotencyKeyReused(IdempotencyKeyReusedException e) {
+        return new ResponseEntity<>(e.getMessage(), HttpStatus.UNPROCESSABLE_ENTITY);
+    }
+}
@@ -1,15 +1,22 @@
 package com.jesus.webflux.controller;
 
+import com.jesus.webflux.codec.CodecConfiguration;
+import com.jesus.webflux.model.BulkItemResult;
+import com.jesus.webflux.model.CategoryStats;
 import com.jesus.webflux.model.Product;
+import com.jesus.webflux.model.ProductQuery;
+import com.jesus.webflux.metrics.ReactiveMetrics;
 import com.jesus.webflux.service.ProductService;
+import com.jesus.webflux.simulation.LatencySimulator;
 import lombok.AllArgsConstructor;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.time.Duration;
 import java.util.List;
 
 /**
@@ -21,57 +28,148 @@ import java.util.List;
 /**
  * Para que PostMan en las peticiones actue como un cliente reactivo debemos
  * añadir en el header "Accept: text/event-stream"
+ * <p>
+ * Las respuestas se pueden pedir en CBOR o Smile ("Accept: application/cbor" / "application/x-jackson-smile")
+ * y comprimidas con "Accept-Encoding: gzip" o "br".
+ * <p>
+ * La latencia simulada de cada endpoint se configura en latency.simulation.* (perfil "latency").
  */
 @AllArgsConstructor
 @RestController
+@EnableConfigurationProperties(PaginationProperties.class)
 @RequestMapping("/reactive")
 public class ReactiveController {
 
+    private static final String METRICS_NAME = "reactive.controller";
+
     private final ProductService productService;
+    private final LatencySimulator latencySimulator;
+    private final PaginationProperties paginationProperties;
+    private final ReactiveMetrics reactiveMetrics;
 
 
     @GetMapping(value = "/product/{id}")
     public ResponseEntity<Mono<Product>> getProduct(@PathVariable long id) {
-        Mono<Product> productById = productService.getProductById(id).delayElement(Duration.ofSeconds(2)); // Simula una operación asíncrona
+        Mono<Product> productById = mono("product-by-id", productService.getProductById(id));
         return new ResponseEntity<>(productById, HttpStatus.OK); // Simula una operación asíncrona
     }
 
+    // Varios productos en una sola pasada por el almacén: GET /reactive/product?ids=100,105,101 o POST /reactive/product/lookup
+    // con el array [100, 105, 101]. Se devuelven en el orden pedido, omitiendo los que no existen, con una sola latencia simulada
+    @GetMapping(value = "/product", params = "ids")
+    public ResponseEntity<Flux<Product>> getProductsByIds(@RequestParam List<Integer> ids) {
+        return new ResponseEntity<>(lookup(ids), HttpStatus.OK);
+    }
+
+    @PostMapping(value = "/product/lookup", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Flux<Product>> lookupProducts(@RequestBody List<Integer> ids) {
+        return new ResponseEntity<>(lookup(ids), HttpStatus.OK);
+    }
+
     // Create a new product on the list
     @PostMapping(value = "/product/add")
     public ResponseEntity<Mono<Product>> addProduct(@RequestBody Product product) {
-        Mono<Product> addedProduct = productService.addProduct(product).delayElement(Duration.ofSeconds(2)); // Simula una operación asíncrona
+        Mono<Product> addedProduct = mono("product-add", productService.addProduct(product));
         return new ResponseEntity<>(addedProduct, HttpStatus.CREATED); // Simula una operación asíncrona
     }
 
+    // Carga masiva: acepta un array JSON o NDJSON y devuelve el resultado de cada producto según se va escribiendo
+    @PostMapping(value = "/product/bulk",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE},
+            produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public Flux<BulkItemResult> addProducts(@RequestBody Flux<Product> products) {
+        return flux("product-bulk-add", productService.addProducts(products));
+    }
+
+    @PutMapping(value = "/product/bulk",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE},
+            produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    public Flux<BulkItemResult> updateProducts(@RequestBody Flux<Product> products) {
+        return flux("product-bulk-update", productService.updateProducts(products));
+    }
+
     @PutMapping(value = "/product/update")
     public ResponseEntity<Mono<Product>> updateProduct(@RequestBody Product product) {
 
         // if product object is product.getCodProduct() null return bad request
         if (product.getCodProduct() == 0) return new ResponseEntity<>(Mono.empty(), HttpStatus.BAD_REQUEST);
 
-        Mono<Product> addedProduct = productService.addProduct(product).delayElement(Duration.ofSeconds(2)); // Simula una operación asíncrona
+        Mono<Product> addedProduct = mono("product-update", productService.addProduct(product));
         return new ResponseEntity<>(addedProduct, HttpStatus.CREATED); // Simula una operación asíncrona
     }
 
-    @GetMapping("/product/all")
-    public ResponseEntity<Flux<Product>> getProducts() {
-        return new ResponseEntity<>(productService.getAllProducts(), HttpStatus.OK); // Simula una operación asíncrona
+    // Paginado por cursor: la siguiente página se pide con after=<codProduct del último producto recibido>
+    @GetMapping(value = "/product/all", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_CBOR_VALUE, CodecConfiguration.APPLICATION_SMILE_VALUE})
+    public ResponseEntity<Flux<Product>> getProducts(@RequestParam(required = false) Integer after,
+                                                     @RequestParam(required = false) Integer size) {
+        ProductQuery query = ProductQuery.builder().after(after).sort("codProduct").limit(pageSize(size)).build();
+        return new ResponseEntity<>(flux("product-all", productService.searchProducts(query)), HttpStatus.OK); // Simula una operación asíncrona
+    }
+
+    // Con "Accept: application/x-ndjson" o "text/event-stream" se emite todo el catálogo según la demanda del cliente
+    @GetMapping(value = "/product/all", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
+    public Flux<Product> streamProducts(@RequestParam(required = false) Integer after) {
+        ProductQuery query = ProductQuery.builder().after(after).sort("codProduct").build();
+        return flux("product-stream", productService.searchProducts(query))
+                .limitRate(paginationProperties.getStreamPrefetch());
+    }
+
+    // Ejemplo: /reactive/product/search?category=Limpieza&maxPrice=5&sort=-unitPrice&limit=10
+    @GetMapping("/product/search")
+    public ResponseEntity<Flux<Product>> searchProducts(ProductQuery query) {
+        query.setLimit(pageSize(query.getLimit()));
+        return new ResponseEntity<>(flux("product-search", productService.searchProducts(query)), HttpStatus.OK);
+    }
+
+    // Autocompletado sin tildes ni mayúsculas, la última palabra cuenta como prefijo: /reactive/product/autocomplete?q=televi&limit=5
+    @GetMapping("/product/autocomplete")
+    public ResponseEntity<Flux<Product>> autocomplete(@RequestParam("q") String text,
+                                                      @RequestParam(required = false) Integer limit) {
+        int suggestions = limit == null ? paginationProperties.getDefaultSuggestions() : limit;
+        if (suggestions < 1) throw new IllegalArgumentException("limit must be greater than 0");
+        suggestions = Math.min(suggestions, paginationProperties.getMaxSuggestions());
+        return new ResponseEntity<>(flux("product-autocomplete", productService.suggestProducts(text, suggestions)), HttpStatus.OK);
     }
 
     @GetMapping("/product/category/{category}")
-    public ResponseEntity<Flux<Product>> getProductsByCategory(@PathVariable String category) {
-        return new ResponseEntity<>(productService.getProductsByCategory(category).delayElements(Duration.ofSeconds(2)), HttpStatus.OK); // Simulates an asynchronous operation
+    public ResponseEntity<Flux<Product>> getProductsByCategory(@PathVariable String category,
+                                                               @RequestParam(required = false) Integer after,
+                                                               @RequestParam(required = false) Integer size) {
+        ProductQuery query = ProductQuery.builder().category(category).after(after).sort("codProduct").limit(pageSize(size)).build();
+        return new ResponseEntity<>(flux("product-category", productService.searchProducts(query)), HttpStatus.OK); // Simulates an asynchronous operation
     }
 
     @GetMapping("/product/name/{name}")
-    public ResponseEntity<Flux<Product>> getProductsByName(@PathVariable String name) {
-        return new ResponseEntity<>(productService.getProductsByName(name).delayElements(Duration.ofSeconds(2)), HttpStatus.OK); // Simulates an asynchronous operation
+    public ResponseEntity<Flux<Product>> getProductsByName(@PathVariable String name,
+                                                           @RequestParam(required = false) Integer after,
+                                                           @RequestParam(required = false) Integer size) {
+        ProductQuery query = ProductQuery.builder().name(name).after(after).sort("codProduct").limit(pageSize(size)).build();
+        return new ResponseEntity<>(flux("product-name", productService.searchProducts(query)), HttpStatus.OK); // Simulates an asynchronous operation
     }
 
 
     @GetMapping("/product/name/{name}/category/{category}")
-    public ResponseEntity<Flux<Product>> getProductsByNameAndCategory(@PathVariable String name, @PathVariable String category) {
-        return new ResponseEntity<>(productService.getProductsByNameAndCategory(name, category).delayElements(Duration.ofSeconds(2)), HttpStatus.OK); // Simulates an asynchronous operation
+    public ResponseEntity<Flux<Product>> getProductsByNameAndCategory(@PathVariable String name, @PathVariable String category,
+                                                                      @RequestParam(required = false) Integer after,
+                                                                      @RequestParam(required = false) Integer size) {
+        ProductQuery query = ProductQuery.builder().name(name).category(category).after(after).sort("codProduct").limit(pageSize(size)).build();
+        return new ResponseEntity<>(flux("product-name-category", productService.searchProducts(query)), HttpStatus.OK); // Simulates an asynchronous operation
+    }
+
+    // Estadísticas mantenidas al escribir (número de productos, stock, valor del stock y precios), sin recorrer el catálogo
+    @GetMapping("/product/stats")
+    public ResponseEntity<Mono<CategoryStats>> getCatalogueStats() {
+        return new ResponseEntity<>(mono("product-stats", productService.getCatalogueStats()), HttpStatus.OK);
+    }
+
+    @GetMapping("/product/stats/category")
+    public ResponseEntity<Flux<CategoryStats>> getCategoryStats() {
+        return new ResponseEntity<>(flux("product-stats-category", productService.getCategoryStats()), HttpStatus.OK);
+    }
+
+    @GetMapping("/product/stats/category/{category}")
+    public ResponseEntity<Mono<CategoryStats>> getCategoryStats(@PathVariable String category) {
+        return new ResponseEntity<>(mono("product-stats-category", productService.getCategoryStats(category)), HttpStatus.OK);
     }
 
     @GetMapping("/mono/{id}")
@@ -82,23 +180,51 @@ public class ReactiveController {
     @GetMapping("/names")
     public Flux<String> getFluxNames() {
         List<String> names = List.of("Jesús", "María", "José", "Pedro", "Pablo");
-        return Flux.fromIterable(names).delayElements(Duration.ofSeconds(2)); // Simula una operación asíncrona
+        return flux("names", Flux.fromIterable(names)); // Simula una operación asíncrona
     }
 
     @GetMapping("/flux")
     public Flux<Integer> getFlux() {
-        return Flux.range(1, 10).delayElements(Duration.ofMillis(500)); // Simula una operación asíncrona
+        return flux("flux", Flux.range(1, 10)); // Simula una operación asíncrona
     }
 
     @GetMapping("/stream")
     public Flux<Object> getStream() {
-        return Flux.generate(() -> 0, (state, sink) -> {
+        return flux("stream", Flux.generate(() -> 0, (state, sink) -> {
             sink.next("Elemento " + state);
             if (state == 9) {
                 sink.complete();
             }
             return state + 1;
-        }).delayElements(Duration.ofMillis(500));
+        }));
+    }
+
+    // Applies the simulated latency of the endpoint (if any) and records its metrics (reactive.controller.*)
+    private <T> Mono<T> mono(String endpoint, Mono<T> source) {
+        return reactiveMetrics.mono(METRICS_NAME, endpoint, latencySimulator.delay(endpoint, source));
+    }
+
+    private <T> Flux<T> flux(String endpoint, Flux<T> source) {
+        return reactiveMetrics.flux(METRICS_NAME, endpoint, latencySimulator.delayElements(endpoint, source));
+    }
+
+    private Flux<Product> lookup(List<Integer> ids) {
+        if (ids.size() > paginationProperties.getMaxLookupIds()) {
+            throw new IllegalArgumentException("at most " + paginationProperties.getMaxLookupIds() + " ids can be looked up at once");
+        }
+        return reactiveMetrics.flux(METRICS_NAME, "product-lookup",
+                latencySimulator.delaySubscription("product-lookup", productService.getProductsByIds(ids)));
+    }
+
+    private int pageSize(Integer size) {
+        if (size == null) return paginationProperties.getDefaultPageSize();
+        if (size < 1) throw new IllegalArgumentException("size must be greater than 0");
+        return Math.min(size, paginationProperties.getMaxPageSize());
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleIllegalArgument(IllegalArgumentException e) {
+        return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
     }
 
 }
@@ -0,0 +1,40 @@
+package com.jesus.webflux.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import reactor.core.observability.micrometer.Micrometer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Records Reactor sequence metrics through {@link Micrometer#metrics}. For a sequence named "x" it publishes:
+ * <ul>
+ *     <li>x.flow.duration: time from subscription to termination, tagged with status completed / completedEmpty / error / cancelled</li>
+ *     <li>x.onNext.delay: time between elements, so its count is the number of elements emitted</li>
+ *     <li>x.subscribed and x.requested: subscriptions and the demand sent by subscribers</li>
+ * </ul>
+ * Every sequence is tagged with the operation, so one meter family covers a whole class.
+ */
+@Component
+public class ReactiveMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+    public ReactiveMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public <T> Flux<T> flux(String name, String operation, Flux<T> source) {
+        return source.name(name).tag("operation", operation).tap(Micrometer.metrics(meterRegistry));
+    }
+
+    public <T> Mono<T> mono(String name, String operation, Mono<T> source) {
+        return source.name(name).tag("operation", operation).tap(Micrometer.metrics(meterRegistry));
+    }
+}
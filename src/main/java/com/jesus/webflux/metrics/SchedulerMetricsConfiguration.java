@@ -0,0 +1,186 @@
+package com.jesus.webflux.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import io.micrometer.core.instrument.search.Search;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.Scannable;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Publishes executor metrics (executor.queued, executor.active, executor.completed...) for every
+ * executor backing a Reactor scheduler created from now on, so scheduler queue depths can be watched.
+ * Each executor is tagged with its scheduler name and a worker number, as parallel schedulers have one per worker.
+ * <p>
+ * Bounded-elastic workers come and go: the meters of an executor are removed when it shuts down, and its
+ * number is handed to the next executor of the same scheduler, so the meters stay bounded by the live workers.
+ */
+@Configuration(proxyBeanMethods = false)
+public class SchedulerMetricsConfiguration implements DisposableBean {
+
+    private static final String DECORATOR_KEY = SchedulerMetricsConfiguration.class.getName();
+
+    private final MeterRegistry meterRegistry;
+    // Worker numbers in use, per scheduler name. Guarded by this
+    private final Map<String, BitSet> workers = new HashMap<>();
+
+    public SchedulerMetricsConfiguration(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        Schedulers.addExecutorServiceDecorator(DECORATOR_KEY, (scheduler, executor) -> {
+            String schedulerName = Scannable.from(scheduler).scanOrDefault(Scannable.Attr.NAME, scheduler.toString());
+            int worker = acquire(schedulerName);
+            String executorName = schedulerName + "-" + worker;
+            ScheduledExecutorService monitored = ExecutorServiceMetrics.monitor(meterRegistry, executor, executorName, "reactor",
+                    List.of(Tag.of("scheduler", schedulerName)));
+            return new ShutdownAwareExecutor(monitored, () -> release(schedulerName, worker, executorName));
+        });
+    }
+
+    @Override
+    public void destroy() {
+        Schedulers.removeExecutorServiceDecorator(DECORATOR_KEY);
+    }
+
+    private synchronized int acquire(String schedulerName) {
+        BitSet inUse = workers.computeIfAbsent(schedulerName, name -> new BitSet());
+        int worker = inUse.nextClearBit(1);
+        inUse.set(worker);
+        return worker;
+    }
+
+    private void release(String schedulerName, int worker, String executorName) {
+        Search.in(meterRegistry).tags("name", executorName, "scheduler", schedulerName).meters().forEach(meterRegistry::remove);
+        synchronized (this) {
+            BitSet inUse = workers.get(schedulerName);
+            inUse.clear(worker);
+            if (inUse.isEmpty()) workers.remove(schedulerName);
+        }
+    }
+
+    /**
+     * Runs a callback the first time the executor is shut down, everything else goes to the delegate.
+     */
+    private static final class ShutdownAwareExecutor implements ScheduledExecutorService {
+
+        private final ScheduledExecutorService delegate;
+        private final Runnable onShutdown;
+        private final AtomicBoolean shutDown = new AtomicBoolean();
+
+        ShutdownAwareExecutor(ScheduledExecutorService delegate, Runnable onShutdown) {
+            this.delegate = delegate;
+            this.onShutdown = onShutdown;
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+            if (shutDown.compareAndSet(false, true)) onShutdown.run();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            List<Runnable> pending = delegate.shutdownNow();
+            if (shutDown.compareAndSet(false, true)) onShutdown.run();
+            return pending;
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            delegate.execute(command);
+        }
+
+        @Override
+        public <T> Future<T> submit(Callable<T> task) {
+            return delegate.submit(task);
+        }
+
+        @Override
+        public <T> Future<T> submit(Runnable task, T result) {
+            return delegate.submit(task, result);
+        }
+
+        @Override
+        public Future<?> submit(Runnable task) {
+            return delegate.submit(task);
+        }
+
+        @Override
+        public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
+            return delegate.invokeAll(tasks);
+        }
+
+        @Override
+        public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
+                throws InterruptedException {
+            return delegate.invokeAll(tasks, timeout, unit);
+        }
+
+        @Override
+        public <T> T invokeAny(Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
+            return delegate.invokeAny(tasks);
+        }
+
+        @Override
+        public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            return delegate.invokeAny(tasks, timeout, unit);
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            return delegate.schedule(command, delay, unit);
+        }
+
+        @Override
+        public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+            return delegate.schedule(callable, delay, unit);
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+            return delegate.scheduleAtFixedRate(command, initialDelay, period, unit);
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+            return delegate.scheduleWithFixedDelay(command, initialDelay, delay, unit);
+        }
+    }
+}
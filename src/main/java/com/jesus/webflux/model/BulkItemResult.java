@@ -0,0 +1,35 @@
+package com.jesus.webflux.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Outcome of one product of a bulk request. index is the position of the product in the request.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class BulkItemResult {
+
+    public enum Status {CREATED, UPDATED, NOT_FOUND, FAILED}
+
+    private long index;
+    private Integer codProduct;
+    private Status status;
+    private String error;
+
+    public static BulkItemResult of(long index, Integer codProduct, Status status) {
+        return new BulkItemResult(index, codProduct, status, null);
+    }
+
+    public static BulkItemResult failed(long index, Integer codProduct, Throwable error) {
+        return new BulkItemResult(index, codProduct, Status.FAILED, error.getMessage());
+    }
+}
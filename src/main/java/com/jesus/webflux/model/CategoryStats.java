@@ -0,0 +1,48 @@
+package com.jesus.webflux.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Statistics of the products of one category (null for the products without one, or for the whole catalogue):
+ * how many there are, their total stock, the value of that stock (unitPrice × stock) and their unit prices.
+ * The prices are 0 when count is 0.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class CategoryStats {
+
+    private String category;
+    private long count;
+    private long totalStock;
+    private double totalStockValue;
+    private double minPrice;
+    private double maxPrice;
+    private double avgPrice;
+
+    public static CategoryStats empty(String category) {
+        return new CategoryStats(category, 0, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Statistics of the products of both, under the given category (e.g. null to add categories up).
+     */
+    public static CategoryStats combine(String category, CategoryStats first, CategoryStats second) {
+        if (first.count == 0) return new CategoryStats(category, second.count, second.totalStock, second.totalStockValue,
+                second.minPrice, second.maxPrice, second.avgPrice);
+        if (second.count == 0) return combine(category, second, first);
+        long count = first.count + second.count;
+        return new CategoryStats(category, count, first.totalStock + second.totalStock,
+                first.totalStockValue + second.totalStockValue,
+                Math.min(first.minPrice, second.minPrice), Math.max(first.maxPrice, second.maxPrice),
+                (first.avgPrice * first.count + second.avgPrice * second.count) / count);
+    }
+}
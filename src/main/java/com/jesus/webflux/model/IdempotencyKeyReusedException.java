@@ -0,0 +1,19 @@
+package com.jesus.webflux.model;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Thrown when an Idempotency-Key comes back with a request other than the one it was first used for.
+ * The request is not run.
+ */
+public class IdempotencyKeyReusedException extends RuntimeException {
+
+    public IdempotencyKeyReusedException(String key) {
+        // A client error, not a bug: no stack trace
+        super("Idempotency-Key " + key + " was already used for a different request", null, false, false);
+    }
+}
@@ -0,0 +1,27 @@
+package com.jesus.webflux.model;
+
+import lombok.Getter;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Thrown by the stores when taking units out would leave the stock of a product below zero.
+ * The stock is left unchanged.
+ */
+@Getter
+public class InsufficientStockException extends RuntimeException {
+
+    private final int codProduct;
+    private final int available;
+
+    public InsufficientStockException(int codProduct, int available, int requested) {
+        // Expected outcome under contention, not a bug: no stack trace
+        super("Product " + codProduct + " has " + available + " units in stock, " + requested + " requested", null, false, false);
+        this.codProduct = codProduct;
+        this.available = available;
+    }
+}
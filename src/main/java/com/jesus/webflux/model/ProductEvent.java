@@ -0,0 +1,32 @@
+package com.jesus.webflux.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * One change of the catalogue. Sequence numbers are consecutive, so a gap tells a subscriber it missed events.
+ * product is the state after the change (the last state for DELETED). RESYNC carries no product: the events
+ * asked for are no longer kept and the client has to reload the products it follows.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class ProductEvent {
+
+    public enum Type {ADDED, UPDATED, DELETED, RESYNC}
+
+    private long sequence;
+    private Type type;
+    private Integer codProduct;
+    private Product product;
+    private Instant timestamp;
+}
@@ -0,0 +1,38 @@
+package com.jesus.webflux.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Search criteria for products. Every criterion is optional; null means "no restriction".
+ * <p>
+ * sort is one of codProduct, name, unitPrice or stock, prefixed with '-' for descending order.
+ * Without sort, results come in the natural order of the index chosen to answer the query.
+ * <p>
+ * after is a keyset cursor: only products with a greater codProduct are returned, in codProduct order.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder(toBuilder = true)
+@Data
+public class ProductQuery {
+
+    private String name;
+    private String category;
+    private Double minPrice;
+    private Double maxPrice;
+    private Integer minStock;
+    private Integer maxStock;
+    private String sort;
+    private Integer after;
+    private Integer offset;
+    private Integer limit;
+}
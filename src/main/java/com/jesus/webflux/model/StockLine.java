@@ -0,0 +1,23 @@
+package com.jesus.webflux.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Units of one product to reserve or release.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class StockLine {
+
+    private Integer codProduct;
+    private int quantity;
+}
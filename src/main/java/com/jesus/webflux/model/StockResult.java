@@ -0,0 +1,47 @@
+package com.jesus.webflux.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Outcome of a stock operation. Operations are all or nothing: on NOT_FOUND or INSUFFICIENT_STOCK no
+ * stock was changed, codProduct is the product that failed and available its stock at that moment.
+ * Otherwise products holds every changed product with its new stock.
+ */
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+public class StockResult {
+
+    public enum Status {RESERVED, RELEASED, ADJUSTED, NOT_FOUND, INSUFFICIENT_STOCK}
+
+    private Status status;
+    private Integer codProduct;
+    private Integer available;
+    private List<Product> products;
+
+    public static StockResult of(Status status, List<Product> products) {
+        return new StockResult(status, null, null, products);
+    }
+
+    public static StockResult notFound(int codProduct) {
+        return new StockResult(Status.NOT_FOUND, codProduct, null, List.of());
+    }
+
+    public static StockResult insufficientStock(int codProduct, int available) {
+        return new StockResult(Status.INSUFFICIENT_STOCK, codProduct, available, List.of());
+    }
+
+    public boolean succeeded() {
+        return status != Status.NOT_FOUND && status != Status.INSUFFICIENT_STOCK;
+    }
+}
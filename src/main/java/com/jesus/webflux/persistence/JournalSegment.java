@@ -0,0 +1,155 @@
+package com.jesus.webflux.persistence;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * One journal file, mapped whole into memory: appending a record is a copy into the page cache, which already
+ * survives a crash of the process, and {@link #force} makes it survive a crash of the machine.
+ * <p>
+ * Records are framed as length(4) crc32c(4) payload. The file is created at its full size and filled with zeros,
+ * so a zero length marks the end; a frame whose length or checksum does not add up is a write torn by a crash.
+ * Not thread-safe: the journal serialises appends and forces.
+ */
+final class JournalSegment implements Closeable {
+
+    static final int FRAME_HEADER = 8;
+
+    private final long sequence;
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private int position;
+    private int forced;
+
+    private JournalSegment(long sequence, Path path, FileChannel channel, MappedByteBuffer buffer, int position) {
+        this.sequence = sequence;
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.position = position;
+        this.forced = position;
+    }
+
+    static Path path(Path directory, long sequence) {
+        return directory.resolve(String.format("journal-%020d.log", sequence));
+    }
+
+    /**
+     * Opens (creating it if needed) the segment for appending from position on, clearing whatever a torn write left after it.
+     */
+    static JournalSegment open(Path directory, long sequence, int size, int position) throws IOException {
+        Path path = path(directory, sequence);
+        boolean existed = Files.exists(path);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            // Mapping past the end grows the file (sparse, blocks are allocated as they are written)
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (existed) clearTail(buffer, position);
+            // A new file: its directory entry has to be durable too, or a crash could lose the whole segment
+            else ProductSnapshot.syncDirectory(directory);
+            return new JournalSegment(sequence, path, channel, buffer, position);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Zeroes everything after position. A torn frame can hold zeros anywhere (its length starts with one for any record
+     * under 16 MB), so the whole tail is cleared, not just up to the first zero. Otherwise the frame would survive behind
+     * the records appended next, and the segment could no longer be replayed once it is not the last one.
+     */
+    private static void clearTail(MappedByteBuffer buffer, int position) {
+        boolean cleared = false;
+        for (int i = position; i < buffer.capacity(); i++) {
+            if (buffer.get(i) != 0) {
+                buffer.put(i, (byte) 0);
+                cleared = true;
+            }
+        }
+        // Durable before any record is appended over it
+        if (cleared) buffer.force(position, buffer.capacity() - position);
+    }
+
+    long sequence() {
+        return sequence;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    int position() {
+        return position;
+    }
+
+    /**
+     * Appends the record, or returns false if there is no room left for it.
+     */
+    boolean append(byte[] payload) {
+        int end = position + FRAME_HEADER + payload.length;
+        if (end > buffer.capacity()) return false;
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        buffer.put(position + FRAME_HEADER, payload);
+        buffer.putInt(position + 4, (int) crc.getValue());
+        // Length last: until it is written the frame still reads as the end of the journal
+        buffer.putInt(position, payload.length);
+        position = end;
+        return true;
+    }
+
+    /**
+     * Flushes the records appended up to end to the device.
+     */
+    void force(int end) {
+        if (end <= forced) return;
+        buffer.force(forced, end - forced);
+        forced = end;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Reads the records of a segment file in order.
+     *
+     * @return where the valid records end, negative (minus that offset, minus one) if they end in a torn frame
+     */
+    static long replay(Path path, Consumer<ByteBuffer> records) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int position = 0;
+            CRC32C crc = new CRC32C();
+            while (buffer.limit() - position >= FRAME_HEADER) {
+                int length = buffer.getInt(position);
+                if (length == 0) return position;
+                if (length < 0 || length > buffer.limit() - position - FRAME_HEADER) return -position - 1L;
+                ByteBuffer payload = buffer.slice(position + FRAME_HEADER, length);
+                crc.reset();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != buffer.getInt(position + 4)) return -position - 1L;
+                records.accept(payload);
+                position += FRAME_HEADER + length;
+            }
+            return position;
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package com.jesus.webflux.persistence;
+
+import com.jesus.webflux.model.Product;
+import com.jesus.webflux.store.MutationLog;
+import com.jesus.webflux.store.ProductStore;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Persists a {@link ProductStore} as an append-only journal of memory-mapped segments plus periodic snapshots.
+ * <p>
+ * Appending is a copy into the mapped segment under a short lock. A flusher thread fsyncs what has been
+ * appended: as soon as a write is waiting for {@link #durable()} (every write waiting meanwhile shares the
+ * next fsync, i.e. group commit) and at least every flush-interval. The waiting writes resume on the common pool.
+ * <p>
+ * Snapshots are taken in the background every snapshot-interval and whenever the journal has grown by
+ * compaction-threshold since the last one; the segments and snapshots it replaces are deleted afterwards.
+ * The store is walked while it keeps changing, which is fine because records hold whole products: replaying
+ * the journal from the segment that was current when the walk started ends in the right state whatever
+ * the snapshot caught.
+ */
+@Slf4j
+final class ProductJournal implements MutationLog, Closeable {
+
+    private static final Pattern SEGMENT = Pattern.compile("journal-(\\d{20})\\.log");
+    private static final Pattern SNAPSHOT = Pattern.compile("snapshot-(\\d{20})\\.bin");
+    private static final Pattern UNFINISHED_SNAPSHOT = Pattern.compile("snapshot-(\\d{20})\\.bin\\.tmp");
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean syncWrites;
+    private final long flushIntervalNanos;
+    private final ProductPersistenceProperties properties;
+    private final Timer syncTimer;
+    private final DistributionSummary syncBatch;
+    private final Timer snapshotTimer;
+
+    // Guarded by this
+    private JournalSegment current;
+    private final List<JournalSegment> rotated = new ArrayList<>();
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+    private long appended;
+    private long bytesSinceSnapshot;
+    private boolean changedSinceSnapshot;
+    private boolean closed;
+
+    private volatile long durable;
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private ProductStore store;
+    private Thread flusher;
+    private ScheduledExecutorService snapshots;
+
+    ProductJournal(ProductPersistenceProperties properties, MeterRegistry meterRegistry) {
+        if (properties.getSegmentSize().toBytes() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("product.persistence.segment-size has to be under 2GB");
+        }
+        this.properties = properties;
+        this.directory = properties.getDirectory();
+        this.segmentSize = (int) properties.getSegmentSize().toBytes();
+        this.syncWrites = properties.isSyncWrites();
+        this.flushIntervalNanos = properties.getFlushInterval().toNanos();
+        this.syncTimer = Timer.builder("product.journal.sync")
+                .description("Time taken by each fsync of the product journal")
+                .register(meterRegistry);
+        this.syncBatch = DistributionSummary.builder("product.journal.sync.batch")
+                .description("Changes made durable by each fsync of the product journal")
+                .register(meterRegistry);
+        this.snapshotTimer = Timer.builder("product.journal.snapshot")
+                .description("Time taken to write a snapshot of the catalogue")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Loads the store from the latest snapshot and the journal written after it, then logs every change of the store.
+     */
+    synchronized void recover(ProductStore store) throws IOException {
+        long start = System.nanoTime();
+        Files.createDirectories(directory);
+        TreeMap<Long, Path> snapshotFiles = list(SNAPSHOT);
+        long firstSegment = snapshotFiles.isEmpty() ? 0 : ProductSnapshot.load(snapshotFiles.lastEntry().getValue(), store);
+        int fromSnapshot = store.size();
+
+        TreeMap<Long, Path> segments = new TreeMap<>(list(SEGMENT).tailMap(firstSegment, true));
+        long expected = firstSegment;
+        long records = 0;
+        long sequence = firstSegment;
+        int replayed = 0;
+        int position = 0;
+        for (var segment : segments.entrySet()) {
+            if (segment.getKey() != expected++) throw new IllegalStateException("Product journal segment missing before " + segment.getValue());
+            long[] count = new long[1];
+            long end = JournalSegment.replay(segment.getValue(), record -> {
+                ProductRecords.apply(record, store);
+                count[0]++;
+            });
+            records += count[0];
+            replayed++;
+            sequence = segment.getKey();
+            position = (int) (end < 0 ? -end - 1 : end);
+            if (end < 0) {
+                // A torn write is the last thing written before a crash: replay stops there, and what follows it goes too
+                Collection<Path> later = segments.tailMap(segment.getKey(), false).values();
+                log.warn("Product journal {} ends in a torn write at {}, discarding it and the {} segments after it",
+                        segment.getValue(), position, later.size());
+                for (Path path : later) Files.deleteIfExists(path);
+                break;
+            }
+        }
+        current = JournalSegment.open(directory, sequence, Math.max(segmentSize, position), position);
+        for (Path unfinished : list(UNFINISHED_SNAPSHOT).values()) Files.deleteIfExists(unfinished);
+
+        this.store = store;
+        store.attach(this);
+        flusher = new Thread(this::flushLoop, "product-journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+        snapshots = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "product-journal-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.getSnapshotInterval().toMillis();
+        snapshots.scheduleWithFixedDelay(this::periodicSnapshot, interval, interval, TimeUnit.MILLISECONDS);
+        log.info("Restored {} products ({} from the snapshot, {} journal records in {} segments) from {} in {} ms",
+                store.size(), fromSnapshot, records, replayed, directory, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    @Override
+    public void written(Product product) {
+        append(ProductRecords.put(product));
+    }
+
+    @Override
+    public void removed(int codProduct) {
+        append(ProductRecords.remove(codProduct));
+    }
+
+    private synchronized void append(byte[] record) {
+        if (closed) throw new IllegalStateException("The product journal is closed");
+        if (!current.append(record)) {
+            rotate();
+            if (!current.append(record)) throw new IllegalArgumentException("Product record larger than a journal segment");
+        }
+        appended++;
+        changedSinceSnapshot = true;
+        bytesSinceSnapshot += JournalSegment.FRAME_HEADER + record.length;
+        if (bytesSinceSnapshot >= properties.getCompactionThreshold().toBytes() && compacting.compareAndSet(false, true)) {
+            snapshots.execute(() -> {
+                try {
+                    snapshot();
+                } finally {
+                    compacting.set(false);
+                }
+            });
+        }
+    }
+
+    // Moves on to a new segment, the flusher fsyncs and closes the full one
+    private void rotate() {
+        rotated.add(current);
+        try {
+            current = JournalSegment.open(directory, current.sequence() + 1, segmentSize, 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized CompletableFuture<Void> durable() {
+        if (!syncWrites || appended <= durable) return CompletableFuture.completedFuture(null);
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        waiters.add(new Waiter(appended, future));
+        notifyAll();
+        return future;
+    }
+
+    private void flushLoop() {
+        while (true) {
+            synchronized (this) {
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                long remaining;
+                while (!closed && waiters.isEmpty() && (remaining = deadline - System.nanoTime()) > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (closed) return;
+            }
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                log.error("Product journal fsync failed", e);
+            }
+        }
+    }
+
+    /**
+     * Fsyncs everything appended so far and completes the writes waiting for it.
+     */
+    void flush() {
+        List<JournalSegment> full;
+        JournalSegment segment;
+        int end;
+        long target;
+        synchronized (this) {
+            full = new ArrayList<>(rotated);
+            rotated.clear();
+            segment = current;
+            end = current.position();
+            target = appended;
+        }
+        long start = System.nanoTime();
+        List<Waiter> done = new ArrayList<>();
+        try {
+            for (JournalSegment journalSegment : full) {
+                journalSegment.force(journalSegment.position());
+                journalSegment.close();
+            }
+            segment.force(end);
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                done.addAll(waiters);
+                waiters.clear();
+            }
+            done.forEach(waiter -> CompletableFuture.runAsync(() -> waiter.future.completeExceptionally(e)));
+            throw e instanceof IOException io ? new UncheckedIOException(io) : (RuntimeException) e;
+        }
+        if (target > durable) {
+            syncTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            syncBatch.record(target - durable);
+        }
+        synchronized (this) {
+            durable = Math.max(durable, target);
+            while (!waiters.isEmpty() && waiters.peekFirst().position <= durable) done.add(waiters.pollFirst());
+        }
+        // Completing resumes the waiting writes: on the common pool, so they neither hold up the next fsync nor queue
+        // up behind each other on the single flusher thread
+        done.forEach(waiter -> waiter.future.completeAsync(() -> null));
+    }
+
+    private void periodicSnapshot() {
+        boolean changed;
+        synchronized (this) {
+            changed = changedSinceSnapshot;
+        }
+        if (!changed) return;
+        try {
+            snapshot();
+        } catch (RuntimeException e) {
+            log.error("Product snapshot failed", e);
+        }
+    }
+
+    /**
+     * Writes a snapshot of the store and deletes the segments and snapshots it makes unnecessary.
+     */
+    void snapshot() {
+        long firstSegment;
+        synchronized (this) {
+            // The current segment stays: writes logged in it may not have reached the store when it is walked
+            firstSegment = current.sequence();
+            rotate();
+            bytesSinceSnapshot = 0;
+            changedSinceSnapshot = false;
+        }
+        long start = System.nanoTime();
+        try {
+            int count = ProductSnapshot.write(directory, firstSegment, store.lastId(), store.findAll().iterator());
+            snapshotTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            log.info("Product snapshot {} written with {} products in {} ms", ProductSnapshot.path(directory, firstSegment),
+                    count, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            for (Path obsolete : list(SEGMENT).headMap(firstSegment).values()) Files.deleteIfExists(obsolete);
+            for (Path obsolete : list(SNAPSHOT).headMap(firstSegment).values()) Files.deleteIfExists(obsolete);
+        } catch (IOException e) {
+            synchronized (this) {
+                changedSinceSnapshot = true;
+            }
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private TreeMap<Long, Path> list(Pattern pattern) throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                Matcher matcher = pattern.matcher(entry.getFileName().toString());
+                if (matcher.matches()) files.put(Long.parseLong(matcher.group(1)), entry);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Takes a last snapshot, so the next start does not replay the journal, and fsyncs whatever is left.
+     */
+    @Override
+    public void close() throws IOException {
+        if (snapshots == null) return;
+        snapshots.shutdownNow();
+        try {
+            snapshots.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        boolean changed;
+        synchronized (this) {
+            changed = changedSinceSnapshot;
+        }
+        if (changed) {
+            try {
+                snapshot();
+            } catch (RuntimeException e) {
+                log.error("Product snapshot on shutdown failed, the journal will be replayed on the next start", e);
+            }
+        }
+        synchronized (this) {
+            // From here on changes fail instead of being lost
+            closed = true;
+            notifyAll();
+        }
+        try {
+            flusher.join(TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos) + 1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        current.close();
+    }
+
+    private record Waiter(long position, CompletableFuture<Void> future) {
+    }
+}
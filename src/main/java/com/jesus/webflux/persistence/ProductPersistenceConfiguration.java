@@ -0,0 +1,54 @@
+package com.jesus.webflux.persistence;
+
+import com.jesus.webflux.store.ProductStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.BeanInitializationException;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Persistence of the in-memory backend (product.persistence.enabled=true). The {@link ProductStore} is restored
+ * from the journal as soon as it is created, before any service seeds or reads it, and logs to it from then on.
+ * The columnar and r2dbc backends are not affected.
+ */
+@Configuration(proxyBeanMethods = false)
+@EnableConfigurationProperties(ProductPersistenceProperties.class)
+@ConditionalOnProperty(prefix = "product.persistence", name = "enabled", havingValue = "true")
+public class ProductPersistenceConfiguration {
+
+    // Closed after the web server has stopped, so the last snapshot has every change
+    @Bean(destroyMethod = "close")
+    ProductJournal productJournal(ProductPersistenceProperties properties, MeterRegistry meterRegistry) {
+        return new ProductJournal(properties, meterRegistry);
+    }
+
+    // Static: post processors are created before the regular beans, the journal is looked up lazily
+    @Bean
+    @ConditionalOnProperty(name = "product.backend", havingValue = "memory", matchIfMissing = true)
+    static BeanPostProcessor productStoreRecovery(ObjectProvider<ProductJournal> journal) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof ProductStore store)) return bean;
+                try {
+                    journal.getObject().recover(store);
+                } catch (IOException e) {
+                    throw new BeanInitializationException("Could not restore the products from the journal", e);
+                }
+                return store;
+            }
+        };
+    }
+}
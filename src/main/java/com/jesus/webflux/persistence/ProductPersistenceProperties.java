@@ -0,0 +1,40 @@
+package com.jesus.webflux.persistence;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Journal and snapshot settings of the in-memory backend, bound from product.persistence.*.
+ */
+@Data
+@ConfigurationProperties(prefix = "product.persistence")
+public class ProductPersistenceProperties {
+
+    private boolean enabled = false;
+
+    // Where the journal segments and snapshots are kept
+    private Path directory = Path.of("data", "products");
+
+    // Size of each memory-mapped journal file
+    private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+    // Writes complete once fsynced (group commit); otherwise right away, fsynced every flush-interval
+    private boolean syncWrites = true;
+
+    // Longest time a change stays in the page cache only
+    private Duration flushInterval = Duration.ofMillis(200);
+
+    // A snapshot is taken this often if anything changed, and whenever the journal grows past compaction-threshold
+    private Duration snapshotInterval = Duration.ofMinutes(10);
+    private DataSize compactionThreshold = DataSize.ofMegabytes(256);
+}
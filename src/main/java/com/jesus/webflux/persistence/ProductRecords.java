@@ -0,0 +1,95 @@
+package com.jesus.webflux.persistence;
+
+import com.jesus.webflux.model.Product;
+import com.jesus.webflux.store.ProductStore;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Binary form of the journal and snapshot records. A PUT carries the whole product rather than what changed,
+ * so applying a record twice, or an older version before a newer one, always ends in the newest version:
+ * recovery can replay the journal on top of a snapshot taken while it was being written.
+ * <pre>
+ * PUT:    type(1) codProduct(4) unitPrice(8) stock(4) name(4 + n) category(4 + n)   strings as UTF-8, length -1 for null
+ * REMOVE: type(1) codProduct(4)
+ * </pre>
+ */
+final class ProductRecords {
+
+    static final byte PUT = 1;
+    static final byte REMOVE = 2;
+
+    private ProductRecords() {
+    }
+
+    static byte[] put(Product product) {
+        byte[] name = utf8(product.getName());
+        byte[] category = utf8(product.getCategory());
+        ByteBuffer record = ByteBuffer.allocate(1 + 4 + 8 + 4 + length(name) + length(category))
+                .put(PUT)
+                .putInt(product.getCodProduct())
+                .putDouble(product.getUnitPrice())
+                .putInt(product.getStock());
+        putString(record, name);
+        putString(record, category);
+        return record.array();
+    }
+
+    static byte[] remove(int codProduct) {
+        return ByteBuffer.allocate(1 + 4).put(REMOVE).putInt(codProduct).array();
+    }
+
+    /**
+     * Applies the record (from its position to its limit) to the store.
+     */
+    static void apply(ByteBuffer record, ProductStore store) {
+        byte type = record.get();
+        switch (type) {
+            case PUT -> store.put(product(record));
+            case REMOVE -> store.remove(record.getInt());
+            default -> throw new IllegalStateException("Unknown record type " + type);
+        }
+    }
+
+    // Reads a PUT record after its type
+    static Product product(ByteBuffer record) {
+        int codProduct = record.getInt();
+        double unitPrice = record.getDouble();
+        int stock = record.getInt();
+        String name = getString(record);
+        String category = getString(record);
+        return new Product(codProduct, name, category, unitPrice, stock);
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] value) {
+        return 4 + (value == null ? 0 : value.length);
+    }
+
+    private static void putString(ByteBuffer record, byte[] value) {
+        if (value == null) {
+            record.putInt(-1);
+            return;
+        }
+        record.putInt(value.length).put(value);
+    }
+
+    private static String getString(ByteBuffer record) {
+        int length = record.getInt();
+        if (length < 0) return null;
+        // Records are read from mapped (direct) buffers, which have no array to decode in place
+        byte[] value = new byte[length];
+        record.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
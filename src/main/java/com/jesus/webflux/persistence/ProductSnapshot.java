@@ -0,0 +1,148 @@
+package com.jesus.webflux.persistence;
+
+import com.jesus.webflux.model.Product;
+import com.jesus.webflux.store.ProductStore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Compact image of the whole catalogue, the starting point of recovery. A snapshot names the first journal
+ * segment written after it was started; recovery loads it and replays that segment and the following ones.
+ * <pre>
+ * magic(4) version(4) firstSegment(8) lastId(4) { length(4) PUT record }* count(4) crc32c(4)
+ * </pre>
+ * It is written to a temporary file and renamed into place once complete and fsynced, so a snapshot file
+ * is either whole or missing.
+ */
+final class ProductSnapshot {
+
+    private static final int MAGIC = 0x50534E50;
+    private static final int VERSION = 1;
+    private static final int HEADER = 4 + 4 + 8 + 4;
+    private static final int TRAILER = 4 + 4;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private ProductSnapshot() {
+    }
+
+    static Path path(Path directory, long firstSegment) {
+        return directory.resolve(String.format("snapshot-%020d.bin", firstSegment));
+    }
+
+    /**
+     * Writes the products as they are while they are walked (changes made meanwhile may or may not be in it,
+     * the journal from firstSegment on has them).
+     *
+     * @return the number of products written
+     */
+    static int write(Path directory, long firstSegment, int lastId, Iterator<Product> products) throws IOException {
+        Path target = path(directory, firstSegment);
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        CRC32C crc = new CRC32C();
+        int count = 0;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(firstSegment).putInt(lastId);
+            while (products.hasNext()) {
+                byte[] record = ProductRecords.put(products.next());
+                if (buffer.remaining() < 4 + record.length) drain(channel, buffer, crc);
+                if (buffer.remaining() < 4 + record.length) {
+                    // Larger than the whole buffer: straight to the file
+                    ByteBuffer large = ByteBuffer.allocate(4 + record.length).putInt(record.length).put(record).flip();
+                    crc.update(large.duplicate());
+                    while (large.hasRemaining()) channel.write(large);
+                } else {
+                    buffer.putInt(record.length).put(record);
+                }
+                count++;
+            }
+            if (buffer.remaining() < TRAILER) drain(channel, buffer, crc);
+            buffer.putInt(count);
+            crc.update(buffer.duplicate().flip());
+            buffer.putInt((int) crc.getValue());
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory(directory);
+        return count;
+    }
+
+    // Checksums and writes out what the buffer holds
+    private static void drain(FileChannel channel, ByteBuffer buffer, CRC32C crc) throws IOException {
+        buffer.flip();
+        crc.update(buffer.duplicate());
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Loads the snapshot into the store, which has to be empty.
+     *
+     * @return the first journal segment to replay on top of it
+     */
+    static long load(Path path, ProductStore store) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER + TRAILER || size > Integer.MAX_VALUE) throw corrupt(path);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int end = (int) size - TRAILER;
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.slice(0, end + 4));
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || (int) crc.getValue() != buffer.getInt(end + 4)) {
+                throw corrupt(path);
+            }
+            long firstSegment = buffer.getLong(8);
+            store.advanceLastId(buffer.getInt(16));
+            int count = buffer.getInt(end);
+            List<Product> products = new ArrayList<>(count);
+            int position = HEADER;
+            for (int i = 0; i < count; i++) {
+                int length = buffer.getInt(position);
+                ByteBuffer record = buffer.slice(position + 4, length);
+                if (record.get() != ProductRecords.PUT) throw corrupt(path);
+                products.add(ProductRecords.product(record));
+                position += 4 + length;
+            }
+            if (position != end) throw corrupt(path);
+            // Written in codProduct order: the store builds its indexes once for the whole catalogue
+            store.load(products);
+            return firstSegment;
+        }
+    }
+
+    private static IllegalStateException corrupt(Path path) {
+        return new IllegalStateException("Corrupt product snapshot " + path);
+    }
+
+    // Makes the rename itself durable
+    static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not supported everywhere (e.g. Windows); the rename is still atomic, just not fsynced yet
+        }
+    }
+}
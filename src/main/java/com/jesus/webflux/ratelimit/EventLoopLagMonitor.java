@@ -0,0 +1,162 @@
+package com.jesus.webflux.ratelimit;
+
+import com.jesus.webflux.server.NettyTuningProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.reactive.context.ReactiveWebServerInitializedEvent;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.client.ReactorResourceFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Measures how long a task waits to run on the server event loops: every lagProbeInterval a no-op task is
+ * queued on each loop and the time until it runs is its lag. A probe that has not run yet counts for the
+ * time it has been waiting, so a loop stuck for good shows a growing lag instead of its last value.
+ * <p>
+ * The lag of the service is the lowest lag of the worst loop over the last sheddingWindow (as CoDel does
+ * with queue delays): a GC pause or a single slow request lasts one probe, while only a sustained backlog keeps
+ * every probe of the window late. Published as rate.limit.event.loop.lag, the last probe as ...lag.last.
+ * <p>
+ * Probing starts once the web server is listening, on the loops it runs on, and stops before the server does.
+ * A context without a server (tests, batch runs) never probes, and so never creates server loops of its own.
+ */
+@Component
+@ConditionalOnProperty(prefix = "rate-limit", name = "enabled", havingValue = "true", matchIfMissing = true)
+@EnableConfigurationProperties(RateLimitProperties.class)
+public class EventLoopLagMonitor implements SmartLifecycle {
+
+    private final ReactorResourceFactory resourceFactory;
+    private final boolean preferNative;
+    private final Duration probeInterval;
+    private final Map<EventExecutor, LoopProbe> loops = new ConcurrentHashMap<>();
+    // Guarded by this
+    private Disposable probes;
+    private boolean running;
+    // Worst lag of each probe within the window, as a ring
+    private final long[] window;
+    private int next;
+    private volatile long lastNanos;
+    private volatile long lagNanos;
+
+    public EventLoopLagMonitor(ReactorResourceFactory resourceFactory, NettyTuningProperties tuning, RateLimitProperties properties,
+                               MeterRegistry meterRegistry) {
+        this.resourceFactory = resourceFactory;
+        this.preferNative = tuning.preferNative();
+        TimeGauge.builder("rate.limit.event.loop.lag", this, TimeUnit.NANOSECONDS, EventLoopLagMonitor::lagNanos)
+                .description("Time tasks wait to run on the most delayed server event loop")
+                .register(meterRegistry);
+        TimeGauge.builder("rate.limit.event.loop.lag.last", this, TimeUnit.NANOSECONDS, monitor -> monitor.lastNanos)
+                .description("Time the last probe waited to run on the most delayed server event loop")
+                .register(meterRegistry);
+        int probesPerWindow = (int) Math.max(1, properties.getSheddingWindow().toNanos() / properties.getLagProbeInterval().toNanos());
+        this.window = new long[probesPerWindow];
+        this.probeInterval = properties.getLagProbeInterval();
+    }
+
+    // Published by the web server lifecycle once it listens, before this one is started
+    @EventListener
+    public synchronized void onServerStarted(ReactiveWebServerInitializedEvent event) {
+        if (probes != null) probes.dispose();
+        // The group the server runs on, already created by it: native or NIO, as chosen by netty.tuning.native-transport
+        EventLoopGroup group = resourceFactory.getLoopResources().onServer(preferNative);
+        probes = Flux.interval(probeInterval).subscribe(tick -> probe(group));
+    }
+
+    public long lagNanos() {
+        return lagNanos;
+    }
+
+    // Runs on a single thread at a time (interval ticks are serialised)
+    private void probe(EventLoopGroup group) {
+        long now = System.nanoTime();
+        long worst = 0;
+        Set<EventExecutor> current = new HashSet<>();
+        for (EventExecutor loop : group) {
+            current.add(loop);
+            worst = Math.max(worst, loops.computeIfAbsent(loop, LoopProbe::new).probe(now));
+        }
+        loops.keySet().retainAll(current);
+        lastNanos = worst;
+        window[next] = worst;
+        next = (next + 1) % window.length;
+        lagNanos = Arrays.stream(window).min().orElse(0);
+    }
+
+    @Override
+    public synchronized void start() {
+        running = true;
+    }
+
+    @Override
+    public synchronized void stop() {
+        running = false;
+        if (probes != null) probes.dispose();
+        probes = null;
+        loops.clear();
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    // Stopped before the web server (WebServerStartStopLifecycle, DEFAULT_PHASE - 2048) shuts its loops down
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 2048 + 1;
+    }
+
+    private static final class LoopProbe {
+
+        private final EventExecutor loop;
+        // Queued time of the probe waiting to run, 0 when there is none
+        private volatile long pendingSince;
+        private volatile long lastLag;
+
+        LoopProbe(EventExecutor loop) {
+            this.loop = loop;
+        }
+
+        /**
+         * The lag of the loop: the last one measured, or how long the pending probe has been waiting.
+         */
+        long probe(long now) {
+            long pending = pendingSince;
+            if (pending != 0) return now - pending;
+            long lag = lastLag;
+            pendingSince = now;
+            try {
+                loop.execute(() -> {
+                    lastLag = System.nanoTime() - now;
+                    pendingSince = 0;
+                });
+            } catch (RejectedExecutionException e) {
+                // Loop shutting down
+                pendingSince = 0;
+            }
+            return lag;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.jesus.webflux.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Protects the endpoints from overload before any work is done, answering right away:
+ * <ul>
+ *     <li>503 when the event loops lag over rate-limit.shedding-lag-threshold (a growing share of the requests)</li>
+ *     <li>429 when the client or all the clients together exceed the rate of the route (token buckets)</li>
+ *     <li>503 when the route already has max-concurrent requests in progress (long-lived streams)</li>
+ * </ul>
+ * Both carry Retry-After. Rejections are counted as rate.limit.rejected, tagged with the route and the reason
+ * (overload, client, global, concurrency).
+ */
+@Component
+@Order(RateLimitFilter.ORDER)
+@ConditionalOnProperty(prefix = "rate-limit", name = "enabled", havingValue = "true", matchIfMissing = true)
+@EnableConfigurationProperties(RateLimitProperties.class)
+public class RateLimitFilter implements WebFilter {
+
+    // After the http.server.requests observation filter, so rejected requests are measured too
+    static final int ORDER = Ordered.HIGHEST_PRECEDENCE + 10;
+
+    private static final String UNKNOWN_CLIENT = "unknown";
+
+    private final List<RouteLimiter> routes = new ArrayList<>();
+    private final RateLimitProperties properties;
+    private final EventLoopLagMonitor lagMonitor;
+    private final MeterRegistry meterRegistry;
+
+    public RateLimitFilter(RateLimitProperties properties, EventLoopLagMonitor lagMonitor, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.lagMonitor = lagMonitor;
+        this.meterRegistry = meterRegistry;
+        long now = System.nanoTime();
+        for (Map.Entry<String, RateLimitProperties.Route> route : properties.getRoutes().entrySet()) {
+            routes.add(new RouteLimiter(route.getKey(), route.getValue(), properties.getMaxClients(), now));
+        }
+        // Most specific first, so /reactive/product/changes wins over /reactive/**
+        routes.sort((a, b) -> PathPattern.SPECIFICITY_COMPARATOR.compare(a.pattern, b.pattern));
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        RouteLimiter route = route(exchange.getRequest().getPath().pathWithinApplication());
+        if (route == null) return chain.filter(exchange);
+
+        if (route.sheddable && shed()) return reject(exchange, route, "overload", HttpStatus.SERVICE_UNAVAILABLE, TimeUnit.SECONDS.toNanos(1));
+        long now = System.nanoTime();
+        if (route.clientBuckets != null) {
+            long wait = route.clientBuckets.get(clientKey(exchange), client -> route.newClientBucket(now)).tryAcquire(now);
+            if (wait > 0) return reject(exchange, route, "client", HttpStatus.TOO_MANY_REQUESTS, wait);
+        }
+        if (route.globalBucket != null) {
+            long wait = route.globalBucket.tryAcquire(now);
+            if (wait > 0) return reject(exchange, route, "global", HttpStatus.TOO_MANY_REQUESTS, wait);
+        }
+        if (route.maxConcurrent <= 0) return chain.filter(exchange);
+
+        if (route.inProgress.incrementAndGet() > route.maxConcurrent) {
+            route.inProgress.decrementAndGet();
+            return reject(exchange, route, "concurrency", HttpStatus.SERVICE_UNAVAILABLE, TimeUnit.SECONDS.toNanos(1));
+        }
+        // Released when the response ends, is cancelled or fails, which for a stream is when it closes
+        return chain.filter(exchange).doFinally(signal -> route.inProgress.decrementAndGet());
+    }
+
+    private RouteLimiter route(PathContainer path) {
+        for (RouteLimiter route : routes) {
+            if (route.pattern.matches(path)) return route;
+        }
+        return null;
+    }
+
+    // No shedding up to the threshold, then a share of the requests growing with the lag, all of them at twice the threshold
+    private boolean shed() {
+        long threshold = properties.getSheddingLagThreshold().toNanos();
+        if (threshold <= 0) return false;
+        long excess = lagMonitor.lagNanos() - threshold;
+        return excess > 0 && ThreadLocalRandom.current().nextLong(threshold) < excess;
+    }
+
+    private String clientKey(ServerWebExchange exchange) {
+        if (StringUtils.hasText(properties.getClientHeader())) {
+            String client = exchange.getRequest().getHeaders().getFirst(properties.getClientHeader());
+            if (StringUtils.hasText(client)) return client;
+        }
+        // With server.forward-headers-strategy this is already the address of the original client
+        InetSocketAddress address = exchange.getRequest().getRemoteAddress();
+        if (address == null) return UNKNOWN_CLIENT;
+        return address.getAddress() != null ? address.getAddress().getHostAddress() : address.getHostString();
+    }
+
+    private Mono<Void> reject(ServerWebExchange exchange, RouteLimiter route, String reason, HttpStatus status, long retryAfterNanos) {
+        Counter.builder("rate.limit.rejected")
+                .description("Requests rejected by the rate limits and load shedding")
+                .tag("route", route.name)
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(status);
+        // Whole seconds, rounded up
+        long retryAfter = Math.max(1, (retryAfterNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+        response.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter));
+        return response.setComplete();
+    }
+
+    private static final class RouteLimiter {
+
+        private final String name;
+        private final PathPattern pattern;
+        private final RateLimitProperties.Route limits;
+        private final Cache<String, TokenBucket> clientBuckets;
+        private final TokenBucket globalBucket;
+        private final int maxConcurrent;
+        private final boolean sheddable;
+        private final AtomicInteger inProgress = new AtomicInteger();
+
+        RouteLimiter(String name, RateLimitProperties.Route limits, long maxClients, long now) {
+            if (!StringUtils.hasText(limits.getPath())) throw new IllegalArgumentException("rate-limit.routes." + name + ".path is required");
+            this.name = name;
+            this.pattern = PathPatternParser.defaultInstance.parse(limits.getPath());
+            this.limits = limits;
+            // A bucket left alone for its refill time is full again, so forgetting it then changes nothing
+            this.clientBuckets = limits.getClientRate() <= 0 ? null : Caffeine.newBuilder()
+                    .maximumSize(maxClients)
+                    .expireAfterAccess(Duration.ofNanos(newClientBucket(now).refillNanos()))
+                    .build();
+            this.globalBucket = limits.getGlobalRate() <= 0 ? null : new TokenBucket(limits.getGlobalRate(), burst(limits.getGlobalBurst(), limits.getGlobalRate()), now);
+            this.maxConcurrent = limits.getMaxConcurrent();
+            this.sheddable = limits.isSheddable();
+        }
+
+        TokenBucket newClientBucket(long now) {
+            return new TokenBucket(limits.getClientRate(), burst(limits.getClientBurst(), limits.getClientRate()), now);
+        }
+
+        // Without an explicit burst, one second worth of requests
+        private static int burst(int burst, double rate) {
+            return burst > 0 ? burst : (int) Math.max(1, Math.ceil(rate));
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.jesus.webflux.ratelimit;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Request limits of the endpoints, bound from rate-limit.*. Each route is a path pattern with its own limits,
+ * e.g. rate-limit.routes.product-by-id.path=/reactive/product/{id:\d+}. A request takes the most specific route
+ * matching its path, requests without one are not limited.
+ */
+@Data
+@ConfigurationProperties(prefix = "rate-limit")
+public class RateLimitProperties {
+
+    private boolean enabled = true;
+
+    // Header naming the client (e.g. X-Api-Key). Unset by default, so the client is the remote address: any caller
+    // can send any header, so set it only when the service is reachable through a trusted gateway alone, one that
+    // authenticates the client and overwrites the header. Otherwise a caller dodges its client limits and churns the
+    // client table by sending a new value on each request. Requests without the header fall back to the remote address
+    private String clientHeader;
+
+    // Clients tracked per route, the least recently seen are forgotten first
+    private long maxClients = 100_000;
+
+    // Event loop lag from which requests are shed: from none at the threshold to all of them at twice it (0 disables it)
+    private Duration sheddingLagThreshold = Duration.ofMillis(100);
+
+    // The lag has to stay over the threshold for this long before shedding, so single pauses do not shed
+    private Duration sheddingWindow = Duration.ofSeconds(1);
+
+    // How often the lag of the event loops is measured
+    private Duration lagProbeInterval = Duration.ofMillis(50);
+
+    private Map<String, Route> routes = new LinkedHashMap<>();
+
+    @Data
+    public static class Route {
+
+        // Path pattern, e.g. /reactive/product/{id:\d+}
+        private String path;
+
+        // Requests per second of each client and how many may come at once (0: no limit)
+        private double clientRate;
+        private int clientBurst;
+
+        // Requests per second of all the clients together and how many may come at once (0: no limit)
+        private double globalRate;
+        private int globalBurst;
+
+        // Requests in progress at the same time, for long-lived streams (0: no limit)
+        private int maxConcurrent;
+
+        // Whether the route is shed when the event loops lag
+        private boolean sheddable = true;
+    }
+}
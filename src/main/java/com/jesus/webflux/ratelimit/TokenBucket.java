@@ -0,0 +1,50 @@
+package com.jesus.webflux.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Token bucket of ratePerSecond tokens and burst capacity, kept as the GCRA "theoretical arrival time":
+ * the time at which the bucket would be full again. Taking a token pushes it one emission interval
+ * ahead, and a request is refused when it would be more than the burst ahead of now. Same behaviour as
+ * counting tokens, but a single long updated with CAS, so no lock and no refill timer.
+ */
+final class TokenBucket {
+
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final AtomicLong theoreticalArrival;
+
+    TokenBucket(double ratePerSecond, int burst, long nowNanos) {
+        if (ratePerSecond <= 0) throw new IllegalArgumentException("rate must be greater than 0");
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond));
+        this.toleranceNanos = intervalNanos * (Math.max(1, burst) - 1);
+        this.theoreticalArrival = new AtomicLong(nowNanos);
+    }
+
+    /**
+     * Takes a token: 0 if there was one, otherwise the nanoseconds until the next one (nothing is taken).
+     */
+    long tryAcquire(long nowNanos) {
+        while (true) {
+            long current = theoreticalArrival.get();
+            long arrival = current - nowNanos > 0 ? current : nowNanos;
+            long wait = arrival - toleranceNanos - nowNanos;
+            if (wait > 0) return wait;
+            if (theoreticalArrival.compareAndSet(current, arrival + intervalNanos)) return 0;
+        }
+    }
+
+    /**
+     * Time an idle bucket takes to fill up completely: once forgotten that long, a new one is equivalent.
+     */
+    long refillNanos() {
+        return toleranceNanos + intervalNanos;
+    }
+}
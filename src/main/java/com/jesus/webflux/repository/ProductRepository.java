@@ -0,0 +1,79 @@
+package com.jesus.webflux.repository;
+
+import com.jesus.webflux.model.CategoryStats;
+import com.jesus.webflux.model.Product;
+import com.jesus.webflux.model.ProductQuery;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Non-blocking persistence of products.
+ */
+public interface ProductRepository {
+
+    Mono<Product> findById(int id);
+
+    /**
+     * The products with the given codProducts in one statement, in the order of the ids. Unknown ids are
+     * skipped and a repeated id is emitted once.
+     */
+    Flux<Product> findAllById(Collection<Integer> ids);
+
+    /**
+     * Same criteria, sort and paging rules as the in-memory query planner.
+     */
+    Flux<Product> search(ProductQuery query);
+
+    /**
+     * Typeahead by name with the same matching and ranking as the in-memory name index.
+     */
+    Flux<Product> suggest(String text, int limit);
+
+    /**
+     * Statistics of every category (case-insensitive), in category order with the products without category last.
+     */
+    Flux<CategoryStats> categoryStats();
+
+    /**
+     * Statistics of one category, case-insensitive. Completes empty if it holds no product.
+     */
+    Mono<CategoryStats> categoryStats(String category);
+
+    /**
+     * Inserts the product with a generated codProduct and returns it with that id.
+     */
+    Mono<Product> insert(Product product);
+
+    /**
+     * Inserts all the products in one batched statement, returning them with their generated ids in the same order.
+     */
+    Flux<Product> insertAll(List<Product> products);
+
+    /**
+     * Overwrites an existing product. Completes empty if the codProduct does not exist.
+     */
+    Mono<Product> update(Product product);
+
+    /**
+     * Overwrites all the products in one batched statement. Emits, in order, whether each product existed.
+     */
+    Flux<Boolean> updateAll(List<Product> products);
+
+    /**
+     * Adds delta units to the stock with one conditional UPDATE (the check and the write cannot be split by
+     * a concurrent request) and returns the new version. Completes empty if the codProduct does not exist,
+     * fails with InsufficientStockException if the stock would go below zero.
+     */
+    Mono<Product> adjustStock(int id, int delta);
+
+    Mono<Boolean> deleteById(int id);
+}
@@ -0,0 +1,30 @@
+package com.jesus.webflux.repository;
+
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcConnectionDetails;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Database of the r2dbc backend (product.backend=r2dbc): product.r2dbc.url, an H2 file by default, so the
+ * catalogue survives restarts. The pool still comes from spring.r2dbc.pool.*. With the other backends the
+ * connection factory stays the in-memory database Boot creates by default, and no file is opened.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "product.backend", havingValue = "r2dbc")
+public class R2dbcDatabaseConfiguration {
+
+    @Bean
+    R2dbcConnectionDetails productDatabase(@Value("${product.r2dbc.url}") String url) {
+        ConnectionFactoryOptions options = ConnectionFactoryOptions.parse(url);
+        return () -> options;
+    }
+}
@@ -0,0 +1,316 @@
+package com.jesus.webflux.repository;
+
+import com.jesus.webflux.model.CategoryStats;
+import com.jesus.webflux.model.InsufficientStockException;
+import com.jesus.webflux.model.Product;
+import com.jesus.webflux.model.ProductQuery;
+import com.jesus.webflux.store.TextFolding;
+import io.r2dbc.spi.Readable;
+import io.r2dbc.spi.Statement;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * {@link ProductRepository} on R2DBC (schema.sql). Every finder is answered by one SQL statement over the
+ * indexed columns: category_key and name_key are lower-cased generated columns, unit_price and stock
+ * have their own indexes. The autocomplete matches the folded name_search column with LIKE, which scans the table.
+ * Category statistics are one GROUP BY over category_key, computed by the database instead of transferring the rows.
+ */
+@Repository
+public class R2dbcProductRepository implements ProductRepository {
+
+    private static final String COLUMNS = "cod_product, name, category, unit_price, stock";
+    private static final String CATEGORY_STATS = "SELECT MIN(category) AS category, COUNT(*) AS product_count, SUM(stock) AS total_stock,"
+            + " SUM(unit_price * stock) AS total_stock_value, MIN(unit_price) AS min_price, MAX(unit_price) AS max_price,"
+            + " AVG(unit_price) AS avg_price FROM product";
+
+    private final DatabaseClient databaseClient;
+
+    public R2dbcProductRepository(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    @Override
+    public Mono<Product> findById(int id) {
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM product WHERE cod_product = :id")
+                .bind("id", id)
+                .map(R2dbcProductRepository::toProduct)
+                .one();
+    }
+
+    // The database returns the rows in any order, they are put back in the order of the ids
+    @Override
+    public Flux<Product> findAllById(Collection<Integer> ids) {
+        List<Integer> distinct = ids.stream().filter(Objects::nonNull).distinct().toList();
+        if (distinct.isEmpty()) return Flux.empty();
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM product WHERE cod_product IN (:ids)")
+                .bind("ids", distinct)
+                .map(R2dbcProductRepository::toProduct)
+                .all()
+                .collectMap(Product::getCodProduct)
+                .flatMapIterable(found -> distinct.stream().map(found::get).filter(Objects::nonNull).toList());
+    }
+
+    @Override
+    public Flux<Product> search(ProductQuery query) {
+        return Flux.defer(() -> {
+            Map<String, Object> parameters = new LinkedHashMap<>();
+            String sql = searchSql(query, parameters);
+            DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql);
+            for (Map.Entry<String, Object> parameter : parameters.entrySet()) {
+                spec = spec.bind(parameter.getKey(), parameter.getValue());
+            }
+            return spec.map(R2dbcProductRepository::toProduct).all();
+        });
+    }
+
+    @Override
+    public Flux<Product> suggest(String text, int limit) {
+        return Flux.defer(() -> {
+            List<String> terms = TextFolding.tokens(text);
+            if (terms.isEmpty() || limit <= 0) return Flux.empty();
+            Map<String, Object> parameters = new LinkedHashMap<>();
+            String sql = suggestSql(terms, limit, parameters);
+            DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(sql);
+            for (Map.Entry<String, Object> parameter : parameters.entrySet()) {
+                spec = spec.bind(parameter.getKey(), parameter.getValue());
+            }
+            return spec.map(R2dbcProductRepository::toProduct).all();
+        });
+    }
+
+    @Override
+    public Flux<CategoryStats> categoryStats() {
+        return databaseClient.sql(CATEGORY_STATS + " GROUP BY category_key ORDER BY category_key NULLS LAST")
+                .map(R2dbcProductRepository::toCategoryStats)
+                .all();
+    }
+
+    @Override
+    public Mono<CategoryStats> categoryStats(String category) {
+        if (category == null) {
+            return databaseClient.sql(CATEGORY_STATS + " WHERE category_key IS NULL HAVING COUNT(*) > 0")
+                    .map(R2dbcProductRepository::toCategoryStats)
+                    .one();
+        }
+        return databaseClient.sql(CATEGORY_STATS + " WHERE category_key = :category HAVING COUNT(*) > 0")
+                .bind("category", category.toLowerCase(Locale.ROOT))
+                .map(R2dbcProductRepository::toCategoryStats)
+                .one();
+    }
+
+    // Folded words only hold letters and digits, so they never need escaping inside a LIKE pattern
+    static String suggestSql(List<String> terms, int limit, Map<String, Object> parameters) {
+        StringBuilder sql = new StringBuilder("SELECT " + COLUMNS + " FROM product WHERE 1 = 1");
+        for (int i = 0; i < terms.size() - 1; i++) {
+            sql.append(" AND name_search LIKE :word").append(i);
+            parameters.put("word" + i, "% " + terms.get(i) + " %");
+        }
+        String prefix = terms.get(terms.size() - 1);
+        String phrase = " " + String.join(" ", terms);
+        sql.append(" AND name_search LIKE :prefix");
+        parameters.put("prefix", "% " + prefix + "%");
+        // Same ranking as ProductStore.suggestByName: whole name, starts with the text, whole last word, prefix
+        sql.append(" ORDER BY CASE WHEN name_search = :phrase THEN 0 WHEN name_search LIKE :startsWith THEN 1")
+                .append(" WHEN name_search LIKE :wholeWord THEN 2 ELSE 3 END, LENGTH(name), cod_product");
+        parameters.put("phrase", phrase + " ");
+        parameters.put("startsWith", phrase + "%");
+        parameters.put("wholeWord", "% " + prefix + " %");
+        sql.append(" FETCH FIRST ").append(limit).append(" ROWS ONLY");
+        return sql.toString();
+    }
+
+    static String searchSql(ProductQuery query, Map<String, Object> parameters) {
+        StringBuilder sql = new StringBuilder("SELECT " + COLUMNS + " FROM product WHERE 1 = 1");
+        if (query.getName() != null) {
+            sql.append(" AND name_key = :name");
+            parameters.put("name", query.getName().toLowerCase(Locale.ROOT));
+        }
+        if (query.getCategory() != null) {
+            sql.append(" AND category_key = :category");
+            parameters.put("category", query.getCategory().toLowerCase(Locale.ROOT));
+        }
+        if (query.getMinPrice() != null) {
+            sql.append(" AND unit_price >= :minPrice");
+            parameters.put("minPrice", query.getMinPrice());
+        }
+        if (query.getMaxPrice() != null) {
+            sql.append(" AND unit_price <= :maxPrice");
+            parameters.put("maxPrice", query.getMaxPrice());
+        }
+        if (query.getMinStock() != null) {
+            sql.append(" AND stock >= :minStock");
+            parameters.put("minStock", query.getMinStock());
+        }
+        if (query.getMaxStock() != null) {
+            sql.append(" AND stock <= :maxStock");
+            parameters.put("maxStock", query.getMaxStock());
+        }
+        if (query.getAfter() != null) {
+            if (query.getSort() != null && !query.getSort().isBlank() && !"codProduct".equals(query.getSort())) {
+                throw new IllegalArgumentException("after can only be used when sorting by codProduct");
+            }
+            sql.append(" AND cod_product > :after");
+            parameters.put("after", query.getAfter());
+        }
+        sql.append(" ORDER BY ").append(orderBy(query.getSort()));
+        // offset and limit are validated integers, so they can be inlined
+        if (query.getOffset() != null) {
+            if (query.getOffset() < 0) throw new IllegalArgumentException("offset must not be negative");
+            sql.append(" OFFSET ").append(query.getOffset()).append(" ROWS");
+        }
+        if (query.getLimit() != null) {
+            if (query.getLimit() < 0) throw new IllegalArgumentException("limit must not be negative");
+            sql.append(" FETCH FIRST ").append(query.getLimit()).append(" ROWS ONLY");
+        }
+        return sql.toString();
+    }
+
+    private static String orderBy(String sort) {
+        if (sort == null || sort.isBlank()) return "cod_product";
+        boolean descending = sort.startsWith("-");
+        String column = switch (descending ? sort.substring(1) : sort) {
+            case "codProduct" -> "cod_product";
+            case "name" -> "name_key";
+            case "unitPrice" -> "unit_price";
+            case "stock" -> "stock";
+            default -> throw new IllegalArgumentException("Unknown sort field: " + sort);
+        };
+        String direction = descending ? " DESC" : "";
+        return "cod_product".equals(column) ? column + direction : column + direction + ", cod_product" + direction;
+    }
+
+    @Override
+    public Mono<Product> insert(Product product) {
+        return insertAll(List.of(product)).next();
+    }
+
+    @Override
+    public Flux<Product> insertAll(List<Product> products) {
+        if (products.isEmpty()) return Flux.empty();
+        return databaseClient.inConnectionMany(connection -> {
+            Statement statement = connection
+                    .createStatement("INSERT INTO product (name, category, unit_price, stock, name_search) VALUES ($1, $2, $3, $4, $5)")
+                    .returnGeneratedValues("cod_product");
+            for (int i = 0; i < products.size(); i++) {
+                if (i > 0) statement.add();
+                Product product = products.get(i);
+                bindNullable(statement, 0, product.getName());
+                bindNullable(statement, 1, product.getCategory());
+                statement.bind(2, product.getUnitPrice());
+                statement.bind(3, product.getStock());
+                bindNullable(statement, 4, nameSearch(product.getName()));
+            }
+            return Flux.from(statement.execute())
+                    .concatMap(result -> result.map(row -> row.get("cod_product", Integer.class)));
+        }).index((index, id) -> {
+            Product product = products.get(index.intValue());
+            return new Product(id, product.getName(), product.getCategory(), product.getUnitPrice(), product.getStock());
+        });
+    }
+
+    @Override
+    public Mono<Product> update(Product product) {
+        if (product.getCodProduct() == null) return Mono.empty();
+        DatabaseClient.GenericExecuteSpec spec = databaseClient
+                .sql("UPDATE product SET name = :name, category = :category, unit_price = :unitPrice, stock = :stock, name_search = :nameSearch WHERE cod_product = :id")
+                .bind("id", product.getCodProduct())
+                .bind("unitPrice", product.getUnitPrice())
+                .bind("stock", product.getStock());
+        spec = product.getName() == null ? spec.bindNull("name", String.class) : spec.bind("name", product.getName());
+        spec = product.getName() == null ? spec.bindNull("nameSearch", String.class) : spec.bind("nameSearch", nameSearch(product.getName()));
+        spec = product.getCategory() == null ? spec.bindNull("category", String.class) : spec.bind("category", product.getCategory());
+        return spec.fetch().rowsUpdated()
+                .filter(rows -> rows > 0)
+                .map(rows -> new Product(product.getCodProduct(), product.getName(), product.getCategory(),
+                        product.getUnitPrice(), product.getStock()));
+    }
+
+    @Override
+    public Flux<Boolean> updateAll(List<Product> products) {
+        if (products.isEmpty()) return Flux.empty();
+        return databaseClient.inConnectionMany(connection -> {
+            Statement statement = connection
+                    .createStatement("UPDATE product SET name = $1, category = $2, unit_price = $3, stock = $4, name_search = $5 WHERE cod_product = $6");
+            for (int i = 0; i < products.size(); i++) {
+                if (i > 0) statement.add();
+                Product product = products.get(i);
+                bindNullable(statement, 0, product.getName());
+                bindNullable(statement, 1, product.getCategory());
+                statement.bind(2, product.getUnitPrice());
+                statement.bind(3, product.getStock());
+                bindNullable(statement, 4, nameSearch(product.getName()));
+                if (product.getCodProduct() == null) statement.bindNull(5, Integer.class);
+                else statement.bind(5, product.getCodProduct());
+            }
+            return Flux.from(statement.execute())
+                    .concatMap(result -> Mono.from(result.getRowsUpdated()))
+                    .map(rows -> rows > 0);
+        });
+    }
+
+    @Override
+    public Mono<Product> adjustStock(int id, int delta) {
+        return databaseClient.sql("UPDATE product SET stock = stock + :delta WHERE cod_product = :id AND stock + :delta >= 0")
+                .bind("id", id)
+                .bind("delta", delta)
+                .fetch().rowsUpdated()
+                .flatMap(rows -> rows > 0
+                        ? findById(id)
+                        // Nothing updated: either the product does not exist or it has too few units
+                        : findById(id).flatMap(current -> Mono.error(new InsufficientStockException(id, current.getStock(), -delta))));
+    }
+
+    @Override
+    public Mono<Boolean> deleteById(int id) {
+        return databaseClient.sql("DELETE FROM product WHERE cod_product = :id")
+                .bind("id", id)
+                .fetch().rowsUpdated()
+                .map(rows -> rows > 0);
+    }
+
+    private static String nameSearch(String name) {
+        return name == null ? null : TextFolding.searchKey(name);
+    }
+
+    private static void bindNullable(Statement statement, int index, String value) {
+        if (value == null) statement.bindNull(index, String.class);
+        else statement.bind(index, value);
+    }
+
+    // SUM and COUNT come back as BIGINT or DECIMAL depending on the database
+    private static CategoryStats toCategoryStats(Readable row) {
+        return new CategoryStats(
+                row.get("category", String.class),
+                row.get("product_count", Number.class).longValue(),
+                row.get("total_stock", Number.class).longValue(),
+                row.get("total_stock_value", Number.class).doubleValue(),
+                row.get("min_price", Number.class).doubleValue(),
+                row.get("max_price", Number.class).doubleValue(),
+                row.get("avg_price", Number.class).doubleValue());
+    }
+
+    private static Product toProduct(Readable row) {
+        return new Product(
+                row.get("cod_product", Integer.class),
+                row.get("name", String.class),
+                row.get("category", String.class),
+                row.get("unit_price", Double.class),
+                row.get("stock", Integer.class));
+    }
+}
@@ -0,0 +1,134 @@
+package com.jesus.webflux.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.ChannelOption;
+import io.netty.util.concurrent.EventExecutor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.boot.web.reactive.context.ReactiveWebServerInitializedEvent;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.client.ReactorResourceFactory;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.resources.LoopResources;
+
+import java.util.Locale;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Applies netty.tuning.* to the Netty server (event loops, transport, buffers, h2c, connection limits) and logs
+ * the settings it ends up with once it is listening, tuned or not.
+ * <p>
+ * The event loops stay in the shared {@link ReactorResourceFactory}, sized here instead of by Reactor Netty's
+ * system properties, so the server, the WebClients built by Spring and the {@code EventLoopLagMonitor} all use
+ * the same ones. The server runs on them through a NettyReactiveWebServerFactory customizer.
+ */
+@Slf4j
+@Configuration(proxyBeanMethods = false)
+@EnableConfigurationProperties(NettyTuningProperties.class)
+public class NettyTuningConfiguration {
+
+    // Same thread names as Reactor Netty's own loops
+    private static final String THREAD_PREFIX = "reactor-http";
+
+    private final NettyTuningProperties properties;
+    private final ObjectProvider<ReactorResourceFactory> resourceFactory;
+    private final ByteBufAllocator allocator;
+
+    public NettyTuningConfiguration(NettyTuningProperties properties, ObjectProvider<ReactorResourceFactory> resourceFactory) {
+        this.properties = properties;
+        this.resourceFactory = resourceFactory;
+        this.allocator = properties.isEnabled() ? allocator(properties) : ByteBufAllocator.DEFAULT;
+    }
+
+    // Static: post processors are created before the regular beans, the properties are looked up lazily
+    @Bean
+    @ConditionalOnProperty(prefix = "netty.tuning", name = "enabled", havingValue = "true")
+    static BeanPostProcessor nettyLoopResourcesPostProcessor(ObjectProvider<NettyTuningProperties> properties) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof ReactorResourceFactory factory) {
+                    int threads = properties.getObject().eventLoopThreadCount();
+                    // The global HttpResources can only be sized through system properties read once per JVM
+                    factory.setUseGlobalResources(false);
+                    factory.setLoopResourcesSupplier(() -> LoopResources.create(THREAD_PREFIX, threads, true));
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "netty.tuning", name = "enabled", havingValue = "true")
+    WebServerFactoryCustomizer<NettyReactiveWebServerFactory> nettyTuningCustomizer() {
+        // Runs after Boot's own server.netty.* customizer, so these settings win
+        return factory -> factory.addServerCustomizers(server -> {
+            HttpServer tuned = server.runOn(resourceFactory.getObject().getLoopResources(), properties.isNativeTransport())
+                    .option(ChannelOption.ALLOCATOR, allocator)
+                    .childOption(ChannelOption.ALLOCATOR, allocator)
+                    .maxKeepAliveRequests(properties.getMaxKeepAliveRequests());
+            if (properties.getIdleTimeout() != null) tuned = tuned.idleTimeout(properties.getIdleTimeout());
+            if (properties.isH2c()) {
+                tuned = tuned.protocol(HttpProtocol.HTTP11, HttpProtocol.H2C)
+                        .http2Settings(settings -> settings.maxConcurrentStreams(properties.getMaxInFlightRequests()));
+            }
+            return tuned;
+        });
+    }
+
+    @EventListener
+    public void report(ReactiveWebServerInitializedEvent event) {
+        int loops = 0;
+        String transport = "unknown";
+        ReactorResourceFactory factory = resourceFactory.getIfAvailable();
+        if (factory != null) {
+            for (EventExecutor loop : factory.getLoopResources().onServer(properties.preferNative())) {
+                loops++;
+                // EpollEventLoop, KQueueEventLoop or NioEventLoop
+                transport = loop.getClass().getSimpleName().replace("EventLoop", "").toLowerCase(Locale.ROOT);
+            }
+        }
+        if (!properties.isEnabled()) {
+            log.info("Netty server on port {}: {} event loops ({}) on {} cores, {}, HTTP/1.1 and connection limits by default (netty.tuning.enabled=false)",
+                    event.getWebServer().getPort(), loops, transport, Runtime.getRuntime().availableProcessors(), describe(allocator));
+            return;
+        }
+        log.info("Netty server on port {}: {} event loops ({}) on {} cores, {}, {}, idle timeout {}, max keep-alive requests {}",
+                event.getWebServer().getPort(), loops, transport, Runtime.getRuntime().availableProcessors(), describe(allocator),
+                properties.isH2c() ? "HTTP/1.1 and h2c with at most " + properties.getMaxInFlightRequests() + " requests in flight per connection" : "HTTP/1.1",
+                properties.getIdleTimeout() == null ? "none" : properties.getIdleTimeout(),
+                properties.getMaxKeepAliveRequests() < 0 ? "unlimited" : properties.getMaxKeepAliveRequests());
+    }
+
+    // The default pooled allocator is shared with the rest of the application instead of adding a second set of arenas
+    private static ByteBufAllocator allocator(NettyTuningProperties properties) {
+        if (!properties.isPooledBuffers()) return new UnpooledByteBufAllocator(properties.isDirectBuffers());
+        if (properties.isDirectBuffers() && PooledByteBufAllocator.defaultPreferDirect()) return PooledByteBufAllocator.DEFAULT;
+        return new PooledByteBufAllocator(properties.isDirectBuffers());
+    }
+
+    private static String describe(ByteBufAllocator allocator) {
+        ByteBuf probe = allocator.buffer(0);
+        try {
+            return (allocator instanceof PooledByteBufAllocator ? "pooled " : "unpooled ") + (probe.isDirect() ? "direct" : "heap") + " buffers";
+        } finally {
+            probe.release();
+        }
+    }
+}
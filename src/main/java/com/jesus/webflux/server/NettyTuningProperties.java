@@ -0,0 +1,60 @@
+package com.jesus.webflux.server;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import reactor.netty.resources.LoopResources;
+
+import java.time.Duration;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Transport and connection settings of the Netty server, bound from netty.tuning.*. Applied only when
+ * enabled (the "production" profile), otherwise the server keeps the Reactor Netty defaults.
+ */
+@Data
+@ConfigurationProperties(prefix = "netty.tuning")
+public class NettyTuningProperties {
+
+    private boolean enabled = false;
+
+    // Event loop threads, 0 for one per core (Reactor Netty alone starts at least 4)
+    private int eventLoopThreads = 0;
+
+    // epoll when the platform has it (Linux), NIO otherwise
+    private boolean nativeTransport = true;
+
+    // Pooled buffers are recycled through per-thread caches instead of being allocated for every read and write
+    private boolean pooledBuffers = true;
+
+    // Off-heap buffers: sockets read and write them without a copy
+    private boolean directBuffers = true;
+
+    // HTTP/2 over plain TCP (prior knowledge or Upgrade: h2c) alongside HTTP/1.1
+    private boolean h2c = false;
+
+    // Connections without any traffic for this long are closed, none when null
+    private Duration idleTimeout;
+
+    // Requests served on an HTTP/1.1 connection before it is closed, -1 for no limit
+    private int maxKeepAliveRequests = -1;
+
+    // Requests in progress at once on an HTTP/2 connection (concurrent streams), an HTTP/1.1 connection runs one at a time
+    private long maxInFlightRequests = 256;
+
+    public int eventLoopThreadCount() {
+        return eventLoopThreads > 0 ? eventLoopThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Whether the server runs on the native transport, the same choice HttpServer.runOn makes by default when
+     * the tuning is off. Whoever looks up the server event loops (the lag monitor) must ask for the same ones.
+     */
+    public boolean preferNative() {
+        return enabled ? nativeTransport : LoopResources.DEFAULT_NATIVE;
+    }
+}
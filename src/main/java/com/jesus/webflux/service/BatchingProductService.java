@@ -0,0 +1,179 @@
+package com.jesus.webflux.service;
+
+import com.jesus.webflux.model.BulkItemResult;
+import com.jesus.webflux.model.CategoryStats;
+import com.jesus.webflux.model.Product;
+import com.jesus.webflux.model.ProductQuery;
+import com.jesus.webflux.model.StockLine;
+import com.jesus.webflux.model.StockResult;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micro-batching of the lookups by id: getProductById calls that arrive within product.execution.batch-window
+ * of each other are answered by one getProductsByIds call to the backend, so a burst of lookups costs one store
+ * access (one SELECT ... IN with r2dbc, one trip to a worker when offloaded) instead of one per id. A batch goes
+ * to the backend once the window of its first lookup ends, or right away when it reaches max-batch-size.
+ * Everything else goes straight to the backend.
+ * <p>
+ * Publishes product.batching.size (lookups answered per backend call).
+ */
+class BatchingProductService implements ProductService {
+
+    static final String METRICS_NAME = "product.batching";
+
+    private final ProductService delegate;
+    private final Duration window;
+    private final int maxBatchSize;
+    private final Scheduler timer;
+    private final DistributionSummary batchSize;
+    // Batch still gathering lookups, null when none. Guarded by this
+    private Batch current;
+
+    BatchingProductService(ProductService delegate, Duration window, int maxBatchSize, Scheduler timer, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.window = window;
+        this.maxBatchSize = maxBatchSize;
+        this.timer = timer;
+        this.batchSize = DistributionSummary.builder(METRICS_NAME + ".size")
+                .description("Lookups by id answered by one backend call").register(meterRegistry);
+    }
+
+    @Override
+    public Mono<Product> getProductById(long id) {
+        if (id < Integer.MIN_VALUE || id > Integer.MAX_VALUE) return Mono.empty();
+        return Mono.create(sink -> enqueue((int) id, sink));
+    }
+
+    @Override
+    public Flux<Product> getProductsByIds(List<Integer> ids) {
+        return delegate.getProductsByIds(ids);
+    }
+
+    @Override
+    public Mono<Product> addProduct(Product product) {
+        return delegate.addProduct(product);
+    }
+
+    @Override
+    public Mono<Product> updateProduct(Product product) {
+        return delegate.updateProduct(product);
+    }
+
+    @Override
+    public Mono<Void> deleteProduct(int id) {
+        return delegate.deleteProduct(id);
+    }
+
+    @Override
+    public Flux<BulkItemResult> addProducts(Flux<Product> products) {
+        return delegate.addProducts(products);
+    }
+
+    @Override
+    public Flux<BulkItemResult> updateProducts(Flux<Product> products) {
+        return delegate.updateProducts(products);
+    }
+
+    @Override
+    public Mono<StockResult> reserveStock(List<StockLine> items) {
+        return delegate.reserveStock(items);
+    }
+
+    @Override
+    public Mono<StockResult> releaseStock(List<StockLine> items) {
+        return delegate.releaseStock(items);
+    }
+
+    @Override
+    public Mono<StockResult> adjustStock(int id, int delta) {
+        return delegate.adjustStock(id, delta);
+    }
+
+    @Override
+    public Flux<Product> searchProducts(ProductQuery query) {
+        return delegate.searchProducts(query);
+    }
+
+    @Override
+    public Flux<Product> suggestProducts(String text, int limit) {
+        return delegate.suggestProducts(text, limit);
+    }
+
+    @Override
+    public Flux<CategoryStats> getCategoryStats() {
+        return delegate.getCategoryStats();
+    }
+
+    @Override
+    public Mono<CategoryStats> getCategoryStats(String category) {
+        return delegate.getCategoryStats(category);
+    }
+
+    private void enqueue(int id, MonoSink<Product> sink) {
+        Batch opened = null;
+        Batch full = null;
+        synchronized (this) {
+            if (current == null) current = opened = new Batch();
+            current.add(id, sink);
+            if (current.size() >= maxBatchSize) {
+                full = current;
+                current = null;
+            }
+        }
+        if (full != null) {
+            dispatch(full);
+        } else if (opened != null) {
+            Batch batch = opened;
+            timer.schedule(() -> close(batch), window.toNanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // End of the window of the batch, unless it already went out full
+    private void close(Batch batch) {
+        synchronized (this) {
+            if (current != batch) return;
+            current = null;
+        }
+        dispatch(batch);
+    }
+
+    // Lookups whose subscriber went away meanwhile are still resolved, their result is dropped
+    private void dispatch(Batch batch) {
+        batchSize.record(batch.size());
+        Flux.defer(() -> delegate.getProductsByIds(batch.ids()))
+                .collectMap(Product::getCodProduct)
+                .subscribe(found -> batch.lookups.forEach(lookup -> lookup.sink.success(found.get(lookup.id))),
+                        error -> batch.lookups.forEach(lookup -> lookup.sink.error(error)));
+    }
+
+    private record Lookup(int id, MonoSink<Product> sink) {
+    }
+
+    private static final class Batch {
+
+        private final List<Lookup> lookups = new ArrayList<>();
+
+        void add(int id, MonoSink<Product> sink) {
+            lookups.add(new Lookup(id, sink));
+        }
+
+        int size() {
+            return lookups.size();
+        }
+
+        // Concurrent lookups of the same id share one entry
+        List<Integer> ids() {
+            return lookups.stream().map(Lookup::id).distinct().toList();
+        }
+    }
+}
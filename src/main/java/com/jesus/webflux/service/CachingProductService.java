@@ -0,0 +1,239 @@
+package com.jesus.webflux.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.jesus.webflux.model.BulkItemResult;
+import com.jesus.webflux.model.CategoryStats;
+import com.jesus.webflux.model.Product;
+import com.jesus.webflux.model.ProductQuery;
+import com.jesus.webflux.model.StockLine;
+import com.jesus.webflux.model.StockResult;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Read-through cache in front of the product backend.
+ * <p>
+ * Lookups by id (one or many) and paged category queries are served from Caffeine async caches with size and TTL
+ * eviction. The cache holds the loading future, so concurrent misses for the same key share a single
+ * load. Writes go to the backend first and then invalidate the product and the cached category pages
+ * of its old and new category, again once the loads that were in flight at the time complete. Everything else goes straight to the backend (the getProductsBy*
+ * finders go through {@link #searchProducts}).
+ */
+@Primary
+@Service
+@ConditionalOnProperty(prefix = "product.cache", name = "enabled", havingValue = "true", matchIfMissing = true)
+@EnableConfigurationProperties(ProductCacheProperties.class)
+public class CachingProductService implements ProductService {
+
+    private final ProductService delegate;
+    private final AsyncCache<Long, Product> productsById;
+    private final AsyncCache<ProductQuery, List<Product>> categoryPages;
+
+    public CachingProductService(@Qualifier(ProductService.BACKEND) ProductService delegate, ProductCacheProperties properties,
+                                 MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.productsById = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getTtl())
+                .recordStats()
+                .buildAsync();
+        this.categoryPages = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumQueries())
+                .expireAfterWrite(properties.getTtl())
+                .recordStats()
+                .buildAsync();
+        // cache.gets{result=hit|miss}, cache.evictions, cache.size... tagged with cache=products|category-pages
+        CaffeineCacheMetrics.monitor(meterRegistry, productsById, "products");
+        CaffeineCacheMetrics.monitor(meterRegistry, categoryPages, "category-pages");
+    }
+
+    @Override
+    public Mono<Product> getProductById(long id) {
+        // suppressCancel: a subscriber going away must not cancel a load other subscribers are waiting for
+        return Mono.fromFuture(productsById.get(id, (key, executor) -> delegate.getProductById(key).toFuture()), true);
+    }
+
+    // Cached ids come from the cache, the rest are loaded together in one getProductsByIds call to the backend
+    @Override
+    public Flux<Product> getProductsByIds(List<Integer> ids) {
+        return Flux.defer(() -> {
+            List<Long> keys = ids.stream().filter(Objects::nonNull).map(Integer::longValue).distinct().toList();
+            if (keys.isEmpty()) return Flux.empty();
+            return Mono.fromFuture(productsById.getAll(keys, (missing, executor) -> delegate
+                            .getProductsByIds(missing.stream().map(Long::intValue).toList())
+                            .collectMap(product -> product.getCodProduct().longValue())
+                            .toFuture()), true)
+                    .flatMapIterable(found -> keys.stream().map(found::get).filter(Objects::nonNull).toList());
+        });
+    }
+
+    @Override
+    public Flux<Product> searchProducts(ProductQuery query) {
+        // Only bounded category queries are cached, unbounded ones could hold a whole category in memory
+        if (query.getCategory() == null || query.getLimit() == null) return delegate.searchProducts(query);
+        ProductQuery key = query.toBuilder().build();
+        return Mono.fromFuture(categoryPages.get(key, (k, executor) -> delegate.searchProducts(k).collectList().toFuture()), true)
+                .flatMapIterable(products -> products);
+    }
+
+    // Suggestions change with every keystroke, caching them would mostly hold one-off prefixes
+    @Override
+    public Flux<Product> suggestProducts(String text, int limit) {
+        return delegate.suggestProducts(text, limit);
+    }
+
+    // The backends answer from running totals (or one GROUP BY), a cache would only make them stale
+    @Override
+    public Flux<CategoryStats> getCategoryStats() {
+        return delegate.getCategoryStats();
+    }
+
+    @Override
+    public Mono<CategoryStats> getCategoryStats(String category) {
+        return delegate.getCategoryStats(category);
+    }
+
+    @Override
+    public Mono<Product> addProduct(Product product) {
+        return withInvalidation(product.getCodProduct(), delegate.addProduct(product));
+    }
+
+    @Override
+    public Mono<Product> updateProduct(Product product) {
+        return withInvalidation(product.getCodProduct(), delegate.updateProduct(product));
+    }
+
+    @Override
+    public Mono<Void> deleteProduct(int id) {
+        return delegate.getProductById(id).mapNotNull(Product::getCategory).defaultIfEmpty("")
+                .flatMap(category -> delegate.deleteProduct(id).then(Mono.fromRunnable(() -> {
+                    invalidateProduct(id);
+                    invalidateCategory(category);
+                })));
+    }
+
+    // Bulk writes touch too many categories to track: category pages are dropped when the bulk starts and ends
+    @Override
+    public Flux<BulkItemResult> addProducts(Flux<Product> products) {
+        return delegate.addProducts(products)
+                .doOnSubscribe(subscription -> invalidateCategoryPages())
+                .doFinally(signal -> invalidateCategoryPages());
+    }
+
+    @Override
+    public Flux<BulkItemResult> updateProducts(Flux<Product> products) {
+        return delegate.updateProducts(products)
+                .doOnSubscribe(subscription -> invalidateCategoryPages())
+                .doOnNext(result -> {
+                    if (result.getCodProduct() != null) invalidateProduct(result.getCodProduct());
+                })
+                .doFinally(signal -> invalidateCategoryPages());
+    }
+
+    @Override
+    public Mono<StockResult> reserveStock(List<StockLine> items) {
+        return withStockInvalidation(delegate.reserveStock(items));
+    }
+
+    @Override
+    public Mono<StockResult> releaseStock(List<StockLine> items) {
+        return withStockInvalidation(delegate.releaseStock(items));
+    }
+
+    @Override
+    public Mono<StockResult> adjustStock(int id, int delta) {
+        return withStockInvalidation(delegate.adjustStock(id, delta));
+    }
+
+    // Stock changes never move a product to another category: only the changed products and their pages are dropped
+    private Mono<StockResult> withStockInvalidation(Mono<StockResult> change) {
+        return change.doOnNext(result -> result.getProducts().forEach(product -> {
+            invalidateProduct(product.getCodProduct());
+            invalidateCategory(product.getCategory());
+        }));
+    }
+
+    /**
+     * Runs the write and then invalidates the product and the category pages of its previous and new category.
+     */
+    private Mono<Product> withInvalidation(Integer id, Mono<Product> write) {
+        Mono<String> previousCategory = id == null ? Mono.empty() : delegate.getProductById(id).mapNotNull(Product::getCategory);
+        return previousCategory.defaultIfEmpty("")
+                .flatMap(oldCategory -> write.doOnNext(written -> {
+                    invalidateProduct(written.getCodProduct());
+                    invalidateCategory(oldCategory);
+                    invalidateCategory(written.getCategory());
+                }));
+    }
+
+    private void invalidateProduct(long id) {
+        CompletableFuture<Product> loading = productsById.getIfPresent(id);
+        productsById.synchronous().invalidate(id);
+        if (loading != null) dropWhenLoaded(productsById, id, loading);
+    }
+
+    private void invalidateCategory(String category) {
+        if (category == null || category.isEmpty()) return;
+        categoryPages.asMap().entrySet().removeIf(page -> {
+            if (!category.equalsIgnoreCase(page.getKey().getCategory())) return false;
+            dropWhenLoaded(categoryPages, page.getKey(), page.getValue());
+            return true;
+        });
+    }
+
+    private void invalidateCategoryPages() {
+        categoryPages.asMap().forEach((query, loading) -> dropWhenLoaded(categoryPages, query, loading));
+        categoryPages.synchronous().invalidateAll();
+    }
+
+    /**
+     * A load still in flight when a write is invalidated may have read the backend before the write: the key is
+     * dropped again once it completes, so whatever it left behind cannot be served for a whole TTL.
+     */
+    private static <K, V> void dropWhenLoaded(AsyncCache<K, V> cache, K key, CompletableFuture<V> loading) {
+        if (!loading.isDone()) loading.whenComplete((value, error) -> cache.synchronous().invalidate(key));
+    }
+
+    /**
+     * Hit, miss and eviction counters of both caches, keyed by cache name.
+     */
+    public Map<String, Map<String, Object>> cacheStats() {
+        Map<String, Map<String, Object>> stats = new LinkedHashMap<>();
+        stats.put("productsById", toMap(productsById.synchronous().stats(), productsById.synchronous().estimatedSize()));
+        stats.put("categoryPages", toMap(categoryPages.synchronous().stats(), categoryPages.synchronous().estimatedSize()));
+        return stats;
+    }
+
+    private static Map<String, Object> toMap(CacheStats stats, long size) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("size", size);
+        values.put("hits", stats.hitCount());
+        values.put("misses", stats.missCount());
+        values.put("hitRate", stats.hitRate());
+        values.put("evictions", stats.evictionCount());
+        values.put("loadFailures", stats.loadFailureCount());
+        values.put("averageLoadPenaltyNanos", stats.averageLoadPenalty());
+        return values;
+    }
+}
@@ -0,0 +1,148 @@
+package com.jesus.webflux.service;
+
+import com.jesus.webflux.metrics.ReactiveMetrics;
+import com.jesus.webflux.model.BulkItemResult;
+import com.jesus.webflux.model.CategoryStats;
+import com.jesus.webflux.model.Product;
+import com.jesus.webflux.model.ProductQuery;
+import com.jesus.webflux.model.StockLine;
+import com.jesus.webflux.model.StockResult;
+import com.jesus.webflux.store.ColumnarProductStore;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * In-memory backend for large catalogues (product.backend=columnar) on top of the {@link ColumnarProductStore}:
+ * a fraction of the heap of the default backend and faster range scans, at the cost of scanning for
+ * category and name lookups.
+ */
+@Service
+@Qualifier(ProductService.BACKEND)
+@ConditionalOnProperty(name = "product.backend", havingValue = "columnar")
+@EnableConfigurationProperties(ProductBulkProperties.class)
+public class ColumnarProductService implements ProductService {
+
+    private final ColumnarProductStore productStore;
+    private final ProductBulkProperties bulkProperties;
+    private final ReactiveMetrics reactiveMetrics;
+    private final ProductChangeFeed changeFeed;
+
+    public ColumnarProductService(ColumnarProductStore productStore, ProductBulkProperties bulkProperties, ReactiveMetrics reactiveMetrics,
+                                  ProductChangeFeed changeFeed) {
+        this.productStore = productStore;
+        this.bulkProperties = bulkProperties;
+        this.reactiveMetrics = reactiveMetrics;
+        this.changeFeed = changeFeed;
+        // Seed the store with the initial catalogue
+        ProductServiceImpl.PRODUCT_LIST.forEach(productStore::put);
+    }
+
+    @Override
+    public Mono<Product> getProductById(long id) {
+        if (id < Integer.MIN_VALUE || id > Integer.MAX_VALUE) return Mono.empty();
+        return reactiveMetrics.mono(METRICS_NAME, "getProductById", Mono.fromSupplier(() -> productStore.findById((int) id).orElse(null)));
+    }
+
+    @Override
+    public Flux<Product> getProductsByIds(List<Integer> ids) {
+        return reactiveMetrics.flux(METRICS_NAME, "getProductsByIds", Flux.defer(() -> Flux.fromIterable(productStore.findAllById(ids))));
+    }
+
+    @Override
+    public Mono<Product> addProduct(Product product) {
+        // Update the product if it already exists, otherwise insert it with a new id
+        return reactiveMetrics.mono(METRICS_NAME, "addProduct", Mono.fromSupplier(() -> product.getCodProduct() == null
+                ? changeFeed.added(productStore.insert(product))
+                : productStore.update(product).map(changeFeed::updated).orElseGet(() -> changeFeed.added(productStore.insert(product)))));
+    }
+
+    @Override
+    public Mono<Product> updateProduct(Product product) {
+        return reactiveMetrics.mono(METRICS_NAME, "updateProduct", Mono.fromSupplier(() -> productStore.update(product).map(changeFeed::updated).orElse(null)));
+    }
+
+    @Override
+    public Mono<Void> deleteProduct(int id) {
+        return reactiveMetrics.mono(METRICS_NAME, "deleteProduct", Mono.fromRunnable(() -> productStore.remove(id).ifPresent(changeFeed::deleted)));
+    }
+
+    @Override
+    public Flux<BulkItemResult> addProducts(Flux<Product> products) {
+        return reactiveMetrics.flux(METRICS_NAME, "addProducts", products.index()
+                .buffer(bulkProperties.getBatchSize())
+                .concatMap(batch -> Flux.defer(() -> {
+                    List<Product> inserted = productStore.insertAll(batch.stream().map(Tuple2::getT2).toList());
+                    inserted.forEach(changeFeed::added);
+                    return Flux.range(0, batch.size())
+                            .map(i -> BulkItemResult.of(batch.get(i).getT1(), inserted.get(i).getCodProduct(), BulkItemResult.Status.CREATED));
+                }).onErrorResume(e -> ProductServiceImpl.failed(batch, e))));
+    }
+
+    @Override
+    public Flux<BulkItemResult> updateProducts(Flux<Product> products) {
+        return reactiveMetrics.flux(METRICS_NAME, "updateProducts", products.index()
+                .buffer(bulkProperties.getBatchSize())
+                .concatMap(batch -> Flux.fromIterable(batch)
+                        .map(item -> BulkItemResult.of(item.getT1(), item.getT2().getCodProduct(),
+                                productStore.update(item.getT2()).map(changeFeed::updated).isPresent() ? BulkItemResult.Status.UPDATED : BulkItemResult.Status.NOT_FOUND))
+                        .onErrorResume(e -> ProductServiceImpl.failed(batch, e))));
+    }
+
+    @Override
+    public Mono<StockResult> reserveStock(List<StockLine> items) {
+        return reactiveMetrics.mono(METRICS_NAME, "reserveStock",
+                Mono.fromSupplier(() -> changeStock(StockChanges.deltas(items, -1), StockResult.Status.RESERVED)));
+    }
+
+    @Override
+    public Mono<StockResult> releaseStock(List<StockLine> items) {
+        return reactiveMetrics.mono(METRICS_NAME, "releaseStock",
+                Mono.fromSupplier(() -> changeStock(StockChanges.deltas(items, 1), StockResult.Status.RELEASED)));
+    }
+
+    @Override
+    public Mono<StockResult> adjustStock(int id, int delta) {
+        return reactiveMetrics.mono(METRICS_NAME, "adjustStock",
+                Mono.fromSupplier(() -> changeStock(StockChanges.delta(id, delta), StockResult.Status.ADJUSTED)));
+    }
+
+    private StockResult changeStock(Map<Integer, Integer> deltas, StockResult.Status success) {
+        StockResult result = StockChanges.apply(deltas, success, productStore::exists, productStore::adjustStock);
+        result.getProducts().forEach(changeFeed::updated);
+        return result;
+    }
+
+    @Override
+    public Flux<Product> searchProducts(ProductQuery query) {
+        return reactiveMetrics.flux(METRICS_NAME, "searchProducts", Flux.defer(() -> Flux.fromStream(productStore.query(query))));
+    }
+
+    @Override
+    public Flux<Product> suggestProducts(String text, int limit) {
+        return reactiveMetrics.flux(METRICS_NAME, "suggestProducts", Flux.defer(() -> Flux.fromIterable(productStore.suggestByName(text, limit))));
+    }
+
+    @Override
+    public Flux<CategoryStats> getCategoryStats() {
+        return reactiveMetrics.flux(METRICS_NAME, "getCategoryStats", Flux.defer(() -> Flux.fromIterable(productStore.categoryStats())));
+    }
+
+    @Override
+    public Mono<CategoryStats> getCategoryStats(String category) {
+        return reactiveMetrics.mono(METRICS_NAME, "getCategoryStats", Mono.fromSupplier(() -> productStore.categoryStats(category).orElse(null)));
+    }
+}
@@ -0,0 +1,70 @@
+package com.jesus.webflux.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.jesus.webflux.model.IdempotencyKeyReusedException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Remembers the outcome of the writes sent with an Idempotency-Key, so a client retrying after a timeout
+ * or a dropped connection gets the original outcome instead of, say, reserving the stock twice.
+ * <p>
+ * Keys live in a bounded Caffeine cache (product.stock.idempotency-*). A retry arriving while the first
+ * attempt is still running waits for it instead of running the operation again.
+ */
+@Component
+@EnableConfigurationProperties(ProductStockProperties.class)
+public class IdempotencyKeys {
+
+    private final Cache<String, Execution> executions;
+
+    public IdempotencyKeys(ProductStockProperties properties, MeterRegistry meterRegistry) {
+        this.executions = Caffeine.newBuilder()
+                .maximumSize(properties.getIdempotencyMaximumKeys())
+                .expireAfterWrite(properties.getIdempotencyTtl())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, executions, "idempotency-keys");
+    }
+
+    /**
+     * Runs the operation once per key and replays its outcome for the same key afterwards. The request
+     * identifies what the key was first used for: reusing it for a different request fails with
+     * {@link IdempotencyKeyReusedException}. Failed attempts are forgotten so they can be retried. Without a key
+     * the operation just runs.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> execute(String key, Object request, Mono<T> operation) {
+        if (key == null || key.isBlank()) return operation;
+        return Mono.defer(() -> {
+            Execution created = new Execution(request, new CompletableFuture<>());
+            Execution execution = executions.asMap().putIfAbsent(key, created);
+            if (execution == null) {
+                execution = created;
+                // Subscribed here instead of by the caller, so the outcome is recorded even if the client goes away
+                operation.subscribe(created.outcome::complete, error -> {
+                    executions.asMap().remove(key, created);
+                    created.outcome.completeExceptionally(error);
+                }, () -> created.outcome.complete(null));
+            } else if (!execution.request.equals(request)) {
+                return Mono.error(new IdempotencyKeyReusedException(key));
+            }
+            return Mono.fromFuture((CompletableFuture<T>) execution.outcome, true);
+        });
+    }
+
+    private record Execution(Object request, CompletableFuture<Object> outcome) {
+    }
+}
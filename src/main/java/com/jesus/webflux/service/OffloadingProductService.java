@@ -0,0 +1,158 @@
+package com.jesus.webflux.service;
+
+import com.jesus.webflux.model.BulkItemResult;
+import com.jesus.webflux.model.CategoryStats;
+import com.jesus.webflux.model.Product;
+import com.jesus.webflux.model.ProductQuery;
+import com.jesus.webflux.model.StockLine;
+import com.jesus.webflux.model.StockResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Runs every call of a blocking backend on a scheduler of its own, so a JDBC or file based store never
+ * stalls the Netty event loops. The backend method itself is invoked on the worker, as a blocking
+ * backend may already block while building its Mono / Flux. Bulk writes also get the incoming products
+ * on the worker, since the backend writes each batch as it arrives.
+ * <p>
+ * Publishes product.execution.active (calls running), product.execution.wait (time waiting for a worker)
+ * and product.execution.rejected (calls refused with the queue full), tagged with the execution mode.
+ */
+class OffloadingProductService implements ProductService {
+
+    static final String METRICS_NAME = "product.execution";
+
+    private final ProductService delegate;
+    private final Scheduler scheduler;
+    private final AtomicInteger active = new AtomicInteger();
+    private final Timer waitTimer;
+    private final Counter rejected;
+
+    OffloadingProductService(ProductService delegate, Scheduler scheduler, String mode, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.scheduler = scheduler;
+        Tags tags = Tags.of("mode", mode);
+        Gauge.builder(METRICS_NAME + ".active", active, AtomicInteger::get)
+                .description("Backend calls running on the execution scheduler").tags(tags).register(meterRegistry);
+        this.waitTimer = Timer.builder(METRICS_NAME + ".wait")
+                .description("Time backend calls wait for a worker").tags(tags).register(meterRegistry);
+        this.rejected = Counter.builder(METRICS_NAME + ".rejected")
+                .description("Backend calls rejected because the scheduler queue was full").tags(tags).register(meterRegistry);
+    }
+
+    @Override
+    public Mono<Product> getProductById(long id) {
+        return offload(() -> delegate.getProductById(id));
+    }
+
+    @Override
+    public Flux<Product> getProductsByIds(List<Integer> ids) {
+        return offloadMany(() -> delegate.getProductsByIds(ids));
+    }
+
+    @Override
+    public Mono<Product> addProduct(Product product) {
+        return offload(() -> delegate.addProduct(product));
+    }
+
+    @Override
+    public Mono<Product> updateProduct(Product product) {
+        return offload(() -> delegate.updateProduct(product));
+    }
+
+    @Override
+    public Mono<Void> deleteProduct(int id) {
+        return offload(() -> delegate.deleteProduct(id));
+    }
+
+    @Override
+    public Flux<BulkItemResult> addProducts(Flux<Product> products) {
+        return offloadMany(() -> delegate.addProducts(products.publishOn(scheduler)));
+    }
+
+    @Override
+    public Flux<BulkItemResult> updateProducts(Flux<Product> products) {
+        return offloadMany(() -> delegate.updateProducts(products.publishOn(scheduler)));
+    }
+
+    @Override
+    public Mono<StockResult> reserveStock(List<StockLine> items) {
+        return offload(() -> delegate.reserveStock(items));
+    }
+
+    @Override
+    public Mono<StockResult> releaseStock(List<StockLine> items) {
+        return offload(() -> delegate.releaseStock(items));
+    }
+
+    @Override
+    public Mono<StockResult> adjustStock(int id, int delta) {
+        return offload(() -> delegate.adjustStock(id, delta));
+    }
+
+    // Also the requests of the subscriber reach the backend on the worker (subscribeOn default), as pulling from a cursor may block
+    @Override
+    public Flux<Product> searchProducts(ProductQuery query) {
+        return offloadMany(() -> delegate.searchProducts(query));
+    }
+
+    @Override
+    public Flux<Product> suggestProducts(String text, int limit) {
+        return offloadMany(() -> delegate.suggestProducts(text, limit));
+    }
+
+    @Override
+    public Flux<CategoryStats> getCategoryStats() {
+        return offloadMany(delegate::getCategoryStats);
+    }
+
+    @Override
+    public Mono<CategoryStats> getCategoryStats(String category) {
+        return offload(() -> delegate.getCategoryStats(category));
+    }
+
+    private <T> Mono<T> offload(Supplier<Mono<T>> call) {
+        return Mono.defer(() -> {
+            long submittedAt = System.nanoTime();
+            return Mono.defer(() -> {
+                        started(submittedAt);
+                        return Mono.defer(call).doFinally(signal -> active.decrementAndGet());
+                    })
+                    .subscribeOn(scheduler);
+        }).doOnError(RejectedExecutionException.class, e -> rejected.increment());
+    }
+
+    private <T> Flux<T> offloadMany(Supplier<Flux<T>> call) {
+        return Flux.defer(() -> {
+            long submittedAt = System.nanoTime();
+            return Flux.defer(() -> {
+                        started(submittedAt);
+                        return Flux.defer(call).doFinally(signal -> active.decrementAndGet());
+                    })
+                    .subscribeOn(scheduler);
+        }).doOnError(RejectedExecutionException.class, e -> rejected.increment());
+    }
+
+    private void started(long submittedAt) {
+        waitTimer.record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+        active.incrementAndGet();
+    }
+}
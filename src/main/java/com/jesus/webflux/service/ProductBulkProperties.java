@@ -0,0 +1,21 @@
+package com.jesus.webflux.service;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Batching of the bulk endpoints, bound from product.bulk.*.
+ */
+@Data
+@ConfigurationProperties(prefix = "product.bulk")
+public class ProductBulkProperties {
+
+    // Products written to the backend at once (one id block / one batched statement per batch)
+    private int batchSize = 1000;
+}
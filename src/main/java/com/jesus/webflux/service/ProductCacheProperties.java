@@ -0,0 +1,31 @@
+package com.jesus.webflux.service;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Sizing of the product read-through cache, bound from product.cache.*.
+ */
+@Data
+@ConfigurationProperties(prefix = "product.cache")
+public class ProductCacheProperties {
+
+    private boolean enabled = true;
+
+    // Products cached by codProduct
+    private long maximumSize = 10_000;
+
+    // Category pages cached (each entry is one page of products)
+    private long maximumQueries = 1_000;
+
+    // Entries expire this long after being loaded, which also bounds how stale a racing load can be
+    private Duration ttl = Duration.ofMinutes(5);
+}
@@ -0,0 +1,161 @@
+package com.jesus.webflux.service;
+
+import com.jesus.webflux.model.Product;
+import com.jesus.webflux.model.ProductEvent;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Hot feed of the catalogue changes made through the product backends.
+ * <p>
+ * Events are numbered under a lock and queued; a single drain on a Reactor worker emits them, in order, into
+ * one multicast sink, so a write only pays for the enqueue whatever the number of subscribers. The sink never
+ * waits for anyone: every subscription filters the events it wants and keeps them in its own bounded buffer,
+ * and a full buffer applies the configured overflow strategy to that subscriber only. Delivery happens on a
+ * Reactor scheduler, never on the thread that made the change.
+ * <p>
+ * The latest events are kept in a ring buffer so a subscriber can resume right after the last sequence
+ * number it received. If those events are gone it gets a RESYNC event instead.
+ */
+@Component
+@EnableConfigurationProperties(ProductChangeProperties.class)
+public class ProductChangeFeed implements DisposableBean {
+
+    // Events handed over at once between the buffer of a subscriber and its delivery thread
+    private static final int PREFETCH = 32;
+
+    private final ProductChangeProperties properties;
+    private final Sinks.Many<ProductEvent> sink = Sinks.many().multicast().directBestEffort();
+    // Events numbered but not emitted yet, and the drain emitting them (running while draining is above 0)
+    private final Queue<ProductEvent> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger draining = new AtomicInteger();
+    private final Scheduler.Worker drainer = Schedulers.parallel().createWorker();
+    private final ProductEvent[] history;
+    private long sequence;
+
+    public ProductChangeFeed(ProductChangeProperties properties) {
+        this.properties = properties;
+        this.history = new ProductEvent[Math.max(1, properties.getHistorySize())];
+    }
+
+    // The publishing methods return the product so they can be chained in the write paths of the backends
+
+    public Product added(Product product) {
+        publish(ProductEvent.Type.ADDED, product);
+        return product;
+    }
+
+    public Product updated(Product product) {
+        publish(ProductEvent.Type.UPDATED, product);
+        return product;
+    }
+
+    public Product deleted(Product product) {
+        publish(ProductEvent.Type.DELETED, product);
+        return product;
+    }
+
+    public synchronized long lastSequence() {
+        return sequence;
+    }
+
+    private void publish(ProductEvent.Type type, Product product) {
+        synchronized (this) {
+            ProductEvent event = new ProductEvent(++sequence, type, product.getCodProduct(), product, Instant.now());
+            history[(int) (event.getSequence() % history.length)] = event;
+            // Queued in sequence order, under the same lock that numbers them
+            pending.offer(event);
+        }
+        if (draining.getAndIncrement() == 0) {
+            try {
+                drainer.schedule(this::drain);
+            } catch (RejectedExecutionException e) {
+                // Disposed: the write stands, its event is only kept in the history
+            }
+        }
+    }
+
+    // Only ever running once at a time: the sink gets serialised emissions
+    private void drain() {
+        int missed = 1;
+        do {
+            ProductEvent event;
+            // directBestEffort only fails when nobody is subscribed, which is fine: the event stays in the history
+            while ((event = pending.poll()) != null) sink.tryEmitNext(event);
+            missed = draining.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * Changes of the given category and/or codProducts (null or empty for all). With since, the kept
+     * events after that sequence number are replayed first, then the live ones follow without gaps or repeats.
+     */
+    public Flux<ProductEvent> events(Long since, String category, Set<Integer> ids) {
+        Predicate<ProductEvent> filter = event -> (ids == null || ids.isEmpty() || ids.contains(event.getCodProduct()))
+                && (category == null || category.equalsIgnoreCase(event.getProduct().getCategory()));
+        return Flux.defer(() -> {
+            if (since == null) return buffered(sink.asFlux().filter(filter));
+            // Connect to the live events before reading the history, so nothing published in between is lost
+            AtomicReference<Disposable> connection = new AtomicReference<>();
+            Flux<ProductEvent> live = buffered(sink.asFlux().filter(filter))
+                    .publish(PREFETCH)
+                    .autoConnect(0, connection::set);
+            List<ProductEvent> backlog = since(since);
+            long last = backlog.isEmpty() ? since : backlog.get(backlog.size() - 1).getSequence();
+            return Flux.fromIterable(backlog)
+                    .filter(event -> event.getType() == ProductEvent.Type.RESYNC || filter.test(event))
+                    .concatWith(live.filter(event -> event.getSequence() > last))
+                    .doFinally(signal -> connection.get().dispose());
+        }).publishOn(Schedulers.parallel(), PREFETCH);
+    }
+
+    private Flux<ProductEvent> buffered(Flux<ProductEvent> events) {
+        return events.onBackpressureBuffer(properties.getBufferSize(), dropped -> {
+        }, properties.getOverflow());
+    }
+
+    // Events still queued are not emitted, subscribers are going away with the context anyway
+    @Override
+    public void destroy() {
+        drainer.dispose();
+    }
+
+    /**
+     * Kept events after the given sequence number, or a single RESYNC event if some of them were overwritten
+     * or the sequence number is ahead of the feed (it was issued before a restart).
+     */
+    private synchronized List<ProductEvent> since(long since) {
+        long oldest = Math.max(1, sequence - history.length + 1);
+        if (since + 1 < oldest || since > sequence) {
+            return List.of(new ProductEvent(sequence, ProductEvent.Type.RESYNC, null, null, Instant.now()));
+        }
+        List<ProductEvent> events = new ArrayList<>((int) Math.max(0, sequence - since));
+        for (long next = Math.max(since + 1, oldest); next <= sequence; next++) {
+            events.add(history[(int) (next % history.length)]);
+        }
+        return events;
+    }
+}
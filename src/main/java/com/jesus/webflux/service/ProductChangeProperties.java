@@ -0,0 +1,33 @@
+package com.jesus.webflux.service;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import reactor.core.publisher.BufferOverflowStrategy;
+
+import java.time.Duration;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Change feed settings, bound from product.changes.*.
+ */
+@Data
+@ConfigurationProperties(prefix = "product.changes")
+public class ProductChangeProperties {
+
+    // Latest events kept to resume subscriptions from a sequence number
+    private int historySize = 10_000;
+
+    // Events buffered per subscriber that is not keeping up
+    private int bufferSize = 1_024;
+
+    // What happens when that buffer is full: DROP_OLDEST, DROP_LATEST or ERROR (the subscription ends and the client resumes)
+    private BufferOverflowStrategy overflow = BufferOverflowStrategy.DROP_OLDEST;
+
+    // Interval of the SSE keep-alive comments on idle subscriptions
+    private Duration heartbeat = Duration.ofSeconds(15);
+}
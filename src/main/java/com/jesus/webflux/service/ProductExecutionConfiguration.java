@@ -0,0 +1,119 @@
+package com.jesus.webflux.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.util.ClassUtils;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Execution mode of the product backend (product.execution.mode). With bounded-elastic or virtual-threads
+ * the backend bean (the one qualified {@link ProductService#BACKEND}) is wrapped in an
+ * {@link OffloadingProductService}, below the cache, so cache hits still answer on the event loop.
+ * <p>
+ * Virtual threads come from Reactor's thread-per-task bounded elastic scheduler. The sources stay on
+ * Java 17 (the virtual thread factory is looked up at runtime), so the same jar runs virtual threads on
+ * a Java 21 JVM and falls back to platform threads before it. Build for 21 with the java21 Maven profile.
+ * <p>
+ * With a product.execution.batch-window the backend is also wrapped in a {@link BatchingProductService}, which
+ * answers the lookups by id of the same window with one call to the backend.
+ */
+@Slf4j
+@Configuration(proxyBeanMethods = false)
+@EnableConfigurationProperties(ProductExecutionProperties.class)
+public class ProductExecutionConfiguration {
+
+    private static final String THREAD_PREFIX = "product-backend";
+
+    // Static: post processors are created before the regular beans, properties and registry are looked up lazily
+    @Bean
+    static BackendExecutionPostProcessor backendExecutionPostProcessor(ObjectProvider<ProductExecutionProperties> properties,
+                                                                       ObjectProvider<MeterRegistry> meterRegistry) {
+        return new BackendExecutionPostProcessor(properties, meterRegistry);
+    }
+
+    static final class BackendExecutionPostProcessor implements BeanPostProcessor, DisposableBean {
+
+        private final ObjectProvider<ProductExecutionProperties> properties;
+        private final ObjectProvider<MeterRegistry> meterRegistry;
+        private Scheduler scheduler;
+
+        BackendExecutionPostProcessor(ObjectProvider<ProductExecutionProperties> properties, ObjectProvider<MeterRegistry> meterRegistry) {
+            this.properties = properties;
+            this.meterRegistry = meterRegistry;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (!(bean instanceof ProductService backend) || !isBackend(bean)) return bean;
+            ProductExecutionProperties execution = properties.getObject();
+            ProductService service = execution.getMode() == ProductExecutionProperties.Mode.EVENT_LOOP ? backend : offload(backend, execution);
+            if (!execution.isBatching()) return service;
+            // Outside the offloading, so a whole batch takes a single worker
+            return new BatchingProductService(service, execution.getBatchWindow(), execution.getMaxBatchSize(),
+                    Schedulers.parallel(), meterRegistry.getObject());
+        }
+
+        private ProductService offload(ProductService backend, ProductExecutionProperties execution) {
+            Optional<ThreadFactory> virtualThreads = execution.getMode() == ProductExecutionProperties.Mode.VIRTUAL_THREADS
+                    ? virtualThreadFactory(THREAD_PREFIX + "-vt-") : Optional.empty();
+            if (execution.getMode() == ProductExecutionProperties.Mode.VIRTUAL_THREADS && virtualThreads.isEmpty()) {
+                log.warn("product.execution.mode=virtual-threads needs Java 21, running the backend on platform threads");
+            }
+            scheduler = virtualThreads
+                    .map(factory -> newThreadPerTaskScheduler(execution, factory))
+                    .orElseGet(() -> Schedulers.newBoundedElastic(execution.getMaxConcurrency(), execution.getMaxQueued(), THREAD_PREFIX, 60, true));
+            String mode = virtualThreads.isPresent() ? "virtual-threads" : "bounded-elastic";
+            return new OffloadingProductService(backend, scheduler, mode, meterRegistry.getObject());
+        }
+
+        @Override
+        public void destroy() {
+            if (scheduler != null) scheduler.dispose();
+        }
+
+        private static boolean isBackend(Object bean) {
+            Qualifier qualifier = AnnotationUtils.findAnnotation(ClassUtils.getUserClass(bean), Qualifier.class);
+            return qualifier != null && ProductService.BACKEND.equals(qualifier.value());
+        }
+    }
+
+    private static Scheduler newThreadPerTaskScheduler(ProductExecutionProperties execution, ThreadFactory factory) {
+        Scheduler scheduler = new Schedulers.Factory() {
+        }.newThreadPerTaskBoundedElastic(execution.getMaxConcurrency(), execution.getMaxQueued(), factory);
+        scheduler.init();
+        return scheduler;
+    }
+
+    /**
+     * Thread.ofVirtual().name(prefix, 1).factory() on Java 21+, empty on older JVMs.
+     */
+    static Optional<ThreadFactory> virtualThreadFactory(String prefix) {
+        if (Runtime.version().feature() < 21) return Optional.empty();
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 1L);
+            return Optional.of((ThreadFactory) builderType.getMethod("factory").invoke(builder));
+        } catch (ReflectiveOperationException e) {
+            return Optional.empty();
+        }
+    }
+}
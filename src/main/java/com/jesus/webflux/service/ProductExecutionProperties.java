@@ -0,0 +1,47 @@
+package com.jesus.webflux.service;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Where the product backend calls run and how lookups by id are batched, bound from product.execution.*.
+ */
+@Data
+@ConfigurationProperties(prefix = "product.execution")
+public class ProductExecutionProperties {
+
+    public enum Mode {
+        // In the calling thread, usually a Netty event loop: only for non-blocking backends
+        EVENT_LOOP,
+        // On a bounded pool of platform threads
+        BOUNDED_ELASTIC,
+        // On a new virtual thread per call (Java 21+, bounded-elastic on older JVMs)
+        VIRTUAL_THREADS
+    }
+
+    private Mode mode = Mode.EVENT_LOOP;
+
+    // Backend calls running at the same time, the rest wait in the queue
+    private int maxConcurrency = 256;
+
+    // Calls waiting per worker before new ones are rejected (RejectedExecutionException)
+    private int maxQueued = 1_000;
+
+    // Lookups by id arriving within this window go to the backend together (BatchingProductService), 0 for one call per lookup
+    private Duration batchWindow = Duration.ZERO;
+
+    // Lookups per batch, a full batch goes to the backend before its window ends
+    private int maxBatchSize = 128;
+
+    public boolean isBatching() {
+        return batchWindow != null && batchWindow.compareTo(Duration.ZERO) > 0 && maxBatchSize > 1;
+    }
+}
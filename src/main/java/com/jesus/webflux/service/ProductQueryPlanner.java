@@ -0,0 +1,218 @@
+package com.jesus.webflux.service;
+
+import com.jesus.webflux.model.Product;
+import com.jesus.webflux.model.ProductQuery;
+import com.jesus.webflux.store.ProductStore;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Turns a {@link ProductQuery} into a single pass over the {@link ProductStore}.
+ * <p>
+ * The planner picks the most selective access path (name or category index, price or stock range,
+ * or a full scan), filters it with one predicate holding every criterion, and only sorts when the
+ * requested order differs from the order of that path. With a limit, sorting keeps just the
+ * top offset + limit products instead of the whole result.
+ */
+@Component
+public class ProductQueryPlanner {
+
+    enum AccessPath {FULL_SCAN, NAME, CATEGORY, PRICE_RANGE, STOCK_RANGE}
+
+    private final ProductStore productStore;
+
+    public ProductQueryPlanner(ProductStore productStore) {
+        this.productStore = productStore;
+    }
+
+    /**
+     * Runs the query. The returned stream is lazy unless a sort has to be applied.
+     *
+     * @throws IllegalArgumentException if sort, offset or limit are not valid
+     */
+    public Stream<Product> execute(ProductQuery query) {
+        Criteria criteria = Criteria.of(query);
+        String sort = query.getSort();
+        if (query.getAfter() != null) {
+            // Keyset pagination only makes sense in codProduct order
+            if (sort == null || sort.isBlank()) sort = "codProduct";
+            if (!"codProduct".equals(sort)) throw new IllegalArgumentException("after can only be used when sorting by codProduct");
+        }
+        Comparator<Product> order = comparator(sort);
+        long offset = query.getOffset() == null ? 0 : query.getOffset();
+        if (offset < 0) throw new IllegalArgumentException("offset must not be negative");
+        if (query.getLimit() != null && query.getLimit() < 0) throw new IllegalArgumentException("limit must not be negative");
+
+        AccessPath path = choosePath(criteria);
+        Stream<Product> candidates = scan(path, criteria).filter(criteria);
+
+        if (order != null && !isNaturalOrder(path, sort)) {
+            if (query.getLimit() == null) return candidates.sorted(order).skip(offset);
+            return topN(candidates, order, (int) Math.min(Integer.MAX_VALUE, offset + query.getLimit())).skip(offset);
+        }
+        candidates = candidates.skip(offset);
+        return query.getLimit() == null ? candidates : candidates.limit(query.getLimit());
+    }
+
+    /**
+     * Picks the access path that reads the fewest products. A lone index is taken without counting it. Otherwise
+     * each count stops at the best one found so far, so the cost of planning is bounded by the smallest candidate
+     * set. Paths are compared by their whole candidate sets even when a limit would let a lazy read stop early:
+     * the other criteria may filter out most of the path, which then has to be walked to the end to fill the page.
+     */
+    AccessPath choosePath(Criteria criteria) {
+        List<AccessPath> paths = new ArrayList<>(4);
+        if (criteria.name != null) paths.add(AccessPath.NAME);
+        if (criteria.category != null) paths.add(AccessPath.CATEGORY);
+        if (criteria.hasPriceRange()) paths.add(AccessPath.PRICE_RANGE);
+        if (criteria.hasStockRange()) paths.add(AccessPath.STOCK_RANGE);
+        if (paths.isEmpty()) return AccessPath.FULL_SCAN;
+        if (paths.size() == 1) return paths.get(0);
+
+        AccessPath best = AccessPath.FULL_SCAN;
+        int bestCount = productStore.size();
+        for (AccessPath path : paths) {
+            int count = count(path, criteria, bestCount);
+            if (count < bestCount) {
+                best = path;
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+
+    private int count(AccessPath path, Criteria criteria, int limit) {
+        return switch (path) {
+            case NAME -> productStore.countByName(criteria.name, limit);
+            case CATEGORY -> productStore.countByCategory(criteria.category, limit);
+            case PRICE_RANGE -> productStore.countByPriceRange(criteria.minPrice, criteria.maxPrice, limit);
+            case STOCK_RANGE -> productStore.countByStockRange(criteria.minStock, criteria.maxStock, limit);
+            case FULL_SCAN -> productStore.size();
+        };
+    }
+
+    private Stream<Product> scan(AccessPath path, Criteria criteria) {
+        return switch (path) {
+            case NAME -> criteria.hasCursor
+                    ? productStore.findByNameAfter(criteria.name, criteria.after)
+                    : productStore.findByName(criteria.name);
+            case CATEGORY -> criteria.hasCursor
+                    ? productStore.findByCategoryAfter(criteria.category, criteria.after)
+                    : productStore.findByCategory(criteria.category);
+            case PRICE_RANGE -> productStore.findByPriceRange(criteria.minPrice, criteria.maxPrice);
+            case STOCK_RANGE -> productStore.findByStockRange(criteria.minStock, criteria.maxStock);
+            case FULL_SCAN -> criteria.hasCursor ? productStore.findAllAfter(criteria.after) : productStore.findAll();
+        };
+    }
+
+    private static boolean isNaturalOrder(AccessPath path, String sort) {
+        return switch (path) {
+            case FULL_SCAN, NAME, CATEGORY -> "codProduct".equals(sort);
+            case PRICE_RANGE -> "unitPrice".equals(sort);
+            case STOCK_RANGE -> "stock".equals(sort);
+        };
+    }
+
+    private static Comparator<Product> comparator(String sort) {
+        if (sort == null || sort.isBlank()) return null;
+        boolean descending = sort.startsWith("-");
+        String field = descending ? sort.substring(1) : sort;
+        Comparator<Product> byId = Comparator.comparing(Product::getCodProduct);
+        Comparator<Product> comparator = switch (field) {
+            case "codProduct" -> byId;
+            case "name" -> Comparator.comparing(Product::getName, Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER)).thenComparing(byId);
+            case "unitPrice" -> Comparator.comparingDouble(Product::getUnitPrice).thenComparing(byId);
+            case "stock" -> Comparator.comparingInt(Product::getStock).thenComparing(byId);
+            default -> throw new IllegalArgumentException("Unknown sort field: " + field);
+        };
+        return descending ? comparator.reversed() : comparator;
+    }
+
+    /**
+     * Keeps the first n products in the given order using a bounded heap.
+     */
+    private static Stream<Product> topN(Stream<Product> candidates, Comparator<Product> order, int n) {
+        if (n == 0) return Stream.empty();
+        PriorityQueue<Product> heap = new PriorityQueue<>(Math.min(n, 1024), order.reversed());
+        candidates.forEach(product -> {
+            if (heap.size() < n) {
+                heap.add(product);
+            } else if (order.compare(product, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(product);
+            }
+        });
+        List<Product> result = new ArrayList<>(heap);
+        result.sort(order);
+        return result.stream();
+    }
+
+    /**
+     * All the criteria of a query as primitives, so matching a product does not unbox or allocate.
+     */
+    static final class Criteria implements Predicate<Product> {
+
+        final String name;
+        final String category;
+        final double minPrice;
+        final double maxPrice;
+        final int minStock;
+        final int maxStock;
+        final boolean hasCursor;
+        final int after;
+
+        private Criteria(String name, String category, double minPrice, double maxPrice, int minStock, int maxStock,
+                         boolean hasCursor, int after) {
+            this.name = name;
+            this.category = category;
+            this.minPrice = minPrice;
+            this.maxPrice = maxPrice;
+            this.minStock = minStock;
+            this.maxStock = maxStock;
+            this.hasCursor = hasCursor;
+            this.after = after;
+        }
+
+        static Criteria of(ProductQuery query) {
+            return new Criteria(
+                    query.getName(),
+                    query.getCategory() == null ? null : query.getCategory().toLowerCase(Locale.ROOT),
+                    query.getMinPrice() == null ? Double.NEGATIVE_INFINITY : query.getMinPrice(),
+                    query.getMaxPrice() == null ? Double.POSITIVE_INFINITY : query.getMaxPrice(),
+                    query.getMinStock() == null ? Integer.MIN_VALUE : query.getMinStock(),
+                    query.getMaxStock() == null ? Integer.MAX_VALUE : query.getMaxStock(),
+                    query.getAfter() != null,
+                    query.getAfter() == null ? 0 : query.getAfter());
+        }
+
+        boolean hasPriceRange() {
+            return minPrice != Double.NEGATIVE_INFINITY || maxPrice != Double.POSITIVE_INFINITY;
+        }
+
+        boolean hasStockRange() {
+            return minStock != Integer.MIN_VALUE || maxStock != Integer.MAX_VALUE;
+        }
+
+        @Override
+        public boolean test(Product product) {
+            return (name == null || name.equalsIgnoreCase(product.getName()))
+                    && (category == null || category.equalsIgnoreCase(product.getCategory()))
+                    && product.getUnitPrice() >= minPrice && product.getUnitPrice() <= maxPrice
+                    && product.getStock() >= minStock && product.getStock() <= maxStock
+                    && (!hasCursor || product.getCodProduct() > after);
+        }
+    }
+}
@@ -1,9 +1,16 @@
 package com.jesus.webflux.service;
 
+import com.jesus.webflux.model.BulkItemResult;
+import com.jesus.webflux.model.CategoryStats;
 import com.jesus.webflux.model.Product;
+import com.jesus.webflux.model.ProductQuery;
+import com.jesus.webflux.model.StockLine;
+import com.jesus.webflux.model.StockResult;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.util.List;
+
 /**
  * Author Jesús Fdez. Caraballo
  * jesus.fdez.caraballo@gmail.com
@@ -11,37 +18,130 @@ import reactor.core.publisher.Mono;
  */
 public interface ProductService {
 
-    Mono<Product> getProductById(long id);
-
-    Mono<Product> addProduct(Product product);
-
-    Mono<Product> updateProduct(Product product);
-
-    void deleteProduct(int id);
-
-    Flux<Product> getAllProducts();
-
-    Flux<Product> getProductsByCategory(String category);
+    // Qualifier of the implementation that actually stores the products (decorators such as the cache wrap it)
+    String BACKEND = "productBackend";
 
-    Flux<Product> getProductsByPriceRange(double minPrice, double maxPrice);
+    // Meter name prefix of the backend operations (product.service.flow.duration, ...)
+    String METRICS_NAME = "product.service";
 
-    Flux<Product> getProductsByStock(int minStock, int maxStock);
-
-    Flux<Product> getProductsByName(String name);
-
-    Flux<Product> getProductsByNameAndCategory(String name, String category);
-
-    Flux<Product> getProductsByNameAndPriceRange(String name, double minPrice, double maxPrice);
-
-    Flux<Product> getProductsByNameAndStock(String name, int minStock, int maxStock);
-
-    Flux<Product> getProductsByCategoryAndPriceRange(String category, double minPrice, double maxPrice);
+    Mono<Product> getProductById(long id);
 
-    Flux<Product> getProductsByCategoryAndStock(String category, int minStock, int maxStock);
+    /**
+     * Looks up all the codProducts in one access to the backend instead of one per id. Emits the products in
+     * request order, skipping unknown ids; a repeated id is emitted once.
+     */
+    Flux<Product> getProductsByIds(List<Integer> ids);
 
-    Flux<Product> getProductsByPriceRangeAndStock(double minPrice, double maxPrice, int minStock, int maxStock);
+    Mono<Product> addProduct(Product product);
 
-    Flux<Product> getProductsByNameAndCategoryAndPriceRange(String name, String category, double minPrice, double maxPrice);
+    Mono<Product> updateProduct(Product product);
 
+    Mono<Void> deleteProduct(int id);
+
+    /**
+     * Inserts every product with a new codProduct, writing them in batches.
+     * Emits one result per product, in request order.
+     */
+    Flux<BulkItemResult> addProducts(Flux<Product> products);
+
+    /**
+     * Overwrites existing products in batches. Unknown codProducts are reported as NOT_FOUND.
+     */
+    Flux<BulkItemResult> updateProducts(Flux<Product> products);
+
+    /**
+     * Takes the units of every item out of stock, all or nothing: a stock never goes below zero, however
+     * many requests compete for the same products. Repeated products are added up.
+     */
+    Mono<StockResult> reserveStock(List<StockLine> items);
+
+    /**
+     * Puts the units of every item back in stock (a cancelled reservation), all or nothing.
+     */
+    Mono<StockResult> releaseStock(List<StockLine> items);
+
+    /**
+     * Adds delta units to the stock of one product (negative to take them out, e.g. a stock count
+     * correction), never leaving it below zero.
+     */
+    Mono<StockResult> adjustStock(int id, int delta);
+
+    /**
+     * Runs an arbitrary combination of filters in a single pass. The finders below are shortcuts
+     * for the most common queries, so backends only have to implement this one.
+     */
+    Flux<Product> searchProducts(ProductQuery query);
+
+    /**
+     * Typeahead by name, ignoring accents and case: the last word of the text is matched as a prefix.
+     * Emits at most limit products, best matches first.
+     */
+    Flux<Product> suggestProducts(String text, int limit);
+
+    /**
+     * Statistics of every category (number of products, total stock, stock value and unit prices), in category
+     * order with the products without category last. Categories are case-insensitive.
+     */
+    Flux<CategoryStats> getCategoryStats();
+
+    /**
+     * Statistics of one category, case-insensitive. Completes empty if it holds no product.
+     */
+    Mono<CategoryStats> getCategoryStats(String category);
+
+    /**
+     * Statistics of the whole catalogue, added up from those of the categories.
+     */
+    default Mono<CategoryStats> getCatalogueStats() {
+        return getCategoryStats().reduce(CategoryStats.empty(null), (total, stats) -> CategoryStats.combine(null, total, stats));
+    }
+
+    default Flux<Product> getAllProducts() {
+        return searchProducts(new ProductQuery());
+    }
+
+    default Flux<Product> getProductsByCategory(String category) {
+        return searchProducts(ProductQuery.builder().category(category).build());
+    }
+
+    default Flux<Product> getProductsByPriceRange(double minPrice, double maxPrice) {
+        return searchProducts(ProductQuery.builder().minPrice(minPrice).maxPrice(maxPrice).build());
+    }
+
+    default Flux<Product> getProductsByStock(int minStock, int maxStock) {
+        return searchProducts(ProductQuery.builder().minStock(minStock).maxStock(maxStock).build());
+    }
+
+    default Flux<Product> getProductsByName(String name) {
+        return searchProducts(ProductQuery.builder().name(name).build());
+    }
+
+    default Flux<Product> getProductsByNameAndCategory(String name, String category) {
+        return searchProducts(ProductQuery.builder().name(name).category(category).build());
+    }
+
+    default Flux<Product> getProductsByNameAndPriceRange(String name, double minPrice, double maxPrice) {
+        return searchProducts(ProductQuery.builder().name(name).minPrice(minPrice).maxPrice(maxPrice).build());
+    }
+
+    default Flux<Product> getProductsByNameAndStock(String name, int minStock, int maxStock) {
+        return searchProducts(ProductQuery.builder().name(name).minStock(minStock).maxStock(maxStock).build());
+    }
+
+    default Flux<Product> getProductsByCategoryAndPriceRange(String category, double minPrice, double maxPrice) {
+        return searchProducts(ProductQuery.builder().category(category).minPrice(minPrice).maxPrice(maxPrice).build());
+    }
+
+    default Flux<Product> getProductsByCategoryAndStock(String category, int minStock, int maxStock) {
+        return searchProducts(ProductQuery.builder().category(category).minStock(minStock).maxStock(maxStock).build());
+    }
+
+    default Flux<Product> getProductsByPriceRangeAndStock(double minPrice, double maxPrice, int minStock, int maxStock) {
+        return searchProducts(ProductQuery.builder().minPrice(minPrice).maxPrice(maxPrice).minStock(minStock).maxStock(maxStock).build());
+    }
+
+    default Flux<Product> getProductsByNameAndCategoryAndPriceRange(String name, String category, double minPrice, double maxPrice) {
+        return searchProducts(ProductQuery.builder().name(name).category(category).minPrice(minPrice).maxPrice(maxPrice).build());
+    }
 
 }
@@ -1,27 +1,43 @@
 package com.jesus.webflux.service;
 
+import com.jesus.webflux.metrics.ReactiveMetrics;
+import com.jesus.webflux.model.BulkItemResult;
+import com.jesus.webflux.model.CategoryStats;
 import com.jesus.webflux.model.Product;
+import com.jesus.webflux.model.ProductQuery;
+import com.jesus.webflux.model.StockLine;
+import com.jesus.webflux.model.StockResult;
+import com.jesus.webflux.store.ProductStore;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
 
-import java.util.Arrays;
 import java.util.List;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 /**
  * Author Jesús Fdez. Caraballo
  * jesus.fdez.caraballo@gmail.com
  * Created on abr - 2025
  */
-@Transactional
+/**
+ * In-memory backend (default, product.backend=memory) on top of the {@link ProductStore}.
+ * <p>
+ * With product.persistence.enabled the store is loaded from disk on startup and every write completes
+ * once the store reports it durable (see {@link ProductStore#durable()}).
+ */
 @Service
+@Qualifier(ProductService.BACKEND)
+@ConditionalOnProperty(name = "product.backend", havingValue = "memory", matchIfMissing = true)
+@EnableConfigurationProperties(ProductBulkProperties.class)
 public class ProductServiceImpl implements ProductService {
 
 
-    private static final List<Product> PRODUCT_LIST = Arrays.asList(
+    static final List<Product> PRODUCT_LIST = List.of(
             new Product(100, "Azúcar", "Alimentación", 1.10, 20),
             new Product(101, "Leche", "Alimentación", 1.20, 15),
             new Product(102, "Jabón", "Limpieza", 0.89, 30),
@@ -31,135 +47,129 @@ public class ProductServiceImpl implements ProductService {
             new Product(106, "Fregona", "Limpieza", 3.40, 6),
             new Product(107, "Detergente", "Limpieza", 8.7, 12));
 
+    private final ProductStore productStore;
+    private final ProductQueryPlanner queryPlanner;
+    private final ProductBulkProperties bulkProperties;
+    private final ReactiveMetrics reactiveMetrics;
+    private final ProductChangeFeed changeFeed;
 
-    @Override
-    public Mono<Product> getProductById(long id) {
-        return Flux.fromIterable(PRODUCT_LIST).filter(product -> product.getCodProduct() == id)
-                .next()
-                .switchIfEmpty(Mono.just(new Product()));
-
+    public ProductServiceImpl(ProductStore productStore, ProductQueryPlanner queryPlanner, ProductBulkProperties bulkProperties,
+                              ReactiveMetrics reactiveMetrics, ProductChangeFeed changeFeed) {
+        this.productStore = productStore;
+        this.queryPlanner = queryPlanner;
+        this.bulkProperties = bulkProperties;
+        this.reactiveMetrics = reactiveMetrics;
+        this.changeFeed = changeFeed;
+        // Seed the store with the initial catalogue, unless it was restored from disk
+        if (productStore.size() == 0) PRODUCT_LIST.forEach(productStore::put);
+    }
 
 
-        /*
-        return Mono.justOrEmpty(PRODUCT_LIST.stream()
-                .filter(product -> product.getCodProduct() == id)
-                .findFirst());
+    @Override
+    public Mono<Product> getProductById(long id) {
+        if (id < Integer.MIN_VALUE || id > Integer.MAX_VALUE) return Mono.empty();
+        return reactiveMetrics.mono(METRICS_NAME, "getProductById", Mono.justOrEmpty(productStore.findById((int) id)));
+    }
 
-         */
+    @Override
+    public Flux<Product> getProductsByIds(List<Integer> ids) {
+        return reactiveMetrics.flux(METRICS_NAME, "getProductsByIds", Flux.defer(() -> Flux.fromIterable(productStore.findAllById(ids))));
     }
 
     @Override
     public Mono<Product> addProduct(Product product) {
-        try {
-            if (PRODUCT_LIST.stream().anyMatch(p -> p.getCodProduct() == product.getCodProduct())) {
-                // Update existing product  on the list
-                PRODUCT_LIST.stream()
-                        .filter(p -> p.getCodProduct() == product.getCodProduct())
-                        .findFirst()
-                        .ifPresent(p -> {
-                            p.setName(product.getName());
-                            p.setCategory(product.getCategory());
-                            p.setUnitPrice(product.getUnitPrice());
-                            p.setStock(product.getStock());
-                        });
-            } else {
-                // Get the last product id
-                int lastId = PRODUCT_LIST.stream()
-                        .mapToInt(Product::getCodProduct)
-                        .max()
-                        .orElse(0);
-                // Set the new product id
-                product.setCodProduct(lastId + 1);
-                PRODUCT_LIST.add(product);
-            }
-        } catch (Exception e) {
-            return Mono.error(e);
-        }
-        return Mono.just(product);
+        // Update the product if it already exists, otherwise insert it with a new id
+        return reactiveMetrics.mono(METRICS_NAME, "addProduct", durable(Mono.fromSupplier(() -> product.getCodProduct() == null
+                ? changeFeed.added(productStore.insert(product))
+                : productStore.update(product).map(changeFeed::updated).orElseGet(() -> changeFeed.added(productStore.insert(product))))));
     }
 
     @Override
     public Mono<Product> updateProduct(Product product) {
-        return Mono.justOrEmpty(PRODUCT_LIST.stream()
-                .filter(p -> p.getCodProduct() == product.getCodProduct())
-                .findFirst()
-                .map(p -> {
-                    p.setName(product.getName());
-                    p.setCategory(product.getCategory());
-                    p.setUnitPrice(product.getUnitPrice());
-                    p.setStock(product.getStock());
-                    return p;
-                }));
+        return reactiveMetrics.mono(METRICS_NAME, "updateProduct", durable(Mono.fromSupplier(() -> productStore.update(product).map(changeFeed::updated).orElse(null))));
     }
 
     @Override
-    public void deleteProduct(int id) {
-        PRODUCT_LIST.removeIf(product -> product.getCodProduct() == id);
+    public Mono<Void> deleteProduct(int id) {
+        return reactiveMetrics.mono(METRICS_NAME, "deleteProduct", Mono.fromRunnable(() -> productStore.remove(id).ifPresent(changeFeed::deleted))
+                .then(Mono.fromFuture(productStore::durable)));
     }
 
     @Override
-    public Flux<Product> getAllProducts() {
-        // return Flux.fromIterable(PRODUCT_LIST);
-        return Flux.fromIterable(PRODUCT_LIST).delayElements(java.time.Duration.ofMillis(500));
+    public Flux<BulkItemResult> addProducts(Flux<Product> products) {
+        return reactiveMetrics.flux(METRICS_NAME, "addProducts", products.index()
+                .buffer(bulkProperties.getBatchSize())
+                .concatMap(batch -> Flux.defer(() -> {
+                    List<Product> inserted = productStore.insertAll(batch.stream().map(Tuple2::getT2).toList());
+                    inserted.forEach(changeFeed::added);
+                    return Mono.fromFuture(productStore::durable).thenMany(Flux.range(0, batch.size())
+                            .map(i -> BulkItemResult.of(batch.get(i).getT1(), inserted.get(i).getCodProduct(), BulkItemResult.Status.CREATED)));
+                }).onErrorResume(e -> failed(batch, e))));
     }
 
     @Override
-    public Flux<Product> getProductsByCategory(String category) {
-        Predicate<Product> predicate = product -> product.getCategory().equalsIgnoreCase(category);
-        return Flux.fromIterable(PRODUCT_LIST).filter(predicate).delayElements(java.time.Duration.ofMillis(500));
+    public Flux<BulkItemResult> updateProducts(Flux<Product> products) {
+        return reactiveMetrics.flux(METRICS_NAME, "updateProducts", products.index()
+                .buffer(bulkProperties.getBatchSize())
+                .concatMap(batch -> Flux.fromIterable(batch)
+                        .map(item -> BulkItemResult.of(item.getT1(), item.getT2().getCodProduct(),
+                                productStore.update(item.getT2()).map(changeFeed::updated).isPresent() ? BulkItemResult.Status.UPDATED : BulkItemResult.Status.NOT_FOUND))
+                        .collectList()
+                        // One durability wait per batch
+                        .flatMapMany(results -> Mono.fromFuture(productStore::durable).thenMany(Flux.fromIterable(results)))
+                        .onErrorResume(e -> failed(batch, e))));
     }
 
     @Override
-    public Flux<Product> getProductsByPriceRange(double minPrice, double maxPrice) {
-        Predicate<Product> predicate = product -> product.getUnitPrice() >= minPrice && product.getUnitPrice() <= maxPrice;
-        return Flux.fromIterable(PRODUCT_LIST).filter(predicate).delayElements(java.time.Duration.ofMillis(500));
+    public Mono<StockResult> reserveStock(List<StockLine> items) {
+        return reactiveMetrics.mono(METRICS_NAME, "reserveStock",
+                durable(Mono.fromSupplier(() -> changeStock(StockChanges.deltas(items, -1), StockResult.Status.RESERVED))));
     }
 
     @Override
-    public Flux<Product> getProductsByStock(int minStock, int maxStock) {
-        Predicate<Product> predicate = product -> product.getStock() >= minStock && product.getStock() <= maxStock;
-        return Flux.fromIterable(PRODUCT_LIST).filter(predicate).delayElements(java.time.Duration.ofMillis(500));
+    public Mono<StockResult> releaseStock(List<StockLine> items) {
+        return reactiveMetrics.mono(METRICS_NAME, "releaseStock",
+                durable(Mono.fromSupplier(() -> changeStock(StockChanges.deltas(items, 1), StockResult.Status.RELEASED))));
     }
 
     @Override
-    public Flux<Product> getProductsByName(String name) {
-        Predicate<Product> predicate = product -> product.getName().equalsIgnoreCase(name);
-        return Flux.fromIterable(PRODUCT_LIST).filter(predicate).delayElements(java.time.Duration.ofMillis(500));
+    public Mono<StockResult> adjustStock(int id, int delta) {
+        return reactiveMetrics.mono(METRICS_NAME, "adjustStock",
+                durable(Mono.fromSupplier(() -> changeStock(StockChanges.delta(id, delta), StockResult.Status.ADJUSTED))));
     }
 
-    @Override
-    public Flux<Product> getProductsByNameAndCategory(String name, String category) {
-        Predicate<Product> predicate = product -> product.getName().equalsIgnoreCase(name) && product.getCategory().equalsIgnoreCase(category);
-        return Flux.fromIterable(PRODUCT_LIST).filter(predicate).delayElements(java.time.Duration.ofMillis(500));
+    private StockResult changeStock(Map<Integer, Integer> deltas, StockResult.Status success) {
+        StockResult result = StockChanges.apply(deltas, success, productStore::exists, productStore::adjustStock);
+        result.getProducts().forEach(changeFeed::updated);
+        return result;
     }
 
-    @Override
-    public Flux<Product> getProductsByNameAndPriceRange(String name, double minPrice, double maxPrice) {
-        return null;
+    // Emits the result of the write once the store has made it durable
+    private <T> Mono<T> durable(Mono<T> write) {
+        return write.flatMap(result -> Mono.fromFuture(productStore::durable).thenReturn(result));
     }
 
-    @Override
-    public Flux<Product> getProductsByNameAndStock(String name, int minStock, int maxStock) {
-        return null;
+    static Flux<BulkItemResult> failed(List<Tuple2<Long, Product>> batch, Throwable error) {
+        return Flux.fromIterable(batch).map(item -> BulkItemResult.failed(item.getT1(), item.getT2().getCodProduct(), error));
     }
 
     @Override
-    public Flux<Product> getProductsByCategoryAndPriceRange(String category, double minPrice, double maxPrice) {
-        return null;
+    public Flux<Product> searchProducts(ProductQuery query) {
+        return reactiveMetrics.flux(METRICS_NAME, "searchProducts", Flux.defer(() -> Flux.fromStream(queryPlanner.execute(query))));
     }
 
     @Override
-    public Flux<Product> getProductsByCategoryAndStock(String category, int minStock, int maxStock) {
-        return null;
+    public Flux<Product> suggestProducts(String text, int limit) {
+        return reactiveMetrics.flux(METRICS_NAME, "suggestProducts", Flux.defer(() -> Flux.fromIterable(productStore.suggestByName(text, limit))));
     }
 
     @Override
-    public Flux<Product> getProductsByPriceRangeAndStock(double minPrice, double maxPrice, int minStock, int maxStock) {
-        return null;
+    public Flux<CategoryStats> getCategoryStats() {
+        return reactiveMetrics.flux(METRICS_NAME, "getCategoryStats", Flux.defer(() -> Flux.fromIterable(productStore.categoryStats())));
     }
 
     @Override
-    public Flux<Product> getProductsByNameAndCategoryAndPriceRange(String name, String category, double minPrice, double maxPrice) {
-        return null;
+    public Mono<CategoryStats> getCategoryStats(String category) {
+        return reactiveMetrics.mono(METRICS_NAME, "getCategoryStats", Mono.fromSupplier(() -> productStore.categoryStats(category).orElse(null)));
     }
 }
@@ -0,0 +1,26 @@
+package com.jesus.webflux.service;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Stock endpoint settings, bound from product.stock.*.
+ */
+@Data
+@ConfigurationProperties(prefix = "product.stock")
+public class ProductStockProperties {
+
+    // Idempotency-Key outcomes remembered at most
+    private long idempotencyMaximumKeys = 100_000;
+
+    // How long a client may retry a stock request with the same Idempotency-Key
+    private Duration idempotencyTtl = Duration.ofHours(24);
+}
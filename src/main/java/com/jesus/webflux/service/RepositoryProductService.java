@@ -0,0 +1,185 @@
+package com.jesus.webflux.service;
+
+import com.jesus.webflux.metrics.ReactiveMetrics;
+import com.jesus.webflux.model.BulkItemResult;
+import com.jesus.webflux.model.CategoryStats;
+import com.jesus.webflux.model.InsufficientStockException;
+import com.jesus.webflux.model.Product;
+import com.jesus.webflux.model.ProductQuery;
+import com.jesus.webflux.model.StockLine;
+import com.jesus.webflux.model.StockResult;
+import com.jesus.webflux.repository.ProductRepository;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Persistent backend (product.backend=r2dbc) on top of the reactive {@link ProductRepository}.
+ */
+@Service
+@Qualifier(ProductService.BACKEND)
+@ConditionalOnProperty(name = "product.backend", havingValue = "r2dbc")
+@EnableConfigurationProperties(ProductBulkProperties.class)
+public class RepositoryProductService implements ProductService {
+
+    private final ProductRepository productRepository;
+    private final ProductBulkProperties bulkProperties;
+    private final ReactiveMetrics reactiveMetrics;
+    private final ProductChangeFeed changeFeed;
+    private final TransactionalOperator transactionalOperator;
+
+    public RepositoryProductService(ProductRepository productRepository, ProductBulkProperties bulkProperties, ReactiveMetrics reactiveMetrics,
+                                    ProductChangeFeed changeFeed, TransactionalOperator transactionalOperator) {
+        this.productRepository = productRepository;
+        this.bulkProperties = bulkProperties;
+        this.reactiveMetrics = reactiveMetrics;
+        this.changeFeed = changeFeed;
+        this.transactionalOperator = transactionalOperator;
+    }
+
+    @Override
+    public Mono<Product> getProductById(long id) {
+        if (id < Integer.MIN_VALUE || id > Integer.MAX_VALUE) return Mono.empty();
+        return reactiveMetrics.mono(METRICS_NAME, "getProductById", productRepository.findById((int) id));
+    }
+
+    @Override
+    public Flux<Product> getProductsByIds(List<Integer> ids) {
+        return reactiveMetrics.flux(METRICS_NAME, "getProductsByIds", productRepository.findAllById(ids));
+    }
+
+    // Update and insert must see the same state, so the upsert runs in one reactive transaction. Whether it
+    // inserted (true) or updated travels with the product, so the event is only published once it has committed
+    @Override
+    public Mono<Product> addProduct(Product product) {
+        Mono<Tuple2<Product, Boolean>> insert = Mono.defer(() -> productRepository.insert(product).map(inserted -> Tuples.of(inserted, true)));
+        Mono<Tuple2<Product, Boolean>> upsert = product.getCodProduct() == null
+                ? insert
+                : productRepository.update(product).map(updated -> Tuples.of(updated, false)).switchIfEmpty(insert);
+        return reactiveMetrics.mono(METRICS_NAME, "addProduct", upsert
+                .as(transactionalOperator::transactional)
+                .map(written -> written.getT2() ? changeFeed.added(written.getT1()) : changeFeed.updated(written.getT1())));
+    }
+
+    @Override
+    public Mono<Product> updateProduct(Product product) {
+        return reactiveMetrics.mono(METRICS_NAME, "updateProduct", productRepository.update(product).map(changeFeed::updated));
+    }
+
+    @Override
+    public Mono<Void> deleteProduct(int id) {
+        // The product is read first so its last state can be published with the DELETED event
+        return reactiveMetrics.mono(METRICS_NAME, "deleteProduct", productRepository.findById(id)
+                .flatMap(existing -> productRepository.deleteById(id)
+                        .filter(Boolean::booleanValue)
+                        .doOnNext(deleted -> changeFeed.deleted(existing)))
+                .then());
+    }
+
+    @Override
+    public Flux<BulkItemResult> addProducts(Flux<Product> products) {
+        return reactiveMetrics.flux(METRICS_NAME, "addProducts", products.index()
+                .buffer(bulkProperties.getBatchSize())
+                .concatMap(batch -> productRepository.insertAll(batch.stream().map(Tuple2::getT2).toList())
+                        .map(changeFeed::added)
+                        .index((i, inserted) -> BulkItemResult.of(batch.get(i.intValue()).getT1(), inserted.getCodProduct(), BulkItemResult.Status.CREATED))
+                        .onErrorResume(e -> ProductServiceImpl.failed(batch, e))));
+    }
+
+    @Override
+    public Flux<BulkItemResult> updateProducts(Flux<Product> products) {
+        return reactiveMetrics.flux(METRICS_NAME, "updateProducts", products.index()
+                .buffer(bulkProperties.getBatchSize())
+                .concatMap(batch -> productRepository.updateAll(batch.stream().map(Tuple2::getT2).toList())
+                        .index((i, updated) -> {
+                            Tuple2<Long, Product> item = batch.get(i.intValue());
+                            if (updated) changeFeed.updated(item.getT2());
+                            return BulkItemResult.of(item.getT1(), item.getT2().getCodProduct(),
+                                    updated ? BulkItemResult.Status.UPDATED : BulkItemResult.Status.NOT_FOUND);
+                        })
+                        .onErrorResume(e -> ProductServiceImpl.failed(batch, e))));
+    }
+
+    @Override
+    public Mono<StockResult> reserveStock(List<StockLine> items) {
+        return reactiveMetrics.mono(METRICS_NAME, "reserveStock",
+                Mono.defer(() -> changeStock(StockChanges.deltas(items, -1), StockResult.Status.RESERVED)));
+    }
+
+    @Override
+    public Mono<StockResult> releaseStock(List<StockLine> items) {
+        return reactiveMetrics.mono(METRICS_NAME, "releaseStock",
+                Mono.defer(() -> changeStock(StockChanges.deltas(items, 1), StockResult.Status.RELEASED)));
+    }
+
+    @Override
+    public Mono<StockResult> adjustStock(int id, int delta) {
+        return reactiveMetrics.mono(METRICS_NAME, "adjustStock",
+                Mono.defer(() -> changeStock(StockChanges.delta(id, delta), StockResult.Status.ADJUSTED)));
+    }
+
+    /**
+     * Runs the conditional updates in codProduct order (so concurrent batches lock the rows in the same order)
+     * inside one transaction, rolled back as soon as one of them fails.
+     */
+    private Mono<StockResult> changeStock(Map<Integer, Integer> deltas, StockResult.Status success) {
+        return Flux.fromIterable(deltas.entrySet())
+                .concatMap(delta -> productRepository.adjustStock(delta.getKey(), delta.getValue())
+                        .switchIfEmpty(Mono.error(() -> new MissingProductException(delta.getKey()))))
+                .collectList()
+                .as(transactionalOperator::transactional)
+                .map(products -> {
+                    products.forEach(changeFeed::updated);
+                    return StockResult.of(success, products);
+                })
+                .onErrorResume(InsufficientStockException.class, e -> Mono.just(StockResult.insufficientStock(e.getCodProduct(), e.getAvailable())))
+                .onErrorResume(MissingProductException.class, e -> Mono.just(StockResult.notFound(e.codProduct)));
+    }
+
+    @Override
+    public Flux<Product> searchProducts(ProductQuery query) {
+        return reactiveMetrics.flux(METRICS_NAME, "searchProducts", productRepository.search(query));
+    }
+
+    @Override
+    public Flux<Product> suggestProducts(String text, int limit) {
+        return reactiveMetrics.flux(METRICS_NAME, "suggestProducts", productRepository.suggest(text, limit));
+    }
+
+    // Not kept incrementally here: one GROUP BY in the database, which only sends a row per category
+    @Override
+    public Flux<CategoryStats> getCategoryStats() {
+        return reactiveMetrics.flux(METRICS_NAME, "getCategoryStats", productRepository.categoryStats());
+    }
+
+    @Override
+    public Mono<CategoryStats> getCategoryStats(String category) {
+        return reactiveMetrics.mono(METRICS_NAME, "getCategoryStats", productRepository.categoryStats(category));
+    }
+
+    // Rolls back the stock transaction when one of its products does not exist
+    private static final class MissingProductException extends RuntimeException {
+
+        private final int codProduct;
+
+        private MissingProductException(int codProduct) {
+            super(null, null, false, false);
+            this.codProduct = codProduct;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.jesus.webflux.service;
+
+import com.jesus.webflux.model.InsufficientStockException;
+import com.jesus.webflux.model.Product;
+import com.jesus.webflux.model.StockLine;
+import com.jesus.webflux.model.StockResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.IntPredicate;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * All-or-nothing stock changes over the per-product atomic adjustments of the in-memory stores.
+ */
+final class StockChanges {
+
+    /**
+     * Atomic stock adjustment of one product: the new version, empty if it does not exist, or
+     * {@link InsufficientStockException} if the stock would go below zero.
+     */
+    @FunctionalInterface
+    interface StockAdjuster {
+        Optional<Product> adjust(int id, int delta);
+    }
+
+    private StockChanges() {
+    }
+
+    /**
+     * Stock delta per codProduct, quantities of repeated products added up, in codProduct order.
+     * Every batch walks its products in that same order, so two batches competing for the last units
+     * of the same products fail on the first contended one instead of taking one each and both failing.
+     */
+    static Map<Integer, Integer> deltas(List<StockLine> items, int sign) {
+        if (items == null || items.isEmpty()) throw new IllegalArgumentException("at least one item is required");
+        Map<Integer, Integer> deltas = new TreeMap<>();
+        for (StockLine item : items) {
+            if (item.getCodProduct() == null) throw new IllegalArgumentException("codProduct is required");
+            if (item.getQuantity() < 1) throw new IllegalArgumentException("quantity must be greater than 0");
+            deltas.merge(item.getCodProduct(), sign * item.getQuantity(), Math::addExact);
+        }
+        return deltas;
+    }
+
+    static Map<Integer, Integer> delta(int id, int delta) {
+        if (delta == 0) throw new IllegalArgumentException("delta must not be 0");
+        return Map.of(id, delta);
+    }
+
+    /**
+     * Applies every delta, or none: when one fails the ones already applied are reverted and the result
+     * says which product failed. Other requests may briefly see the units of a batch that ends up failing.
+     * <p>
+     * Only taking units out can fail on stock, and reverting it just puts them back, which cannot. A batch
+     * that only puts units back (a release) checks first that all its products exist, so it never has to be
+     * reverted: undoing it would take the units out again, and they may have been reserved meanwhile.
+     */
+    static StockResult apply(Map<Integer, Integer> deltas, StockResult.Status success, IntPredicate exists, StockAdjuster adjuster) {
+        boolean release = deltas.values().stream().allMatch(delta -> delta > 0);
+        if (release) {
+            for (Integer id : deltas.keySet()) {
+                if (!exists.test(id)) return StockResult.notFound(id);
+            }
+        }
+        List<Map.Entry<Integer, Integer>> applied = new ArrayList<>(deltas.size());
+        List<Product> changed = new ArrayList<>(deltas.size());
+        try {
+            for (Map.Entry<Integer, Integer> delta : deltas.entrySet()) {
+                Optional<Product> product = adjuster.adjust(delta.getKey(), delta.getValue());
+                if (product.isEmpty()) {
+                    // Deleted after the check: a deleted product has no stock to give units back to
+                    if (release) continue;
+                    revert(applied, adjuster);
+                    return StockResult.notFound(delta.getKey());
+                }
+                applied.add(delta);
+                changed.add(product.get());
+            }
+        } catch (InsufficientStockException e) {
+            revert(applied, adjuster);
+            return StockResult.insufficientStock(e.getCodProduct(), e.getAvailable());
+        }
+        return StockResult.of(success, changed);
+    }
+
+    // Only batches taking units out are reverted, by putting them back
+    private static void revert(List<Map.Entry<Integer, Integer>> applied, StockAdjuster adjuster) {
+        for (Map.Entry<Integer, Integer> delta : applied) {
+            adjuster.adjust(delta.getKey(), -delta.getValue());
+        }
+    }
+}
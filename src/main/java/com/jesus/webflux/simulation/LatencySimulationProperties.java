@@ -0,0 +1,37 @@
+package com.jesus.webflux.simulation;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Artificial latency added to the endpoints for demos, bound from latency.simulation.*.
+ * Disabled by default; the "latency" profile turns it on.
+ */
+@Data
+@ConfigurationProperties(prefix = "latency.simulation")
+public class LatencySimulationProperties {
+
+    public enum Jitter {NONE, UNIFORM, EXPONENTIAL}
+
+    private boolean enabled = false;
+
+    // Delay used for endpoints without an entry in delays
+    private Duration defaultDelay = Duration.ZERO;
+
+    // Delay per endpoint, e.g. latency.simulation.delays.product-by-id=2s
+    private Map<String, Duration> delays = new HashMap<>();
+
+    // UNIFORM adds between 0 and jitterMax, EXPONENTIAL adds an exponential with mean jitterMax (capped at 10x)
+    private Jitter jitter = Jitter.NONE;
+    private Duration jitterMax = Duration.ZERO;
+}
@@ -0,0 +1,81 @@
+package com.jesus.webflux.simulation;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Adds the configured artificial latency to a Mono or Flux.
+ * <p>
+ * When the simulation is disabled, or the endpoint has no delay, the publisher is returned untouched
+ * so there is no overhead at all. Delays run on a dedicated single-thread timer instead of the
+ * shared parallel scheduler, so the simulation does not compete with real work.
+ */
+@Component
+@EnableConfigurationProperties(LatencySimulationProperties.class)
+public class LatencySimulator implements DisposableBean {
+
+    private final LatencySimulationProperties properties;
+    private final Scheduler timer = Schedulers.newSingle("latency-simulation", true);
+
+    public LatencySimulator(LatencySimulationProperties properties) {
+        this.properties = properties;
+    }
+
+    public <T> Mono<T> delay(String endpoint, Mono<T> source) {
+        if (!isActive(endpoint)) return source;
+        return source.flatMap(value -> Mono.delay(nextDelay(endpoint), timer).thenReturn(value));
+    }
+
+    public <T> Flux<T> delayElements(String endpoint, Flux<T> source) {
+        if (!isActive(endpoint)) return source;
+        if (properties.getJitter() == LatencySimulationProperties.Jitter.NONE) {
+            return source.delayElements(baseDelay(endpoint), timer);
+        }
+        return source.concatMap(value -> Mono.delay(nextDelay(endpoint), timer).thenReturn(value));
+    }
+
+    // A single delay before the first element, for a Flux that costs one round trip however many elements it has
+    public <T> Flux<T> delaySubscription(String endpoint, Flux<T> source) {
+        if (!isActive(endpoint)) return source;
+        return Flux.defer(() -> source.delaySubscription(nextDelay(endpoint), timer));
+    }
+
+    private boolean isActive(String endpoint) {
+        return properties.isEnabled()
+                && (!baseDelay(endpoint).isZero() || properties.getJitter() != LatencySimulationProperties.Jitter.NONE);
+    }
+
+    private Duration baseDelay(String endpoint) {
+        return properties.getDelays().getOrDefault(endpoint, properties.getDefaultDelay());
+    }
+
+    Duration nextDelay(String endpoint) {
+        long jitterMax = properties.getJitterMax().toNanos();
+        long jitter = switch (properties.getJitter()) {
+            case NONE -> 0;
+            case UNIFORM -> jitterMax <= 0 ? 0 : ThreadLocalRandom.current().nextLong(jitterMax + 1);
+            case EXPONENTIAL -> (long) Math.min(10.0 * jitterMax,
+                    -jitterMax * Math.log(1.0 - ThreadLocalRandom.current().nextDouble()));
+        };
+        return baseDelay(endpoint).plusNanos(jitter);
+    }
+
+    @Override
+    public void destroy() {
+        timer.dispose();
+    }
+}
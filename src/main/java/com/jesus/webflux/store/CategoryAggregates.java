@@ -0,0 +1,154 @@
+package com.jesus.webflux.store;
+
+import com.jesus.webflux.model.CategoryStats;
+import com.jesus.webflux.model.Product;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Running totals per category (case-insensitive, like the category index), shared by both stores: count, stock,
+ * stock value and the sum and multiset of the unit prices, so min, max and average survive deletes. The stores
+ * report every write, and the statistics of the catalogue cost O(categories) instead of a full scan.
+ * <p>
+ * Each category is updated inside the compute call of its own entry, so writes to different categories never
+ * wait for each other. Updates are additions and subtractions that commute: a removal that overtakes the
+ * insertion of the same product (e.g. the unlocked fast path of {@link ProductStore#insertAll}) leaves the totals
+ * right once both are applied. Empty categories are dropped.
+ */
+final class CategoryAggregates {
+
+    private final ConcurrentHashMap<String, Aggregate> byCategory = new ConcurrentHashMap<>();
+    // Products without category (ConcurrentHashMap takes no null keys)
+    private final Aggregate uncategorised = new Aggregate(null);
+
+    /**
+     * Moves the product from its previous version to the next one, either of them null for an insert or a delete.
+     */
+    void replace(Product previous, Product next) {
+        String previousKey = previous == null ? null : key(previous.getCategory());
+        String nextKey = next == null ? null : key(next.getCategory());
+        if (previous != null && next != null && Objects.equals(previousKey, nextKey)) {
+            update(nextKey, next.getCategory(), aggregate -> {
+                aggregate.add(previous, -1);
+                aggregate.add(next, 1);
+            });
+            return;
+        }
+        if (previous != null) update(previousKey, previous.getCategory(), aggregate -> aggregate.add(previous, -1));
+        if (next != null) update(nextKey, next.getCategory(), aggregate -> aggregate.add(next, 1));
+    }
+
+    /**
+     * Adds new products, updating each category once for the whole batch.
+     */
+    void addAll(Collection<Product> products) {
+        Map<String, List<Product>> byKey = new HashMap<>();
+        List<Product> withoutCategory = new ArrayList<>();
+        for (Product product : products) {
+            String key = key(product.getCategory());
+            if (key == null) withoutCategory.add(product);
+            else byKey.computeIfAbsent(key, k -> new ArrayList<>()).add(product);
+        }
+        byKey.forEach((key, batch) -> update(key, batch.get(0).getCategory(), aggregate -> batch.forEach(product -> aggregate.add(product, 1))));
+        if (!withoutCategory.isEmpty()) update(null, null, aggregate -> withoutCategory.forEach(product -> aggregate.add(product, 1)));
+    }
+
+    /**
+     * Statistics of every category in alphabetical order, the products without category last.
+     */
+    List<CategoryStats> stats() {
+        List<CategoryStats> stats = new ArrayList<>(byCategory.size() + 1);
+        byCategory.values().forEach(aggregate -> stats.add(aggregate.stats()));
+        stats.sort(Comparator.comparing(categoryStats -> key(categoryStats.getCategory())));
+        CategoryStats withoutCategory = uncategorised.stats();
+        if (withoutCategory.getCount() > 0) stats.add(withoutCategory);
+        return stats;
+    }
+
+    /**
+     * Statistics of one category, case-insensitive, or empty if it holds no product.
+     */
+    Optional<CategoryStats> stats(String category) {
+        Aggregate aggregate = category == null ? uncategorised : byCategory.get(key(category));
+        if (aggregate == null) return Optional.empty();
+        CategoryStats stats = aggregate.stats();
+        return stats.getCount() > 0 ? Optional.of(stats) : Optional.empty();
+    }
+
+    private void update(String key, String category, Consumer<Aggregate> change) {
+        if (key == null) {
+            synchronized (uncategorised) {
+                change.accept(uncategorised);
+            }
+            return;
+        }
+        byCategory.compute(key, (k, aggregate) -> {
+            if (aggregate == null) aggregate = new Aggregate(category);
+            synchronized (aggregate) {
+                change.accept(aggregate);
+                return aggregate.isEmpty() ? null : aggregate;
+            }
+        });
+    }
+
+    private static String key(String category) {
+        return category == null ? null : category.toLowerCase(Locale.ROOT);
+    }
+
+    // Guarded by its own monitor: readers copy it while the compute call of its entry may be changing it
+    private static final class Aggregate {
+
+        // As written by the product that created the entry
+        private final String category;
+        private long count;
+        private long stock;
+        private double stockValue;
+        private double priceSum;
+        // Unit price -> number of products with it
+        private final TreeMap<Double, Integer> prices = new TreeMap<>();
+
+        Aggregate(String category) {
+            this.category = category;
+        }
+
+        // sign 1 adds the product, -1 takes it out
+        void add(Product product, int sign) {
+            count += sign;
+            stock += (long) sign * product.getStock();
+            stockValue += sign * product.getUnitPrice() * product.getStock();
+            priceSum += sign * product.getUnitPrice();
+            prices.merge(product.getUnitPrice(), sign, (current, added) -> current + added == 0 ? null : current + added);
+            // Drops the rounding error left by the subtractions once the aggregate is empty again
+            if (isEmpty()) {
+                stockValue = 0;
+                priceSum = 0;
+            }
+        }
+
+        boolean isEmpty() {
+            return count == 0 && prices.isEmpty();
+        }
+
+        synchronized CategoryStats stats() {
+            if (count <= 0 || prices.isEmpty()) return CategoryStats.empty(category);
+            return new CategoryStats(category, count, stock, stockValue, prices.firstKey(), prices.lastKey(), priceSum / count);
+        }
+    }
+}
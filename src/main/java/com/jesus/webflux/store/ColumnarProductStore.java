@@ -0,0 +1,608 @@
+package com.jesus.webflux.store;
+
+import com.jesus.webflux.model.CategoryStats;
+import com.jesus.webflux.model.Product;
+import com.jesus.webflux.model.ProductQuery;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Compact product store for large catalogues (product.backend=columnar).
+ * <p>
+ * Instead of one object per product plus index entries, every field is a primitive column indexed by
+ * row: int ids, double prices, int stock, and int codes of dictionary-encoded names and categories, so
+ * each distinct string is stored once. A product costs a few dozen bytes instead of a few hundred, and
+ * {@link Product} objects are only materialised for the rows a caller actually reads.
+ * <p>
+ * There are no secondary indexes: every filter is one sequential, cache-friendly scan over the columns.
+ * That beats the sorted indexes of {@link ProductStore} on broad or combined range filters (no per-entry
+ * pointer chasing, no re-check of the other criteria), while narrow single ranges and selective lookups
+ * (one category, one name) cost a full scan instead of an index probe. A read-write lock guards the columns; deleted rows are reused by
+ * later inserts. Query results are materialised lazily and each row is re-checked against the query
+ * when read, so like {@link ProductStore} results are weakly consistent with concurrent writes. The category
+ * statistics come from the same running totals as in {@link ProductStore}, not from a scan.
+ */
+@Component
+@ConditionalOnProperty(name = "product.backend", havingValue = "columnar")
+public class ColumnarProductStore {
+
+    private static final int INITIAL_ROWS = 1024;
+    // Rows selected by the first and the largest chunks of a walk in codProduct order
+    private static final int FIRST_CHUNK = 256;
+    private static final int MAX_CHUNK = 65_536;
+    private static final VarHandle STOCK = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final StringDictionary names = new StringDictionary(TextFolding::searchKey);
+    private final StringDictionary categories = new StringDictionary(category -> category.toLowerCase(Locale.ROOT));
+    private final IntIntMap rowsById = new IntIntMap(INITIAL_ROWS);
+    private final CategoryAggregates categoryAggregates = new CategoryAggregates();
+
+    // Columns
+    private int[] ids = new int[INITIAL_ROWS];
+    private double[] prices = new double[INITIAL_ROWS];
+    private int[] stocks = new int[INITIAL_ROWS];
+    private int[] nameCodes = new int[INITIAL_ROWS];
+    private int[] categoryCodes = new int[INITIAL_ROWS];
+    private boolean[] live = new boolean[INITIAL_ROWS];
+
+    private int rowCount;
+    private int[] freeRows = new int[16];
+    private int freeCount;
+    private int sequence;
+
+    public Optional<Product> findById(int id) {
+        lock.readLock().lock();
+        try {
+            int row = rowsById.get(id);
+            return row == IntIntMap.MISSING ? Optional.empty() : Optional.of(materialize(row));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Same as {@link ProductStore#findAllById}, under a single read lock for all the ids.
+     */
+    public List<Product> findAllById(Collection<Integer> ids) {
+        List<Product> found = new ArrayList<>(ids.size());
+        Set<Integer> seen = new HashSet<>();
+        lock.readLock().lock();
+        try {
+            for (Integer id : ids) {
+                if (id == null || !seen.add(id)) continue;
+                int row = rowsById.get(id);
+                if (row != IntIntMap.MISSING) found.add(materialize(row));
+            }
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean exists(int id) {
+        lock.readLock().lock();
+        try {
+            return rowsById.get(id) != IntIntMap.MISSING;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return rowsById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs the query with the same rules as the ProductQueryPlanner of the default store: sort by
+     * codProduct, name, unitPrice or stock (prefix "-" for descending), keyset cursor only in codProduct
+     * order, offset and limit. Without a sort, products come in codProduct order.
+     *
+     * @throws IllegalArgumentException if sort, offset or limit are not valid
+     */
+    public Stream<Product> query(ProductQuery query) {
+        String sort = query.getSort() == null || query.getSort().isBlank() ? "codProduct" : query.getSort();
+        if (query.getAfter() != null && !"codProduct".equals(sort)) {
+            throw new IllegalArgumentException("after can only be used when sorting by codProduct");
+        }
+        boolean descending = sort.startsWith("-");
+        String field = descending ? sort.substring(1) : sort;
+        if (!List.of("codProduct", "name", "unitPrice", "stock").contains(field)) {
+            throw new IllegalArgumentException("Unknown sort field: " + field);
+        }
+        long offset = query.getOffset() == null ? 0 : query.getOffset();
+        if (offset < 0) throw new IllegalArgumentException("offset must not be negative");
+        if (query.getLimit() != null && query.getLimit() < 0) throw new IllegalArgumentException("limit must not be negative");
+        long end = query.getLimit() == null ? Long.MAX_VALUE : offset + query.getLimit();
+        if ("codProduct".equals(field)) return walkById(query, descending, offset, end);
+
+        Filter filter;
+        long[] page;
+        lock.readLock().lock();
+        try {
+            filter = filter(query);
+            page = sorted(scan(filter), comparator(field, descending), offset, end);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return Arrays.stream(page)
+                .mapToObj(entry -> materializeIfMatching(row(entry), id(entry), filter))
+                .filter(Objects::nonNull);
+    }
+
+    /**
+     * Statistics of every category, see {@link ProductStore#categoryStats()}.
+     */
+    public List<CategoryStats> categoryStats() {
+        return categoryAggregates.stats();
+    }
+
+    public Optional<CategoryStats> categoryStats(String category) {
+        return categoryAggregates.stats(category);
+    }
+
+    /**
+     * Typeahead with the matching and ranking of {@link ProductStore#suggestByName}. There is no word
+     * index in this store: the name dictionary is scanned (once per distinct name, not per product).
+     */
+    public List<Product> suggestByName(String text, int limit) {
+        List<String> terms = TextFolding.tokens(text);
+        if (terms.isEmpty() || limit <= 0) return List.of();
+        List<String> words = terms.subList(0, terms.size() - 1);
+        String prefix = terms.get(terms.size() - 1);
+        String phrase = " " + String.join(" ", terms);
+        lock.readLock().lock();
+        try {
+            int[] ranks = new int[names.size()];
+            boolean any = false;
+            for (int code = 1; code < names.size(); code++) {
+                ranks[code] = rank(names.key(code), words, prefix, phrase);
+                any |= ranks[code] >= 0;
+            }
+            if (!any) return List.of();
+            ranks[StringDictionary.NULL_CODE] = -1;
+            PriorityQueue<Integer> best = new PriorityQueue<>(limit, suggestionOrder(ranks).reversed());
+            for (int row = 0; row < rowCount; row++) {
+                if (!live[row] || ranks[nameCodes[row]] < 0) continue;
+                best.add(row);
+                if (best.size() > limit) best.poll();
+            }
+            List<Integer> rows = new ArrayList<>(best);
+            rows.sort(suggestionOrder(ranks));
+            return rows.stream().map(this::materialize).toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Inserts the product with a freshly generated codProduct, ignoring the one it carries.
+     */
+    public Product insert(Product product) {
+        lock.writeLock().lock();
+        try {
+            return write(++sequence, product);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Inserts a batch of products with consecutive new ids under a single lock acquisition.
+     */
+    public List<Product> insertAll(List<Product> batch) {
+        List<Product> inserted = new ArrayList<>(batch.size());
+        lock.writeLock().lock();
+        try {
+            for (Product product : batch) {
+                inserted.add(write(++sequence, product));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return inserted;
+    }
+
+    /**
+     * Stores the product under its own codProduct, replacing any previous version.
+     */
+    public Product put(Product product) {
+        if (product.getCodProduct() == null) return insert(product);
+        lock.writeLock().lock();
+        try {
+            sequence = Math.max(sequence, product.getCodProduct());
+            return write(product.getCodProduct(), product);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the product only if its codProduct already exists.
+     */
+    public Optional<Product> update(Product product) {
+        if (product.getCodProduct() == null) return Optional.empty();
+        lock.writeLock().lock();
+        try {
+            if (rowsById.get(product.getCodProduct()) == IntIntMap.MISSING) return Optional.empty();
+            return Optional.of(write(product.getCodProduct(), product));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds delta units to the stock of the product (negative to take them out), see {@link ProductStore#adjustStock}.
+     * Only the stock cell changes, so instead of the write lock this is a compare-and-set loop on the cell under
+     * the shared read lock: reservations run in parallel with each other and with queries, and only wait for
+     * inserts, updates and deletes.
+     *
+     * @return the new version, or empty if the product does not exist
+     */
+    public Optional<Product> adjustStock(int id, int delta) {
+        lock.readLock().lock();
+        try {
+            int row = rowsById.get(id);
+            if (row == IntIntMap.MISSING) return Optional.empty();
+            int stock;
+            int next;
+            do {
+                stock = (int) STOCK.getVolatile(stocks, row);
+                next = ProductStore.stockAfter(id, stock, delta);
+            } while (!STOCK.compareAndSet(stocks, row, stock, next));
+            // The cell may already hold a later change
+            Product previous = materialize(row);
+            previous.setStock(stock);
+            Product product = materialize(row);
+            product.setStock(next);
+            categoryAggregates.replace(previous, product);
+            return Optional.of(product);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean delete(int id) {
+        return remove(id).isPresent();
+    }
+
+    /**
+     * Deletes the product and returns the version that was removed.
+     */
+    public Optional<Product> remove(int id) {
+        lock.writeLock().lock();
+        try {
+            int row = rowsById.remove(id);
+            if (row == IntIntMap.MISSING) return Optional.empty();
+            Product removed = materialize(row);
+            categoryAggregates.replace(removed, null);
+            live[row] = false;
+            if (freeCount == freeRows.length) freeRows = Arrays.copyOf(freeRows, freeCount << 1);
+            freeRows[freeCount++] = row;
+            return Optional.of(removed);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Must hold the write lock
+    private Product write(int id, Product product) {
+        int row = rowsById.get(id);
+        Product previous = row == IntIntMap.MISSING ? null : materialize(row);
+        if (row == IntIntMap.MISSING) {
+            row = freeCount > 0 ? freeRows[--freeCount] : appendRow();
+            rowsById.put(id, row);
+        }
+        ids[row] = id;
+        prices[row] = product.getUnitPrice();
+        stocks[row] = product.getStock();
+        nameCodes[row] = names.encode(product.getName());
+        categoryCodes[row] = categories.encode(product.getCategory());
+        live[row] = true;
+        Product written = materialize(row);
+        categoryAggregates.replace(previous, written);
+        return written;
+    }
+
+    private int appendRow() {
+        if (rowCount == ids.length) {
+            int capacity = ids.length + (ids.length >> 1);
+            ids = Arrays.copyOf(ids, capacity);
+            prices = Arrays.copyOf(prices, capacity);
+            stocks = Arrays.copyOf(stocks, capacity);
+            nameCodes = Arrays.copyOf(nameCodes, capacity);
+            categoryCodes = Arrays.copyOf(categoryCodes, capacity);
+            live = Arrays.copyOf(live, capacity);
+        }
+        return rowCount++;
+    }
+
+    // Must hold a lock
+    private Product materialize(int row) {
+        return new Product(ids[row], names.value(nameCodes[row]), categories.value(categoryCodes[row]), prices[row], stocks[row]);
+    }
+
+    private Product materializeIfMatching(int row, int id, Filter filter) {
+        lock.readLock().lock();
+        try {
+            return row < rowCount && ids[row] == id && matches(row, filter) ? materialize(row) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Must hold a lock: resolves the string criteria to dictionary codes
+    private Filter filter(ProductQuery query) {
+        int[] nameMatches = query.getName() == null ? null : Arrays.stream(names.codesWithKey(TextFolding.searchKey(query.getName())))
+                .filter(code -> names.value(code).equalsIgnoreCase(query.getName()))
+                .toArray();
+        int[] categoryMatches = query.getCategory() == null ? null : Arrays.stream(categories.codesWithKey(query.getCategory().toLowerCase(Locale.ROOT)))
+                .filter(code -> categories.value(code).equalsIgnoreCase(query.getCategory()))
+                .toArray();
+        return new Filter(
+                query.getMinPrice() == null ? Double.NEGATIVE_INFINITY : query.getMinPrice(),
+                query.getMaxPrice() == null ? Double.POSITIVE_INFINITY : query.getMaxPrice(),
+                query.getMinStock() == null ? Integer.MIN_VALUE : query.getMinStock(),
+                query.getMaxStock() == null ? Integer.MAX_VALUE : query.getMaxStock(),
+                nameMatches, categoryMatches,
+                query.getAfter() != null, query.getAfter() == null ? 0 : query.getAfter());
+    }
+
+    // Must hold a lock
+    private int[] scan(Filter filter) {
+        if (filter.nameCodes != null && filter.nameCodes.length == 0) return new int[0];
+        if (filter.categoryCodes != null && filter.categoryCodes.length == 0) return new int[0];
+        int[] rows = new int[Math.min(rowCount, INITIAL_ROWS)];
+        int count = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (matches(row, filter)) {
+                if (count == rows.length) rows = Arrays.copyOf(rows, Math.max(16, count << 1));
+                rows[count++] = row;
+            }
+        }
+        return Arrays.copyOf(rows, count);
+    }
+
+    // Must hold a lock. The primitive range checks run first, they reject most rows of a range scan
+    private boolean matches(int row, Filter filter) {
+        double price = prices[row];
+        int stock = stocks[row];
+        return price >= filter.minPrice && price <= filter.maxPrice
+                && stock >= filter.minStock && stock <= filter.maxStock
+                && live[row]
+                && (!filter.hasCursor || ids[row] > filter.after)
+                && (filter.categoryCodes == null || contains(filter.categoryCodes, categoryCodes[row]))
+                && (filter.nameCodes == null || contains(filter.nameCodes, nameCodes[row]));
+    }
+
+    /**
+     * Products in codProduct order, a chunk of rows at a time: each chunk is one scan that keeps only the next ids
+     * after the previous chunk (bounded selection, no sort of every match). A page costs one scan and a selection
+     * of offset + limit entries, and a stream only scans again once its consumer gets that far. Chunks double up to
+     * MAX_CHUNK, so a whole catalogue takes O(log n + n / MAX_CHUNK) scans. Each chunk resolves the query under its
+     * own read lock, so like every other query the result is weakly consistent with concurrent writes.
+     */
+    private Stream<Product> walkById(ProductQuery query, boolean descending, long offset, long end) {
+        Spliterator<Product> products = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            private long[] chunk = new long[0];
+            private int next;
+            private Filter filter;
+            // Entries taken so far, those skipped by the offset included
+            private long position;
+            private int size = FIRST_CHUNK;
+            // Id of the last entry taken, the next chunk starts after it
+            private Integer last;
+            private boolean exhausted;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super Product> action) {
+                while (true) {
+                    while (next < chunk.length) {
+                        long entry = chunk[next++];
+                        Product product = materializeIfMatching(row(entry), id(entry), filter);
+                        if (product != null) {
+                            action.accept(product);
+                            return true;
+                        }
+                    }
+                    if (exhausted || position >= end) return false;
+                    fetch();
+                }
+            }
+
+            private void fetch() {
+                long skip = Math.max(0, offset - position);
+                int count = (int) Math.min(Math.min(end - position, skip + size), Integer.MAX_VALUE - 8);
+                long[] entries;
+                lock.readLock().lock();
+                try {
+                    filter = filter(query);
+                    entries = firstById(filter, descending, last, count);
+                } finally {
+                    lock.readLock().unlock();
+                }
+                exhausted = entries.length < count;
+                if (entries.length > 0) last = id(entries[entries.length - 1]);
+                position += entries.length;
+                chunk = skip == 0 ? entries : slice(entries, skip, entries.length);
+                next = 0;
+                size = Math.min(size << 1, MAX_CHUNK);
+            }
+        };
+        return StreamSupport.stream(products, false);
+    }
+
+    /**
+     * The first count matching rows in codProduct order, after the id bound (exclusive, in that order) when there
+     * is one. Entries are packed as (id, row) longs, complemented when descending so that the smallest ones always
+     * come first, and selected with a bounded max-heap: O(rows × log count) time and O(count) memory. Must hold a lock.
+     */
+    private long[] firstById(Filter filter, boolean descending, Integer bound, int count) {
+        if (count <= 0) return new long[0];
+        long[] heap = new long[Math.min(count, INITIAL_ROWS)];
+        int size = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (!matches(row, filter)) continue;
+            int id = ids[row];
+            if (bound != null && (descending ? id >= bound : id <= bound)) continue;
+            long key = descending ? ~entry(id, row) : entry(id, row);
+            if (size < count) {
+                if (size == heap.length) heap = Arrays.copyOf(heap, (int) Math.min(count, (long) size << 1));
+                heap[size] = key;
+                siftUp(heap, size++);
+            } else if (key < heap[0]) {
+                heap[0] = key;
+                siftDown(heap, size);
+            }
+        }
+        long[] entries = Arrays.copyOf(heap, size);
+        Arrays.sort(entries);
+        if (descending) {
+            for (int i = 0; i < entries.length; i++) entries[i] = ~entries[i];
+        }
+        return entries;
+    }
+
+    // Max-heap of longs in heap[0, size)
+    private static void siftUp(long[] heap, int index) {
+        long key = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent] >= key) break;
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = key;
+    }
+
+    private static void siftDown(long[] heap, int size) {
+        long key = heap[0];
+        int index = 0;
+        while (true) {
+            int child = (index << 1) + 1;
+            if (child >= size) break;
+            if (child + 1 < size && heap[child + 1] > heap[child]) child++;
+            if (key >= heap[child]) break;
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = key;
+    }
+
+    /**
+     * Rows in the given order. With a limit only the first offset + limit rows are kept, in a bounded heap.
+     */
+    private long[] sorted(int[] rows, Comparator<Integer> order, long offset, long end) {
+        List<Integer> ordered;
+        if (end < rows.length) {
+            if (end == 0) return new long[0];
+            PriorityQueue<Integer> heap = new PriorityQueue<>((int) Math.min(end, 1024), order.reversed());
+            for (int row : rows) {
+                heap.add(row);
+                if (heap.size() > end) heap.poll();
+            }
+            ordered = new ArrayList<>(heap);
+        } else {
+            ordered = new ArrayList<>(rows.length);
+            for (int row : rows) ordered.add(row);
+        }
+        ordered.sort(order);
+        long[] entries = new long[ordered.size()];
+        for (int i = 0; i < entries.length; i++) {
+            int row = ordered.get(i);
+            entries[i] = entry(ids[row], row);
+        }
+        return slice(entries, offset, end);
+    }
+
+    // Must hold a lock while the comparator is used
+    private Comparator<Integer> comparator(String field, boolean descending) {
+        Comparator<Integer> byId = Comparator.comparingInt(row -> ids[row]);
+        Comparator<Integer> comparator = switch (field) {
+            case "name" -> Comparator.<Integer, String>comparing(row -> names.value(nameCodes[row]),
+                    Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER)).thenComparing(byId);
+            case "unitPrice" -> Comparator.<Integer>comparingDouble(row -> prices[row]).thenComparing(byId);
+            case "stock" -> Comparator.<Integer>comparingInt(row -> stocks[row]).thenComparing(byId);
+            default -> byId;
+        };
+        return descending ? comparator.reversed() : comparator;
+    }
+
+    private Comparator<Integer> suggestionOrder(int[] ranks) {
+        return Comparator.<Integer>comparingInt(row -> ranks[nameCodes[row]])
+                .thenComparingInt(row -> names.value(nameCodes[row]).length())
+                .thenComparingInt(row -> ids[row]);
+    }
+
+    // -1 if the folded name key (" word word ") does not match, otherwise the rank of ProductStore.suggestByName
+    private static int rank(String key, List<String> words, String prefix, String phrase) {
+        for (String word : words) {
+            if (!key.contains(" " + word + " ")) return -1;
+        }
+        boolean wholeWord = key.contains(" " + prefix + " ");
+        if (!wholeWord && !key.contains(" " + prefix)) return -1;
+        if (key.equals(phrase + " ")) return 0;
+        if (key.startsWith(phrase)) return 1;
+        return wholeWord ? 2 : 3;
+    }
+
+    private static boolean contains(int[] codes, int code) {
+        for (int candidate : codes) {
+            if (candidate == code) return true;
+        }
+        return false;
+    }
+
+    private static long[] slice(long[] entries, long offset, long end) {
+        int from = (int) Math.min(offset, entries.length);
+        int to = (int) Math.min(end, entries.length);
+        return from == 0 && to == entries.length ? entries : Arrays.copyOfRange(entries, from, to);
+    }
+
+    private static long entry(int id, int row) {
+        return ((long) id << 32) | (row & 0xFFFFFFFFL);
+    }
+
+    private static int id(long entry) {
+        return (int) (entry >> 32);
+    }
+
+    private static int row(long entry) {
+        return (int) entry;
+    }
+
+    private record Filter(double minPrice, double maxPrice, int minStock, int maxStock,
+                          int[] nameCodes, int[] categoryCodes, boolean hasCursor, int after) {
+    }
+}
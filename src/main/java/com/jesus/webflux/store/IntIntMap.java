@@ -0,0 +1,105 @@
+package com.jesus.webflux.store;
+
+import java.util.Arrays;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Open addressing int to row map (linear probing, backward shift deletion) used by the
+ * {@link ColumnarProductStore} to find the row of a codProduct without boxing.
+ * Rows are never negative, so a negative row marks a free slot. Not thread-safe.
+ */
+final class IntIntMap {
+
+    static final int MISSING = -1;
+
+    private int[] keys;
+    private int[] rows;
+    private int mask;
+    private int size;
+
+    IntIntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+    int size() {
+        return size;
+    }
+
+    int get(int key) {
+        for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+            if (rows[slot] < 0) return MISSING;
+            if (keys[slot] == key) return rows[slot];
+        }
+    }
+
+    void put(int key, int row) {
+        if (row < 0) throw new IllegalArgumentException("row must not be negative");
+        if ((size + 1) * 2 > keys.length) resize();
+        for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+            if (rows[slot] < 0) {
+                keys[slot] = key;
+                rows[slot] = row;
+                size++;
+                return;
+            }
+            if (keys[slot] == key) {
+                rows[slot] = row;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes the key and returns its row, or {@link #MISSING}.
+     */
+    int remove(int key) {
+        int slot = slot(key);
+        while (true) {
+            if (rows[slot] < 0) return MISSING;
+            if (keys[slot] == key) break;
+            slot = (slot + 1) & mask;
+        }
+        int row = rows[slot];
+        // Pull back the following entries of the cluster that may not be left behind the gap
+        int gap = slot;
+        for (int next = (gap + 1) & mask; rows[next] >= 0; next = (next + 1) & mask) {
+            int ideal = slot(keys[next]);
+            if (((next - ideal) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                rows[gap] = rows[next];
+                gap = next;
+            }
+        }
+        rows[gap] = MISSING;
+        size--;
+        return row;
+    }
+
+    private int slot(int key) {
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private void resize() {
+        int[] oldKeys = keys;
+        int[] oldRows = rows;
+        allocate(keys.length << 1);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldRows[i] >= 0) put(oldKeys[i], oldRows[i]);
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        rows = new int[capacity];
+        Arrays.fill(rows, MISSING);
+        mask = capacity - 1;
+    }
+}
@@ -0,0 +1,44 @@
+package com.jesus.webflux.store;
+
+import com.jesus.webflux.model.Product;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Receives every change made to a {@link ProductStore}, e.g. to persist them. Changes are reported while the
+ * product is locked, so those of one product always arrive in the order they were applied; an exception
+ * thrown here cancels the change.
+ */
+public interface MutationLog {
+
+    MutationLog NONE = new MutationLog() {
+        @Override
+        public void written(Product product) {
+        }
+
+        @Override
+        public void removed(int codProduct) {
+        }
+
+        @Override
+        public CompletableFuture<Void> durable() {
+            return CompletableFuture.completedFuture(null);
+        }
+    };
+
+    // New version of an inserted or modified product (a private copy, it is never modified afterwards)
+    void written(Product product);
+
+    void removed(int codProduct);
+
+    /**
+     * Completes once every change logged so far would survive a crash.
+     */
+    CompletableFuture<Void> durable();
+}
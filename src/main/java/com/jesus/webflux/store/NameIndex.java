@@ -0,0 +1,134 @@
+package com.jesus.webflux.store;
+
+import com.jesus.webflux.model.Product;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Name indexes of the {@link ProductStore}, on the folded names (see {@link TextFolding}):
+ * <ul>
+ *     <li>whole name: folded words joined by spaces to the ids with that name, for exact name lookups</li>
+ *     <li>inverted index: every folded word to the ids whose name contains it. The words are kept sorted,
+ *     so all the words starting with a prefix are one contiguous range (the same walk a trie would do)</li>
+ * </ul>
+ * Buckets hold ids in codProduct order. Updates are incremental: only the words that changed are touched.
+ */
+final class NameIndex {
+
+    private final ConcurrentHashMap<String, ConcurrentSkipListSet<Integer>> byName = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<String, ConcurrentSkipListSet<Integer>> byWord = new ConcurrentSkipListMap<>();
+
+    static String nameKey(String name) {
+        return name == null ? null : String.join(" ", TextFolding.tokens(name));
+    }
+
+    /**
+     * Moves the id from the entries of the previous name to those of the next one (either may be null).
+     */
+    void reindex(int id, String previousName, String nextName) {
+        if (Objects.equals(previousName, nextName)) return;
+        List<String> previousWords = previousName == null ? List.of() : TextFolding.tokens(previousName);
+        List<String> nextWords = nextName == null ? List.of() : TextFolding.tokens(nextName);
+        String previousKey = previousName == null ? null : String.join(" ", previousWords);
+        String nextKey = nextName == null ? null : String.join(" ", nextWords);
+        if (!Objects.equals(previousKey, nextKey)) {
+            if (nextKey != null) add(byName, nextKey, id);
+            if (previousKey != null) remove(byName, previousKey, id);
+        }
+        Set<String> kept = new HashSet<>(nextWords);
+        nextWords.forEach(word -> add(byWord, word, id));
+        previousWords.stream().filter(word -> !kept.contains(word)).forEach(word -> remove(byWord, word, id));
+    }
+
+    /**
+     * Builds the indexes of a store being loaded, from its products in codProduct order: each bucket is filled once,
+     * in id order, instead of one compute per word and product.
+     */
+    void load(List<Product> products) {
+        Map<String, List<Integer>> names = new HashMap<>();
+        Map<String, List<Integer>> words = new HashMap<>();
+        for (Product product : products) {
+            if (product.getName() == null) continue;
+            List<String> tokens = TextFolding.tokens(product.getName());
+            names.computeIfAbsent(String.join(" ", tokens), key -> new ArrayList<>()).add(product.getCodProduct());
+            for (int i = 0; i < tokens.size(); i++) {
+                String word = tokens.get(i);
+                if (tokens.subList(0, i).contains(word)) continue;
+                words.computeIfAbsent(word, key -> new ArrayList<>()).add(product.getCodProduct());
+            }
+        }
+        names.forEach((key, ids) -> byName.put(key, new ConcurrentSkipListSet<>(ids)));
+        words.forEach((word, ids) -> byWord.put(word, new ConcurrentSkipListSet<>(ids)));
+    }
+
+    NavigableSet<Integer> withName(String nameKey) {
+        return bucket(byName.get(nameKey));
+    }
+
+    NavigableSet<Integer> withWord(String word) {
+        return bucket(byWord.get(word));
+    }
+
+    /**
+     * Ids of every word starting with the prefix, walking the words in order: an exact match of the
+     * prefix comes first. An id shows up once per matching word of its name.
+     */
+    Iterator<Integer> withWordPrefix(String prefix) {
+        // Hand-rolled instead of Stream.flatMap: its iterator buffers whole buckets, and a common word may hold millions of ids
+        Iterator<ConcurrentSkipListSet<Integer>> buckets = byWord.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values().iterator();
+        return new Iterator<>() {
+            private Iterator<Integer> ids = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!ids.hasNext() && buckets.hasNext()) ids = buckets.next().iterator();
+                return ids.hasNext();
+            }
+
+            @Override
+            public Integer next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return ids.next();
+            }
+        };
+    }
+
+    private static void add(ConcurrentMap<String, ConcurrentSkipListSet<Integer>> index, String key, int id) {
+        index.compute(key, (k, bucket) -> {
+            if (bucket == null) bucket = new ConcurrentSkipListSet<>();
+            bucket.add(id);
+            return bucket;
+        });
+    }
+
+    private static void remove(ConcurrentMap<String, ConcurrentSkipListSet<Integer>> index, String key, int id) {
+        index.computeIfPresent(key, (k, bucket) -> {
+            bucket.remove(id);
+            return bucket.isEmpty() ? null : bucket;
+        });
+    }
+
+    private static NavigableSet<Integer> bucket(NavigableSet<Integer> bucket) {
+        return bucket == null ? Collections.emptyNavigableSet() : bucket;
+    }
+}
@@ -0,0 +1,613 @@
+package com.jesus.webflux.store;
+
+import com.jesus.webflux.model.CategoryStats;
+import com.jesus.webflux.model.InsufficientStockException;
+import com.jesus.webflux.model.Product;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Thread-safe in-memory product store.
+ * <p>
+ * Products are keyed by codProduct in a ConcurrentHashMap (O(1) lookups) and their ids are also kept
+ * sorted so the catalogue can be walked in code order.
+ * Every write swaps the stored instance for a fresh copy (copy-on-write per entry) inside
+ * {@link ConcurrentHashMap#compute}, so writes to the same id are serialised without any global lock
+ * and readers never see a half-updated product. Returned instances must be treated as read-only.
+ * <p>
+ * Secondary indexes (category hash index, name indexes, sorted unitPrice and stock indexes) are maintained
+ * in the same compute call. They are weakly consistent with the primary map, so every index scan re-checks
+ * the criterion against the current version of the product. So are the running totals per category
+ * ({@link CategoryAggregates}) behind the category statistics.
+ * <p>
+ * An attached {@link MutationLog} gets every change from inside the same compute call, before it is applied.
+ */
+@Component
+public class ProductStore {
+
+    private final ConcurrentHashMap<Integer, Product> products = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Integer> ids = new ConcurrentSkipListSet<>();
+    private final AtomicInteger sequence = new AtomicInteger();
+    private volatile MutationLog mutationLog = MutationLog.NONE;
+
+    // Secondary indexes
+    private final ConcurrentHashMap<String, ConcurrentSkipListSet<Integer>> categoryIndex = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<RangeKey> priceIndex = new ConcurrentSkipListSet<>();
+    private final ConcurrentSkipListSet<RangeKey> stockIndex = new ConcurrentSkipListSet<>();
+    private final NameIndex nameIndex = new NameIndex();
+    private final CategoryAggregates categoryAggregates = new CategoryAggregates();
+
+    // Suggestion lookups rank at most SUGGESTION_CANDIDATES matches out of at most SUGGESTION_SCAN candidates
+    private static final int SUGGESTION_CANDIDATES = 128;
+    private static final int SUGGESTION_SCAN = 16_384;
+    // Words with fewer products than this drive a suggestion lookup instead of the prefix
+    private static final int SELECTIVE_WORD = 1024;
+
+    public Optional<Product> findById(int id) {
+        return Optional.ofNullable(products.get(id));
+    }
+
+    /**
+     * The products with the given codProducts, in the order of the ids. Unknown ids are skipped and a
+     * repeated id is returned once.
+     */
+    public List<Product> findAllById(Collection<Integer> ids) {
+        List<Product> found = new ArrayList<>(ids.size());
+        Set<Integer> seen = new HashSet<>();
+        for (Integer id : ids) {
+            if (id == null || !seen.add(id)) continue;
+            Product product = products.get(id);
+            if (product != null) found.add(product);
+        }
+        return found;
+    }
+
+    public boolean exists(int id) {
+        return products.containsKey(id);
+    }
+
+    public int size() {
+        return products.size();
+    }
+
+    // Highest codProduct handed out so far
+    public int lastId() {
+        return sequence.get();
+    }
+
+    // Never hands out ids up to lastId again (restoring a store whose highest ids were deleted)
+    public void advanceLastId(int lastId) {
+        sequence.accumulateAndGet(lastId, Math::max);
+    }
+
+    /**
+     * Reports every change from now on to the log (e.g. once the store has been loaded from it).
+     */
+    public void attach(MutationLog mutationLog) {
+        this.mutationLog = mutationLog;
+    }
+
+    /**
+     * Completes once every change made so far is durable, right away without a persistent log.
+     */
+    public CompletableFuture<Void> durable() {
+        return mutationLog.durable();
+    }
+
+    /**
+     * Walks the catalogue in codProduct order. The stream is lazy and weakly consistent.
+     */
+    public Stream<Product> findAll() {
+        return ids.stream()
+                .map(products::get)
+                .filter(Objects::nonNull);
+    }
+
+    /**
+     * Same as {@link #findAll()} but starting right after the given codProduct (keyset pagination).
+     */
+    public Stream<Product> findAllAfter(int after) {
+        return ids.tailSet(after, false).stream()
+                .map(products::get)
+                .filter(Objects::nonNull);
+    }
+
+    /**
+     * Products of the given category (case-insensitive), in codProduct order.
+     */
+    public Stream<Product> findByCategory(String category) {
+        String key = categoryKey(category);
+        return categoryIds(key).stream()
+                .map(products::get)
+                .filter(product -> product != null && key.equals(categoryKey(product.getCategory())));
+    }
+
+    /**
+     * Same as {@link #findByCategory(String)} but starting right after the given codProduct.
+     */
+    public Stream<Product> findByCategoryAfter(String category, int after) {
+        String key = categoryKey(category);
+        return categoryIds(key).tailSet(after, false).stream()
+                .map(products::get)
+                .filter(product -> product != null && key.equals(categoryKey(product.getCategory())));
+    }
+
+    /**
+     * Products with the given name, case-insensitive, in codProduct order. The index is accent-insensitive,
+     * so the stream may also hold names that only differ in accents: callers re-check the exact criterion.
+     */
+    public Stream<Product> findByName(String name) {
+        return nameIds(name).stream()
+                .map(products::get)
+                .filter(Objects::nonNull);
+    }
+
+    /**
+     * Same as {@link #findByName(String)} but starting right after the given codProduct.
+     */
+    public Stream<Product> findByNameAfter(String name, int after) {
+        return nameIds(name).tailSet(after, false).stream()
+                .map(products::get)
+                .filter(Objects::nonNull);
+    }
+
+    /**
+     * Typeahead over the product names, ignoring accents and case. Every word of the text has to be a
+     * word of the name, except the last one that only has to be the prefix of one (the user is still typing it).
+     * <p>
+     * Results are ranked: the whole name, then names starting with the text, then names where the last word
+     * is complete, then prefix matches; ties go to the shorter name and then to codProduct. Only the first
+     * {@value #SUGGESTION_CANDIDATES} matches (or limit, if larger) are ranked and at most {@value #SUGGESTION_SCAN}
+     * candidates are looked at, so very broad text stays cheap on large catalogues: the prefix is walked in word
+     * order, so those first matches are the names holding the shortest matching words.
+     */
+    public List<Product> suggestByName(String text, int limit) {
+        List<String> terms = TextFolding.tokens(text);
+        if (terms.isEmpty() || limit <= 0) return List.of();
+        List<String> words = terms.subList(0, terms.size() - 1);
+        String prefix = terms.get(terms.size() - 1);
+        String phrase = String.join(" ", terms);
+
+        Iterator<Integer> candidates = suggestionCandidates(words, prefix);
+        int budget = Math.max(SUGGESTION_CANDIDATES, limit);
+        List<Suggestion> matches = new ArrayList<>();
+        Set<Integer> seen = new HashSet<>();
+        for (int scanned = 0; scanned < SUGGESTION_SCAN && matches.size() < budget && candidates.hasNext(); scanned++) {
+            Integer id = candidates.next();
+            if (!seen.add(id)) continue;
+            Product product = products.get(id);
+            if (product == null || product.getName() == null) continue;
+            int rank = rank(TextFolding.tokens(product.getName()), words, prefix, phrase);
+            if (rank >= 0) matches.add(new Suggestion(product, rank));
+        }
+        matches.sort(Suggestion.ORDER);
+        return matches.stream().limit(limit).map(Suggestion::product).toList();
+    }
+
+    /**
+     * Products with minPrice &lt;= unitPrice &lt;= maxPrice, in unitPrice order.
+     */
+    public Stream<Product> findByPriceRange(double minPrice, double maxPrice) {
+        return priceRange(minPrice, maxPrice).stream()
+                .map(entry -> products.get(entry.id()))
+                .filter(product -> product != null
+                        && product.getUnitPrice() >= minPrice && product.getUnitPrice() <= maxPrice);
+    }
+
+    /**
+     * Products with minStock &lt;= stock &lt;= maxStock, in stock order.
+     */
+    public Stream<Product> findByStockRange(int minStock, int maxStock) {
+        return stockRange(minStock, maxStock).stream()
+                .map(entry -> products.get(entry.id()))
+                .filter(product -> product != null
+                        && product.getStock() >= minStock && product.getStock() <= maxStock);
+    }
+
+    /**
+     * Statistics of every category (count, stock, stock value, unit prices), from the running totals kept on
+     * every write: O(categories) whatever the size of the catalogue.
+     */
+    public List<CategoryStats> categoryStats() {
+        return categoryAggregates.stats();
+    }
+
+    /**
+     * Statistics of one category, case-insensitive, or empty if it holds no product.
+     */
+    public Optional<CategoryStats> categoryStats(String category) {
+        return categoryAggregates.stats(category);
+    }
+
+    /**
+     * Counts the entries of the category index, stopping at limit. Lets callers compare the
+     * selectivity of several criteria without walking the larger candidate sets entirely.
+     */
+    public int countByCategory(String category, int limit) {
+        return count(categoryIds(categoryKey(category)), limit);
+    }
+
+    public int countByName(String name, int limit) {
+        return count(nameIds(name), limit);
+    }
+
+    public int countByPriceRange(double minPrice, double maxPrice, int limit) {
+        return count(priceRange(minPrice, maxPrice), limit);
+    }
+
+    public int countByStockRange(int minStock, int maxStock, int limit) {
+        return count(stockRange(minStock, maxStock), limit);
+    }
+
+    /**
+     * Inserts the product with a freshly generated codProduct, ignoring the one it carries.
+     */
+    public Product insert(Product product) {
+        Product copy = copyOf(product);
+        copy.setCodProduct(sequence.incrementAndGet());
+        write(copy);
+        return copy;
+    }
+
+    /**
+     * Inserts a batch of products. The batch takes a block of consecutive ids with a single atomic add,
+     * and each category bucket and its running totals are updated once for the whole batch.
+     * <p>
+     * The batch is fully indexed before its products become visible in the primary map: until then index scans
+     * skip the new ids (their re-check finds no product) and no update or removal can reach them, so a product is
+     * never changed halfway through its indexing. The running totals may count the batch a moment early.
+     * <p>
+     * All or nothing: the batch is checked, copied and logged before anything changes. If the mutation log throws,
+     * the products it already took are logged as removed again before the exception is rethrown.
+     *
+     * @throws NullPointerException if the batch holds a null product, leaving the store untouched
+     */
+    public List<Product> insertAll(List<Product> batch) {
+        if (batch.isEmpty()) return List.of();
+        List<Product> inserted = new ArrayList<>(batch.size());
+        for (Product product : batch) inserted.add(copyOf(Objects.requireNonNull(product, "product")));
+        int firstId = sequence.getAndAdd(batch.size()) + 1;
+        for (int i = 0; i < inserted.size(); i++) inserted.get(i).setCodProduct(firstId + i);
+
+        List<Product> logged = new ArrayList<>(batch.size());
+        try {
+            // Logged before they become visible, so they come before any later change of the same ids
+            for (Product copy : inserted) {
+                mutationLog.written(copy);
+                logged.add(copy);
+            }
+        } catch (RuntimeException e) {
+            if (unlog(logged, e)) sequence.compareAndSet(firstId + batch.size() - 1, firstId - 1);
+            throw e;
+        }
+
+        Map<String, List<Integer>> idsByCategory = new HashMap<>();
+        for (Product copy : inserted) {
+            int id = copy.getCodProduct();
+            priceIndex.add(new RangeKey(copy.getUnitPrice(), id));
+            stockIndex.add(new RangeKey(copy.getStock(), id));
+            nameIndex.reindex(id, null, copy.getName());
+            String category = categoryKey(copy.getCategory());
+            if (category != null) idsByCategory.computeIfAbsent(category, key -> new ArrayList<>()).add(id);
+        }
+        idsByCategory.forEach((category, categoryIds) -> categoryIndex.compute(category, (key, bucket) -> {
+            if (bucket == null) bucket = new ConcurrentSkipListSet<>();
+            bucket.addAll(categoryIds);
+            return bucket;
+        }));
+        categoryAggregates.addAll(inserted);
+        inserted.forEach(product -> ids.add(product.getCodProduct()));
+
+        for (Product copy : inserted) {
+            // Fresh ids only collide with an explicit put() of the same id made in the meantime
+            if (products.putIfAbsent(copy.getCodProduct(), copy) != null) replaceIndexed(copy);
+        }
+        return inserted;
+    }
+
+    /**
+     * Logs the products of a failed batch as removed again, so replaying the log does not bring them back.
+     *
+     * @return whether all of them were logged as removed
+     */
+    private boolean unlog(List<Product> logged, RuntimeException failure) {
+        boolean all = true;
+        for (Product product : logged) {
+            try {
+                mutationLog.removed(product.getCodProduct());
+            } catch (RuntimeException e) {
+                failure.addSuppressed(e);
+                all = false;
+            }
+        }
+        return all;
+    }
+
+    // Writes a product of insertAll over the version a put() stored first: its own entries and totals are already there
+    private void replaceIndexed(Product product) {
+        products.compute(product.getCodProduct(), (id, previous) -> {
+            mutationLog.written(product);
+            ids.add(id);
+            reindexEntries(id, previous, product);
+            categoryAggregates.replace(previous, null);
+            return product;
+        });
+    }
+
+    /**
+     * Fills an empty store with a whole catalogue (restoring a snapshot), given in codProduct order with each id once.
+     * The products go into the primary map and every index and running total is then built once from them, instead
+     * of product by product. Nothing is logged. Only for a store nobody reads or writes yet.
+     *
+     * @throws IllegalStateException    if the store already holds products
+     * @throws IllegalArgumentException if the products are not in strictly increasing codProduct order
+     */
+    public void load(List<Product> catalogue) {
+        if (!products.isEmpty()) throw new IllegalStateException("Only an empty product store can be loaded");
+        List<Product> loaded = new ArrayList<>(catalogue.size());
+        List<Integer> loadedIds = new ArrayList<>(catalogue.size());
+        RangeKey[] prices = new RangeKey[catalogue.size()];
+        RangeKey[] stocks = new RangeKey[catalogue.size()];
+        Map<String, List<Integer>> idsByCategory = new HashMap<>();
+        int lastId = Integer.MIN_VALUE;
+        for (Product product : catalogue) {
+            Product copy = copyOf(product);
+            int id = copy.getCodProduct();
+            if (id <= lastId) throw new IllegalArgumentException("Products to load must be in increasing codProduct order: " + id + " after " + lastId);
+            lastId = id;
+            products.put(id, copy);
+            prices[loaded.size()] = new RangeKey(copy.getUnitPrice(), id);
+            stocks[loaded.size()] = new RangeKey(copy.getStock(), id);
+            String category = categoryKey(copy.getCategory());
+            if (category != null) idsByCategory.computeIfAbsent(category, key -> new ArrayList<>()).add(id);
+            loaded.add(copy);
+            loadedIds.add(id);
+        }
+        if (loaded.isEmpty()) return;
+
+        ids.addAll(loadedIds);
+        Arrays.sort(prices);
+        priceIndex.addAll(Arrays.asList(prices));
+        Arrays.sort(stocks);
+        stockIndex.addAll(Arrays.asList(stocks));
+        idsByCategory.forEach((category, categoryIds) -> categoryIndex.put(category, new ConcurrentSkipListSet<>(categoryIds)));
+        nameIndex.load(loaded);
+        categoryAggregates.addAll(loaded);
+        sequence.accumulateAndGet(lastId, Math::max);
+    }
+
+    /**
+     * Stores the product under its own codProduct, replacing any previous version.
+     * Used to load existing data (seed, imports) that already carries its ids.
+     */
+    public Product put(Product product) {
+        if (product.getCodProduct() == null) return insert(product);
+        Product copy = copyOf(product);
+        sequence.accumulateAndGet(copy.getCodProduct(), Math::max);
+        write(copy);
+        return copy;
+    }
+
+    /**
+     * Replaces the product only if its codProduct already exists.
+     */
+    public Optional<Product> update(Product product) {
+        if (product.getCodProduct() == null) return Optional.empty();
+        Product copy = copyOf(product);
+        Product updated = products.computeIfPresent(copy.getCodProduct(), (id, previous) -> {
+            mutationLog.written(copy);
+            reindex(id, previous, copy);
+            return copy;
+        });
+        return Optional.ofNullable(updated);
+    }
+
+    /**
+     * Adds delta units to the stock of the product (negative to take them out) as one atomic read-modify-write
+     * of its entry, so concurrent reservations of the same product never lose updates and different products
+     * never wait for each other. Taking out more units than there are throws {@link InsufficientStockException}
+     * and leaves the product unchanged.
+     *
+     * @return the new version, or empty if the product does not exist
+     */
+    public Optional<Product> adjustStock(int id, int delta) {
+        Product updated = products.computeIfPresent(id, (key, previous) -> {
+            Product next = copyOf(previous);
+            next.setStock(stockAfter(previous, delta));
+            mutationLog.written(next);
+            reindex(key, previous, next);
+            return next;
+        });
+        return Optional.ofNullable(updated);
+    }
+
+    public boolean delete(int id) {
+        return remove(id).isPresent();
+    }
+
+    /**
+     * Deletes the product and returns the version that was removed.
+     */
+    public Optional<Product> remove(int id) {
+        Product[] removed = new Product[1];
+        products.computeIfPresent(id, (key, previous) -> {
+            mutationLog.removed(key);
+            ids.remove(key);
+            reindex(key, previous, null);
+            removed[0] = previous;
+            return null;
+        });
+        return Optional.ofNullable(removed[0]);
+    }
+
+    private void write(Product product) {
+        products.compute(product.getCodProduct(), (id, previous) -> {
+            mutationLog.written(product);
+            ids.add(id);
+            reindex(id, previous, product);
+            return product;
+        });
+    }
+
+    /**
+     * Moves the id between index entries, touching only the indexed values that changed.
+     * Runs inside the compute call of the primary map, so it is serialised per id.
+     */
+    private void reindex(int id, Product previous, Product next) {
+        reindexEntries(id, previous, next);
+        categoryAggregates.replace(previous, next);
+    }
+
+    // The index entries part of reindex, without the running totals
+    private void reindexEntries(int id, Product previous, Product next) {
+        String oldCategory = previous == null ? null : categoryKey(previous.getCategory());
+        String newCategory = next == null ? null : categoryKey(next.getCategory());
+        if (!Objects.equals(oldCategory, newCategory)) {
+            if (newCategory != null) {
+                categoryIndex.compute(newCategory, (key, bucket) -> {
+                    if (bucket == null) bucket = new ConcurrentSkipListSet<>();
+                    bucket.add(id);
+                    return bucket;
+                });
+            }
+            if (oldCategory != null) {
+                categoryIndex.computeIfPresent(oldCategory, (key, bucket) -> {
+                    bucket.remove(id);
+                    return bucket.isEmpty() ? null : bucket;
+                });
+            }
+        }
+        nameIndex.reindex(id, previous == null ? null : previous.getName(), next == null ? null : next.getName());
+        if (previous == null || next == null || Double.compare(previous.getUnitPrice(), next.getUnitPrice()) != 0) {
+            if (next != null) priceIndex.add(new RangeKey(next.getUnitPrice(), id));
+            if (previous != null) priceIndex.remove(new RangeKey(previous.getUnitPrice(), id));
+        }
+        if (previous == null || next == null || previous.getStock() != next.getStock()) {
+            if (next != null) stockIndex.add(new RangeKey(next.getStock(), id));
+            if (previous != null) stockIndex.remove(new RangeKey(previous.getStock(), id));
+        }
+    }
+
+    private NavigableSet<Integer> categoryIds(String key) {
+        if (key == null) return Collections.emptyNavigableSet();
+        NavigableSet<Integer> bucket = categoryIndex.get(key);
+        return bucket == null ? Collections.emptyNavigableSet() : bucket;
+    }
+
+    private NavigableSet<Integer> nameIds(String name) {
+        return name == null ? Collections.emptyNavigableSet() : nameIndex.withName(NameIndex.nameKey(name));
+    }
+
+    /**
+     * Candidates of a suggestion lookup: the bucket of the rarest complete word when it holds fewer than
+     * {@value #SELECTIVE_WORD} products, otherwise the words starting with the prefix. Counting a prefix range
+     * would mean walking many small buckets, so only the complete words are counted (and only up to that bound).
+     */
+    private Iterator<Integer> suggestionCandidates(List<String> words, String prefix) {
+        NavigableSet<Integer> rarest = null;
+        int rarestCount = SELECTIVE_WORD;
+        for (String word : words) {
+            NavigableSet<Integer> bucket = nameIndex.withWord(word);
+            int count = count(bucket, rarestCount);
+            if (count == 0) return Collections.emptyIterator();
+            if (count < rarestCount) {
+                rarest = bucket;
+                rarestCount = count;
+            }
+        }
+        return rarest != null ? rarest.iterator() : nameIndex.withWordPrefix(prefix);
+    }
+
+    // -1 if the name does not match, otherwise the lower the better (see suggestByName)
+    private static int rank(List<String> nameWords, List<String> words, String prefix, String phrase) {
+        if (!nameWords.containsAll(words)) return -1;
+        boolean wholeWord = nameWords.contains(prefix);
+        if (!wholeWord && nameWords.stream().noneMatch(word -> word.startsWith(prefix))) return -1;
+        String name = String.join(" ", nameWords);
+        if (name.equals(phrase)) return 0;
+        if (name.startsWith(phrase)) return 1;
+        return wholeWord ? 2 : 3;
+    }
+
+    private record Suggestion(Product product, int rank) {
+
+        static final Comparator<Suggestion> ORDER = Comparator.comparingInt(Suggestion::rank)
+                .thenComparingInt(suggestion -> suggestion.product().getName().length())
+                .thenComparingInt(suggestion -> suggestion.product().getCodProduct());
+    }
+
+    private NavigableSet<RangeKey> priceRange(double minPrice, double maxPrice) {
+        return range(priceIndex, minPrice, maxPrice);
+    }
+
+    private NavigableSet<RangeKey> stockRange(int minStock, int maxStock) {
+        return range(stockIndex, minStock, maxStock);
+    }
+
+    private static NavigableSet<RangeKey> range(ConcurrentSkipListSet<RangeKey> index, double min, double max) {
+        if (!(min <= max)) return Collections.emptyNavigableSet();
+        return index.subSet(RangeKey.lowest(min), true, RangeKey.highest(max), true);
+    }
+
+    private static int count(Set<?> entries, int limit) {
+        return count(entries.iterator(), limit);
+    }
+
+    private static int count(Iterator<?> iterator, int limit) {
+        int count = 0;
+        while (count < limit && iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Stock of the product once delta is applied, shared with the {@link ColumnarProductStore}.
+     */
+    static int stockAfter(Product product, int delta) {
+        return stockAfter(product.getCodProduct(), product.getStock(), delta);
+    }
+
+    static int stockAfter(int id, int stock, int delta) {
+        long next = (long) stock + delta;
+        if (next < 0) throw new InsufficientStockException(id, stock, -delta);
+        if (next > Integer.MAX_VALUE) throw new IllegalArgumentException("Stock of product " + id + " would overflow");
+        return (int) next;
+    }
+
+    private static String categoryKey(String category) {
+        return category == null ? null : category.toLowerCase(Locale.ROOT);
+    }
+
+    private static Product copyOf(Product product) {
+        return new Product(product.getCodProduct(), product.getName(), product.getCategory(),
+                product.getUnitPrice(), product.getStock());
+    }
+}
@@ -0,0 +1,28 @@
+package com.jesus.webflux.store;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Entry of a sorted secondary index: the indexed value plus the codProduct, so equal values
+ * from different products are kept as distinct entries ordered by id.
+ */
+record RangeKey(double value, int id) implements Comparable<RangeKey> {
+
+    static RangeKey lowest(double value) {
+        return new RangeKey(value, Integer.MIN_VALUE);
+    }
+
+    static RangeKey highest(double value) {
+        return new RangeKey(value, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int compareTo(RangeKey other) {
+        int byValue = Double.compare(value, other.value);
+        return byValue != 0 ? byValue : Integer.compare(id, other.id);
+    }
+}
@@ -0,0 +1,79 @@
+package com.jesus.webflux.store;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Dictionary encoding of a string column of the {@link ColumnarProductStore}: every distinct value is
+ * stored once and rows keep its int code. Code 0 is null. Each value also gets a lookup key (lower-cased
+ * or folded) so case-insensitive lookups resolve to a handful of codes before scanning the column.
+ * <p>
+ * Codes are never reused, values no row uses any more stay in the dictionary. Not thread-safe.
+ */
+final class StringDictionary {
+
+    static final int NULL_CODE = 0;
+    private static final int[] NO_CODES = new int[0];
+
+    private final UnaryOperator<String> keyFunction;
+    private final HashMap<String, Integer> codes = new HashMap<>();
+    private final HashMap<String, int[]> codesByKey = new HashMap<>();
+    private String[] values = new String[64];
+    private String[] keys = new String[64];
+    private int size = 1;
+
+    StringDictionary(UnaryOperator<String> keyFunction) {
+        this.keyFunction = keyFunction;
+    }
+
+    int encode(String value) {
+        if (value == null) return NULL_CODE;
+        Integer existing = codes.get(value);
+        if (existing != null) return existing;
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size << 1);
+            keys = Arrays.copyOf(keys, size << 1);
+        }
+        int code = size++;
+        String key = keyFunction.apply(value);
+        values[code] = value;
+        keys[code] = key;
+        codes.put(value, code);
+        codesByKey.merge(key, new int[]{code}, (current, added) -> {
+            int[] merged = Arrays.copyOf(current, current.length + 1);
+            merged[current.length] = added[0];
+            return merged;
+        });
+        return code;
+    }
+
+    String value(int code) {
+        return values[code];
+    }
+
+    String key(int code) {
+        return keys[code];
+    }
+
+    /**
+     * Number of codes in use, including the null code.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Codes of every value with the given lookup key (the key of a value, not the value itself).
+     */
+    int[] codesWithKey(String key) {
+        int[] matching = codesByKey.get(key);
+        return matching == null ? NO_CODES : matching;
+    }
+}
@@ -0,0 +1,66 @@
+package com.jesus.webflux.store;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+
+/**
+ * Accent and case folding of product names, shared by the in-memory name index and the r2dbc backend
+ * so both match the same way: "Azúcar", "AZUCAR" and "azucar" all fold to "azucar".
+ */
+public final class TextFolding {
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    private TextFolding() {
+    }
+
+    /**
+     * Strips diacritics and lower-cases the text.
+     */
+    public static String fold(String text) {
+        if (text == null) return "";
+        // Plain ASCII text (most lookups) only needs lower-casing, skip the normalizer
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                return MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+            }
+        }
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Folded words of the text, split on anything that is not a letter or a digit.
+     */
+    public static List<String> tokens(String text) {
+        String folded = fold(text);
+        List<String> tokens = new ArrayList<>(4);
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean wordChar = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * The folded words joined by single spaces and wrapped in spaces (" leche entera "), so a word or
+     * word prefix can be matched with LIKE '% word %' or LIKE '% pre%'.
+     */
+    public static String searchKey(String text) {
+        return " " + String.join(" ", tokens(text)) + " ";
+    }
+}
@@ -0,0 +1,13 @@
+-- Initial catalogue, the same one the in-memory backend starts with. Only seeded into an empty table: the script
+-- runs on every start, and a kept database must not get its products overwritten or the deleted ones back
+INSERT INTO product (cod_product, name, category, unit_price, stock, name_search)
+SELECT * FROM (VALUES
+    (100, 'Azúcar', 'Alimentación', 1.10, 20, ' azucar '),
+    (101, 'Leche', 'Alimentación', 1.20, 15, ' leche '),
+    (102, 'Jabón', 'Limpieza', 0.89, 30, ' jabon '),
+    (103, 'Mesa', 'Hogar', 125, 4, ' mesa '),
+    (104, 'Televisión', 'Hogar', 650, 10, ' television '),
+    (105, 'Huevos', 'Alimentación', 2.20, 30, ' huevos '),
+    (106, 'Fregona', 'Limpieza', 3.40, 6, ' fregona '),
+    (107, 'Detergente', 'Limpieza', 8.7, 12, ' detergente '))
+WHERE NOT EXISTS (SELECT 1 FROM product);
@@ -0,0 +1,20 @@
+-- Products of the r2dbc backend (product.backend=r2dbc). The *_key columns back the case-insensitive finders.
+-- name_search holds the accent and case folded words of the name wrapped in spaces (' leche entera '), written
+-- by the application (TextFolding.searchKey) and matched with LIKE by the autocomplete.
+-- Generated ids start after the seeded catalogue of data.sql.
+CREATE TABLE IF NOT EXISTS product
+(
+    cod_product  INT GENERATED BY DEFAULT AS IDENTITY (START WITH 108) PRIMARY KEY,
+    name         VARCHAR(255),
+    category     VARCHAR(255),
+    unit_price   DOUBLE PRECISION NOT NULL,
+    stock        INT              NOT NULL,
+    name_key     VARCHAR(255) GENERATED ALWAYS AS (LOWER(name)),
+    category_key VARCHAR(255) GENERATED ALWAYS AS (LOWER(category)),
+    name_search  VARCHAR(512)
+);
+
+CREATE INDEX IF NOT EXISTS idx_product_category ON product (category_key, cod_product);
+CREATE INDEX IF NOT EXISTS idx_product_name ON product (name_key, cod_product);
+CREATE INDEX IF NOT EXISTS idx_product_unit_price ON product (unit_price);
+CREATE INDEX IF NOT EXISTS idx_product_stock ON product (stock);
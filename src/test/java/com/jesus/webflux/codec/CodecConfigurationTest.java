@@ -0,0 +1,96 @@
+package com.jesus.webflux.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.jesus.webflux.model.Product;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.netty.http.client.HttpClient;
+
+import java.io.ByteArrayInputStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+// Against the real server: compression happens in Netty, not in the WebFlux handlers
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class CodecConfigurationTest {
+
+    private static final Product AZUCAR = new Product(100, "Azúcar", "Alimentación", 1.10, 20);
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    private WebTestClient client() {
+        // Without the client decompressing the body, so the encoding on the wire can be checked
+        // (the default connector asks Reactor Netty to decompress and drops Content-Encoding)
+        return WebTestClient.bindToServer(new ReactorClientHttpConnector(HttpClient.create()))
+                .baseUrl("http://localhost:" + port).build();
+    }
+
+    private byte[] get(String uri, MediaType accept) {
+        return client().get().uri(uri).accept(accept).exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(accept)
+                .expectBody().returnResult().getResponseBody();
+    }
+
+    @Test
+    void productIsNegotiatedAsJsonCborOrSmile() throws Exception {
+        assertEquals(AZUCAR, objectMapper.readValue(get("/reactive/product/100", MediaType.APPLICATION_JSON), Product.class));
+        assertEquals(AZUCAR, new ObjectMapper(new CBORFactory()).readValue(get("/reactive/product/100", MediaType.APPLICATION_CBOR), Product.class));
+        assertEquals(AZUCAR, new ObjectMapper(new SmileFactory()).readValue(get("/reactive/product/100", CodecConfiguration.APPLICATION_SMILE), Product.class));
+
+        // Lists as a CBOR array
+        Product[] page = new ObjectMapper(new CBORFactory()).readValue(get("/reactive/product/all?size=3", MediaType.APPLICATION_CBOR), Product[].class);
+        assertEquals(3, page.length);
+        assertEquals(AZUCAR, page[0]);
+    }
+
+    @Test
+    void cachedPayloadFollowsUpdates() throws Exception {
+        byte[] first = get("/reactive/product/100", MediaType.APPLICATION_JSON);
+        assertArrayEquals(first, get("/reactive/product/100", MediaType.APPLICATION_JSON));
+
+        Product changed = new Product(100, "Azúcar", "Alimentación", 1.10, 3);
+        client().put().uri("/reactive/product/update").bodyValue(changed).exchange().expectStatus().isCreated();
+        assertEquals(changed, objectMapper.readValue(get("/reactive/product/100", MediaType.APPLICATION_JSON), Product.class));
+    }
+
+    @Test
+    void largeResponsesAreCompressedWhenAccepted() throws Exception {
+        byte[] gzipped = client().get().uri("/reactive/product/all?size=100")
+                .accept(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.CONTENT_ENCODING, "gzip")
+                .expectBody().returnResult().getResponseBody();
+        Product[] products = objectMapper.readValue(new GZIPInputStream(new ByteArrayInputStream(gzipped)), Product[].class);
+        assertEquals(8, products.length);
+
+        client().get().uri("/reactive/product/all?size=100")
+                .accept(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.ACCEPT_ENCODING, "br")
+                .exchange()
+                .expectHeader().valueEquals(HttpHeaders.CONTENT_ENCODING, "br");
+    }
+}
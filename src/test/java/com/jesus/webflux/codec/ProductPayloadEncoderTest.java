@@ -0,0 +1,60 @@
+package com.jesus.webflux.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.jesus.webflux.model.Product;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.Encoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+class ProductPayloadEncoderTest {
+
+    private static final ResolvableType PRODUCT = ResolvableType.forClass(Product.class);
+
+    private final List<Product> products = List.of(
+            new Product(100, "Azúcar", "Alimentación", 1.10, 20),
+            new Product(101, "Leche", "Alimentación", 1.20, 15));
+    private final Jackson2JsonEncoder jsonEncoder = new Jackson2JsonEncoder(new ObjectMapper());
+    private final CollectingCborEncoder cborEncoder = new CollectingCborEncoder(new ObjectMapper(new CBORFactory()));
+    private final ProductPayloadEncoder encoder = new ProductPayloadEncoder(List.of(jsonEncoder, cborEncoder),
+            new PayloadCacheProperties(), new SimpleMeterRegistry());
+
+    private static byte[] write(Encoder<? super Product> encoder, List<Product> products, MediaType mediaType) {
+        DataBuffer joined = DataBufferUtils.join(encoder.encode(Flux.fromIterable(products), DefaultDataBufferFactory.sharedInstance,
+                PRODUCT, mediaType, Map.of())).defaultIfEmpty(DefaultDataBufferFactory.sharedInstance.allocateBuffer(0)).block();
+        byte[] bytes = new byte[joined.readableByteCount()];
+        joined.read(bytes);
+        return bytes;
+    }
+
+    @Test
+    void streamsAreFramedTheWayTheirEncoderWouldFrameThem() {
+        for (MediaType mediaType : List.of(MediaType.APPLICATION_JSON, MediaType.APPLICATION_NDJSON, MediaType.APPLICATION_CBOR)) {
+            Encoder<Object> regular = mediaType == MediaType.APPLICATION_CBOR ? cborEncoder : jsonEncoder;
+            // Twice: the second time from the cached payloads
+            assertArrayEquals(write(regular, products, mediaType), write(encoder, products, mediaType));
+            assertArrayEquals(write(regular, products, mediaType), write(encoder, products, mediaType));
+            assertArrayEquals(write(regular, List.of(), mediaType), write(encoder, List.of(), mediaType));
+        }
+        assertEquals("[]", new String(write(encoder, List.of(), MediaType.APPLICATION_JSON), StandardCharsets.UTF_8));
+    }
+}
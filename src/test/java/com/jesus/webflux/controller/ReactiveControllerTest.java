@@ -1,15 +1,34 @@
 package com.jesus.webflux.controller;
 
+import com.jesus.webflux.metrics.ReactiveMetrics;
+import com.jesus.webflux.model.BulkItemResult;
+import com.jesus.webflux.model.CategoryStats;
 import com.jesus.webflux.model.Product;
+import com.jesus.webflux.model.ProductQuery;
+import com.jesus.webflux.model.StockResult;
+import com.jesus.webflux.service.IdempotencyKeys;
 import com.jesus.webflux.service.ProductService;
+import com.jesus.webflux.service.ProductStockProperties;
+import com.jesus.webflux.simulation.LatencySimulator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
 /**
  * Author Jesús Fdez. Caraballo
  * jesus.fdez.caraballo@gmail.com
@@ -24,17 +43,25 @@ class ReactiveControllerTest {
      */
     private ReactiveController reactiveController;
 
-    @Autowired
     private ProductService productService;
 
+    @Autowired
+    private LatencySimulator latencySimulator;
+
+    @Autowired
+    private PaginationProperties paginationProperties;
+
+    @Autowired
+    private ReactiveMetrics reactiveMetrics;
+
     /**
      * Sets up the test environment before each test.
      * A mock of ProductService is created and injected into the ReactiveController.
      */
     @BeforeEach
     void setUp() {
-        //ProductService productService = Mockito.mock(ProductService.class);
-        reactiveController = new ReactiveController(productService);
+        productService = Mockito.mock(ProductService.class);
+        reactiveController = new ReactiveController(productService, latencySimulator, paginationProperties, reactiveMetrics);
     }
 
 
@@ -75,5 +102,142 @@ class ReactiveControllerTest {
                 .verify();
     }
 
+    @Test
+    void getProductsCapsPageSizeAndForwardsCursor() {
+        Mockito.when(productService.searchProducts(Mockito.any())).thenReturn(Flux.empty());
+
+        StepVerifier.create(reactiveController.getProducts(105, 1_000_000).getBody()).verifyComplete();
+
+        ArgumentCaptor<ProductQuery> query = ArgumentCaptor.forClass(ProductQuery.class);
+        Mockito.verify(productService).searchProducts(query.capture());
+        assertEquals(105, query.getValue().getAfter());
+        assertEquals(paginationProperties.getMaxPageSize(), query.getValue().getLimit());
+        assertEquals("codProduct", query.getValue().getSort());
+    }
+
+    @Test
+    void autocompleteCapsSuggestionsAndRejectsEmptyLimit() {
+        Mockito.when(productService.suggestProducts(Mockito.anyString(), Mockito.anyInt())).thenReturn(Flux.empty());
+
+        StepVerifier.create(reactiveController.autocomplete("azu", 1_000).getBody()).verifyComplete();
+        StepVerifier.create(reactiveController.autocomplete("azu", null).getBody()).verifyComplete();
+
+        Mockito.verify(productService).suggestProducts("azu", paginationProperties.getMaxSuggestions());
+        Mockito.verify(productService).suggestProducts("azu", paginationProperties.getDefaultSuggestions());
+        WebTestClient.bindToController(reactiveController).build()
+                .get().uri("/reactive/product/autocomplete?q=azu&limit=0")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    // Without Accept header /product/all answers a JSON array; with application/x-ndjson it streams one product per line
+    @Test
+    void getProductsNegotiatesJsonPageOrNdjsonStream() {
+        Product product = new Product(100, "Azúcar", "Alimentación", 1.10, 20);
+        Mockito.when(productService.searchProducts(Mockito.any())).thenAnswer(invocation -> Flux.just(product));
+        WebTestClient webTestClient = WebTestClient.bindToController(reactiveController).build();
+
+        webTestClient.get().uri("/reactive/product/all")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_JSON)
+                .expectBody().jsonPath("$[0].codProduct").isEqualTo(100);
 
-}
\ No newline at end of file
+        webTestClient.get().uri("/reactive/product/all")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .expectBodyList(Product.class).hasSize(1);
+
+        webTestClient.get().uri("/reactive/product/all?size=0")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    // The bulk endpoint accepts a plain JSON array and answers one NDJSON line per product
+    @Test
+    void addProductsAcceptsJsonArrayAndStreamsResults() {
+        Mockito.when(productService.addProducts(Mockito.any())).thenAnswer(invocation -> {
+            Flux<Product> products = invocation.getArgument(0);
+            return products.index().map(item -> BulkItemResult.of(item.getT1(), 200 + item.getT1().intValue(), BulkItemResult.Status.CREATED));
+        });
+        WebTestClient webTestClient = WebTestClient.bindToController(reactiveController).build();
+
+        webTestClient.post().uri("/reactive/product/bulk")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("[{\"name\":\"Sal\",\"category\":\"Alimentación\",\"unitPrice\":0.5,\"stock\":40},"
+                        + "{\"name\":\"Lejía\",\"category\":\"Limpieza\",\"unitPrice\":1.3,\"stock\":25}]")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .expectBodyList(BulkItemResult.class)
+                .contains(BulkItemResult.of(0, 200, BulkItemResult.Status.CREATED), BulkItemResult.of(1, 201, BulkItemResult.Status.CREATED));
+    }
+
+    // /product/stats is not taken for a product id
+    @Test
+    void statsEndpointsAnswerFromTheServiceAggregates() {
+        Mockito.when(productService.getCatalogueStats()).thenReturn(Mono.just(new CategoryStats(null, 8, 127, 7257.5, 0.89, 650, 99.06)));
+        Mockito.when(productService.getCategoryStats("Hogar")).thenReturn(Mono.just(new CategoryStats("Hogar", 2, 14, 7000, 125, 650, 387.5)));
+        WebTestClient webTestClient = WebTestClient.bindToController(reactiveController).build();
+
+        webTestClient.get().uri("/reactive/product/stats")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.count").isEqualTo(8).jsonPath("$.totalStockValue").isEqualTo(7257.5);
+        webTestClient.get().uri("/reactive/product/stats/category/Hogar")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.avgPrice").isEqualTo(387.5);
+        Mockito.verify(productService, Mockito.never()).getProductById(Mockito.anyLong());
+    }
+
+    // GET /product?ids= is not taken for /product/{id}, and both forms go to the service in one call
+    @Test
+    void lookupOfSeveralIdsCallsTheServiceOnce() {
+        Product sugar = new Product(100, "Azúcar", "Alimentación", 1.10, 20);
+        Product eggs = new Product(105, "Huevos", "Alimentación", 2.20, 30);
+        Mockito.when(productService.getProductsByIds(List.of(105, 100, 999))).thenReturn(Flux.just(eggs, sugar));
+        WebTestClient webTestClient = WebTestClient.bindToController(reactiveController).build();
+
+        webTestClient.get().uri("/reactive/product?ids=105,100,999")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Product.class).isEqualTo(List.of(eggs, sugar));
+        webTestClient.post().uri("/reactive/product/lookup")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(List.of(105, 100, 999))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Product.class).isEqualTo(List.of(eggs, sugar));
+        Mockito.verify(productService, Mockito.times(2)).getProductsByIds(List.of(105, 100, 999));
+        Mockito.verify(productService, Mockito.never()).getProductById(Mockito.anyLong());
+
+        List<Integer> tooMany = IntStream.rangeClosed(1, paginationProperties.getMaxLookupIds() + 1).boxed().toList();
+        webTestClient.post().uri("/reactive/product/lookup")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(tooMany)
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void reusedIdempotencyKeyIs422AndOtherFailuresAre5xx() {
+        IdempotencyKeys idempotencyKeys = new IdempotencyKeys(new ProductStockProperties(), new SimpleMeterRegistry());
+        WebTestClient webTestClient = WebTestClient.bindToController(
+                new ProductStockController(productService, idempotencyKeys, reactiveMetrics)).build();
+        Mockito.when(productService.reserveStock(Mockito.anyList()))
+                .thenReturn(Mono.just(StockResult.of(StockResult.Status.RESERVED, List.of())));
+
+        webTestClient.post().uri("/reactive/product/100/stock/reserve?quantity=1").header("Idempotency-Key", "pedido-1")
+                .exchange().expectStatus().isOk();
+        webTestClient.post().uri("/reactive/product/100/stock/reserve?quantity=2").header("Idempotency-Key", "pedido-1")
+                .exchange().expectStatus().isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY);
+
+        Mockito.when(productService.reserveStock(Mockito.anyList()))
+                .thenReturn(Mono.error(new IllegalStateException("The product journal is closed")));
+        webTestClient.post().uri("/reactive/product/100/stock/reserve?quantity=1")
+                .exchange().expectStatus().is5xxServerError();
+    }
+}
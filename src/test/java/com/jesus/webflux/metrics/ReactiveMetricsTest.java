@@ -0,0 +1,51 @@
+package com.jesus.webflux.metrics;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+class ReactiveMetricsTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private ReactiveMetrics reactiveMetrics;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        reactiveMetrics = new ReactiveMetrics(meterRegistry);
+    }
+
+    @Test
+    void fluxRecordsDurationAndElementsPerOperation() {
+        StepVerifier.create(reactiveMetrics.flux("test", "range", Flux.range(1, 5)))
+                .expectNextCount(5)
+                .verifyComplete();
+
+        Timer duration = meterRegistry.find("test.flow.duration").tags("operation", "range", "status", "completed").timer();
+        assertNotNull(duration);
+        assertEquals(1, duration.count());
+        assertEquals(5, meterRegistry.get("test.onNext.delay").tag("operation", "range").timer().count());
+    }
+
+    @Test
+    void monoRecordsErrorsWithTheirStatus() {
+        StepVerifier.create(reactiveMetrics.mono("test", "failing", Mono.error(new IllegalStateException("boom"))))
+                .verifyError(IllegalStateException.class);
+
+        Timer duration = meterRegistry.find("test.flow.duration").tags("operation", "failing", "status", "error").timer();
+        assertNotNull(duration);
+        assertEquals(1, duration.count());
+    }
+}
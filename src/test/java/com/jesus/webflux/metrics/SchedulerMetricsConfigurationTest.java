@@ -0,0 +1,53 @@
+package com.jesus.webflux.metrics;
+
+import io.micrometer.core.instrument.search.Search;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+class SchedulerMetricsConfigurationTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SchedulerMetricsConfiguration configuration = new SchedulerMetricsConfiguration(meterRegistry);
+
+    @AfterEach
+    void tearDown() {
+        configuration.destroy();
+    }
+
+    private Set<String> executorNames() {
+        return Search.in(meterRegistry).meters().stream()
+                .map(meter -> meter.getId().getTag("name")).collect(Collectors.toSet());
+    }
+
+    @Test
+    void executorsGiveBackTheirMetersAndNumbersOnShutdown() {
+        Scheduler first = Schedulers.newParallel("metered", 2);
+        first.init();
+        Set<String> names = executorNames();
+        assertEquals(2, names.size());
+        assertTrue(names.stream().allMatch(name -> name.contains("metered") && (name.endsWith("-1") || name.endsWith("-2"))));
+
+        first.dispose();
+        assertTrue(executorNames().isEmpty());
+
+        // A recreated scheduler publishes under the same names again
+        Scheduler second = Schedulers.newParallel("metered", 2);
+        second.init();
+        assertEquals(names, executorNames());
+        second.dispose();
+    }
+}
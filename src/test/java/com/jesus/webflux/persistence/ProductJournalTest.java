@@ -0,0 +1,220 @@
+package com.jesus.webflux.persistence;
+
+import com.jesus.webflux.model.Product;
+import com.jesus.webflux.store.ProductStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+class ProductJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private ProductPersistenceProperties properties(DataSize segmentSize) {
+        ProductPersistenceProperties properties = new ProductPersistenceProperties();
+        properties.setDirectory(directory);
+        properties.setSegmentSize(segmentSize);
+        properties.setFlushInterval(Duration.ofMillis(20));
+        return properties;
+    }
+
+    private ProductStore recover(ProductJournal journal) throws IOException {
+        ProductStore store = new ProductStore();
+        journal.recover(store);
+        return store;
+    }
+
+    @Test
+    void changesSurviveARestartFromTheJournalAlone() throws IOException {
+        ProductPersistenceProperties properties = properties(DataSize.ofKilobytes(1));
+        ProductJournal journal = new ProductJournal(properties, new SimpleMeterRegistry());
+        ProductStore store = recover(journal);
+        store.insertAll(IntStream.range(0, 50).mapToObj(i -> new Product(null, "Producto " + i, "Hogar", i, i)).toList());
+        store.update(new Product(3, "Lámpara", null, 9.5, 7));
+        store.adjustStock(4, -3);
+        store.remove(50);
+        journal.durable().join();
+        // Crash: nothing closed, no snapshot written
+        journal.flush();
+
+        ProductStore restored = recover(new ProductJournal(properties, new SimpleMeterRegistry()));
+        assertEquals(49, restored.size());
+        assertEquals(new Product(3, "Lámpara", null, 9.5, 7), restored.findById(3).orElseThrow());
+        assertEquals(0, restored.findById(4).orElseThrow().getStock());
+        assertFalse(restored.exists(50));
+        // The deleted highest id is not handed out again
+        assertEquals(51, restored.insert(new Product(null, "Silla", "Hogar", 30, 2)).getCodProduct());
+        assertEquals(49, restored.countByCategory("Hogar", 100));
+    }
+
+    @Test
+    void tornWriteAtTheEndOfTheJournalIsDiscarded() throws IOException {
+        ProductPersistenceProperties properties = properties(DataSize.ofKilobytes(64));
+        ProductJournal journal = new ProductJournal(properties, new SimpleMeterRegistry());
+        ProductStore store = recover(journal);
+        store.put(new Product(1, "Azúcar", "Alimentación", 1.10, 20));
+        store.put(new Product(2, "Leche", "Alimentación", 1.20, 15));
+        journal.flush();
+
+        // A half written third record: its length is there, its checksum does not match
+        Path segment = JournalSegment.path(directory, 0);
+        long end = JournalSegment.replay(segment, record -> {
+        });
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(end);
+            file.writeInt(40);
+            file.writeInt(12345);
+            file.writeByte(ProductRecords.PUT);
+        }
+
+        ProductJournal reopened = new ProductJournal(properties, new SimpleMeterRegistry());
+        ProductStore restored = recover(reopened);
+        assertEquals(2, restored.size());
+        // Appending carries on where the valid records end
+        restored.put(new Product(3, "Mesa", "Hogar", 125, 4));
+        reopened.flush();
+        assertEquals(3, recover(new ProductJournal(properties, new SimpleMeterRegistry())).size());
+    }
+
+    // The frame of the torn write is longer than what is appended after the restart, so some of it is left behind the new
+    // record unless the whole tail is cleared; once close() rotates to a new segment that one is no longer the last
+    @Test
+    void tornWriteLongerThanTheNextRecordDoesNotCorruptTheSegment() throws IOException {
+        ProductPersistenceProperties properties = properties(DataSize.ofKilobytes(64));
+        ProductJournal journal = new ProductJournal(properties, new SimpleMeterRegistry());
+        ProductStore store = recover(journal);
+        store.put(new Product(1, "Azúcar", "Alimentación", 1.10, 20));
+        journal.flush();
+
+        Path segment = JournalSegment.path(directory, 0);
+        long end = JournalSegment.replay(segment, record -> {
+        });
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(end);
+            file.writeInt(200);
+            file.writeInt(12345);
+            for (int i = 0; i < 200; i++) file.writeByte(i % 2 == 0 ? ProductRecords.PUT : 0x7f);
+        }
+
+        ProductJournal reopened = new ProductJournal(properties, new SimpleMeterRegistry());
+        ProductStore restored = recover(reopened);
+        restored.put(new Product(2, "Leche", "Alimentación", 1.20, 15));
+        reopened.close();
+
+        ProductStore again = recover(new ProductJournal(properties, new SimpleMeterRegistry()));
+        assertEquals(List.of(1, 2), again.findAll().map(Product::getCodProduct).toList());
+    }
+
+    @Test
+    void tornWriteBeforeTheLastSegmentEndsTheReplayThere() throws IOException {
+        ProductPersistenceProperties properties = properties(DataSize.ofKilobytes(1));
+        ProductJournal journal = new ProductJournal(properties, new SimpleMeterRegistry());
+        ProductStore store = recover(journal);
+        for (int id = 1; id <= 60; id++) store.put(new Product(id, "Producto " + id, "Hogar", id, id));
+        journal.flush();
+        assertTrue(Files.exists(JournalSegment.path(directory, 2)));
+
+        // The checksum of the fourth record of the first segment no longer matches
+        Path first = JournalSegment.path(directory, 0);
+        long[] frames = new long[2];
+        JournalSegment.replay(first, record -> {
+            // Offset of the fourth frame: past the first three
+            if (frames[1]++ < 3) frames[0] += JournalSegment.FRAME_HEADER + record.remaining();
+        });
+        try (RandomAccessFile file = new RandomAccessFile(first.toFile(), "rw")) {
+            file.seek(frames[0] + 4);
+            file.writeInt(12345);
+        }
+
+        ProductJournal reopened = new ProductJournal(properties, new SimpleMeterRegistry());
+        ProductStore restored = recover(reopened);
+        assertEquals(List.of(1, 2, 3), restored.findAll().map(Product::getCodProduct).toList());
+        assertFalse(Files.exists(JournalSegment.path(directory, 1)));
+        assertFalse(Files.exists(JournalSegment.path(directory, 2)));
+        // Appending carries on in the first segment, and the journal replays again from scratch
+        restored.put(new Product(4, "Mesa", "Hogar", 125, 4));
+        reopened.flush();
+        assertEquals(List.of(1, 2, 3, 4), recover(new ProductJournal(properties, new SimpleMeterRegistry())).findAll().map(Product::getCodProduct).toList());
+    }
+
+    @Test
+    void snapshotReplacesTheJournalAndRecoveryReplaysWhatFollows() throws IOException {
+        ProductPersistenceProperties properties = properties(DataSize.ofKilobytes(4));
+        ProductJournal journal = new ProductJournal(properties, new SimpleMeterRegistry());
+        ProductStore store = recover(journal);
+        store.insertAll(IntStream.range(0, 500).mapToObj(i -> new Product(null, "Producto " + i, "Hogar", i, i)).toList());
+        journal.snapshot();
+        store.remove(1);
+        store.update(new Product(2, "Cambiado", "Oficina", 2, 2));
+        journal.flush();
+
+        try (var files = Files.list(directory)) {
+            // Only the segment current when the snapshot started and the ones after it are kept
+            assertEquals(3, files.count());
+        }
+        ProductStore restored = recover(new ProductJournal(properties, new SimpleMeterRegistry()));
+        assertEquals(499, restored.size());
+        assertEquals("Cambiado", restored.findById(2).orElseThrow().getName());
+        assertEquals(500, restored.lastId());
+    }
+
+    @Test
+    void closeWritesASnapshotSoTheNextStartHasNoJournalToReplay() throws IOException {
+        ProductPersistenceProperties properties = properties(DataSize.ofKilobytes(64));
+        ProductJournal journal = new ProductJournal(properties, new SimpleMeterRegistry());
+        ProductStore store = recover(journal);
+        store.put(new Product(7, "Azúcar", "Alimentación", 1.10, 20));
+        journal.close();
+        assertThrows(IllegalStateException.class, () -> store.put(new Product(8, "Leche", "Alimentación", 1.20, 15)));
+        assertFalse(store.exists(8));
+
+        ProductStore restored = recover(new ProductJournal(properties, new SimpleMeterRegistry()));
+        assertEquals(List.of(7), restored.findAll().map(Product::getCodProduct).toList());
+    }
+
+    @Test
+    void writesWaitingTogetherShareOneFsync() throws Exception {
+        ProductPersistenceProperties properties = properties(DataSize.ofKilobytes(64));
+        properties.setFlushInterval(Duration.ofSeconds(30));
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ProductJournal journal = new ProductJournal(properties, meterRegistry);
+        ProductStore store = recover(journal);
+        CompletableFuture<Void> first;
+        CompletableFuture<Void> second;
+        CompletableFuture<String> resumedOn;
+        // Holding the lock keeps the flusher from syncing between the two writes
+        synchronized (journal) {
+            store.put(new Product(1, "Azúcar", "Alimentación", 1.10, 20));
+            first = journal.durable();
+            store.put(new Product(2, "Leche", "Alimentación", 1.20, 15));
+            second = journal.durable();
+            assertFalse(first.isDone());
+            resumedOn = first.thenApply(done -> Thread.currentThread().getName());
+        }
+        CompletableFuture.allOf(first, second).get(5, TimeUnit.SECONDS);
+        assertEquals(1, meterRegistry.get("product.journal.sync").timer().count());
+        assertEquals(2, meterRegistry.get("product.journal.sync.batch").summary().totalAmount());
+        assertTrue(journal.durable().isDone());
+        // The writes resume off the flusher thread
+        assertNotEquals("product-journal-flusher", resumedOn.get(5, TimeUnit.SECONDS));
+    }
+}
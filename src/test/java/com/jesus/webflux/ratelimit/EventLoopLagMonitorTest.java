@@ -0,0 +1,76 @@
+package com.jesus.webflux.ratelimit;
+
+import com.jesus.webflux.server.NettyTuningProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.boot.web.reactive.context.ReactiveWebServerInitializedEvent;
+import org.springframework.http.client.ReactorResourceFactory;
+import reactor.netty.resources.LoopResources;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+class EventLoopLagMonitorTest {
+
+    private final ReactorResourceFactory resourceFactory = Mockito.mock(ReactorResourceFactory.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final EventLoopLagMonitor monitor = new EventLoopLagMonitor(resourceFactory, new NettyTuningProperties(),
+            new RateLimitProperties(), meterRegistry);
+    private final EventLoopGroup group = new DefaultEventLoopGroup(1);
+
+    @AfterEach
+    void tearDown() {
+        monitor.stop();
+        group.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+    }
+
+    private double lastLagMillis() {
+        return meterRegistry.get("rate.limit.event.loop.lag.last").timeGauge().value(TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    void withoutAServerTheLoopResourcesAreNeverTouched() throws InterruptedException {
+        monitor.start();
+        Thread.sleep(200);
+        Mockito.verifyNoInteractions(resourceFactory);
+    }
+
+    @Test
+    void probesTheServerLoopsUntilStopped() throws InterruptedException {
+        LoopResources loopResources = Mockito.mock(LoopResources.class);
+        Mockito.when(loopResources.onServer(Mockito.anyBoolean())).thenReturn(group);
+        Mockito.when(resourceFactory.getLoopResources()).thenReturn(loopResources);
+        monitor.onServerStarted(Mockito.mock(ReactiveWebServerInitializedEvent.class));
+        monitor.start();
+
+        CountDownLatch blocked = new CountDownLatch(1);
+        group.execute(() -> {
+            try {
+                blocked.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (lastLagMillis() < 200 && System.nanoTime() < deadline) Thread.sleep(20);
+        blocked.countDown();
+        assertTrue(lastLagMillis() >= 200);
+
+        monitor.stop();
+        Mockito.clearInvocations(resourceFactory, loopResources);
+        Thread.sleep(200);
+        Mockito.verifyNoInteractions(resourceFactory, loopResources);
+    }
+}
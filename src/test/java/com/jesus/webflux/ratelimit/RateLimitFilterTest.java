@@ -0,0 +1,161 @@
+package com.jesus.webflux.ratelimit;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+class RateLimitFilterTest {
+
+    private final RateLimitProperties properties = new RateLimitProperties();
+    private final EventLoopLagMonitor lagMonitor = Mockito.mock(EventLoopLagMonitor.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final WebFilterChain chain = exchange -> Mono.empty();
+
+    @BeforeEach
+    void setUp() {
+        properties.setClientHeader("X-Client-Id");
+    }
+
+    private RateLimitProperties.Route route(String name, String path) {
+        RateLimitProperties.Route route = new RateLimitProperties.Route();
+        route.setPath(path);
+        properties.getRoutes().put(name, route);
+        return route;
+    }
+
+    private static MockServerWebExchange get(String path, String client) {
+        return MockServerWebExchange.from(MockServerHttpRequest.get(path).header("X-Client-Id", client));
+    }
+
+    private static HttpStatus filter(RateLimitFilter filter, MockServerWebExchange exchange, WebFilterChain chain) {
+        filter.filter(exchange, chain).block(Duration.ofSeconds(5));
+        return (HttpStatus) exchange.getResponse().getStatusCode();
+    }
+
+    @Test
+    void clientLimitOnlyHoldsBackThatClient() {
+        RateLimitProperties.Route byId = route("product-by-id", "/reactive/product/{id:\\d+}");
+        byId.setClientRate(1);
+        byId.setClientBurst(2);
+        RateLimitFilter filter = new RateLimitFilter(properties, lagMonitor, meterRegistry);
+
+        assertNull(filter(filter, get("/reactive/product/100", "a"), chain));
+        assertNull(filter(filter, get("/reactive/product/101", "a"), chain));
+        MockServerWebExchange rejected = get("/reactive/product/102", "a");
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, filter(filter, rejected, chain));
+        assertEquals("1", rejected.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+
+        assertNull(filter(filter, get("/reactive/product/100", "b"), chain));
+        // Not a product id: no route, no limit
+        assertNull(filter(filter, get("/reactive/product/all", "a"), chain));
+        assertEquals(1, meterRegistry.get("rate.limit.rejected").tags("route", "product-by-id", "reason", "client").counter().count());
+    }
+
+    @Test
+    void clientHeaderIsIgnoredUnlessConfigured() {
+        properties.setClientHeader(null);
+        RateLimitProperties.Route byId = route("product-by-id", "/reactive/product/{id:\\d+}");
+        byId.setClientRate(1);
+        byId.setClientBurst(1);
+        RateLimitFilter filter = new RateLimitFilter(properties, lagMonitor, meterRegistry);
+
+        assertNull(filter(filter, get("/reactive/product/100", "a"), chain));
+        // Same remote address, a new header value does not make it a new client
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, filter(filter, get("/reactive/product/100", "b"), chain));
+    }
+
+    @Test
+    void globalLimitHoldsBackEveryClient() {
+        RateLimitProperties.Route all = route("default", "/reactive/**");
+        all.setGlobalRate(0.1);
+        all.setGlobalBurst(3);
+        RateLimitFilter filter = new RateLimitFilter(properties, lagMonitor, meterRegistry);
+
+        assertNull(filter(filter, get("/reactive/names", "a"), chain));
+        assertNull(filter(filter, get("/reactive/names", "b"), chain));
+        assertNull(filter(filter, get("/reactive/names", "c"), chain));
+        MockServerWebExchange rejected = get("/reactive/names", "d");
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, filter(filter, rejected, chain));
+        // One token every 10 s
+        assertEquals("10", rejected.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+    }
+
+    @Test
+    void streamsBeyondTheConcurrencyCapAreRejectedUntilOneEnds() {
+        route("default", "/reactive/**").setClientRate(1000);
+        route("streams", "/reactive/{endpoint:flux|stream}").setMaxConcurrent(2);
+        RateLimitFilter filter = new RateLimitFilter(properties, lagMonitor, meterRegistry);
+        Sinks.Empty<Void> first = Sinks.empty();
+
+        StepVerifier firstStream = StepVerifier.create(filter.filter(get("/reactive/stream", "a"), exchange -> first.asMono())).expectComplete().verifyLater();
+        Disposable secondStream = filter.filter(get("/reactive/flux", "b"), exchange -> Mono.never()).subscribe();
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, filter(filter, get("/reactive/stream", "c"), chain));
+        // Other routes are not affected
+        assertNull(filter(filter, get("/reactive/names", "c"), chain));
+
+        first.tryEmitEmpty();
+        firstStream.verify(Duration.ofSeconds(5));
+        assertNull(filter(filter, get("/reactive/stream", "c"), chain));
+
+        // A client going away (cancel) releases its slot as well
+        Disposable thirdStream = filter.filter(get("/reactive/stream", "c"), exchange -> Mono.never()).subscribe();
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, filter(filter, get("/reactive/stream", "d"), chain));
+        secondStream.dispose();
+        assertNull(filter(filter, get("/reactive/stream", "d"), chain));
+        thirdStream.dispose();
+    }
+
+    @Test
+    void requestsAreShedWhileTheEventLoopsLag() {
+        route("default", "/reactive/**");
+        route("changes", "/reactive/product/changes").setSheddable(false);
+        RateLimitFilter filter = new RateLimitFilter(properties, lagMonitor, meterRegistry);
+
+        Mockito.when(lagMonitor.lagNanos()).thenReturn(TimeUnit.MILLISECONDS.toNanos(50));
+        assertNull(filter(filter, get("/reactive/names", "a"), chain));
+
+        // Twice the threshold or more: everything sheddable
+        Mockito.when(lagMonitor.lagNanos()).thenReturn(TimeUnit.MILLISECONDS.toNanos(250));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, filter(filter, get("/reactive/names", "a"), chain));
+        assertNull(filter(filter, get("/reactive/product/changes", "a"), chain));
+        assertEquals(1, meterRegistry.get("rate.limit.rejected").tags("route", "default", "reason", "overload").counter().count());
+    }
+
+    @Test
+    void tokenBucketRefillsAtItsRate() {
+        long start = 1_000_000_000L;
+        TokenBucket bucket = new TokenBucket(10, 2, start);
+
+        assertEquals(0, bucket.tryAcquire(start));
+        assertEquals(0, bucket.tryAcquire(start));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), bucket.tryAcquire(start));
+        assertEquals(0, bucket.tryAcquire(start + TimeUnit.MILLISECONDS.toNanos(100)));
+        // Idle for long: never more than the burst
+        long later = start + TimeUnit.SECONDS.toNanos(60);
+        assertEquals(0, bucket.tryAcquire(later));
+        assertEquals(0, bucket.tryAcquire(later));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), bucket.tryAcquire(later));
+    }
+}
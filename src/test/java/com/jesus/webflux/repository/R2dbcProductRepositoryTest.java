@@ -0,0 +1,198 @@
+package com.jesus.webflux.repository;
+
+import com.jesus.webflux.Spb3Java17WebfluxService3Application;
+import com.jesus.webflux.model.CategoryStats;
+import com.jesus.webflux.model.Product;
+import com.jesus.webflux.model.ProductQuery;
+import com.jesus.webflux.model.StockLine;
+import com.jesus.webflux.model.StockResult;
+import com.jesus.webflux.service.ProductService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.annotation.DirtiesContext;
+import reactor.test.StepVerifier;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@SpringBootTest(properties = {"product.backend=r2dbc", "product.r2dbc.url=r2dbc:h2:mem:///products-${random.uuid}"})
+class R2dbcProductRepositoryTest {
+
+    @TempDir
+    Path databaseDirectory;
+
+    @Autowired
+    ProductRepository productRepository;
+
+    @Autowired
+    ProductService productService;
+
+    @Test
+    void findByIdReadsSeededCatalogue() {
+        StepVerifier.create(productService.getProductById(100))
+                .expectNextMatches(p -> p.getCodProduct() == 100 && p.getName().equals("Azúcar"))
+                .verifyComplete();
+    }
+
+    @Test
+    void lookupOfSeveralIdsIsOneQueryInRequestOrder() {
+        StepVerifier.create(productService.getProductsByIds(List.of(105, 999, 100, 105, 102)).map(Product::getCodProduct))
+                .expectNext(105, 100, 102)
+                .verifyComplete();
+        StepVerifier.create(productRepository.findAllById(List.of())).verifyComplete();
+    }
+
+    @Test
+    void searchUsesSameRulesAsTheInMemoryPlanner() {
+        StepVerifier.create(productService.getProductsByCategory("ALIMENTACIÓN").map(Product::getName))
+                .expectNext("Azúcar", "Leche", "Huevos")
+                .verifyComplete();
+        StepVerifier.create(productService.searchProducts(ProductQuery.builder().sort("-unitPrice").offset(1).limit(2).build()).map(Product::getCodProduct))
+                .expectNext(103, 107)
+                .verifyComplete();
+        StepVerifier.create(productService.searchProducts(ProductQuery.builder().category("Limpieza").after(102).build()).map(Product::getCodProduct))
+                .expectNext(106, 107)
+                .verifyComplete();
+    }
+
+    @Test
+    void suggestMatchesFoldedNamesLikeTheNameIndex() {
+        StepVerifier.create(productRepository.insert(new Product(null, "Azúcar moreno", "Alimentación", 1.90, 10)).then())
+                .verifyComplete();
+        StepVerifier.create(productService.suggestProducts("AZU", 10).map(Product::getCodProduct))
+                .expectNext(100, 108)
+                .verifyComplete();
+        StepVerifier.create(productService.suggestProducts("televisión", 10).map(Product::getName))
+                .expectNext("Televisión")
+                .verifyComplete();
+    }
+
+    @Test
+    void batchedInsertReturnsGeneratedIdsInOrder() {
+        List<Product> batch = List.of(
+                new Product(null, "Sal", "Alimentación", 0.50, 40),
+                new Product(null, "Lejía", "Limpieza", 1.30, 25),
+                new Product(null, "Silla", "Hogar", 45, 8));
+        StepVerifier.create(productRepository.insertAll(batch).map(p -> p.getCodProduct() + ":" + p.getName()))
+                .expectNext("108:Sal", "109:Lejía", "110:Silla")
+                .verifyComplete();
+    }
+
+    @Test
+    void batchedUpdateReportsMissingProducts() {
+        List<Product> batch = List.of(
+                new Product(100, "Azúcar moreno", "Alimentación", 1.50, 10),
+                new Product(999, "Desconocido", "Nada", 1, 1),
+                new Product(107, "Detergente", "Limpieza", 9.5, 0));
+        StepVerifier.create(productRepository.updateAll(batch))
+                .expectNext(true, false, true)
+                .verifyComplete();
+        StepVerifier.create(productRepository.findById(107).map(Product::getStock))
+                .expectNext(0)
+                .verifyComplete();
+    }
+
+    @Test
+    void addUpdateAndDeleteAreDurableInTheDatabase() {
+        StepVerifier.create(productService.addProduct(new Product(999, "Nuevo", "Hogar", 10, 1)))
+                .expectNextMatches(p -> p.getCodProduct() == 108)
+                .verifyComplete();
+        StepVerifier.create(productService.updateProduct(new Product(100, "Azúcar moreno", "Alimentación", 1.5, 5)))
+                .expectNextCount(1)
+                .verifyComplete();
+        StepVerifier.create(productRepository.findById(100).map(Product::getName))
+                .expectNext("Azúcar moreno")
+                .verifyComplete();
+        StepVerifier.create(productService.deleteProduct(100).then(productRepository.findById(100)))
+                .verifyComplete();
+        StepVerifier.create(productService.updateProduct(new Product(100, "Fantasma", "Nada", 1, 1)))
+                .verifyComplete();
+    }
+
+    @Test
+    void reserveStockIsAllOrNothing() {
+        StepVerifier.create(productService.reserveStock(List.of(new StockLine(100, 5), new StockLine(103, 5))))
+                .expectNextMatches(result -> result.getStatus() == StockResult.Status.INSUFFICIENT_STOCK
+                        && result.getCodProduct() == 103 && result.getAvailable() == 4)
+                .verifyComplete();
+        StepVerifier.create(productService.getProductById(100).map(Product::getStock))
+                .expectNext(20)
+                .verifyComplete();
+
+        // Repeated products are added up
+        StepVerifier.create(productService.reserveStock(List.of(new StockLine(103, 3), new StockLine(100, 2), new StockLine(100, 3))))
+                .expectNextMatches(result -> result.getStatus() == StockResult.Status.RESERVED
+                        && result.getProducts().stream().map(Product::getStock).toList().equals(List.of(15, 1)))
+                .verifyComplete();
+        StepVerifier.create(productService.getProductById(100).map(Product::getStock))
+                .expectNext(15)
+                .verifyComplete();
+        StepVerifier.create(productService.reserveStock(List.of(new StockLine(100, 1), new StockLine(999, 1))))
+                .expectNextMatches(result -> result.getStatus() == StockResult.Status.NOT_FOUND && result.getCodProduct() == 999)
+                .verifyComplete();
+
+        StepVerifier.create(productService.releaseStock(List.of(new StockLine(103, 3))))
+                .expectNextMatches(result -> result.getStatus() == StockResult.Status.RELEASED && result.getProducts().get(0).getStock() == 4)
+                .verifyComplete();
+        StepVerifier.create(productService.adjustStock(100, -15))
+                .expectNextMatches(result -> result.getStatus() == StockResult.Status.ADJUSTED && result.getProducts().get(0).getStock() == 0)
+                .verifyComplete();
+        StepVerifier.create(productService.reserveStock(List.of(new StockLine(100, 0))))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+    }
+
+    @Test
+    void categoryStatsAreGroupedByTheDatabase() {
+        StepVerifier.create(productService.getCategoryStats().map(CategoryStats::getCategory))
+                .expectNext("Alimentación", "Hogar", "Limpieza")
+                .verifyComplete();
+        StepVerifier.create(productService.getCategoryStats("HOGAR"))
+                .expectNext(new CategoryStats("Hogar", 2, 14, 7000.0, 125, 650, 387.5))
+                .verifyComplete();
+        StepVerifier.create(productService.getCategoryStats("Nada"))
+                .verifyComplete();
+        StepVerifier.create(productService.getCatalogueStats())
+                .expectNextMatches(stats -> stats.getCount() == 8 && stats.getTotalStock() == 127
+                        && Math.abs(stats.getTotalStockValue() - 7257.5) < 1e-6 && stats.getMinPrice() == 0.89 && stats.getMaxPrice() == 650)
+                .verifyComplete();
+    }
+
+    private ConfigurableApplicationContext start(String url) {
+        return new SpringApplicationBuilder(Spb3Java17WebfluxService3Application.class)
+                .run("--product.backend=r2dbc", "--product.r2dbc.url=" + url, "--server.port=0");
+    }
+
+    @Test
+    void catalogueSurvivesARestartWithoutBeingSeededAgain() {
+        String url = "r2dbc:h2:file:///" + databaseDirectory.resolve("products").toAbsolutePath();
+        try (ConfigurableApplicationContext context = start(url)) {
+            ProductService service = context.getBean(ProductService.class);
+            StepVerifier.create(service.addProduct(new Product(null, "Sal", "Alimentación", 0.50, 40)).map(Product::getCodProduct))
+                    .expectNext(108)
+                    .verifyComplete();
+            StepVerifier.create(service.deleteProduct(100)).verifyComplete();
+        }
+        try (ConfigurableApplicationContext context = start(url)) {
+            ProductService service = context.getBean(ProductService.class);
+            StepVerifier.create(service.getProductById(108).map(Product::getName))
+                    .expectNext("Sal")
+                    .verifyComplete();
+            // data.sql does not bring the deleted product back, and ids keep counting from where they were
+            StepVerifier.create(service.getProductById(100)).verifyComplete();
+            StepVerifier.create(service.addProduct(new Product(null, "Lejía", "Limpieza", 1.30, 25)).map(Product::getCodProduct))
+                    .expectNext(109)
+                    .verifyComplete();
+        }
+    }
+}
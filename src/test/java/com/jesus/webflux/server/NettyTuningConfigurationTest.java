@@ -0,0 +1,78 @@
+package com.jesus.webflux.server;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.client.ReactorResourceFactory;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Flux;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+@ActiveProfiles("production")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"netty.tuning.event-loop-threads=2", "netty.tuning.max-keep-alive-requests=2"})
+class NettyTuningConfigurationTest {
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    ReactorResourceFactory resourceFactory;
+
+    @Autowired
+    NettyTuningProperties properties;
+
+    @Test
+    void serverRunsOnTheConfiguredEventLoops() {
+        int loops = 0;
+        for (var loop : resourceFactory.getLoopResources().onServer(properties.preferNative())) {
+            loops++;
+            assertFalse(loop.isShutdown());
+        }
+        assertEquals(2, loops);
+    }
+
+    @Test
+    void answersH2cWithPriorKnowledge() {
+        // The client converts HTTP/2 frames into HTTP/1.1 objects, the stream channel tells them apart
+        Boolean http2Stream = HttpClient.create()
+                .protocol(HttpProtocol.H2C)
+                .get().uri("http://localhost:" + port + "/reactive/product/100")
+                .responseConnection((response, connection) -> connection.inbound().receive().aggregate().asString()
+                        .thenReturn(response.status().code() == 200 && connection.channel() instanceof Http2StreamChannel))
+                .blockLast(Duration.ofSeconds(10));
+        assertEquals(Boolean.TRUE, http2Stream);
+    }
+
+    @Test
+    void closesHttp11ConnectionsAfterMaxKeepAliveRequests() {
+        ConnectionProvider connectionProvider = ConnectionProvider.create("keep-alive-test", 1);
+        try {
+            HttpClient client = HttpClient.create(connectionProvider);
+            List<String> connectionHeaders = Flux.range(0, 2)
+                    .concatMap(i -> client.get().uri("http://localhost:" + port + "/reactive/product/100")
+                            .responseSingle((response, body) -> body.asString()
+                                    .thenReturn(String.valueOf(response.responseHeaders().get(HttpHeaderNames.CONNECTION)))))
+                    .collectList()
+                    .block(Duration.ofSeconds(10));
+            assertEquals(List.of("null", "close"), connectionHeaders);
+        } finally {
+            connectionProvider.dispose();
+        }
+    }
+}
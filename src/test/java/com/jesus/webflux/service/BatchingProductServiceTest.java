@@ -0,0 +1,121 @@
+package com.jesus.webflux.service;
+
+import com.jesus.webflux.metrics.ReactiveMetrics;
+import com.jesus.webflux.model.Product;
+import com.jesus.webflux.store.ProductStore;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+import reactor.test.scheduler.VirtualTimeScheduler;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+class BatchingProductServiceTest {
+
+    private static final Duration WINDOW = Duration.ofMillis(5);
+
+    private final Product sugar = new Product(100, "Azúcar", "Alimentación", 1.10, 20);
+    private final Product milk = new Product(101, "Leche", "Alimentación", 1.20, 15);
+    private final ProductService backend = Mockito.mock(ProductService.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final VirtualTimeScheduler timer = VirtualTimeScheduler.create();
+
+    @AfterEach
+    void tearDown() {
+        timer.dispose();
+    }
+
+    private BatchingProductService batching(int maxBatchSize) {
+        return new BatchingProductService(backend, WINDOW, maxBatchSize, timer, meterRegistry);
+    }
+
+    @Test
+    void lookupsOfTheSameWindowShareOneBackendCall() {
+        Mockito.when(backend.getProductsByIds(List.of(100, 101, 999))).thenReturn(Flux.just(sugar, milk));
+        BatchingProductService service = batching(128);
+
+        StepVerifier first = StepVerifier.create(service.getProductById(100)).expectNext(sugar).expectComplete().verifyLater();
+        StepVerifier second = StepVerifier.create(service.getProductById(101)).expectNext(milk).expectComplete().verifyLater();
+        StepVerifier again = StepVerifier.create(service.getProductById(100)).expectNext(sugar).expectComplete().verifyLater();
+        StepVerifier unknown = StepVerifier.create(service.getProductById(999)).expectComplete().verifyLater();
+        Mockito.verify(backend, Mockito.never()).getProductsByIds(Mockito.anyList());
+
+        timer.advanceTimeBy(WINDOW);
+        first.verify();
+        second.verify();
+        again.verify();
+        unknown.verify();
+        Mockito.verify(backend, Mockito.times(1)).getProductsByIds(Mockito.anyList());
+        DistributionSummary batchSize = meterRegistry.get("product.batching.size").summary();
+        assertEquals(1, batchSize.count());
+        assertEquals(4, batchSize.totalAmount());
+    }
+
+    @Test
+    void fullBatchGoesOutBeforeItsWindowEnds() {
+        Mockito.when(backend.getProductsByIds(List.of(100, 101))).thenReturn(Flux.just(sugar, milk));
+        Mockito.when(backend.getProductsByIds(List.of(100))).thenReturn(Flux.just(sugar));
+        BatchingProductService service = batching(2);
+
+        StepVerifier first = StepVerifier.create(service.getProductById(100)).expectNext(sugar).expectComplete().verifyLater();
+        StepVerifier.create(service.getProductById(101)).expectNext(milk).verifyComplete();
+        first.verify();
+
+        // The window of the full batch ends without effect, the next batch waits for its own
+        timer.advanceTimeBy(Duration.ofMillis(3));
+        StepVerifier next = StepVerifier.create(service.getProductById(100)).expectNext(sugar).expectComplete().verifyLater();
+        timer.advanceTimeBy(Duration.ofMillis(2));
+        Mockito.verify(backend, Mockito.never()).getProductsByIds(List.of(100));
+        timer.advanceTimeBy(Duration.ofMillis(3));
+        next.verify();
+        assertEquals(2, meterRegistry.get("product.batching.size").summary().count());
+    }
+
+    @Test
+    void backendErrorsReachEveryLookupOfTheBatch() {
+        Mockito.when(backend.getProductsByIds(Mockito.anyList())).thenReturn(Flux.error(new IllegalStateException("down")));
+        BatchingProductService service = batching(128);
+
+        StepVerifier first = StepVerifier.create(service.getProductById(100)).expectError(IllegalStateException.class).verifyLater();
+        StepVerifier second = StepVerifier.create(service.getProductById(101)).expectError(IllegalStateException.class).verifyLater();
+        timer.advanceTimeBy(WINDOW);
+        first.verify();
+        second.verify();
+    }
+
+    @Test
+    void backendIsWrappedWhenThereIsABatchWindow() {
+        ProductServiceImpl memoryBackend = new ProductServiceImpl(new ProductStore(), new ProductQueryPlanner(new ProductStore()),
+                new ProductBulkProperties(), new ReactiveMetrics(meterRegistry), new ProductChangeFeed(new ProductChangeProperties()));
+        ProductExecutionProperties properties = new ProductExecutionProperties();
+        properties.setBatchWindow(Duration.ofMillis(1));
+        DefaultListableBeanFactory beans = new DefaultListableBeanFactory();
+        beans.registerSingleton("properties", properties);
+        beans.registerSingleton("meterRegistry", meterRegistry);
+
+        Object wrapped = new ProductExecutionConfiguration.BackendExecutionPostProcessor(
+                beans.getBeanProvider(ProductExecutionProperties.class), beans.getBeanProvider(MeterRegistry.class))
+                .postProcessAfterInitialization(memoryBackend, "productServiceImpl");
+        assertInstanceOf(BatchingProductService.class, wrapped);
+        StepVerifier.create(Flux.merge(((ProductService) wrapped).getProductById(104), ((ProductService) wrapped).getProductById(100))
+                        .map(Product::getName).sort())
+                .expectNext("Azúcar", "Televisión")
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+    }
+}
@@ -0,0 +1,111 @@
+package com.jesus.webflux.service;
+
+import com.jesus.webflux.model.Product;
+import com.jesus.webflux.model.ProductQuery;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+class CachingProductServiceTest {
+
+    private final Product sugar = new Product(100, "Azúcar", "Alimentación", 1.10, 20);
+
+    private ProductService backend;
+    private CachingProductService cachingProductService;
+
+    @BeforeEach
+    void setUp() {
+        backend = Mockito.mock(ProductService.class);
+        cachingProductService = new CachingProductService(backend, new ProductCacheProperties(), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() {
+        Sinks.One<Product> pending = Sinks.one();
+        Mockito.when(backend.getProductById(100)).thenReturn(pending.asMono());
+
+        StepVerifier first = StepVerifier.create(cachingProductService.getProductById(100)).expectNext(sugar).expectComplete();
+        StepVerifier second = StepVerifier.create(cachingProductService.getProductById(100)).expectNext(sugar).expectComplete();
+        pending.tryEmitValue(sugar);
+        first.verify();
+        second.verify();
+
+        StepVerifier.create(cachingProductService.getProductById(100)).expectNext(sugar).verifyComplete();
+        Mockito.verify(backend, Mockito.times(1)).getProductById(100);
+        assertEquals(2L, cachingProductService.cacheStats().get("productsById").get("hits"));
+    }
+
+    @Test
+    void missingProductsAreNotCached() {
+        Mockito.when(backend.getProductById(999)).thenReturn(Mono.empty());
+
+        StepVerifier.create(cachingProductService.getProductById(999)).verifyComplete();
+        StepVerifier.create(cachingProductService.getProductById(999)).verifyComplete();
+        Mockito.verify(backend, Mockito.times(2)).getProductById(999);
+    }
+
+    @Test
+    void updateInvalidatesProductAndCategoryPages() {
+        Product updated = new Product(100, "Azúcar moreno", "Alimentación", 1.50, 20);
+        ProductQuery page = ProductQuery.builder().category("alimentación").limit(10).build();
+        Mockito.when(backend.getProductById(100)).thenReturn(Mono.just(sugar));
+        Mockito.when(backend.searchProducts(page)).thenReturn(Flux.just(sugar));
+        Mockito.when(backend.updateProduct(updated)).thenReturn(Mono.just(updated));
+
+        StepVerifier.create(cachingProductService.getProductById(100)).expectNext(sugar).verifyComplete();
+        StepVerifier.create(cachingProductService.searchProducts(page)).expectNext(sugar).verifyComplete();
+        StepVerifier.create(cachingProductService.searchProducts(page)).expectNext(sugar).verifyComplete();
+        Mockito.verify(backend, Mockito.times(1)).searchProducts(page);
+
+        StepVerifier.create(cachingProductService.updateProduct(updated)).expectNext(updated).verifyComplete();
+
+        Mockito.when(backend.getProductById(100)).thenReturn(Mono.just(updated));
+        Mockito.when(backend.searchProducts(page)).thenReturn(Flux.just(updated));
+        StepVerifier.create(cachingProductService.getProductById(100)).expectNext(updated).verifyComplete();
+        StepVerifier.create(cachingProductService.searchProducts(page)).expectNext(updated).verifyComplete();
+    }
+
+    @Test
+    void loadInFlightDuringAWriteDoesNotStayCached() {
+        Product updated = new Product(100, "Azúcar", "Alimentación", 1.10, 5);
+        Sinks.One<Product> beforeWrite = Sinks.one();
+        Mockito.when(backend.getProductById(100)).thenReturn(beforeWrite.asMono()).thenReturn(Mono.just(sugar)).thenReturn(Mono.just(updated));
+        Mockito.when(backend.updateProduct(updated)).thenReturn(Mono.just(updated));
+
+        StepVerifier stale = StepVerifier.create(cachingProductService.getProductById(100)).expectNext(sugar).expectComplete().verifyLater();
+        StepVerifier.create(cachingProductService.updateProduct(updated)).expectNext(updated).verifyComplete();
+        beforeWrite.tryEmitValue(sugar);
+        stale.verify();
+
+        StepVerifier.create(cachingProductService.getProductById(100)).expectNext(updated).verifyComplete();
+    }
+
+    @Test
+    void lookupOfSeveralIdsLoadsOnlyTheMissingOnesInOneCall() {
+        Product milk = new Product(101, "Leche", "Alimentación", 1.20, 15);
+        Mockito.when(backend.getProductById(100)).thenReturn(Mono.just(sugar));
+        Mockito.when(backend.getProductsByIds(Mockito.anyList())).thenReturn(Flux.just(milk));
+        StepVerifier.create(cachingProductService.getProductById(100)).expectNext(sugar).verifyComplete();
+
+        StepVerifier.create(cachingProductService.getProductsByIds(List.of(101, 100, 999, 101))).expectNext(milk, sugar).verifyComplete();
+        StepVerifier.create(cachingProductService.getProductById(101)).expectNext(milk).verifyComplete();
+        Mockito.verify(backend, Mockito.times(1)).getProductsByIds(Mockito.argThat(ids -> Set.copyOf(ids).equals(Set.of(101, 999))));
+        Mockito.verify(backend, Mockito.times(1)).getProductsByIds(Mockito.anyList());
+        Mockito.verify(backend, Mockito.never()).getProductById(101);
+    }
+}
@@ -0,0 +1,45 @@
+package com.jesus.webflux.service;
+
+import com.jesus.webflux.model.BulkItemResult;
+import com.jesus.webflux.model.Product;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@SpringBootTest(properties = "product.backend=columnar")
+class ColumnarProductServiceTest {
+
+    @Autowired
+    ProductService productService;
+
+    @Test
+    void servesTheSeededCatalogueFromColumns() {
+        StepVerifier.create(productService.getProductsByCategory("ALIMENTACIÓN").map(Product::getName))
+                .expectNext("Azúcar", "Leche", "Huevos")
+                .verifyComplete();
+        StepVerifier.create(productService.getProductsByPriceRangeAndStock(1, 10, 10, 20).map(Product::getCodProduct))
+                .expectNext(100, 101, 107)
+                .verifyComplete();
+    }
+
+    @Test
+    void bulkInsertedProductsAreQueryable() {
+        Flux<Product> products = Flux.range(0, 2_500).map(i -> new Product(null, "Sal " + i, "Especias", 0.5, i));
+
+        StepVerifier.create(productService.addProducts(products).filter(result -> result.getStatus() == BulkItemResult.Status.CREATED).count())
+                .expectNext(2_500L)
+                .verifyComplete();
+        StepVerifier.create(productService.getProductsByNameAndCategory("sal 2499", "especias").map(Product::getCodProduct))
+                .expectNext(108 + 2_499)
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,73 @@
+package com.jesus.webflux.service;
+
+import com.jesus.webflux.model.IdempotencyKeyReusedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+class IdempotencyKeysTest {
+
+    private IdempotencyKeys idempotencyKeys;
+    private AtomicInteger runs;
+
+    @BeforeEach
+    void setUp() {
+        idempotencyKeys = new IdempotencyKeys(new ProductStockProperties(), new SimpleMeterRegistry());
+        runs = new AtomicInteger();
+    }
+
+    private Mono<Integer> operation() {
+        return Mono.fromSupplier(runs::incrementAndGet);
+    }
+
+    @Test
+    void retriesWithTheSameKeyReplayTheFirstOutcome() {
+        StepVerifier.create(idempotencyKeys.execute("pedido-1", "reserve 100", operation())).expectNext(1).verifyComplete();
+        StepVerifier.create(idempotencyKeys.execute("pedido-1", "reserve 100", operation())).expectNext(1).verifyComplete();
+        StepVerifier.create(idempotencyKeys.execute("pedido-2", "reserve 100", operation())).expectNext(2).verifyComplete();
+        // Without a key every call runs
+        StepVerifier.create(idempotencyKeys.execute(null, "reserve 100", operation())).expectNext(3).verifyComplete();
+        assertEquals(3, runs.get());
+    }
+
+    @Test
+    void retryWhileTheFirstAttemptRunsWaitsForIt() {
+        Sinks.One<Integer> pending = Sinks.one();
+        Mono<Integer> first = idempotencyKeys.execute("pedido-1", "reserve 100", pending.asMono());
+        Mono<Integer> retry = idempotencyKeys.execute("pedido-1", "reserve 100", operation());
+
+        StepVerifier.create(first.zipWith(retry))
+                .then(() -> pending.tryEmitValue(7))
+                .expectNextMatches(outcomes -> outcomes.getT1() == 7 && outcomes.getT2() == 7)
+                .verifyComplete();
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    void keyReusedForAnotherRequestIsRejected() {
+        StepVerifier.create(idempotencyKeys.execute("pedido-1", "reserve 100", operation())).expectNext(1).verifyComplete();
+        StepVerifier.create(idempotencyKeys.execute("pedido-1", "reserve 101", operation()))
+                .expectError(IdempotencyKeyReusedException.class)
+                .verify();
+    }
+
+    @Test
+    void failedAttemptsCanBeRetried() {
+        StepVerifier.create(idempotencyKeys.execute("pedido-1", "reserve 100", Mono.error(new IllegalArgumentException("boom"))))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+        StepVerifier.create(idempotencyKeys.execute("pedido-1", "reserve 100", operation())).expectNext(1).verifyComplete();
+    }
+}
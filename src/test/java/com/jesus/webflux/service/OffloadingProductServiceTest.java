@@ -0,0 +1,141 @@
+package com.jesus.webflux.service;
+
+import com.jesus.webflux.metrics.ReactiveMetrics;
+import com.jesus.webflux.model.Product;
+import com.jesus.webflux.store.ProductStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+class OffloadingProductServiceTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private final Product sugar = new Product(100, "Azúcar", "Alimentación", 1.10, 20);
+    private final ProductService backend = Mockito.mock(ProductService.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private Scheduler scheduler;
+
+    @AfterEach
+    void tearDown() {
+        if (scheduler != null) scheduler.dispose();
+    }
+
+    private OffloadingProductService offloading(int maxConcurrency, int maxQueued) {
+        scheduler = Schedulers.newBoundedElastic(maxConcurrency, maxQueued, "product-backend");
+        return new OffloadingProductService(backend, scheduler, "bounded-elastic", meterRegistry);
+    }
+
+    @Test
+    void backendIsCalledOnTheWorker() {
+        AtomicReference<String> calledOn = new AtomicReference<>();
+        Mockito.when(backend.getProductById(100)).thenAnswer(invocation -> {
+            calledOn.set(Thread.currentThread().getName());
+            return Mono.just(sugar);
+        });
+        OffloadingProductService service = offloading(2, 10);
+
+        Mono<Product> call = service.getProductById(100);
+        Mockito.verifyNoInteractions(backend);
+        StepVerifier.create(call).expectNext(sugar).expectComplete().verify(TIMEOUT);
+
+        assertTrue(calledOn.get().startsWith("product-backend"), calledOn.get());
+        assertEquals(1, meterRegistry.get("product.execution.wait").timer().count());
+        assertEquals(0, meterRegistry.get("product.execution.active").gauge().value());
+    }
+
+    @Test
+    void concurrencyIsBounded() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        Mockito.when(backend.getProductById(Mockito.anyLong())).thenAnswer(invocation -> Mono.fromCallable(() -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            running.decrementAndGet();
+            return sugar;
+        }));
+        OffloadingProductService service = offloading(2, 100);
+
+        StepVerifier.create(Flux.range(0, 8).flatMap(id -> service.getProductById(id)))
+                .expectNextCount(8)
+                .expectComplete()
+                .verify(TIMEOUT);
+        assertEquals(2, maxRunning.get());
+    }
+
+    @Test
+    void callsBeyondTheQueueAreRejected() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.when(backend.getProductById(Mockito.anyLong())).thenAnswer(invocation -> Mono.fromCallable(() -> {
+            started.countDown();
+            release.await();
+            return sugar;
+        }));
+        OffloadingProductService service = offloading(1, 1);
+
+        StepVerifier running = StepVerifier.create(service.getProductById(1)).expectNext(sugar).expectComplete().verifyLater();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        StepVerifier queued = StepVerifier.create(service.getProductById(2)).expectNext(sugar).expectComplete().verifyLater();
+        StepVerifier.create(service.getProductById(3)).expectError(RejectedExecutionException.class).verify(TIMEOUT);
+
+        release.countDown();
+        running.verify(TIMEOUT);
+        queued.verify(TIMEOUT);
+        assertEquals(1, meterRegistry.get("product.execution.rejected").counter().count());
+    }
+
+    @Test
+    void onlyTheBackendIsWrappedOutsideEventLoopMode() throws Exception {
+        ProductServiceImpl memoryBackend = new ProductServiceImpl(new ProductStore(), new ProductQueryPlanner(new ProductStore()),
+                new ProductBulkProperties(), new ReactiveMetrics(meterRegistry), new ProductChangeFeed(new ProductChangeProperties()));
+        ProductExecutionProperties properties = new ProductExecutionProperties();
+        DefaultListableBeanFactory beans = new DefaultListableBeanFactory();
+        beans.registerSingleton("properties", properties);
+        beans.registerSingleton("meterRegistry", meterRegistry);
+
+        ProductExecutionConfiguration.BackendExecutionPostProcessor eventLoop = new ProductExecutionConfiguration.BackendExecutionPostProcessor(
+                beans.getBeanProvider(ProductExecutionProperties.class), beans.getBeanProvider(MeterRegistry.class));
+        assertSame(memoryBackend, eventLoop.postProcessAfterInitialization(memoryBackend, "productServiceImpl"));
+
+        properties.setMode(ProductExecutionProperties.Mode.VIRTUAL_THREADS);
+        ProductExecutionConfiguration.BackendExecutionPostProcessor virtualThreads = new ProductExecutionConfiguration.BackendExecutionPostProcessor(
+                beans.getBeanProvider(ProductExecutionProperties.class), beans.getBeanProvider(MeterRegistry.class));
+        assertSame(backend, virtualThreads.postProcessAfterInitialization(backend, "cachingProductService"));
+        Object wrapped = virtualThreads.postProcessAfterInitialization(memoryBackend, "productServiceImpl");
+        try {
+            assertInstanceOf(OffloadingProductService.class, wrapped);
+            StepVerifier.create(((ProductService) wrapped).getProductById(100)).expectNext(sugar).expectComplete().verify(TIMEOUT);
+            // Virtual threads on Java 21+, platform threads before it
+            String mode = Runtime.version().feature() >= 21 ? "virtual-threads" : "bounded-elastic";
+            assertEquals(1, meterRegistry.get("product.execution.wait").tag("mode", mode).timer().count());
+        } finally {
+            virtualThreads.destroy();
+        }
+    }
+}
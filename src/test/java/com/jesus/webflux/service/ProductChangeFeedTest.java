@@ -0,0 +1,197 @@
+package com.jesus.webflux.service;
+
+import com.jesus.webflux.metrics.ReactiveMetrics;
+import com.jesus.webflux.model.Product;
+import com.jesus.webflux.model.ProductEvent;
+import com.jesus.webflux.repository.ProductRepository;
+import com.jesus.webflux.store.ProductStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+class ProductChangeFeedTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private static ProductChangeFeed feed(int historySize, int bufferSize, BufferOverflowStrategy overflow) {
+        ProductChangeProperties properties = new ProductChangeProperties();
+        properties.setHistorySize(historySize);
+        properties.setBufferSize(bufferSize);
+        properties.setOverflow(overflow);
+        return new ProductChangeFeed(properties);
+    }
+
+    private static Product product(int id, String category) {
+        return new Product(id, "Product " + id, category, 1.0, 1);
+    }
+
+    @Test
+    void liveEventsAreFilteredByCategoryAndId() {
+        ProductChangeFeed feed = feed(16, 16, BufferOverflowStrategy.DROP_OLDEST);
+
+        StepVerifier.create(feed.events(null, "Bebidas", Set.of(2, 3)))
+                .expectSubscription()
+                .then(() -> {
+                    feed.added(product(1, "Bebidas"));
+                    feed.added(product(2, "Bebidas"));
+                    feed.updated(product(3, "Alimentación"));
+                    feed.deleted(product(2, "bebidas"));
+                })
+                .expectNextMatches(event -> event.getType() == ProductEvent.Type.ADDED && event.getCodProduct() == 2 && event.getSequence() == 2)
+                .expectNextMatches(event -> event.getType() == ProductEvent.Type.DELETED && event.getCodProduct() == 2 && event.getSequence() == 4)
+                .thenCancel()
+                .verify(TIMEOUT);
+    }
+
+    @Test
+    void resumesAfterTheGivenSequenceWithoutGapsOrRepeats() {
+        ProductChangeFeed feed = feed(16, 16, BufferOverflowStrategy.DROP_OLDEST);
+        for (int id = 1; id <= 5; id++) feed.added(product(id, "Bebidas"));
+
+        StepVerifier.create(feed.events(3L, null, null))
+                .expectNextMatches(event -> event.getSequence() == 4)
+                .expectNextMatches(event -> event.getSequence() == 5)
+                .then(() -> feed.updated(product(1, "Bebidas")))
+                .expectNextMatches(event -> event.getSequence() == 6 && event.getType() == ProductEvent.Type.UPDATED)
+                .thenCancel()
+                .verify(TIMEOUT);
+    }
+
+    @Test
+    void resyncWhenTheMissedEventsAreNoLongerKept() {
+        ProductChangeFeed feed = feed(4, 16, BufferOverflowStrategy.DROP_OLDEST);
+        for (int id = 1; id <= 10; id++) feed.added(product(id, "Bebidas"));
+
+        StepVerifier.create(feed.events(2L, null, null))
+                .expectNextMatches(event -> event.getType() == ProductEvent.Type.RESYNC && event.getSequence() == 10)
+                .thenCancel()
+                .verify(TIMEOUT);
+        // A sequence from before a restart is ahead of the feed
+        StepVerifier.create(feed.events(50L, null, null))
+                .expectNextMatches(event -> event.getType() == ProductEvent.Type.RESYNC)
+                .thenCancel()
+                .verify(TIMEOUT);
+        StepVerifier.create(feed.events(6L, null, null))
+                .expectNextCount(4)
+                .thenCancel()
+                .verify(TIMEOUT);
+    }
+
+    @Test
+    void concurrentWritesAreDeliveredInSequenceOrder() {
+        ProductChangeFeed feed = feed(16, 1_000, BufferOverflowStrategy.ERROR);
+        AtomicLong expected = new AtomicLong();
+
+        StepVerifier.create(feed.events(null, null, null))
+                .expectSubscription()
+                .then(() -> IntStream.range(0, 8).parallel().forEach(writer -> {
+                    for (int id = 0; id < 100; id++) feed.updated(product(id, "Bebidas"));
+                }))
+                .thenConsumeWhile(event -> event.getSequence() == expected.incrementAndGet() && event.getSequence() < 800)
+                .thenCancel()
+                .verify(TIMEOUT);
+        assertEquals(800, expected.get());
+    }
+
+    @Test
+    void writesAfterDisposeAreOnlyKeptInTheHistory() {
+        ProductChangeFeed feed = feed(16, 16, BufferOverflowStrategy.DROP_OLDEST);
+        feed.destroy();
+
+        feed.added(product(1, "Bebidas"));
+        feed.added(product(2, "Bebidas"));
+        assertEquals(2, feed.lastSequence());
+    }
+
+    @Test
+    void slowSubscriberKeepsOnlyTheLatestEvents() {
+        ProductChangeFeed feed = feed(16, 2, BufferOverflowStrategy.DROP_OLDEST);
+
+        StepVerifier.create(feed.events(null, null, null), 0)
+                .expectSubscription()
+                .then(() -> {
+                    for (int id = 1; id <= 100; id++) feed.added(product(id, "Bebidas"));
+                })
+                .thenRequest(Long.MAX_VALUE)
+                // Up to the prefetch of the delivery thread plus the buffer, always ending with the latest event
+                .thenConsumeWhile(event -> event.getSequence() < 100)
+                .thenCancel()
+                .verify(TIMEOUT);
+    }
+
+    @Test
+    void slowSubscriberFailsWithErrorOverflow() {
+        ProductChangeFeed feed = feed(16, 2, BufferOverflowStrategy.ERROR);
+
+        StepVerifier.create(feed.events(null, null, null), 0)
+                .expectSubscription()
+                .then(() -> {
+                    for (int id = 1; id <= 100; id++) feed.added(product(id, "Bebidas"));
+                })
+                .thenRequest(Long.MAX_VALUE)
+                .thenConsumeWhile(event -> true)
+                .expectError()
+                .verify(TIMEOUT);
+    }
+
+    @Test
+    void serviceWritesArePublished() {
+        ProductChangeFeed feed = feed(16, 16, BufferOverflowStrategy.DROP_OLDEST);
+        ProductStore store = new ProductStore();
+        ProductService service = new ProductServiceImpl(store, new ProductQueryPlanner(store), new ProductBulkProperties(),
+                new ReactiveMetrics(new SimpleMeterRegistry()), feed);
+
+        StepVerifier.create(service.addProduct(new Product(null, "Zumo", "Bebidas", 1.5, 10))
+                        .then(service.updateProduct(new Product(100, "Azúcar", "Alimentación", 1.2, 5)))
+                        .then(service.deleteProduct(100))
+                        .then(service.deleteProduct(100))
+                        .thenMany(feed.events(0L, null, null)))
+                .expectNextMatches(event -> event.getType() == ProductEvent.Type.ADDED && event.getProduct().getName().equals("Zumo"))
+                .expectNextMatches(event -> event.getType() == ProductEvent.Type.UPDATED && event.getCodProduct() == 100)
+                .expectNextMatches(event -> event.getType() == ProductEvent.Type.DELETED && event.getProduct().getUnitPrice() == 1.2)
+                .thenCancel()
+                .verify(TIMEOUT);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void repositoryUpsertIsPublishedOnlyOnceCommitted() {
+        ProductChangeFeed feed = feed(16, 16, BufferOverflowStrategy.DROP_OLDEST);
+        ProductRepository repository = Mockito.mock(ProductRepository.class);
+        TransactionalOperator transactionalOperator = Mockito.mock(TransactionalOperator.class);
+        ProductService service = new RepositoryProductService(repository, new ProductBulkProperties(),
+                new ReactiveMetrics(new SimpleMeterRegistry()), feed, transactionalOperator);
+        Product sugar = new Product(100, "Azúcar", "Alimentación", 1.2, 5);
+        Mockito.when(repository.update(sugar)).thenReturn(Mono.just(sugar));
+
+        // The commit fails: the update is rolled back and nobody hears about it
+        Mockito.when(transactionalOperator.transactional(Mockito.any(Mono.class)))
+                .thenAnswer(invocation -> invocation.<Mono<?>>getArgument(0).then(Mono.error(new IllegalStateException("commit"))));
+        StepVerifier.create(service.addProduct(sugar))
+                .expectError(IllegalStateException.class)
+                .verify(TIMEOUT);
+        assertEquals(0, feed.lastSequence());
+
+        Mockito.when(transactionalOperator.transactional(Mockito.any(Mono.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        StepVerifier.create(service.addProduct(sugar).thenMany(feed.events(0L, null, null)))
+                .expectNextMatches(event -> event.getType() == ProductEvent.Type.UPDATED && event.getCodProduct() == 100)
+                .thenCancel()
+                .verify(TIMEOUT);
+    }
+}
@@ -0,0 +1,116 @@
+package com.jesus.webflux.service;
+
+import com.jesus.webflux.model.Product;
+import com.jesus.webflux.model.ProductQuery;
+import com.jesus.webflux.store.ProductStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+class ProductQueryPlannerTest {
+
+    private ProductQueryPlanner queryPlanner;
+
+    @BeforeEach
+    void setUp() {
+        ProductStore productStore = new ProductStore();
+        productStore.put(new Product(100, "Azúcar", "Alimentación", 1.10, 20));
+        productStore.put(new Product(101, "Leche", "Alimentación", 1.20, 15));
+        productStore.put(new Product(102, "Jabón", "Limpieza", 0.89, 30));
+        productStore.put(new Product(103, "Mesa", "Hogar", 125, 4));
+        productStore.put(new Product(104, "Televisión", "Hogar", 650, 10));
+        productStore.put(new Product(105, "Huevos", "Alimentación", 2.20, 30));
+        productStore.put(new Product(106, "Fregona", "Limpieza", 3.40, 6));
+        productStore.put(new Product(107, "Detergente", "Limpieza", 8.7, 12));
+        queryPlanner = new ProductQueryPlanner(productStore);
+    }
+
+    private List<Integer> ids(ProductQuery query) {
+        return queryPlanner.execute(query).map(Product::getCodProduct).toList();
+    }
+
+    @Test
+    void picksTheMostSelectiveIndex() {
+        ProductQuery query = ProductQuery.builder().category("Limpieza").minPrice(600.0).build();
+        assertEquals(ProductQueryPlanner.AccessPath.PRICE_RANGE,
+                queryPlanner.choosePath(ProductQueryPlanner.Criteria.of(query)));
+
+        query = ProductQuery.builder().category("Hogar").minStock(0).build();
+        assertEquals(ProductQueryPlanner.AccessPath.CATEGORY,
+                queryPlanner.choosePath(ProductQueryPlanner.Criteria.of(query)));
+
+        assertEquals(ProductQueryPlanner.AccessPath.FULL_SCAN,
+                queryPlanner.choosePath(ProductQueryPlanner.Criteria.of(new ProductQuery())));
+    }
+
+    @Test
+    void countsOnlyWhatTellsThePathsApart() {
+        ProductStore productStore = Mockito.spy(new ProductStore());
+        for (int id = 100; id < 140; id++) productStore.put(new Product(id, "Producto " + id, id < 130 ? "Alimentación" : "Hogar", 1, id % 10));
+        ProductQueryPlanner planner = new ProductQueryPlanner(productStore);
+
+        // A lone index is taken as is
+        assertEquals(ProductQueryPlanner.AccessPath.CATEGORY,
+                planner.choosePath(ProductQueryPlanner.Criteria.of(ProductQuery.builder().category("Hogar").build())));
+        Mockito.verify(productStore, Mockito.never()).countByCategory(Mockito.anyString(), Mockito.anyInt());
+
+        // Each count stops at the best one so far
+        ProductQuery query = ProductQuery.builder().category("Alimentación").minStock(0).build();
+        assertEquals(ProductQueryPlanner.AccessPath.CATEGORY, planner.choosePath(ProductQueryPlanner.Criteria.of(query)));
+        Mockito.verify(productStore).countByCategory("alimentación", 40);
+        Mockito.verify(productStore).countByStockRange(0, Integer.MAX_VALUE, 30);
+    }
+
+    @Test
+    void aNarrowRangeBeatsALargeCategoryUnderALimit() {
+        ProductStore productStore = new ProductStore();
+        for (int id = 1; id <= 10_000; id++) productStore.put(new Product(id, "Producto " + id, "Alimentación", id % 100 == 0 ? 500 : 1, 1));
+        ProductQueryPlanner planner = new ProductQueryPlanner(productStore);
+
+        // Only 100 products of the category are in the range: reading the category would walk all of it to fill the page
+        ProductQuery query = ProductQuery.builder().category("Alimentación").minPrice(100.0).limit(5).build();
+        assertEquals(ProductQueryPlanner.AccessPath.PRICE_RANGE, planner.choosePath(ProductQueryPlanner.Criteria.of(query)));
+        assertEquals(List.of(100, 200, 300, 400, 500),
+                planner.execute(query).map(Product::getCodProduct).sorted().toList());
+    }
+
+    @Test
+    void combinesAllCriteria() {
+        assertEquals(List.of(106), ids(ProductQuery.builder().category("limpieza").maxPrice(5.0).maxStock(10).build()));
+        assertEquals(List.of(105), ids(ProductQuery.builder().name("HUEVOS").category("Alimentación").minPrice(2.0).maxPrice(3.0).build()));
+        assertEquals(List.of(), ids(ProductQuery.builder().name("Leche").minStock(20).build()));
+    }
+
+    @Test
+    void sortsAndPaginates() {
+        assertEquals(List.of(104, 103, 107), ids(ProductQuery.builder().sort("-unitPrice").limit(3).build()));
+        assertEquals(List.of(107, 106), ids(ProductQuery.builder().sort("-unitPrice").offset(2).limit(2).build()));
+        assertEquals(List.of(107, 106, 102), ids(ProductQuery.builder().category("Limpieza").sort("-codProduct").build()));
+        assertEquals(List.of(102, 100), ids(ProductQuery.builder().maxPrice(1.15).sort("unitPrice").build()));
+        assertEquals(List.of(101, 102), ids(ProductQuery.builder().offset(1).limit(2).build()));
+    }
+
+    @Test
+    void pagesByCursorOnCodProduct() {
+        assertEquals(List.of(102, 103), ids(ProductQuery.builder().after(101).limit(2).build()));
+        assertEquals(List.of(106, 107), ids(ProductQuery.builder().category("Limpieza").after(102).build()));
+        // Price range path is ordered by price, the cursor still pages in codProduct order
+        assertEquals(List.of(105, 106), ids(ProductQuery.builder().minPrice(2.0).maxPrice(10.0).after(104).limit(2).build()));
+    }
+
+    @Test
+    void rejectsInvalidSortAndPaging() {
+        assertThrows(IllegalArgumentException.class, () -> queryPlanner.execute(ProductQuery.builder().after(100).sort("name").build()));
+        assertThrows(IllegalArgumentException.class, () -> queryPlanner.execute(ProductQuery.builder().sort("colour").build()));
+        assertThrows(IllegalArgumentException.class, () -> queryPlanner.execute(ProductQuery.builder().limit(-1).build()));
+    }
+}
@@ -1,18 +1,27 @@
 package com.jesus.webflux.service;
 
+import com.jesus.webflux.model.BulkItemResult;
+import com.jesus.webflux.model.CategoryStats;
 import com.jesus.webflux.model.Product;
+import com.jesus.webflux.model.StockLine;
+import com.jesus.webflux.model.StockResult;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
+import java.util.List;
+
 /**
  * Author Jesús Fdez. Caraballo
  * jesus.fdez.caraballo@gmail.com
  * Created on abr - 2025
  */
+// Every test gets a freshly seeded catalogue, since add/update/delete now really mutate the store
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
 @SpringBootTest
 public class ProductServiceTest {
 
@@ -79,6 +88,15 @@ public class ProductServiceTest {
                 .verifyComplete();
     }
 
+    @Test
+    void getProductByCategoryAndPriceRangeTest() {
+        Flux<Product> products = productService.getProductsByCategoryAndPriceRange("Limpieza", 1.0, 10.0);
+        StepVerifier.create(products)
+                .expectNextMatches(product -> product.getName().equalsIgnoreCase("Fregona"))
+                .expectNextMatches(product -> product.getName().equalsIgnoreCase("Detergente"))
+                .verifyComplete();
+    }
+
     @Test
     void addProductTest() {
         Product newProduct = new Product(108, "New Product", "New Category", 10.0, 5);
@@ -89,6 +107,33 @@ public class ProductServiceTest {
                 .verify();
     }
 
+    @Test
+    void addProductsInBulkTest() {
+        Flux<Product> products = Flux.range(0, 2_500).map(i -> new Product(null, "Bulk " + i, "Bulk", i, i));
+        StepVerifier.create(productService.addProducts(products))
+                .expectNextMatches(result -> result.getIndex() == 0 && result.getCodProduct() == 108
+                        && result.getStatus() == BulkItemResult.Status.CREATED)
+                .expectNextCount(2_498)
+                .expectNextMatches(result -> result.getIndex() == 2_499 && result.getCodProduct() == 2_607)
+                .verifyComplete();
+        StepVerifier.create(productService.getProductsByCategory("bulk").count())
+                .expectNext(2_500L)
+                .verifyComplete();
+    }
+
+    @Test
+    void updateProductsInBulkTest() {
+        Flux<Product> products = Flux.just(
+                new Product(100, "Azúcar moreno", "Alimentación", 1.50, 10),
+                new Product(999, "Desconocido", "Nada", 1, 1));
+        StepVerifier.create(productService.updateProducts(products).map(BulkItemResult::getStatus))
+                .expectNext(BulkItemResult.Status.UPDATED, BulkItemResult.Status.NOT_FOUND)
+                .verifyComplete();
+        StepVerifier.create(productService.getProductById(100).map(Product::getName))
+                .expectNext("Azúcar moreno")
+                .verifyComplete();
+    }
+
     @Test
     void updateProductTest() {
         Product updatedProduct = new Product(100, "Updated Product", "Updated Category", 20.0, 10);
@@ -103,10 +148,65 @@ public class ProductServiceTest {
 
     @Test
     void deleteProductTest() {
-        productService.deleteProduct(100);
+        productService.deleteProduct(100).block();
         StepVerifier.create(productService.getProductById(100))
                 .expectNextCount(0) // Check that the product was deleted
                 .verifyComplete();
     }
 
+    @Test
+    void reserveStockIsAllOrNothing() {
+        StepVerifier.create(productService.reserveStock(List.of(new StockLine(100, 5), new StockLine(103, 5))))
+                .expectNextMatches(result -> result.getStatus() == StockResult.Status.INSUFFICIENT_STOCK
+                        && result.getCodProduct() == 103 && result.getAvailable() == 4)
+                .verifyComplete();
+        StepVerifier.create(productService.getProductById(100).map(Product::getStock))
+                .expectNext(20)
+                .verifyComplete();
+
+        // Repeated products are added up
+        StepVerifier.create(productService.reserveStock(List.of(new StockLine(103, 3), new StockLine(100, 2), new StockLine(100, 3))))
+                .expectNextMatches(result -> result.getStatus() == StockResult.Status.RESERVED
+                        && result.getProducts().stream().map(Product::getStock).toList().equals(List.of(15, 1)))
+                .verifyComplete();
+        StepVerifier.create(productService.getProductById(100).map(Product::getStock))
+                .expectNext(15)
+                .verifyComplete();
+        StepVerifier.create(productService.reserveStock(List.of(new StockLine(100, 1), new StockLine(999, 1))))
+                .expectNextMatches(result -> result.getStatus() == StockResult.Status.NOT_FOUND && result.getCodProduct() == 999)
+                .verifyComplete();
+
+        StepVerifier.create(productService.releaseStock(List.of(new StockLine(103, 3))))
+                .expectNextMatches(result -> result.getStatus() == StockResult.Status.RELEASED && result.getProducts().get(0).getStock() == 4)
+                .verifyComplete();
+        // A release is checked before any unit is put back
+        StepVerifier.create(productService.releaseStock(List.of(new StockLine(103, 1), new StockLine(999, 1))))
+                .expectNextMatches(result -> result.getStatus() == StockResult.Status.NOT_FOUND && result.getCodProduct() == 999)
+                .verifyComplete();
+        StepVerifier.create(productService.getProductById(103).map(Product::getStock))
+                .expectNext(4)
+                .verifyComplete();
+        StepVerifier.create(productService.adjustStock(100, -15))
+                .expectNextMatches(result -> result.getStatus() == StockResult.Status.ADJUSTED && result.getProducts().get(0).getStock() == 0)
+                .verifyComplete();
+        StepVerifier.create(productService.reserveStock(List.of(new StockLine(100, 0))))
+                .expectError(IllegalArgumentException.class)
+                .verify();
+    }
+
+    @Test
+    void categoryStatsFollowWritesThroughTheService() {
+        StepVerifier.create(productService.getCategoryStats().map(CategoryStats::getCategory))
+                .expectNext("Alimentación", "Hogar", "Limpieza")
+                .verifyComplete();
+        StepVerifier.create(productService.addProduct(new Product(null, "Sofá", "hogar", 400, 1))
+                        .then(productService.deleteProduct(104))
+                        .then(productService.getCategoryStats("Hogar")))
+                .expectNextMatches(stats -> stats.getCount() == 2 && stats.getTotalStock() == 5
+                        && stats.getTotalStockValue() == 900 && stats.getMaxPrice() == 400 && stats.getAvgPrice() == 262.5)
+                .verifyComplete();
+        StepVerifier.create(productService.getCatalogueStats())
+                .expectNextMatches(stats -> stats.getCategory() == null && stats.getCount() == 8 && stats.getMinPrice() == 0.89)
+                .verifyComplete();
+    }
 }
@@ -0,0 +1,73 @@
+package com.jesus.webflux.simulation;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+class LatencySimulatorTest {
+
+    private LatencySimulator latencySimulator;
+
+    private LatencySimulator simulator(boolean enabled, LatencySimulationProperties.Jitter jitter) {
+        LatencySimulationProperties properties = new LatencySimulationProperties();
+        properties.setEnabled(enabled);
+        properties.setJitter(jitter);
+        properties.setJitterMax(Duration.ofMillis(20));
+        properties.getDelays().put("slow", Duration.ofMillis(50));
+        latencySimulator = new LatencySimulator(properties);
+        return latencySimulator;
+    }
+
+    @AfterEach
+    void tearDown() {
+        latencySimulator.destroy();
+    }
+
+    @Test
+    void disabledSimulationReturnsTheSamePublisher() {
+        Flux<Integer> source = Flux.range(1, 3);
+        assertSame(source, simulator(false, LatencySimulationProperties.Jitter.NONE).delayElements("slow", source));
+    }
+
+    @Test
+    void endpointWithoutDelayIsNotTouched() {
+        Mono<String> source = Mono.just("fast");
+        assertSame(source, simulator(true, LatencySimulationProperties.Jitter.NONE).delay("fast", source));
+    }
+
+    @Test
+    void enabledSimulationDelaysEveryElement() {
+        Duration elapsed = StepVerifier.create(simulator(true, LatencySimulationProperties.Jitter.NONE).delayElements("slow", Flux.range(1, 3)))
+                .expectNext(1, 2, 3)
+                .verifyComplete();
+        assertTrue(elapsed.compareTo(Duration.ofMillis(150)) >= 0);
+    }
+
+    @Test
+    void delayedSubscriptionWaitsOnceForTheWholeFlux() {
+        Duration elapsed = StepVerifier.create(simulator(true, LatencySimulationProperties.Jitter.NONE).delaySubscription("slow", Flux.range(1, 3)))
+                .expectNext(1, 2, 3)
+                .verifyComplete();
+        assertTrue(elapsed.compareTo(Duration.ofMillis(50)) >= 0 && elapsed.compareTo(Duration.ofMillis(150)) < 0, elapsed.toString());
+    }
+
+    @Test
+    void jitterStaysWithinBounds() {
+        LatencySimulator uniform = simulator(true, LatencySimulationProperties.Jitter.UNIFORM);
+        for (int i = 0; i < 1_000; i++) {
+            Duration delay = uniform.nextDelay("slow");
+            assertTrue(delay.compareTo(Duration.ofMillis(50)) >= 0 && delay.compareTo(Duration.ofMillis(70)) <= 0);
+        }
+    }
+}
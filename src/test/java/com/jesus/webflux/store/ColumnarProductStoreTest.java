@@ -0,0 +1,187 @@
+package com.jesus.webflux.store;
+
+import com.jesus.webflux.model.CategoryStats;
+import com.jesus.webflux.model.InsufficientStockException;
+import com.jesus.webflux.model.Product;
+import com.jesus.webflux.model.ProductQuery;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+class ColumnarProductStoreTest {
+
+    private ColumnarProductStore productStore;
+
+    @BeforeEach
+    void setUp() {
+        productStore = new ColumnarProductStore();
+        productStore.put(new Product(100, "Azúcar", "Alimentación", 1.10, 20));
+        productStore.put(new Product(101, "Leche", "Alimentación", 1.20, 15));
+        productStore.put(new Product(103, "Mesa", "Hogar", 125, 4));
+        productStore.put(new Product(102, "Jabón", "Limpieza", 0.89, 30));
+    }
+
+    @Test
+    void materialisesFreshCopiesAndAssignsIdsAfterHighestLoaded() {
+        Product found = productStore.findById(100).orElseThrow();
+        found.setName("Changed afterwards");
+        assertEquals("Azúcar", productStore.findById(100).orElseThrow().getName());
+
+        assertEquals(104, productStore.insert(new Product(null, "Huevos", "Alimentación", 2.20, 30)).getCodProduct());
+        assertEquals(List.of(105, 106), productStore.insertAll(List.of(
+                new Product(null, "Sal", "Alimentación", 0.5, 40),
+                new Product(null, "Silla", "Hogar", 45, 8))).stream().map(Product::getCodProduct).toList());
+        assertEquals(7, productStore.size());
+    }
+
+    @Test
+    void queriesFollowThePlannerRules() {
+        assertEquals(List.of(100, 101, 102, 103), ids(ProductQuery.builder().build()));
+        assertEquals(List.of(100, 101), ids(ProductQuery.builder().category("ALIMENTACIÓN").build()));
+        assertEquals(List.of(101), ids(ProductQuery.builder().name("leche").build()));
+        assertEquals(List.of(102, 100, 101), ids(ProductQuery.builder().maxPrice(2.0).sort("unitPrice").build()));
+        assertEquals(List.of(102, 100), ids(ProductQuery.builder().sort("-stock").limit(2).build()));
+        assertEquals(List.of(102, 103), ids(ProductQuery.builder().after(101).build()));
+        assertEquals(List.of(101), ids(ProductQuery.builder().sort("-codProduct").offset(2).limit(1).build()));
+        assertThrows(IllegalArgumentException.class, () -> productStore.query(ProductQuery.builder().after(100).sort("name").build()));
+        assertThrows(IllegalArgumentException.class, () -> productStore.query(ProductQuery.builder().sort("price").build()));
+    }
+
+    @Test
+    void updatesAndDeletesReuseRows() {
+        assertTrue(productStore.update(new Product(101, "Leche", "Hogar", 99.0, 4)).isPresent());
+        assertTrue(productStore.update(new Product(999, "Nada", "Nada", 1, 1)).isEmpty());
+        assertEquals(List.of(101, 103), ids(ProductQuery.builder().category("hogar").build()));
+
+        assertTrue(productStore.delete(103));
+        assertFalse(productStore.delete(103));
+        assertTrue(productStore.findById(103).isEmpty());
+        productStore.insert(new Product(null, "Silla", "Hogar", 45, 8));
+        assertEquals(List.of(101, 104), ids(ProductQuery.builder().category("Hogar").build()));
+    }
+
+    @Test
+    void concurrentReservationsNeverOversell() {
+        long reserved = IntStream.range(0, 1_000).parallel()
+                .filter(i -> {
+                    try {
+                        return productStore.adjustStock(100, -1).isPresent();
+                    } catch (InsufficientStockException e) {
+                        return false;
+                    }
+                })
+                .count();
+        assertEquals(20, reserved);
+        assertEquals(List.of(100), ids(ProductQuery.builder().maxStock(0).build()));
+
+        assertThrows(InsufficientStockException.class, () -> productStore.adjustStock(103, -5));
+        assertEquals(9, productStore.adjustStock(103, 5).orElseThrow().getStock());
+        assertEquals(9, productStore.findById(103).orElseThrow().getStock());
+        assertTrue(productStore.adjustStock(999, 1).isEmpty());
+    }
+
+    @Test
+    void suggestionsRankLikeTheNameIndex() {
+        productStore.put(new Product(104, "Azúcar moreno", "Alimentación", 1.90, 10));
+        productStore.put(new Product(105, "Pan de azúcar", "Alimentación", 0.90, 12));
+        productStore.put(new Product(106, "Azulejo", "Hogar", 3, 100));
+
+        assertEquals(List.of(100, 104, 105), productStore.suggestByName("AZUCAR", 10).stream().map(Product::getCodProduct).toList());
+        assertEquals(List.of(100, 106, 104, 105), productStore.suggestByName("azu", 10).stream().map(Product::getCodProduct).toList());
+        assertEquals(List.of(104), productStore.suggestByName("azúcar mor", 10).stream().map(Product::getCodProduct).toList());
+    }
+
+    @Test
+    void idMapSurvivesChurn() {
+        IntIntMap map = new IntIntMap(4);
+        Map<Integer, Integer> expected = new HashMap<>();
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < 100_000; i++) {
+            int key = random.nextInt(2_000);
+            if (random.nextBoolean()) {
+                map.put(key, i);
+                expected.put(key, i);
+            } else {
+                Integer removed = expected.remove(key);
+                assertEquals(removed == null ? IntIntMap.MISSING : removed, map.remove(key));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (int key = 0; key < 2_000; key++) {
+            assertEquals(expected.getOrDefault(key, IntIntMap.MISSING), map.get(key));
+        }
+    }
+
+    private List<Integer> ids(ProductQuery query) {
+        return productStore.query(query).map(Product::getCodProduct).toList();
+    }
+
+    @Test
+    void categoryStatsFollowRowReuseAndConcurrentStockChanges() {
+        productStore.remove(102);
+        productStore.insert(new Product(null, "Lejía", "LIMPIEZA", 1.50, 10));
+        productStore.update(new Product(101, "Leche", "Hogar", 99.0, 4));
+        IntStream.range(0, 1_000).parallel().forEach(i -> productStore.adjustStock(i % 2 == 0 ? 100 : 103, 1));
+
+        assertEquals(List.of("Alimentación", "Hogar", "LIMPIEZA"), productStore.categoryStats().stream().map(CategoryStats::getCategory).toList());
+        CategoryStats food = productStore.categoryStats("alimentación").orElseThrow();
+        assertEquals(1, food.getCount());
+        assertEquals(520, food.getTotalStock());
+        assertEquals(572.0, food.getTotalStockValue(), 1e-6);
+        CategoryStats home = productStore.categoryStats("Hogar").orElseThrow();
+        assertEquals(2, home.getCount());
+        assertEquals(508, home.getTotalStock());
+        assertEquals(125 * 504 + 99.0 * 4, home.getTotalStockValue(), 1e-6);
+        assertEquals(99.0, home.getMinPrice());
+        assertEquals(112.0, home.getAvgPrice(), 1e-9);
+        assertEquals(1.50, productStore.categoryStats("limpieza").orElseThrow().getMaxPrice());
+    }
+
+    @Test
+    void findAllByIdMaterialisesRowsInRequestOrder() {
+        productStore.remove(101);
+        assertEquals(List.of(102, 100), productStore.findAllById(List.of(102, 101, 100, 102)).stream().map(Product::getCodProduct).toList());
+    }
+
+    // More rows than the first chunks of a walk in codProduct order, inserted out of order and with holes
+    @Test
+    void codProductOrderAcrossChunksMatchesAFullSort() {
+        List<Integer> expected = new ArrayList<>(List.of(100, 101, 102, 103));
+        for (int i = 0; i < 3_000; i++) {
+            int id = 200 + (i * 7919) % 3_000;
+            productStore.put(new Product(id, "Producto " + id, id % 2 == 0 ? "Hogar" : "Oficina", id % 50, 1));
+            expected.add(id);
+        }
+        for (int id = 300; id < 400; id++) {
+            productStore.remove(id);
+            expected.remove(Integer.valueOf(id));
+        }
+        expected.sort(null);
+
+        assertEquals(expected, ids(ProductQuery.builder().build()));
+        assertEquals(expected.subList(700, 720), ids(ProductQuery.builder().offset(700).limit(20).build()));
+        assertEquals(expected.stream().filter(id -> id > 2_500).toList(), ids(ProductQuery.builder().after(2_500).build()));
+        List<Integer> descending = new ArrayList<>(expected);
+        descending.sort(Comparator.reverseOrder());
+        assertEquals(descending, ids(ProductQuery.builder().sort("-codProduct").build()));
+        assertEquals(descending.subList(1_000, 1_005), ids(ProductQuery.builder().sort("-codProduct").offset(1_000).limit(5).build()));
+        assertEquals(expected.stream().filter(id -> id % 2 == 0 && id > 1_000).limit(300).toList(),
+                ids(ProductQuery.builder().category("hogar").after(1_000).limit(300).build()));
+        // A stream stops scanning once its consumer has had enough
+        assertEquals(expected.subList(0, 3), productStore.query(new ProductQuery()).limit(3).map(Product::getCodProduct).toList());
+    }
+}
@@ -0,0 +1,311 @@
+package com.jesus.webflux.store;
+
+import com.jesus.webflux.model.CategoryStats;
+import com.jesus.webflux.model.InsufficientStockException;
+import com.jesus.webflux.model.Product;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Author Jesús Fdez. Caraballo
+ * jesus.fdez.caraballo@gmail.com
+ * Created on abr - 2025
+ */
+class ProductStoreTest {
+
+    private ProductStore productStore;
+
+    @BeforeEach
+    void setUp() {
+        productStore = new ProductStore();
+        productStore.put(new Product(100, "Azúcar", "Alimentación", 1.10, 20));
+        productStore.put(new Product(101, "Leche", "Alimentación", 1.20, 15));
+        productStore.put(new Product(103, "Mesa", "Hogar", 125, 4));
+    }
+
+    @Test
+    void insertAssignsNextIdAfterHighestLoadedId() {
+        Product inserted = productStore.insert(new Product(null, "Huevos", "Alimentación", 2.20, 30));
+        assertEquals(104, inserted.getCodProduct());
+        assertTrue(productStore.exists(104));
+    }
+
+    @Test
+    void updateReplacesStoredCopyWithoutTouchingCallerInstance() {
+        Product changes = new Product(100, "Azúcar moreno", "Alimentación", 1.50, 10);
+        assertTrue(productStore.update(changes).isPresent());
+
+        changes.setName("Changed afterwards");
+        assertEquals("Azúcar moreno", productStore.findById(100).orElseThrow().getName());
+    }
+
+    @Test
+    void updateOfMissingProductDoesNothing() {
+        assertTrue(productStore.update(new Product(999, "Nada", "Nada", 1, 1)).isEmpty());
+        assertFalse(productStore.exists(999));
+    }
+
+    @Test
+    void deleteRemovesProductFromLookupsAndListing() {
+        assertTrue(productStore.delete(101));
+        assertFalse(productStore.delete(101));
+        assertTrue(productStore.findById(101).isEmpty());
+        assertEquals(List.of(100, 103), productStore.findAll().map(Product::getCodProduct).toList());
+    }
+
+    @Test
+    void concurrentReservationsNeverOversell() {
+        long reserved = IntStream.range(0, 1_000).parallel()
+                .filter(i -> {
+                    try {
+                        return productStore.adjustStock(100, -1).isPresent();
+                    } catch (InsufficientStockException e) {
+                        return false;
+                    }
+                })
+                .count();
+        assertEquals(20, reserved);
+        assertEquals(0, productStore.findById(100).orElseThrow().getStock());
+        assertEquals(List.of(100), productStore.findByStockRange(0, 0).map(Product::getCodProduct).toList());
+
+        InsufficientStockException e = assertThrows(InsufficientStockException.class, () -> productStore.adjustStock(101, -16));
+        assertEquals(15, e.getAvailable());
+        assertEquals(25, productStore.adjustStock(101, 10).orElseThrow().getStock());
+        assertTrue(productStore.adjustStock(999, 1).isEmpty());
+    }
+
+    @Test
+    void concurrentInsertsNeverReuseIds() {
+        IntStream.range(0, 10_000).parallel()
+                .forEach(i -> productStore.insert(new Product(null, "P" + i, "Test", i, i)));
+        assertEquals(10_003, productStore.size());
+        assertEquals(10_003, productStore.findAll().map(Product::getCodProduct).distinct().count());
+    }
+
+    @Test
+    void categoryIndexIsCaseInsensitiveAndOrderedById() {
+        assertEquals(List.of(100, 101),
+                productStore.findByCategory("ALIMENTACIÓN").map(Product::getCodProduct).toList());
+        assertEquals(2, productStore.countByCategory("alimentación", Integer.MAX_VALUE));
+        assertEquals(1, productStore.countByCategory("alimentación", 1));
+    }
+
+    @Test
+    void rangeIndexesFollowUpdatesAndDeletes() {
+        productStore.update(new Product(101, "Leche", "Hogar", 99.0, 4));
+
+        assertEquals(List.of(100), productStore.findByPriceRange(1.0, 2.0).map(Product::getCodProduct).toList());
+        assertEquals(List.of(101, 103), productStore.findByStockRange(0, 5).map(Product::getCodProduct).toList());
+        assertEquals(List.of(101, 103), productStore.findByCategory("hogar").map(Product::getCodProduct).toList());
+
+        productStore.delete(103);
+        assertEquals(List.of(101), productStore.findByStockRange(0, 5).map(Product::getCodProduct).toList());
+        assertEquals(0, productStore.countByPriceRange(100, 200, Integer.MAX_VALUE));
+    }
+
+    @Test
+    void emptyOrInvertedRangesReturnNothing() {
+        assertEquals(0, productStore.findByPriceRange(5.0, 1.0).count());
+        assertEquals(0, productStore.findByCategory("Nada").count());
+    }
+
+    @Test
+    void insertAllTakesABlockOfIdsAndIndexesTheBatch() {
+        List<Product> inserted = productStore.insertAll(List.of(
+                new Product(null, "Huevos", "Alimentación", 2.20, 30),
+                new Product(7, "Silla", "Hogar", 45, 8)));
+
+        assertEquals(List.of(104, 105), inserted.stream().map(Product::getCodProduct).toList());
+        assertEquals(List.of(100, 101, 104), productStore.findByCategory("alimentación").map(Product::getCodProduct).toList());
+        assertEquals(List.of(105), productStore.findByPriceRange(40, 50).map(Product::getCodProduct).toList());
+        assertEquals(106, productStore.insert(new Product(null, "Mesa", "Hogar", 1, 1)).getCodProduct());
+    }
+
+    @Test
+    void suggestionsIgnoreAccentsAndRankWholeNamesFirst() {
+        productStore.put(new Product(104, "Azúcar moreno", "Alimentación", 1.90, 10));
+        productStore.put(new Product(105, "Pan de azúcar", "Alimentación", 0.90, 12));
+        productStore.put(new Product(106, "Azulejo", "Hogar", 3, 100));
+
+        assertEquals(List.of(100, 104, 105), productStore.suggestByName("AZUCAR", 10).stream().map(Product::getCodProduct).toList());
+        assertEquals(List.of(100, 106, 104, 105), productStore.suggestByName("azu", 10).stream().map(Product::getCodProduct).toList());
+        assertEquals(List.of(104), productStore.suggestByName("azúcar mor", 10).stream().map(Product::getCodProduct).toList());
+        assertEquals(List.of(100), productStore.suggestByName("azu", 1).stream().map(Product::getCodProduct).toList());
+        assertTrue(productStore.suggestByName("  ", 10).isEmpty());
+    }
+
+    @Test
+    void nameIndexesFollowUpdatesAndDeletes() {
+        productStore.update(new Product(101, "Leche entera", "Alimentación", 1.20, 15));
+        assertEquals(0, productStore.findByName("leche").count());
+        assertEquals(List.of(101), productStore.findByName("LECHE ENTERA").map(Product::getCodProduct).toList());
+        assertEquals(List.of(101), productStore.suggestByName("ent", 10).stream().map(Product::getCodProduct).toList());
+
+        productStore.delete(101);
+        assertTrue(productStore.suggestByName("leche", 10).isEmpty());
+        assertEquals(0, productStore.countByName("leche entera", Integer.MAX_VALUE));
+    }
+
+    @Test
+    void categoryStatsFollowInsertsUpdatesAndDeletes() {
+        assertEquals(List.of(new CategoryStats("Alimentación", 2, 35, 40.0, 1.10, 1.20, 1.15),
+                new CategoryStats("Hogar", 1, 4, 500.0, 125, 125, 125)), rounded(productStore.categoryStats()));
+
+        productStore.update(new Product(101, "Leche", "Hogar", 99.0, 4));
+        productStore.adjustStock(100, -5);
+        assertEquals(List.of(new CategoryStats("Alimentación", 1, 15, 16.5, 1.10, 1.10, 1.10),
+                new CategoryStats("Hogar", 2, 8, 896.0, 99, 125, 112)), rounded(productStore.categoryStats()));
+
+        productStore.delete(100);
+        productStore.insertAll(List.of(new Product(null, "Silla", "HOGAR", 30, 2), new Product(null, "Sin categoría", null, 5, 1)));
+        assertTrue(productStore.categoryStats("alimentación").isEmpty());
+        assertEquals(List.of(new CategoryStats("Hogar", 3, 10, 956.0, 30, 125, 84.67), new CategoryStats(null, 1, 1, 5.0, 5, 5, 5)),
+                rounded(productStore.categoryStats()));
+        assertEquals(3, productStore.categoryStats("hogar").orElseThrow().getCount());
+    }
+
+    @Test
+    void categoryStatsMatchAFullScanAfterConcurrentWrites() {
+        productStore.insertAll(IntStream.range(0, 2_000).mapToObj(i -> new Product(null, "Producto " + i, "Categoría " + i % 8, i % 97, i % 13)).toList());
+        IntStream.range(0, 8).parallel().forEach(worker -> {
+            SplittableRandom random = new SplittableRandom(worker);
+            for (int i = 0; i < 2_000; i++) {
+                int id = random.nextInt(100, 2_104);
+                switch (random.nextInt(4)) {
+                    case 0 -> productStore.update(new Product(id, "Cambiado", "categoría " + random.nextInt(10), random.nextInt(200), random.nextInt(50)));
+                    case 1 -> productStore.adjustStock(id, random.nextInt(1, 5));
+                    case 2 -> productStore.delete(id);
+                    default -> productStore.insertAll(List.of(new Product(null, "Nuevo", "Categoría " + random.nextInt(10), random.nextInt(200), 1)));
+                }
+            }
+        });
+        assertIndexesMatchAFullScan();
+    }
+
+    @Test
+    void writesChasingABatchNeverLeaveStaleIndexEntries() throws InterruptedException {
+        AtomicBoolean inserting = new AtomicBoolean(true);
+        List<Thread> chasers = IntStream.range(0, 3).mapToObj(worker -> new Thread(() -> {
+            // The ids a batch has just taken, before or while they become visible
+            SplittableRandom random = new SplittableRandom(worker);
+            while (inserting.get()) {
+                int id = productStore.lastId() - random.nextInt(2);
+                if (random.nextBoolean()) productStore.delete(id);
+                else productStore.update(new Product(id, "Cambiado", "Otra " + random.nextInt(3), random.nextInt(200), 3));
+            }
+        })).toList();
+        chasers.forEach(Thread::start);
+        for (int i = 0; i < 5_000; i++) {
+            productStore.insertAll(List.of(new Product(null, "Nuevo", "Categoría " + i % 5, i % 50, 1), new Product(null, "Nuevo", "Categoría " + i % 7, 1, 2)));
+        }
+        inserting.set(false);
+        for (Thread chaser : chasers) chaser.join();
+        assertIndexesMatchAFullScan();
+    }
+
+    private void assertIndexesMatchAFullScan() {
+        assertEquals(productStore.size(), productStore.findAll().count());
+        assertEquals(productStore.size(), productStore.countByPriceRange(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Integer.MAX_VALUE));
+        assertEquals(productStore.size(), productStore.countByStockRange(Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE));
+        Map<String, List<Product>> byCategory = productStore.findAll()
+                .collect(Collectors.groupingBy(product -> product.getCategory().toLowerCase(Locale.ROOT), TreeMap::new, Collectors.toList()));
+        List<CategoryStats> stats = productStore.categoryStats();
+        assertEquals(byCategory.size(), stats.size());
+        for (CategoryStats category : stats) {
+            List<Product> products = byCategory.get(category.getCategory().toLowerCase(Locale.ROOT));
+            assertEquals(products.size(), category.getCount());
+            assertEquals(products.size(), productStore.countByCategory(category.getCategory(), Integer.MAX_VALUE));
+            assertEquals(products.stream().mapToLong(Product::getStock).sum(), category.getTotalStock());
+            assertEquals(products.stream().mapToDouble(product -> product.getUnitPrice() * product.getStock()).sum(), category.getTotalStockValue(), 1e-6);
+            assertEquals(products.stream().mapToDouble(Product::getUnitPrice).min().orElseThrow(), category.getMinPrice());
+            assertEquals(products.stream().mapToDouble(Product::getUnitPrice).max().orElseThrow(), category.getMaxPrice());
+            assertEquals(products.stream().mapToDouble(Product::getUnitPrice).average().orElseThrow(), category.getAvgPrice(), 1e-9);
+        }
+    }
+
+    // Running totals carry the rounding of the additions and subtractions
+    private static List<CategoryStats> rounded(List<CategoryStats> stats) {
+        return stats.stream().map(category -> new CategoryStats(category.getCategory(), category.getCount(), category.getTotalStock(),
+                Math.round(category.getTotalStockValue() * 100) / 100.0, category.getMinPrice(), category.getMaxPrice(),
+                Math.round(category.getAvgPrice() * 100) / 100.0)).toList();
+    }
+
+    @Test
+    void failedInsertAllLeavesNoTraceOfTheBatch() {
+        List<Product> withNull = new ArrayList<>(List.of(new Product(null, "Silla", "Hogar", 30, 2)));
+        withNull.add(null);
+        assertThrows(NullPointerException.class, () -> productStore.insertAll(withNull));
+
+        // The log refuses the third product, after taking the first two
+        int[] written = new int[1];
+        productStore.attach(new MutationLog() {
+            @Override
+            public void written(Product product) {
+                if (++written[0] == 3) throw new IllegalStateException("journal closed");
+            }
+
+            @Override
+            public void removed(int codProduct) {
+            }
+
+            @Override
+            public CompletableFuture<Void> durable() {
+                return CompletableFuture.completedFuture(null);
+            }
+        });
+        assertThrows(IllegalStateException.class, () -> productStore.insertAll(List.of(
+                new Product(null, "Silla", "Hogar", 30, 2), new Product(null, "Lámpara", "Hogar", 20, 5), new Product(null, "Sofá", "Hogar", 400, 1))));
+
+        assertEquals(List.of(100, 101, 103), productStore.findAll().map(Product::getCodProduct).toList());
+        assertFalse(productStore.exists(104));
+        assertEquals(1, productStore.countByCategory("Hogar", 100));
+        assertEquals(1, productStore.categoryStats("Hogar").orElseThrow().getCount());
+        assertEquals(0, productStore.findByPriceRange(20, 30).count());
+        assertEquals(0, productStore.findByName("silla").count());
+        // The ids of the batch are handed out again
+        assertEquals(104, productStore.insert(new Product(null, "Silla", "Hogar", 30, 2)).getCodProduct());
+    }
+
+    @Test
+    void loadBuildsTheSameIndexesAsPuttingEachProduct() {
+        List<Product> catalogue = IntStream.range(1, 500)
+                .mapToObj(id -> new Product(id * 2, "Producto " + id % 37 + (id % 5 == 0 ? " azúcar" : ""), id % 11 == 0 ? null : "Categoría " + id % 7, id % 53, id % 17))
+                .toList();
+        ProductStore loaded = new ProductStore();
+        loaded.load(catalogue);
+        ProductStore put = new ProductStore();
+        catalogue.forEach(put::put);
+
+        assertEquals(put.findAll().toList(), loaded.findAll().toList());
+        assertEquals(put.findByCategory("categoría 3").toList(), loaded.findByCategory("CATEGORÍA 3").toList());
+        assertEquals(put.findByPriceRange(10, 20).toList(), loaded.findByPriceRange(10, 20).toList());
+        assertEquals(put.findByStockRange(3, 3).toList(), loaded.findByStockRange(3, 3).toList());
+        assertEquals(put.findByName("producto 4 azucar").toList(), loaded.findByName("Producto 4 azúcar").toList());
+        assertEquals(put.suggestByName("azu", 20), loaded.suggestByName("azu", 20));
+        assertEquals(put.categoryStats(), loaded.categoryStats());
+        assertEquals(998, loaded.lastId());
+        assertEquals(999, loaded.insert(new Product(null, "Silla", "Hogar", 30, 2)).getCodProduct());
+
+        assertThrows(IllegalStateException.class, () -> loaded.load(catalogue));
+        assertThrows(IllegalArgumentException.class, () -> new ProductStore().load(List.of(catalogue.get(1), catalogue.get(0))));
+    }
+
+    @Test
+    void findAllByIdKeepsRequestOrderAndSkipsUnknownAndRepeatedIds() {
+        assertEquals(List.of(103, 100), productStore.findAllById(List.of(103, 999, 100, 103)).stream().map(Product::getCodProduct).toList());
+        assertTrue(productStore.findAllById(List.of()).isEmpty());
+    }
+}